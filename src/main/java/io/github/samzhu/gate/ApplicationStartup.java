@@ -124,6 +124,10 @@ public class ApplicationStartup {
         String usageEventBinder = env.getProperty("spring.cloud.stream.bindings.usageEvent-out-0.binder", streamDefaultBinder);
         String usageEventDestination = env.getProperty("spring.cloud.stream.bindings.usageEvent-out-0.destination", "N/A");
 
+        // 上游連線設定
+        String upstreamTransport = env.getProperty("anthropic.api.transport", "http1");
+        String upstreamPrewarm = env.getProperty("anthropic.api.prewarm.connections", "0");
+
         // GCP 設定
         String gcpPubsubEnabled = env.getProperty("spring.cloud.gcp.pubsub.enabled", "true");
         String gcpProjectId = env.getProperty("spring.cloud.gcp.project-id", "auto-detect");
@@ -158,6 +162,10 @@ public class ApplicationStartup {
             \t  usageEvent Binder：{}
             \t  usageEvent Topic：{}
             ----------------------------------------------------------
+            \t上游連線：
+            \t  Transport：{}
+            \t  預熱連線數：{}
+            ----------------------------------------------------------
             \tGCP 配置：
             \t  Pub/Sub 啟用：{}
             \t  Project ID：{}
@@ -183,6 +191,8 @@ public class ApplicationStartup {
             streamDefaultBinder,
             usageEventBinder,
             usageEventDestination,
+            upstreamTransport,
+            upstreamPrewarm,
             gcpPubsubEnabled,
             gcpProjectId
         );
@@ -11,6 +11,15 @@ import org.springframework.boot.context.properties.ConfigurationProperties;
  * <ul>
  *   <li>{@code baseUrl} - Anthropic API 基礎 URL（預設: https://api.anthropic.com）</li>
  *   <li>{@code keys} - API Key 配置列表，支援多組 Key 輪換</li>
+ *   <li>{@code keysFile} - API Key 檔案（熱更新，設定時取代 {@code keys}）</li>
+ *   <li>{@code pool} - 上游連線池配置（未設定時使用預設值）</li>
+ *   <li>{@code transport} - 上游傳輸模式：{@code http1}（預設）或 {@code http2}</li>
+ *   <li>{@code prewarm} - 上游連線預熱配置（未設定時停用）</li>
+ *   <li>{@code retry} - 429 / 529 換 Key 重試配置（未設定時使用預設值）</li>
+ *   <li>{@code affinity} - prompt cache 親和路由配置（未設定時停用）</li>
+ *   <li>{@code countTokensCache} - count_tokens 回應快取配置（未設定時使用預設值）</li>
+ *   <li>{@code responseCache} - {@code temperature: 0} 回應快取配置（未設定時停用）</li>
+ *   <li>{@code coalescing} - 相同非串流請求的 single-flight 合併配置（未設定時停用）</li>
  * </ul>
  *
  * <p>配置範例：
@@ -27,13 +36,40 @@ import org.springframework.boot.context.properties.ConfigurationProperties;
  *
  * @param baseUrl Anthropic API 基礎 URL
  * @param keys API Key 配置列表
+ * @param keysFile API Key 檔案配置
+ * @param pool 上游連線池配置
+ * @param transport 上游傳輸模式
+ * @param prewarm 上游連線預熱配置
+ * @param retry 429 / 529 換 Key 重試配置
+ * @param affinity prompt cache 親和路由配置
+ * @param countTokensCache count_tokens 回應快取配置
+ * @param responseCache {@code temperature: 0} 回應快取配置
+ * @param coalescing 相同非串流請求的合併配置
  * @see ApiKeyConfig
+ * @see ApiKeysFileConfig
+ * @see UpstreamPoolConfig
+ * @see UpstreamTransport
+ * @see UpstreamPrewarmConfig
+ * @see UpstreamRetryConfig
+ * @see KeyAffinityConfig
+ * @see CountTokensCacheConfig
+ * @see ResponseCacheConfig
+ * @see RequestCoalescingConfig
  * @see io.github.samzhu.gate.service.ApiKeyRotationService
  */
 @ConfigurationProperties(prefix = "anthropic.api")
 public record AnthropicProperties(
     String baseUrl,
-    List<ApiKeyConfig> keys
+    List<ApiKeyConfig> keys,
+    ApiKeysFileConfig keysFile,
+    UpstreamPoolConfig pool,
+    UpstreamTransport transport,
+    UpstreamPrewarmConfig prewarm,
+    UpstreamRetryConfig retry,
+    KeyAffinityConfig affinity,
+    CountTokensCacheConfig countTokensCache,
+    ResponseCacheConfig responseCache,
+    RequestCoalescingConfig coalescing
 ) {
     public AnthropicProperties {
         if (baseUrl == null || baseUrl.isBlank()) {
@@ -42,5 +78,32 @@ public record AnthropicProperties(
         if (keys == null) {
             keys = List.of();
         }
+        if (keysFile == null) {
+            keysFile = ApiKeysFileConfig.disabled();
+        }
+        if (pool == null) {
+            pool = UpstreamPoolConfig.defaults();
+        }
+        if (transport == null) {
+            transport = UpstreamTransport.HTTP1;
+        }
+        if (prewarm == null) {
+            prewarm = UpstreamPrewarmConfig.disabled();
+        }
+        if (retry == null) {
+            retry = UpstreamRetryConfig.defaults();
+        }
+        if (affinity == null) {
+            affinity = KeyAffinityConfig.disabled();
+        }
+        if (countTokensCache == null) {
+            countTokensCache = CountTokensCacheConfig.defaults();
+        }
+        if (responseCache == null) {
+            responseCache = ResponseCacheConfig.disabled();
+        }
+        if (coalescing == null) {
+            coalescing = RequestCoalescingConfig.disabled();
+        }
     }
 }
@@ -7,6 +7,7 @@ package io.github.samzhu.gate.config;
  * <ul>
  *   <li>{@code alias} - 人類可讀的別名，用於日誌追蹤和審計（不暴露實際 Key）</li>
  *   <li>{@code value} - 實際的 Anthropic API Key（以 sk-ant- 開頭）</li>
+ *   <li>{@code weight} - 負載權重（選填，預設 1）；rate limit tier 較高的 Key 可設定較大的權重</li>
  * </ul>
  *
  * <p>配置範例：
@@ -16,15 +17,18 @@ package io.github.samzhu.gate.config;
  *     keys:
  *       - alias: "primary"
  *         value: sk-ant-api03-xxx...
+ *         weight: 2
  * </pre>
  *
  * @param alias API Key 別名（必填，用於追蹤）
  * @param value 實際的 Anthropic API Key（必填）
+ * @param weight 負載權重（選填，預設 1）
  * @see AnthropicProperties
  */
 public record ApiKeyConfig(
     String alias,
-    String value
+    String value,
+    Integer weight
 ) {
     public ApiKeyConfig {
         if (alias == null || alias.isBlank()) {
@@ -33,5 +37,10 @@ public record ApiKeyConfig(
         if (value == null || value.isBlank()) {
             throw new IllegalArgumentException("API Key value cannot be blank");
         }
+        if (weight == null) {
+            weight = 1;
+        } else if (weight <= 0) {
+            throw new IllegalArgumentException("API Key weight must be positive: " + alias);
+        }
     }
 }
@@ -0,0 +1,58 @@
+package io.github.samzhu.gate.config;
+
+import java.time.Duration;
+
+/**
+ * API Key 檔案配置（熱更新）
+ *
+ * <p>以掛載的 secret 檔案提供 API Key，檔案內容變更時不需重新部署即可生效：
+ * <ul>
+ *   <li>{@code path} - JSON 檔案路徑（未設定表示停用，只使用 {@code anthropic.api.keys}）</li>
+ *   <li>{@code pollInterval} - 檢查檔案內容是否變更的間隔</li>
+ * </ul>
+ *
+ * <p>檔案格式（與 {@code anthropic.api.keys} 相同欄位）：
+ * <pre>
+ * [
+ *   { "alias": "primary", "value": "sk-ant-api03-xxx...", "weight": 2 },
+ *   { "alias": "secondary", "value": "sk-ant-api03-yyy..." }
+ * ]
+ * </pre>
+ *
+ * <p>配置範例（Cloud Run 以 volume 掛載 Secret Manager secret）：
+ * <pre>
+ * anthropic:
+ *   api:
+ *     keys-file:
+ *       path: /secrets/anthropic-keys.json
+ *       poll-interval: 30s
+ * </pre>
+ *
+ * @param path         API Key JSON 檔案路徑
+ * @param pollInterval 檔案檢查間隔
+ * @see io.github.samzhu.gate.service.ApiKeyPoolReloader
+ */
+public record ApiKeysFileConfig(
+    String path,
+    Duration pollInterval
+) {
+    public ApiKeysFileConfig {
+        if (pollInterval == null) {
+            pollInterval = Duration.ofSeconds(30);
+        }
+    }
+
+    /**
+     * 停用 API Key 檔案的配置
+     */
+    public static ApiKeysFileConfig disabled() {
+        return new ApiKeysFileConfig(null, null);
+    }
+
+    /**
+     * 是否啟用 API Key 檔案
+     */
+    public boolean enabled() {
+        return path != null && !path.isBlank();
+    }
+}
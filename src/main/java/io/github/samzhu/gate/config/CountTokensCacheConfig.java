@@ -0,0 +1,54 @@
+package io.github.samzhu.gate.config;
+
+import java.time.Duration;
+
+import org.springframework.util.unit.DataSize;
+
+/**
+ * count_tokens 回應快取配置
+ *
+ * <ul>
+ *   <li>{@code maxSize} - 快取回應本體的位元組上限（0 表示停用）</li>
+ *   <li>{@code ttl} - 寫入後的存活時間</li>
+ * </ul>
+ *
+ * <p>配置範例：
+ * <pre>
+ * anthropic:
+ *   api:
+ *     count-tokens-cache:
+ *       max-size: 8MB
+ *       ttl: 5m
+ * </pre>
+ *
+ * @param maxSize 快取位元組上限
+ * @param ttl     快取存活時間
+ * @see io.github.samzhu.gate.service.CountTokensCache
+ */
+public record CountTokensCacheConfig(
+    DataSize maxSize,
+    Duration ttl
+) {
+    public CountTokensCacheConfig {
+        if (maxSize == null) {
+            maxSize = DataSize.ofMegabytes(8);
+        }
+        if (ttl == null) {
+            ttl = Duration.ofMinutes(5);
+        }
+    }
+
+    /**
+     * 預設配置
+     */
+    public static CountTokensCacheConfig defaults() {
+        return new CountTokensCacheConfig(null, null);
+    }
+
+    /**
+     * 是否啟用快取
+     */
+    public boolean enabled() {
+        return maxSize.toBytes() > 0;
+    }
+}
@@ -0,0 +1,34 @@
+package io.github.samzhu.gate.config;
+
+import org.springframework.boot.context.properties.ConfigurationProperties;
+
+/**
+ * JWT 驗證配置屬性
+ *
+ * <p>從 application.yaml 中的 {@code gate.jwt} 前綴載入配置（JWKS 端點、簽章演算法、issuer 仍由
+ * {@code spring.security.oauth2.resourceserver.jwt} 提供）：
+ * <ul>
+ *   <li>{@code cache} - 已驗證 JWT 快取配置（未設定時使用預設值）</li>
+ *   <li>{@code jwks} - JWKS 預先載入與背景更新配置（未設定時使用預設值）</li>
+ * </ul>
+ *
+ * @param cache 已驗證 JWT 快取配置
+ * @param jwks  JWKS 預先載入與背景更新配置
+ * @see JwtCacheConfig
+ * @see JwksRefreshConfig
+ * @see SecurityConfig
+ */
+@ConfigurationProperties(prefix = "gate.jwt")
+public record GateJwtProperties(
+    JwtCacheConfig cache,
+    JwksRefreshConfig jwks
+) {
+    public GateJwtProperties {
+        if (cache == null) {
+            cache = JwtCacheConfig.defaults();
+        }
+        if (jwks == null) {
+            jwks = JwksRefreshConfig.defaults();
+        }
+    }
+}
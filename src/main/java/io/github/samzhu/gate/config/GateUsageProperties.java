@@ -0,0 +1,26 @@
+package io.github.samzhu.gate.config;
+
+import org.springframework.boot.context.properties.ConfigurationProperties;
+
+/**
+ * 用量事件配置屬性
+ *
+ * <p>從 application.yaml 中的 {@code gate.usage} 前綴載入配置（訊息佇列的 binding 仍由
+ * {@code spring.cloud.stream.bindings.usageEvent-out-0} 提供）：
+ * <ul>
+ *   <li>{@code publisher} - 非同步用量事件發送配置（未設定時使用預設值）</li>
+ * </ul>
+ *
+ * @param publisher 非同步用量事件發送配置
+ * @see UsagePublisherConfig
+ */
+@ConfigurationProperties(prefix = "gate.usage")
+public record GateUsageProperties(
+    UsagePublisherConfig publisher
+) {
+    public GateUsageProperties {
+        if (publisher == null) {
+            publisher = UsagePublisherConfig.defaults();
+        }
+    }
+}
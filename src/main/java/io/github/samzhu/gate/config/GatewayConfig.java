@@ -15,14 +15,23 @@ import org.springframework.web.servlet.function.RouterFunctions;
 import org.springframework.web.servlet.function.ServerRequest;
 import org.springframework.web.servlet.function.ServerResponse;
 
-import com.fasterxml.jackson.databind.JsonNode;
-import com.fasterxml.jackson.databind.ObjectMapper;
-
+import io.github.samzhu.gate.handler.CachedResponseHandler;
 import io.github.samzhu.gate.handler.NonStreamingProxyHandler;
+import io.github.samzhu.gate.handler.ProxyRequestBody;
 import io.github.samzhu.gate.handler.SimpleProxyHandler;
+import io.github.samzhu.gate.handler.SseCoalescing;
+import io.github.samzhu.gate.handler.StreamFanOut;
 import io.github.samzhu.gate.handler.StreamingProxyHandler;
+import io.github.samzhu.gate.metrics.RequestMemoryMetrics;
+import io.github.samzhu.gate.model.RequestEnvelope;
 import io.github.samzhu.gate.service.ApiKeyRotationService;
-import io.github.samzhu.gate.service.ApiKeySelection;
+import io.github.samzhu.gate.service.ApiKeyLease;
+import io.github.samzhu.gate.service.CoalescedRequest;
+import io.github.samzhu.gate.service.CountTokensCache;
+import io.github.samzhu.gate.service.RequestCoalescer;
+import io.github.samzhu.gate.service.ResponseCache;
+import io.github.samzhu.gate.service.SharedResponse;
+import io.github.samzhu.gate.util.RequestEnvelopeReader;
 
 /**
  * Spring Cloud Gateway Server MVC 路由配置
@@ -36,8 +45,15 @@ import io.github.samzhu.gate.service.ApiKeySelection;
  * <p>{@code /v1/messages} 處理流程：
  * <ol>
  *   <li>從 JWT 取得用戶識別（subject）</li>
- *   <li>透過 Round Robin 策略選擇 API Key</li>
- *   <li>根據請求中的 {@code stream} 參數分流：
+ *   <li>以 {@link RequestEnvelopeReader} 單次掃描請求根層級欄位（不建立 DOM）</li>
+ *   <li>{@code temperature: 0} 的請求先查詢 {@link ResponseCache}，命中時由 {@link CachedResponseHandler}
+ *       直接回應（不取得 API Key）</li>
+ *   <li>{@code temperature: 0} 的非串流請求加入 {@link RequestCoalescer}：相同請求已在進行中時等待並共用其回應
+ *       （不取得 API Key），等待逾時則繼續自行處理</li>
+ *   <li>{@code temperature: 0} 的串流請求加入 {@link StreamFanOut}：相同請求的上游串流正在進行中時訂閱該串流
+ *       （不取得 API Key），先重播已產生的事件再接續即時事件</li>
+ *   <li>透過親和路由或 Least Outstanding Requests 策略選擇 API Key（見 {@link ApiKeyRotationService}）</li>
+ *   <li>依 {@code stream} 參數分流：
  *       <ul>
  *         <li>{@code stream: true} → 串流處理（SSE）</li>
  *         <li>{@code stream: false} → 非串流處理（JSON）</li>
@@ -46,6 +62,12 @@ import io.github.samzhu.gate.service.ApiKeySelection;
  *   <li>代理請求到 Anthropic API 並追蹤 Token 用量</li>
  * </ol>
  *
+ * <p>請求本體記憶體：{@code /v1/messages} 需要先讀完本體才能判斷路由，本體以 {@link ProxyRequestBody}
+ * 持有並在送出上游後釋放；{@code count_tokens} 需要完整本體計算快取 key（見 {@link CountTokensCache}）。
+ *
+ * <p>串流請求可透過 {@code x-gate-coalesce-ms}、{@code x-gate-coalesce-bytes} header
+ * 啟用 SSE 寫入合併（見 {@link SseCoalescing}），這些 header 不會轉發給 Anthropic。
+ *
  * @see StreamingProxyHandler
  * @see NonStreamingProxyHandler
  * @see SimpleProxyHandler
@@ -62,19 +84,34 @@ public class GatewayConfig {
     private final StreamingProxyHandler streamingProxyHandler;
     private final NonStreamingProxyHandler nonStreamingProxyHandler;
     private final SimpleProxyHandler simpleProxyHandler;
-    private final ObjectMapper objectMapper;
+    private final RequestMemoryMetrics requestMemoryMetrics;
+    private final CountTokensCache countTokensCache;
+    private final ResponseCache responseCache;
+    private final CachedResponseHandler cachedResponseHandler;
+    private final RequestCoalescer requestCoalescer;
+    private final StreamFanOut streamFanOut;
 
     public GatewayConfig(
             ApiKeyRotationService apiKeyRotationService,
             StreamingProxyHandler streamingProxyHandler,
             NonStreamingProxyHandler nonStreamingProxyHandler,
             SimpleProxyHandler simpleProxyHandler,
-            ObjectMapper objectMapper) {
+            RequestMemoryMetrics requestMemoryMetrics,
+            CountTokensCache countTokensCache,
+            ResponseCache responseCache,
+            CachedResponseHandler cachedResponseHandler,
+            RequestCoalescer requestCoalescer,
+            StreamFanOut streamFanOut) {
         this.apiKeyRotationService = apiKeyRotationService;
         this.streamingProxyHandler = streamingProxyHandler;
         this.nonStreamingProxyHandler = nonStreamingProxyHandler;
         this.simpleProxyHandler = simpleProxyHandler;
-        this.objectMapper = objectMapper;
+        this.requestMemoryMetrics = requestMemoryMetrics;
+        this.countTokensCache = countTokensCache;
+        this.responseCache = responseCache;
+        this.cachedResponseHandler = cachedResponseHandler;
+        this.requestCoalescer = requestCoalescer;
+        this.streamFanOut = streamFanOut;
     }
 
     @Bean
@@ -91,43 +128,111 @@ public class GatewayConfig {
      * 處理 /v1/messages 請求
      */
     private ServerResponse handleMessages(ServerRequest request) {
+        // 串流 TTFT 的起點：讀取請求體、解析 envelope、查詢快取與取得 Key 都計入 Gateway 附加的延遲
+        long requestStartNanos = System.nanoTime();
+        ProxyRequestBody proxyBody = null;
+        ApiKeyLease apiKeyLease = null;
+        CoalescedRequest coalesced = null;
+        StreamFanOut.Membership fanOut = null;
         try {
-            // 讀取請求體
-            String requestBody = request.body(String.class);
+            // 讀取請求體（保持位元組，不解碼成 String）
+            byte[] requestBody = request.body(byte[].class);
 
-            // 取得 API Key
-            ApiKeySelection selection = apiKeyRotationService.getNextApiKey();
-            if (selection == null) {
-                log.error("No API key available");
-                return ServerResponse.status(500)
-                    .contentType(MediaType.APPLICATION_JSON)
-                    .body("{\"type\":\"error\",\"error\":{\"type\":\"api_error\",\"message\":\"No Anthropic API key configured\"}}");
-            }
+            // 單次掃描請求 envelope（stream、model、max_tokens、metadata），後續 handler 共用
+            // 可快取前綴 hash 只在 cache-prefix 親和路由時計算
+            RequestEnvelope envelope = RequestEnvelopeReader.read(requestBody,
+                apiKeyRotationService.usesCachePrefixAffinity());
 
             // 從 JWT 取得 subject
             String subject = getSubjectFromRequest(request);
-            String keyAlias = selection.alias();
-            String apiKey = selection.key();
 
             // 提取所有 anthropic-* headers（用於 Beta 功能、版本控制等）
             Map<String, String> anthropicHeaders = extractAnthropicHeaders(request);
 
-            // 判斷是否為串流請求
-            boolean isStreaming = isStreamingRequest(requestBody);
+            // temperature: 0 的請求先查詢回應快取，命中時不取得 API Key、不送往上游
+            String responseCacheKey = responseCache.key(envelope, subject, anthropicHeaders);
+            byte[] cachedMessage = responseCache.get(responseCacheKey);
+            if (cachedMessage != null) {
+                log.debug("Response cache hit: subject={}, streaming={}, model={}",
+                    subject, envelope.stream(), envelope.model());
+                return cachedResponseHandler.handleCached(cachedMessage, envelope, subject);
+            }
+
+            // 相同的非串流請求正在進行中：等待並共用其回應（逾時或失敗時繼續自行處理）
+            coalesced = requestCoalescer.join(envelope, anthropicHeaders);
+            if (coalesced != null && !coalesced.leader()) {
+                long waitStart = System.currentTimeMillis();
+                SharedResponse shared = coalesced.await();
+                if (shared != null) {
+                    return nonStreamingProxyHandler.handleShared(shared, envelope, waitStart, subject);
+                }
+                coalesced = null;
+            }
+
+            // 串流請求可透過 header 啟用 SSE 寫入合併（領頭與訂閱者皆適用）
+            SseCoalescing coalescing = null;
+            if (envelope.stream()) {
+                HttpHeaders headers = request.headers().asHttpHeaders();
+                coalescing = SseCoalescing.fromHeaders(
+                    headers.getFirst(SseCoalescing.LINGER_HEADER),
+                    headers.getFirst(SseCoalescing.MAX_BYTES_HEADER));
+            }
+
+            // 相同的串流請求正在進行中：訂閱其上游串流（已無法加入時繼續自行處理）
+            StreamFanOut.Membership membership = streamFanOut.join(envelope, anthropicHeaders);
+            if (membership != null) {
+                if (!membership.leader()) {
+                    return streamingProxyHandler.handleSubscriber(
+                        membership.subscription(), envelope, subject, coalescing);
+                }
+                fanOut = membership;
+            }
 
-            log.debug("Routing request: subject={}, keyAlias={}, streaming={}, anthropicHeaders={}",
-                subject, keyAlias, isStreaming, anthropicHeaders.keySet());
+            // 依親和路由或負載選擇 API Key（串流另計，請求結束時由 handler 釋放）
+            apiKeyLease = apiKeyRotationService.acquire(envelope, subject);
+            if (apiKeyLease == null) {
+                if (coalesced != null) {
+                    coalesced.abandon();
+                }
+                if (fanOut != null) {
+                    fanOut.broadcast().finish(false);
+                }
+                log.error("No API key available");
+                return ServerResponse.status(500)
+                    .contentType(MediaType.APPLICATION_JSON)
+                    .body("{\"type\":\"error\",\"error\":{\"type\":\"api_error\",\"message\":\"No Anthropic API key configured\"}}");
+            }
 
-            if (isStreaming) {
-                // 串流請求 - 使用 ServerResponse.sse()
+            log.debug("Routing request: subject={}, keyAlias={}, routing={}, streaming={}, model={}, anthropicHeaders={}",
+                subject, apiKeyLease.alias(), apiKeyLease.routing().tag(), envelope.stream(), envelope.model(),
+                anthropicHeaders.keySet());
+
+            // 交給 handler 後由 handler 負責釋放（送出上游後）與結束（請求完成後）
+            proxyBody = new ProxyRequestBody(requestBody, requestMemoryMetrics);
+
+            if (envelope.stream()) {
+                // 串流請求 - 直接寫入 SSE 原始位元組
                 return streamingProxyHandler.handleStreaming(
-                    requestBody, apiKey, subject, keyAlias, anthropicHeaders);
+                    proxyBody, envelope, apiKeyLease, subject, anthropicHeaders, coalescing, responseCacheKey,
+                    fanOut, requestStartNanos);
             } else {
                 // 非串流請求 - 返回 JSON 回應
                 return nonStreamingProxyHandler.handleNonStreaming(
-                    requestBody, apiKey, subject, keyAlias, anthropicHeaders);
+                    proxyBody, envelope, apiKeyLease, subject, anthropicHeaders, responseCacheKey, coalesced);
             }
         } catch (Exception e) {
+            if (coalesced != null) {
+                coalesced.abandon();
+            }
+            if (fanOut != null) {
+                fanOut.broadcast().finish(false);
+            }
+            if (proxyBody != null) {
+                proxyBody.complete();
+            }
+            if (apiKeyLease != null) {
+                apiKeyLease.release();
+            }
             log.error("Error handling messages request: {}", e.getMessage(), e);
             return ServerResponse.status(500)
                 .contentType(MediaType.APPLICATION_JSON)
@@ -140,31 +245,41 @@ public class GatewayConfig {
      * 處理 /v1/messages/count_tokens 請求
      *
      * <p>Token 計算 API，用於計算 Message 的 Token 數量，不會產生實際的 API 呼叫費用。
+     * 相同內容的請求由 {@link CountTokensCache} 直接回應，不取得 API Key、不送往上游。
      */
     private ServerResponse handleCountTokens(ServerRequest request) {
+        ApiKeyLease apiKeyLease = null;
         try {
-            String requestBody = request.body(String.class);
+            // 提取所有 anthropic-* headers
+            Map<String, String> anthropicHeaders = extractAnthropicHeaders(request);
+
+            // 讀取請求體以計算快取 key（內容相同時直接回應快取結果）
+            byte[] requestBody = request.body(byte[].class);
+            String cacheKey = countTokensCache.key(requestBody, anthropicHeaders);
+            byte[] cached = countTokensCache.get(cacheKey);
+            if (cached != null) {
+                return ServerResponse.ok()
+                    .contentType(MediaType.APPLICATION_JSON)
+                    .body(cached);
+            }
 
-            ApiKeySelection selection = apiKeyRotationService.getNextApiKey();
-            if (selection == null) {
+            apiKeyLease = apiKeyRotationService.acquire(false);
+            if (apiKeyLease == null) {
                 log.error("No API key available for count_tokens");
                 return ServerResponse.status(500)
                     .contentType(MediaType.APPLICATION_JSON)
                     .body("{\"type\":\"error\",\"error\":{\"type\":\"api_error\",\"message\":\"No Anthropic API key configured\"}}");
             }
 
-            // 提取所有 anthropic-* headers
-            Map<String, String> anthropicHeaders = extractAnthropicHeaders(request);
-
             log.debug("Routing count_tokens request: keyAlias={}, anthropicHeaders={}",
-                selection.alias(), anthropicHeaders.keySet());
+                apiKeyLease.alias(), anthropicHeaders.keySet());
 
             return simpleProxyHandler.proxyRequest(
                 "/v1/messages/count_tokens",
                 requestBody,
-                selection.key(),
-                selection.alias(),
-                anthropicHeaders
+                apiKeyLease,
+                anthropicHeaders,
+                responseBody -> countTokensCache.put(cacheKey, responseBody)
             );
         } catch (Exception e) {
             log.error("Error handling count_tokens request: {}", e.getMessage(), e);
@@ -172,6 +287,11 @@ public class GatewayConfig {
                 .contentType(MediaType.APPLICATION_JSON)
                 .body("{\"type\":\"error\",\"error\":{\"type\":\"api_error\",\"message\":\"" +
                     e.getMessage().replace("\"", "\\\"") + "\"}}");
+        } finally {
+            // count_tokens 同步讀完上游回應後才返回，此時即可釋放
+            if (apiKeyLease != null) {
+                apiKeyLease.release();
+            }
         }
     }
 
@@ -194,21 +314,6 @@ public class GatewayConfig {
         return "anonymous";
     }
 
-    /**
-     * 判斷請求是否為串流模式
-     */
-    private boolean isStreamingRequest(String requestBody) {
-        try {
-            JsonNode root = objectMapper.readTree(requestBody);
-            if (root.has("stream")) {
-                return root.get("stream").asBoolean(false);
-            }
-        } catch (Exception e) {
-            log.warn("Failed to parse request body for stream detection: {}", e.getMessage());
-        }
-        return false;
-    }
-
     /**
      * 從請求中提取所有 anthropic-* headers
      *
@@ -0,0 +1,54 @@
+package io.github.samzhu.gate.config;
+
+import java.time.Duration;
+
+/**
+ * JWKS 預先載入與背景更新配置
+ *
+ * <ul>
+ *   <li>{@code refreshInterval} - 背景更新間隔上限；JWKS 回應帶有 {@code Cache-Control: max-age} 且較短時，
+ *       在到期前（{@code max-age} 的 80%）更新</li>
+ *   <li>{@code jitter} - 每次間隔隨機提前的比例（0 ~ 0.5），避免多個 instance 同時更新</li>
+ *   <li>{@code timeout} - 下載 JWKS 的連線與讀取逾時</li>
+ * </ul>
+ *
+ * <p>配置範例：
+ * <pre>
+ * gate:
+ *   jwt:
+ *     jwks:
+ *       refresh-interval: 5m
+ *       jitter: 0.2
+ *       timeout: 5s
+ * </pre>
+ *
+ * @param refreshInterval 背景更新間隔上限
+ * @param jitter          間隔隨機提前比例
+ * @param timeout         下載逾時
+ * @see io.github.samzhu.gate.service.JwkSetPrefetcher
+ */
+public record JwksRefreshConfig(
+    Duration refreshInterval,
+    Double jitter,
+    Duration timeout
+) {
+    public JwksRefreshConfig {
+        if (refreshInterval == null || refreshInterval.isNegative() || refreshInterval.isZero()) {
+            refreshInterval = Duration.ofMinutes(5);
+        }
+        if (jitter == null || jitter < 0) {
+            jitter = 0.2;
+        }
+        jitter = Math.min(jitter, 0.5);
+        if (timeout == null || timeout.isNegative() || timeout.isZero()) {
+            timeout = Duration.ofSeconds(5);
+        }
+    }
+
+    /**
+     * 預設配置
+     */
+    public static JwksRefreshConfig defaults() {
+        return new JwksRefreshConfig(null, null, null);
+    }
+}
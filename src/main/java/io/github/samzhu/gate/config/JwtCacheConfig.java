@@ -0,0 +1,52 @@
+package io.github.samzhu.gate.config;
+
+import java.time.Duration;
+
+/**
+ * 已驗證 JWT 快取配置
+ *
+ * <ul>
+ *   <li>{@code maxEntries} - 快取的 token 數上限（0 表示停用）</li>
+ *   <li>{@code maxTtl} - 單一 token 的快取時間上限；token 的 {@code exp} 較早時以 {@code exp} 為準</li>
+ * </ul>
+ *
+ * <p>配置範例：
+ * <pre>
+ * gate:
+ *   jwt:
+ *     cache:
+ *       max-entries: 10000
+ *       max-ttl: 10m
+ * </pre>
+ *
+ * @param maxEntries 快取 token 數上限
+ * @param maxTtl     單一 token 的快取時間上限
+ * @see io.github.samzhu.gate.service.CachingJwtDecoder
+ */
+public record JwtCacheConfig(
+    Integer maxEntries,
+    Duration maxTtl
+) {
+    public JwtCacheConfig {
+        if (maxEntries == null || maxEntries < 0) {
+            maxEntries = 10_000;
+        }
+        if (maxTtl == null || maxTtl.isNegative() || maxTtl.isZero()) {
+            maxTtl = Duration.ofMinutes(10);
+        }
+    }
+
+    /**
+     * 預設配置
+     */
+    public static JwtCacheConfig defaults() {
+        return new JwtCacheConfig(null, null);
+    }
+
+    /**
+     * 是否啟用快取
+     */
+    public boolean enabled() {
+        return maxEntries > 0;
+    }
+}
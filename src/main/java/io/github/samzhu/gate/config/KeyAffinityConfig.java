@@ -0,0 +1,49 @@
+package io.github.samzhu.gate.config;
+
+/**
+ * API Key 親和路由配置
+ *
+ * <ul>
+ *   <li>{@code mode} - 親和鍵來源（{@code none}、{@code subject}、{@code cache-prefix}）</li>
+ *   <li>{@code loadFactor} - bounded-load consistent hashing 的負載上限倍率：
+ *       Key 的進行中負載超過「平均負載 × loadFactor」（依 weight 分配）時視為飽和，
+ *       請求改送 hash ring 上的下一把 Key</li>
+ * </ul>
+ *
+ * <p>配置範例：
+ * <pre>
+ * anthropic:
+ *   api:
+ *     affinity:
+ *       mode: cache-prefix
+ *       load-factor: 1.25
+ * </pre>
+ *
+ * @param mode       親和路由模式
+ * @param loadFactor 飽和門檻倍率（需大於 1）
+ * @see KeyAffinityMode
+ * @see io.github.samzhu.gate.service.ApiKeyRotationService
+ */
+public record KeyAffinityConfig(
+    KeyAffinityMode mode,
+    Double loadFactor
+) {
+    public KeyAffinityConfig {
+        if (mode == null) {
+            mode = KeyAffinityMode.NONE;
+        }
+        if (loadFactor == null) {
+            loadFactor = 1.25;
+        }
+        if (loadFactor <= 1.0) {
+            throw new IllegalArgumentException("anthropic.api.affinity.load-factor must be greater than 1");
+        }
+    }
+
+    /**
+     * 停用親和路由的配置
+     */
+    public static KeyAffinityConfig disabled() {
+        return new KeyAffinityConfig(null, null);
+    }
+}
@@ -0,0 +1,33 @@
+package io.github.samzhu.gate.config;
+
+/**
+ * API Key 親和路由模式
+ *
+ * <p>Anthropic prompt caching 的快取以組織 / workspace 為範圍，同一段對話分散到不同 Key 時
+ * 每把 Key 都要重新建立快取（{@code cache_creation_tokens}）。親和路由以 consistent hashing
+ * 把同一個親和鍵固定送往同一把 Key：
+ * <ul>
+ *   <li>{@link #NONE} - 不使用親和路由，一律選負載最低的 Key（預設）</li>
+ *   <li>{@link #SUBJECT} - 以 JWT subject 為親和鍵，同一用戶的請求固定在同一把 Key</li>
+ *   <li>{@link #CACHE_PREFIX} - 以可快取前綴為親和鍵（見 {@link io.github.samzhu.gate.model.RequestEnvelope#cachePrefixHash()}），
+ *       請求沒有 {@code cache_control} 時不需要親和，改選負載最低的 Key</li>
+ * </ul>
+ *
+ * <p>配置範例：
+ * <pre>
+ * anthropic:
+ *   api:
+ *     affinity:
+ *       mode: cache-prefix
+ * </pre>
+ *
+ * @see KeyAffinityConfig
+ */
+public enum KeyAffinityMode {
+
+    NONE,
+
+    SUBJECT,
+
+    CACHE_PREFIX
+}
@@ -6,7 +6,6 @@ import org.springframework.aot.hint.annotation.RegisterReflectionForBinding;
 import org.springframework.context.annotation.Configuration;
 import org.springframework.context.annotation.ImportRuntimeHints;
 
-import io.github.samzhu.gate.model.StreamEvent;
 import io.github.samzhu.gate.model.UsageEventData;
 
 /**
@@ -17,9 +16,11 @@ import io.github.samzhu.gate.model.UsageEventData;
  * <p>反射類別（Jackson 序列化/反序列化）：
  * <ul>
  *   <li>{@link UsageEventData} - API 用量 CloudEvents payload</li>
- *   <li>{@link StreamEvent} - SSE 事件解析</li>
  * </ul>
  *
+ * <p>SSE 事件與非串流回應的用量解析使用 {@link io.github.samzhu.gate.util.UsageJsonScanner}
+ * 以低階 JsonParser 走訪，不需要反射註冊。
+ *
  * <p>資源配置：
  * <ul>
  *   <li>{@code org/joda/time/tz/data/.*} - Joda-Time 時區資料（Spring Cloud Function 依賴）</li>
@@ -33,13 +34,7 @@ import io.github.samzhu.gate.model.UsageEventData;
 @RegisterReflectionForBinding({
     // CloudEvents payload - API usage
     UsageEventData.class,
-    UsageEventData.Builder.class,
-    // SSE Stream parsing
-    StreamEvent.class,
-    StreamEvent.Message.class,
-    StreamEvent.Delta.class,
-    StreamEvent.Usage.class,
-    StreamEvent.ContentBlock.class
+    UsageEventData.Builder.class
 })
 public class NativeImageHints {
 
@@ -0,0 +1,57 @@
+package io.github.samzhu.gate.config;
+
+import java.time.Duration;
+
+import org.springframework.util.unit.DataSize;
+
+/**
+ * 相同請求的合併配置（非串流 single-flight、串流 fan-out）
+ *
+ * <ul>
+ *   <li>{@code maxWait} - 非串流跟隨者等待領頭請求回應的上限（0 表示停用合併與 fan-out，預設停用）；
+ *       逾時後跟隨者改為自行送出上游請求</li>
+ *   <li>{@code streamBuffer} - 每個共用串流保留供重播的位元組上限；超過後不再接受新的訂閱者，
+ *       落後超過此範圍的訂閱者會被中斷</li>
+ * </ul>
+ *
+ * <p>配置範例：
+ * <pre>
+ * anthropic:
+ *   api:
+ *     coalescing:
+ *       max-wait: 60s
+ *       stream-buffer: 1MB
+ * </pre>
+ *
+ * @param maxWait      跟隨者等待上限
+ * @param streamBuffer 共用串流的重播緩衝上限
+ * @see io.github.samzhu.gate.service.RequestCoalescer
+ * @see io.github.samzhu.gate.handler.StreamFanOut
+ */
+public record RequestCoalescingConfig(
+    Duration maxWait,
+    DataSize streamBuffer
+) {
+    public RequestCoalescingConfig {
+        if (maxWait == null || maxWait.isNegative()) {
+            maxWait = Duration.ZERO;
+        }
+        if (streamBuffer == null || streamBuffer.toBytes() <= 0) {
+            streamBuffer = DataSize.ofMegabytes(1);
+        }
+    }
+
+    /**
+     * 停用合併的配置
+     */
+    public static RequestCoalescingConfig disabled() {
+        return new RequestCoalescingConfig(null, null);
+    }
+
+    /**
+     * 是否啟用合併
+     */
+    public boolean enabled() {
+        return maxWait.toMillis() > 0;
+    }
+}
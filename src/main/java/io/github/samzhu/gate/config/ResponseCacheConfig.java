@@ -0,0 +1,54 @@
+package io.github.samzhu.gate.config;
+
+import java.time.Duration;
+
+import org.springframework.util.unit.DataSize;
+
+/**
+ * 回應快取配置（{@code temperature: 0} 的 Messages 請求）
+ *
+ * <ul>
+ *   <li>{@code maxSize} - 快取 Message 的位元組上限（0 表示停用，預設停用）</li>
+ *   <li>{@code ttl} - 寫入後的存活時間</li>
+ * </ul>
+ *
+ * <p>配置範例：
+ * <pre>
+ * anthropic:
+ *   api:
+ *     response-cache:
+ *       max-size: 64MB
+ *       ttl: 10m
+ * </pre>
+ *
+ * @param maxSize 快取位元組上限
+ * @param ttl     快取存活時間
+ * @see io.github.samzhu.gate.service.ResponseCache
+ */
+public record ResponseCacheConfig(
+    DataSize maxSize,
+    Duration ttl
+) {
+    public ResponseCacheConfig {
+        if (maxSize == null) {
+            maxSize = DataSize.ofBytes(0);
+        }
+        if (ttl == null) {
+            ttl = Duration.ofMinutes(10);
+        }
+    }
+
+    /**
+     * 停用回應快取的配置
+     */
+    public static ResponseCacheConfig disabled() {
+        return new ResponseCacheConfig(null, null);
+    }
+
+    /**
+     * 是否啟用快取
+     */
+    public boolean enabled() {
+        return maxSize.toBytes() > 0;
+    }
+}
@@ -1,14 +1,40 @@
 package io.github.samzhu.gate.config;
 
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Set;
+
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
+import org.springframework.boot.autoconfigure.security.oauth2.resource.OAuth2ResourceServerProperties;
 import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.Configuration;
 import org.springframework.security.config.annotation.web.builders.HttpSecurity;
 import org.springframework.security.config.annotation.web.configuration.EnableWebSecurity;
 import org.springframework.security.config.http.SessionCreationPolicy;
+import org.springframework.security.oauth2.core.DelegatingOAuth2TokenValidator;
+import org.springframework.security.oauth2.core.OAuth2TokenValidator;
+import org.springframework.security.oauth2.jwt.Jwt;
+import org.springframework.security.oauth2.jwt.JwtClaimNames;
+import org.springframework.security.oauth2.jwt.JwtClaimValidator;
+import org.springframework.security.oauth2.jwt.JwtDecoder;
+import org.springframework.security.oauth2.jwt.JwtIssuerValidator;
+import org.springframework.security.oauth2.jwt.JwtTimestampValidator;
+import org.springframework.security.oauth2.jwt.NimbusJwtDecoder;
 import org.springframework.security.web.SecurityFilterChain;
 
+import com.nimbusds.jose.JWSAlgorithm;
+import com.nimbusds.jose.proc.JWSVerificationKeySelector;
+import com.nimbusds.jose.proc.SecurityContext;
+import com.nimbusds.jwt.proc.DefaultJWTProcessor;
+
+import io.micrometer.core.instrument.MeterRegistry;
+
+import io.github.samzhu.gate.service.CachingJwtDecoder;
+import io.github.samzhu.gate.service.JwkSetPrefetcher;
+
 /**
  * Spring Security 安全配置
  *
@@ -21,6 +47,7 @@ import org.springframework.security.web.SecurityFilterChain;
  *
  * <p>端點權限：
  * <ul>
+ *   <li>{@code /actuator/apikeys} - 需要有效 JWT Token（Key 池狀態與熱更新，預設不開放）</li>
  *   <li>{@code /actuator/**} - 公開存取（健康檢查、指標）</li>
  *   <li>{@code /api/event_logging/batch} - 公開存取（Anthropic 1P 遙測 stub）</li>
  *   <li>其他端點 - 需要有效 JWT Token</li>
@@ -31,7 +58,15 @@ import org.springframework.security.web.SecurityFilterChain;
  * spring.security.oauth2.resourceserver.jwt.jwk-set-uri=https://your-auth-server/.well-known/jwks.json
  * }</pre>
  *
+ * <p>{@link JwtDecoder} 由此配置建立（取代 Spring Boot 自動配置，沿用其 {@code jwk-set-uri}、{@code jws-algorithms}、
+ * {@code issuer-uri}、{@code audiences} 屬性）：
+ * <ul>
+ *   <li>金鑰來源為 {@link JwkSetPrefetcher}：啟動時預先載入、背景更新，驗證時不等待網路</li>
+ *   <li>外層包上 {@link CachingJwtDecoder}：同一個 token 只驗證一次簽章，JWKS 內容變更時清空快取</li>
+ * </ul>
+ *
  * @see io.github.samzhu.gate.exception.GlobalExceptionHandler
+ * @see GateJwtProperties
  */
 @Configuration
 @EnableWebSecurity
@@ -50,7 +85,9 @@ public class SecurityConfig {
                 session.sessionCreationPolicy(SessionCreationPolicy.STATELESS))
             // 端點權限配置
             .authorizeHttpRequests(auth -> auth
-                // Actuator 端點公開
+                // API Key 池管理端點需要認證（可列出 Key 別名與負載、觸發重新載入）
+                .requestMatchers("/actuator/apikeys", "/actuator/apikeys/**").authenticated()
+                // 其他 Actuator 端點公開
                 .requestMatchers("/actuator/**").permitAll()
                 // Anthropic 1P 遙測 stub 公開（Claude Code 自動發送）
                 .requestMatchers("/api/event_logging/batch").permitAll()
@@ -60,11 +97,62 @@ public class SecurityConfig {
             // OAuth2 Resource Server - JWT 驗證
             .oauth2ResourceServer(oauth2 -> oauth2
                 .jwt(jwt -> {
-                    // JWT 配置由 application.yaml 中的 jwk-set-uri 提供
-                    // Spring Security 會自動從 JWKS 端點取得公鑰驗證 JWT
+                    // 使用下方的 jwtDecoder bean（jwk-set-uri 由 application.yaml 提供）
+                    // 簽章驗證結果依 token 快取，見 CachingJwtDecoder
                 })
             );
 
         return http.build();
     }
+
+    /**
+     * 帶有已驗證 JWT 快取的 {@link JwtDecoder}
+     */
+    @Bean
+    public JwtDecoder jwtDecoder(OAuth2ResourceServerProperties resourceServerProperties,
+                                 GateJwtProperties gateJwtProperties,
+                                 JwkSetPrefetcher jwkSetPrefetcher,
+                                 MeterRegistry meterRegistry) {
+        OAuth2ResourceServerProperties.Jwt jwt = resourceServerProperties.getJwt();
+
+        DefaultJWTProcessor<SecurityContext> jwtProcessor = new DefaultJWTProcessor<>();
+        jwtProcessor.setJWSKeySelector(new JWSVerificationKeySelector<>(jwsAlgorithms(jwt), jwkSetPrefetcher));
+        // claims 由下方的 Spring validator 驗證（與 NimbusJwtDecoder builder 相同）
+        jwtProcessor.setJWTClaimsSetVerifier((claims, context) -> {});
+        NimbusJwtDecoder nimbusDecoder = new NimbusJwtDecoder(jwtProcessor);
+        nimbusDecoder.setJwtValidator(jwtValidator(jwt));
+
+        CachingJwtDecoder decoder = new CachingJwtDecoder(nimbusDecoder, gateJwtProperties.cache(), meterRegistry);
+        jwkSetPrefetcher.addChangeListener(decoder::invalidateAll);
+        return decoder;
+    }
+
+    /**
+     * 允許的簽章演算法（{@code jws-algorithms}，未設定時為 RS256）
+     */
+    private static Set<JWSAlgorithm> jwsAlgorithms(OAuth2ResourceServerProperties.Jwt jwt) {
+        Set<JWSAlgorithm> algorithms = new LinkedHashSet<>();
+        jwt.getJwsAlgorithms().forEach(algorithm -> algorithms.add(JWSAlgorithm.parse(algorithm)));
+        if (algorithms.isEmpty()) {
+            algorithms.add(JWSAlgorithm.RS256);
+        }
+        return algorithms;
+    }
+
+    /**
+     * 與 Spring Boot 自動配置相同的驗證規則：時間戳記，以及設定時的 issuer、audience
+     */
+    private static OAuth2TokenValidator<Jwt> jwtValidator(OAuth2ResourceServerProperties.Jwt jwt) {
+        List<OAuth2TokenValidator<Jwt>> validators = new ArrayList<>();
+        validators.add(new JwtTimestampValidator());
+        if (jwt.getIssuerUri() != null) {
+            validators.add(new JwtIssuerValidator(jwt.getIssuerUri()));
+        }
+        List<String> audiences = jwt.getAudiences();
+        if (!audiences.isEmpty()) {
+            validators.add(new JwtClaimValidator<List<String>>(JwtClaimNames.AUD,
+                aud -> aud != null && !Collections.disjoint(aud, audiences)));
+        }
+        return new DelegatingOAuth2TokenValidator<>(validators);
+    }
 }
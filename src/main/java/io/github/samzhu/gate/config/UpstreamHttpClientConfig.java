@@ -0,0 +1,172 @@
+package io.github.samzhu.gate.config;
+
+import java.net.http.HttpClient;
+import java.security.NoSuchAlgorithmException;
+
+import javax.net.ssl.SSLContext;
+
+import org.apache.hc.client5.http.config.ConnectionConfig;
+import org.apache.hc.client5.http.config.RequestConfig;
+import org.apache.hc.client5.http.impl.ChainElement;
+import org.apache.hc.client5.http.impl.classic.CloseableHttpClient;
+import org.apache.hc.client5.http.impl.classic.HttpClients;
+import org.apache.hc.client5.http.impl.io.PoolingHttpClientConnectionManager;
+import org.apache.hc.client5.http.impl.io.PoolingHttpClientConnectionManagerBuilder;
+import org.apache.hc.client5.http.ssl.DefaultClientTlsStrategy;
+import org.apache.hc.core5.util.TimeValue;
+import org.apache.hc.core5.util.Timeout;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.http.client.ClientHttpRequestFactory;
+import org.springframework.http.client.HttpComponentsClientHttpRequestFactory;
+import org.springframework.http.client.JdkClientHttpRequestFactory;
+import org.springframework.web.client.RestClient;
+
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.httpcomponents.hc5.PoolingHttpClientConnectionManagerMetricsBinder;
+
+import io.github.samzhu.gate.metrics.UpstreamConnectionMetrics;
+import io.github.samzhu.gate.metrics.UpstreamStreamMetrics;
+
+/**
+ * Anthropic API 上游 HTTP Client 配置
+ *
+ * <p>所有 handler 共用同一個明確配置的 Apache HttpClient 5 連線池（{@code anthropic.api.pool}），
+ * 取代各自由 {@code RestClient.Builder} 建立、無法觀察的預設 client：
+ * <ul>
+ *   <li>連線池大小、keep-alive、閒置清除、連線存活時間皆可配置（見 {@link UpstreamPoolConfig}）</li>
+ *   <li>連線池指標：{@code httpcomponents.httpclient.pool.*{httpclient=anthropic}}（leased、available、pending）</li>
+ *   <li>連線建立指標：lease 等待、connect、TLS 握手時間（見 {@link UpstreamConnectionMetrics}）</li>
+ * </ul>
+ *
+ * <p>{@code anthropic.api.transport: http2} 時改用 JDK HttpClient：經由 TLS ALPN 協商 HTTP/2，
+ * 所有串流多工共用少數連線（每個 authority 一條），上游未同意 h2 時同一個 client 自動退回 HTTP/1.1。
+ * 此模式下 {@code pool} 只沿用 {@code connectTimeout} 與 {@code responseTimeout}，
+ * 串流與連線數改由 {@link UpstreamStreamMetrics} 觀察。
+ *
+ * <p>{@link RestClient} 仍由 Spring 自動配置的 {@code RestClient.Builder} 建立，保留 Tracing instrumentation
+ * （Trace Context 傳播、子 Span 建立）。
+ *
+ * @see UpstreamPoolConfig
+ * @see UpstreamTransport
+ * @see <a href="https://hc.apache.org/httpcomponents-client-5.4.x/">Apache HttpClient 5</a>
+ */
+@Configuration
+public class UpstreamHttpClientConfig {
+
+    static final String POOL_NAME = "anthropic";
+
+    /**
+     * 上游連線池
+     */
+    @Bean(destroyMethod = "close")
+    public PoolingHttpClientConnectionManager anthropicConnectionManager(
+            AnthropicProperties anthropicProperties,
+            UpstreamConnectionMetrics upstreamConnectionMetrics,
+            MeterRegistry meterRegistry) {
+        UpstreamPoolConfig pool = anthropicProperties.pool();
+
+        ConnectionConfig connectionConfig = ConnectionConfig.custom()
+            .setConnectTimeout(Timeout.of(pool.connectTimeout()))
+            .setSocketTimeout(Timeout.of(pool.responseTimeout()))
+            .setTimeToLive(TimeValue.of(pool.timeToLive()))
+            // 閒置超過 2 秒的連線在重用前先檢查是否已被上游關閉
+            .setValidateAfterInactivity(TimeValue.ofSeconds(2))
+            .build();
+
+        PoolingHttpClientConnectionManager connectionManager = PoolingHttpClientConnectionManagerBuilder.create()
+            .setMaxConnPerRoute(pool.maxConnectionsPerRoute())
+            .setMaxConnTotal(pool.maxConnectionsTotal())
+            .setDefaultConnectionConfig(connectionConfig)
+            .setTlsSocketStrategy(upstreamConnectionMetrics.instrument(DefaultClientTlsStrategy.createSystemDefault()))
+            .build();
+
+        new PoolingHttpClientConnectionManagerMetricsBinder(connectionManager, POOL_NAME).bindTo(meterRegistry);
+        return connectionManager;
+    }
+
+    /**
+     * 上游 HTTP Client
+     */
+    @Bean(destroyMethod = "close")
+    public CloseableHttpClient anthropicHttpClient(
+            AnthropicProperties anthropicProperties,
+            PoolingHttpClientConnectionManager anthropicConnectionManager,
+            UpstreamConnectionMetrics upstreamConnectionMetrics) {
+        UpstreamPoolConfig pool = anthropicProperties.pool();
+
+        RequestConfig requestConfig = RequestConfig.custom()
+            .setConnectionRequestTimeout(Timeout.of(pool.leaseTimeout()))
+            .setResponseTimeout(Timeout.of(pool.responseTimeout()))
+            // 上游回應未帶 Keep-Alive header 時的閒置保留時間
+            .setConnectionKeepAlive(TimeValue.of(pool.keepAlive()))
+            .build();
+
+        return HttpClients.custom()
+            .setConnectionManager(anthropicConnectionManager)
+            .setDefaultRequestConfig(requestConfig)
+            // 背景 evictor 只在連線池非 shared 時啟動（關閉 client 時一併關閉連線池）
+            .evictExpiredConnections()
+            .evictIdleConnections(TimeValue.of(pool.idleEviction()))
+            .addExecInterceptorBefore(ChainElement.CONNECT.name(), "gate-connection-metrics",
+                upstreamConnectionMetrics)
+            .build();
+    }
+
+    /**
+     * 依 {@code anthropic.api.transport} 選擇的上游 request factory
+     *
+     * <p>同時供 {@link #anthropicRestClient} 與連線預熱（{@link io.github.samzhu.gate.service.UpstreamConnectionWarmer}）使用，
+     * 預熱請求不經過 RestClient，不會產生 Span 與 {@code http.client.requests} 指標。
+     */
+    @Bean
+    public ClientHttpRequestFactory anthropicRequestFactory(
+            AnthropicProperties anthropicProperties,
+            CloseableHttpClient anthropicHttpClient,
+            UpstreamStreamMetrics upstreamStreamMetrics) {
+        return switch (anthropicProperties.transport()) {
+            case HTTP1 -> new HttpComponentsClientHttpRequestFactory(anthropicHttpClient);
+            case HTTP2 -> http2RequestFactory(anthropicProperties.pool(), upstreamStreamMetrics);
+        };
+    }
+
+    /**
+     * 所有 handler 共用的 Anthropic API RestClient
+     *
+     * @param restClientBuilder Spring 自動配置的 RestClient.Builder（已包含 Tracing instrumentation）
+     */
+    @Bean
+    public RestClient anthropicRestClient(
+            RestClient.Builder restClientBuilder,
+            AnthropicProperties anthropicProperties,
+            ClientHttpRequestFactory anthropicRequestFactory) {
+        return restClientBuilder
+            .baseUrl(anthropicProperties.baseUrl())
+            .requestFactory(anthropicRequestFactory)
+            .build();
+    }
+
+    /**
+     * HTTP/2 多工傳輸（JDK HttpClient，ALPN 協商失敗時退回 HTTP/1.1）
+     */
+    private static ClientHttpRequestFactory http2RequestFactory(UpstreamPoolConfig pool,
+                                                                UpstreamStreamMetrics upstreamStreamMetrics) {
+        SSLContext sslContext;
+        try {
+            sslContext = SSLContext.getDefault();
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException("Default SSLContext is not available", e);
+        }
+
+        HttpClient httpClient = HttpClient.newBuilder()
+            .version(HttpClient.Version.HTTP_2)
+            .connectTimeout(pool.connectTimeout())
+            .sslContext(upstreamStreamMetrics.instrument(sslContext))
+            .build();
+
+        JdkClientHttpRequestFactory requestFactory =
+            new JdkClientHttpRequestFactory(upstreamStreamMetrics.instrument(httpClient));
+        requestFactory.setReadTimeout(pool.responseTimeout());
+        return requestFactory;
+    }
+}
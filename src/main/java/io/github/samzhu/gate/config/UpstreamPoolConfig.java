@@ -0,0 +1,88 @@
+package io.github.samzhu.gate.config;
+
+import java.time.Duration;
+
+/**
+ * Anthropic API 上游連線池配置
+ *
+ * <p>所有 handler 共用同一個連線池（見 {@link UpstreamHttpClientConfig}）：
+ * <ul>
+ *   <li>{@code maxConnectionsPerRoute} - 單一 route（api.anthropic.com:443）最大連線數</li>
+ *   <li>{@code maxConnectionsTotal} - 連線池最大連線總數</li>
+ *   <li>{@code keepAlive} - 閒置連線最長保留時間（上游回應帶有 Keep-Alive header 時以上游為準）</li>
+ *   <li>{@code idleEviction} - 背景清除閒置超過此時間的連線</li>
+ *   <li>{@code timeToLive} - 連線最長存活時間（定期重建，跟隨 DNS 變化）</li>
+ *   <li>{@code connectTimeout} - TCP 連線建立超時</li>
+ *   <li>{@code leaseTimeout} - 從連線池取得連線的最長等待時間</li>
+ *   <li>{@code responseTimeout} - 等待回應資料的最長時間（串流可能長達 10 分鐘）</li>
+ * </ul>
+ *
+ * <p>容量規劃：每個進行中的串流在整個生成期間獨佔一條 HTTP/1.1 連線，
+ * 因此 {@code maxConnectionsPerRoute} 預設與 Tomcat {@code max-connections: 160} 對齊，
+ * 確保下游接受的請求不會在上游連線池排隊（{@code httpcomponents.httpclient.pool.total.pending} 應維持 0）。
+ *
+ * <p>配置範例：
+ * <pre>
+ * anthropic:
+ *   api:
+ *     pool:
+ *       max-connections-per-route: 160
+ *       max-connections-total: 160
+ *       keep-alive: 60s
+ *       idle-eviction: 30s
+ * </pre>
+ *
+ * @param maxConnectionsPerRoute 單一 route 最大連線數
+ * @param maxConnectionsTotal    連線池最大連線總數
+ * @param keepAlive              閒置連線最長保留時間
+ * @param idleEviction           閒置連線清除門檻
+ * @param timeToLive             連線最長存活時間
+ * @param connectTimeout         連線建立超時
+ * @param leaseTimeout           取得連線的最長等待時間
+ * @param responseTimeout        回應資料讀取超時
+ * @see AnthropicProperties
+ */
+public record UpstreamPoolConfig(
+    Integer maxConnectionsPerRoute,
+    Integer maxConnectionsTotal,
+    Duration keepAlive,
+    Duration idleEviction,
+    Duration timeToLive,
+    Duration connectTimeout,
+    Duration leaseTimeout,
+    Duration responseTimeout
+) {
+    public UpstreamPoolConfig {
+        if (maxConnectionsPerRoute == null || maxConnectionsPerRoute <= 0) {
+            maxConnectionsPerRoute = 160;
+        }
+        if (maxConnectionsTotal == null || maxConnectionsTotal < maxConnectionsPerRoute) {
+            maxConnectionsTotal = maxConnectionsPerRoute;
+        }
+        if (keepAlive == null) {
+            keepAlive = Duration.ofSeconds(60);
+        }
+        if (idleEviction == null) {
+            idleEviction = Duration.ofSeconds(30);
+        }
+        if (timeToLive == null) {
+            timeToLive = Duration.ofMinutes(15);
+        }
+        if (connectTimeout == null) {
+            connectTimeout = Duration.ofSeconds(10);
+        }
+        if (leaseTimeout == null) {
+            leaseTimeout = Duration.ofSeconds(10);
+        }
+        if (responseTimeout == null) {
+            responseTimeout = Duration.ofSeconds(600);
+        }
+    }
+
+    /**
+     * 全部使用預設值的配置
+     */
+    public static UpstreamPoolConfig defaults() {
+        return new UpstreamPoolConfig(null, null, null, null, null, null, null, null);
+    }
+}
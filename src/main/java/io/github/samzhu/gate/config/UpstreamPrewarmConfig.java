@@ -0,0 +1,61 @@
+package io.github.samzhu.gate.config;
+
+import java.time.Duration;
+
+/**
+ * 上游連線預熱配置
+ *
+ * <p>新 instance 啟動時（Cloud Run scale-out），在 readiness 回報 UP 之前先建立連線，
+ * 避免第一批真實請求負擔 DNS + TCP + TLS 建立時間：
+ * <ul>
+ *   <li>{@code connections} - 預熱並保持的連線數（0 表示停用）；HTTP/2 傳輸只需一條連線</li>
+ *   <li>{@code keepaliveInterval} - 閒置時送出 keepalive 請求的間隔，需小於 {@code pool.idle-eviction}</li>
+ *   <li>{@code timeout} - 啟動時等待預熱完成的最長時間，逾時仍繼續啟動（不阻擋服務）</li>
+ * </ul>
+ *
+ * <p>配置範例：
+ * <pre>
+ * anthropic:
+ *   api:
+ *     prewarm:
+ *       connections: 8
+ *       keepalive-interval: 15s
+ *       timeout: 5s
+ * </pre>
+ *
+ * @param connections       預熱連線數
+ * @param keepaliveInterval keepalive 請求間隔
+ * @param timeout           啟動預熱等待上限
+ * @see io.github.samzhu.gate.service.UpstreamConnectionWarmer
+ */
+public record UpstreamPrewarmConfig(
+    Integer connections,
+    Duration keepaliveInterval,
+    Duration timeout
+) {
+    public UpstreamPrewarmConfig {
+        if (connections == null || connections < 0) {
+            connections = 0;
+        }
+        if (keepaliveInterval == null) {
+            keepaliveInterval = Duration.ofSeconds(15);
+        }
+        if (timeout == null) {
+            timeout = Duration.ofSeconds(5);
+        }
+    }
+
+    /**
+     * 停用預熱的配置
+     */
+    public static UpstreamPrewarmConfig disabled() {
+        return new UpstreamPrewarmConfig(null, null, null);
+    }
+
+    /**
+     * 是否啟用預熱
+     */
+    public boolean enabled() {
+        return connections > 0;
+    }
+}
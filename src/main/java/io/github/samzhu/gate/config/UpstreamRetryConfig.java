@@ -0,0 +1,60 @@
+package io.github.samzhu.gate.config;
+
+import java.time.Duration;
+
+/**
+ * 上游 429 / 529 自動換 Key 重試配置
+ *
+ * <p>只在尚未有任何位元組送給客戶端時重試（見 {@code UpstreamFailover}）：
+ * <ul>
+ *   <li>{@code maxAttempts} - 每個請求最多嘗試次數（含第一次，1 表示停用重試）</li>
+ *   <li>{@code budgetRatio} - 全域重試預算：每個請求存入的重試額度（0.2 = 重試最多佔請求量的 20%）</li>
+ *   <li>{@code budgetReserve} - 重試預算上限（流量正常時累積，短暫故障時可立即使用）</li>
+ *   <li>{@code maxRetryAfter} - 願意等待的最長 {@code retry-after}，超過則直接回傳錯誤給客戶端</li>
+ * </ul>
+ *
+ * <p>配置範例：
+ * <pre>
+ * anthropic:
+ *   api:
+ *     retry:
+ *       max-attempts: 3
+ *       budget-ratio: 0.2
+ *       budget-reserve: 10
+ *       max-retry-after: 10s
+ * </pre>
+ *
+ * @param maxAttempts   每個請求最多嘗試次數
+ * @param budgetRatio   每個請求存入的重試額度
+ * @param budgetReserve 重試預算上限
+ * @param maxRetryAfter 最長等待時間
+ * @see AnthropicProperties
+ */
+public record UpstreamRetryConfig(
+    Integer maxAttempts,
+    Double budgetRatio,
+    Integer budgetReserve,
+    Duration maxRetryAfter
+) {
+    public UpstreamRetryConfig {
+        if (maxAttempts == null || maxAttempts < 1) {
+            maxAttempts = 3;
+        }
+        if (budgetRatio == null || budgetRatio < 0) {
+            budgetRatio = 0.2;
+        }
+        if (budgetReserve == null || budgetReserve < 0) {
+            budgetReserve = 10;
+        }
+        if (maxRetryAfter == null) {
+            maxRetryAfter = Duration.ofSeconds(10);
+        }
+    }
+
+    /**
+     * 全部使用預設值的配置
+     */
+    public static UpstreamRetryConfig defaults() {
+        return new UpstreamRetryConfig(null, null, null, null);
+    }
+}
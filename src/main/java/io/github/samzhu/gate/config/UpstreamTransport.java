@@ -0,0 +1,26 @@
+package io.github.samzhu.gate.config;
+
+/**
+ * Anthropic API 上游傳輸模式
+ *
+ * <ul>
+ *   <li>{@link #HTTP1} - Apache HttpClient 5 連線池，每個進行中的請求獨佔一條 HTTP/1.1 連線（預設）</li>
+ *   <li>{@link #HTTP2} - JDK HttpClient，經由 TLS ALPN 協商 HTTP/2，多個串流共用少數連線；
+ *       上游不支援 h2 時自動退回 HTTP/1.1</li>
+ * </ul>
+ *
+ * <p>配置範例：
+ * <pre>
+ * anthropic:
+ *   api:
+ *     transport: http2
+ * </pre>
+ *
+ * @see UpstreamHttpClientConfig
+ */
+public enum UpstreamTransport {
+
+    HTTP1,
+
+    HTTP2
+}
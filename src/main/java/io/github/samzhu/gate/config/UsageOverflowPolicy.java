@@ -0,0 +1,29 @@
+package io.github.samzhu.gate.config;
+
+/**
+ * 用量事件佇列滿時的處理方式
+ *
+ * <ul>
+ *   <li>{@link #BLOCK} - 請求執行緒最多等待 {@code block-timeout} 讓出空間，逾時後捨棄該事件（預設，流量控制）</li>
+ *   <li>{@link #DROP_NEWEST} - 立即捨棄新事件，請求執行緒從不等待</li>
+ *   <li>{@link #DROP_OLDEST} - 捨棄佇列中最舊的事件，保留新事件</li>
+ * </ul>
+ *
+ * <p>配置範例：
+ * <pre>
+ * gate:
+ *   usage:
+ *     publisher:
+ *       overflow: drop-oldest
+ * </pre>
+ *
+ * @see UsagePublisherConfig
+ */
+public enum UsageOverflowPolicy {
+
+    BLOCK,
+
+    DROP_NEWEST,
+
+    DROP_OLDEST
+}
@@ -0,0 +1,60 @@
+package io.github.samzhu.gate.config;
+
+import java.time.Duration;
+
+/**
+ * 非同步用量事件發送配置
+ *
+ * <ul>
+ *   <li>{@code queueCapacity} - 待發送事件的佇列容量（0 表示停用，於請求執行緒同步發送）</li>
+ *   <li>{@code overflow} - 佇列滿時的處理方式（{@code block}、{@code drop-newest}、{@code drop-oldest}）</li>
+ *   <li>{@code blockTimeout} - {@code block} 模式下請求執行緒等待佇列空間的上限</li>
+ * </ul>
+ *
+ * <p>配置範例：
+ * <pre>
+ * gate:
+ *   usage:
+ *     publisher:
+ *       queue-capacity: 10000
+ *       overflow: block
+ *       block-timeout: 50ms
+ * </pre>
+ *
+ * @param queueCapacity 佇列容量
+ * @param overflow      佇列滿時的處理方式
+ * @param blockTimeout  {@code block} 模式的等待上限
+ * @see UsageOverflowPolicy
+ * @see io.github.samzhu.gate.service.UsageEventPublisher
+ */
+public record UsagePublisherConfig(
+    Integer queueCapacity,
+    UsageOverflowPolicy overflow,
+    Duration blockTimeout
+) {
+    public UsagePublisherConfig {
+        if (queueCapacity == null || queueCapacity < 0) {
+            queueCapacity = 10_000;
+        }
+        if (overflow == null) {
+            overflow = UsageOverflowPolicy.BLOCK;
+        }
+        if (blockTimeout == null || blockTimeout.isNegative()) {
+            blockTimeout = Duration.ofMillis(50);
+        }
+    }
+
+    /**
+     * 預設配置
+     */
+    public static UsagePublisherConfig defaults() {
+        return new UsagePublisherConfig(null, null, null);
+    }
+
+    /**
+     * 是否以佇列非同步發送
+     */
+    public boolean enabled() {
+        return queueCapacity > 0;
+    }
+}
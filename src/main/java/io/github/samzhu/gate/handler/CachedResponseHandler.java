@@ -0,0 +1,130 @@
+package io.github.samzhu.gate.handler;
+
+import java.io.IOException;
+import java.time.Instant;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.http.CacheControl;
+import org.springframework.http.MediaType;
+import org.springframework.stereotype.Component;
+import org.springframework.web.servlet.function.ServerResponse;
+
+import io.micrometer.tracing.Tracer;
+
+import io.github.samzhu.gate.model.RequestEnvelope;
+import io.github.samzhu.gate.model.UsageEventData;
+import io.github.samzhu.gate.service.ResponseCache;
+import io.github.samzhu.gate.service.UsageEventPublisher;
+import io.github.samzhu.gate.util.SseMessageReplay;
+import io.github.samzhu.gate.util.UsageJsonScanner;
+
+/**
+ * 回應快取命中處理器
+ *
+ * <p>以 {@link ResponseCache} 中的 Message 回應客戶端，不取得 API Key、不送往上游：
+ * <ul>
+ *   <li>{@code stream: false} - 直接回應 Message JSON</li>
+ *   <li>{@code stream: true} - 以 {@link SseMessageReplay} 重播為合成的 SSE 事件序列</li>
+ * </ul>
+ *
+ * <p>用量事件帶有 {@code response_source: cache}，token 欄位為原始回應的用量，
+ * {@code key_alias} 與 {@code anthropic_request_id} 為 null。不計入 prompt cache 指標（沒有上游請求）。
+ *
+ * @see ResponseCache
+ * @see StreamingProxyHandler
+ * @see NonStreamingProxyHandler
+ */
+@Component
+public class CachedResponseHandler {
+
+    private static final Logger log = LoggerFactory.getLogger(CachedResponseHandler.class);
+
+    private final UsageEventPublisher usageEventPublisher;
+    private final Tracer tracer;
+
+    public CachedResponseHandler(UsageEventPublisher usageEventPublisher, Tracer tracer) {
+        this.usageEventPublisher = usageEventPublisher;
+        this.tracer = tracer;
+    }
+
+    /**
+     * 以快取的 Message 回應
+     *
+     * @param message  快取的 Message JSON
+     * @param envelope 請求 envelope（決定回應格式）
+     * @param subject  用戶識別碼
+     * @return ServerResponse
+     * @throws IOException 快取內容無法重播為 SSE
+     */
+    public ServerResponse handleCached(byte[] message, RequestEnvelope envelope, String subject) throws IOException {
+        long startTime = System.currentTimeMillis();
+
+        ServerResponse response = envelope.stream()
+            ? ServerResponse.ok()
+                .contentType(MediaType.TEXT_EVENT_STREAM)
+                .cacheControl(CacheControl.noCache())
+                .body(SseMessageReplay.replay(message))
+            : ServerResponse.ok()
+                .contentType(MediaType.APPLICATION_JSON)
+                .body(message);
+
+        UsageEventData eventData = buildUsageEventData(message, envelope, startTime, subject);
+        usageEventPublisher.publish(eventData);
+
+        log.info("Token usage: subject={}, inputTokens={}, outputTokens={}, model={}, latencyMs={}, source={}",
+            subject,
+            eventData.inputTokens(),
+            eventData.outputTokens(),
+            eventData.model(),
+            eventData.latencyMs(),
+            eventData.responseSource());
+        return response;
+    }
+
+    /**
+     * 從快取的 Message 建立用量事件
+     */
+    private UsageEventData buildUsageEventData(byte[] message, RequestEnvelope envelope, long startTime,
+                                               String subject) {
+        UsageEventData.Builder builder = UsageEventData.builder()
+            .userId(subject)
+            .eventTime(Instant.now())
+            .stream(envelope.stream())
+            .traceId(getCurrentTraceId())
+            .model(envelope.model())
+            .responseSource(UsageEventData.RESPONSE_SOURCE_CACHE);
+
+        try {
+            UsageJsonScanner usage = UsageJsonScanner.scan(message);
+            if (usage.getModel() != null) {
+                builder.model(usage.getModel());
+            }
+            builder.messageId(usage.getMessageId())
+                .stopReason(usage.getStopReason())
+                .inputTokens(Math.max(usage.getInputTokens(), 0))
+                .outputTokens(Math.max(usage.getOutputTokens(), 0))
+                .cacheCreationTokens(Math.max(usage.getCacheCreationTokens(), 0))
+                .cacheReadTokens(Math.max(usage.getCacheReadTokens(), 0));
+        } catch (Exception e) {
+            log.warn("Failed to parse usage from cached response: {}", e.getMessage());
+        }
+
+        return builder.latencyMs(System.currentTimeMillis() - startTime).build();
+    }
+
+    /**
+     * 取得當前 OpenTelemetry Trace ID
+     */
+    private String getCurrentTraceId() {
+        try {
+            var currentSpan = tracer.currentSpan();
+            if (currentSpan != null && currentSpan.context() != null) {
+                return currentSpan.context().traceId();
+            }
+        } catch (Exception e) {
+            log.debug("Failed to get trace ID: {}", e.getMessage());
+        }
+        return null;
+    }
+}
@@ -0,0 +1,133 @@
+package io.github.samzhu.gate.handler;
+
+import java.io.InputStream;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import jakarta.servlet.AsyncContext;
+import jakarta.servlet.AsyncEvent;
+import jakarta.servlet.AsyncListener;
+
+/**
+ * 串流客戶端斷線監聽器
+ *
+ * <p>註冊在 Servlet {@link AsyncContext} 上，由容器主動通知客戶端斷線（{@code onError}）或逾時
+ * （{@code onTimeout}），不需要等到下一次寫入失敗才發現：
+ * <ul>
+ *   <li>立即中止上游 Anthropic 請求（中止回應串流並中斷轉發執行緒），不等待上游生成結束</li>
+ *   <li>結束 AsyncContext，避免容器再做 error dispatch</li>
+ *   <li>轉發執行緒透過 {@link #isDisconnected()} 判斷狀態，用量事件仍會以
+ *       {@code client_disconnected} 狀態記錄中止前已取得的 Token 數</li>
+ * </ul>
+ *
+ * <p>中斷轉發執行緒：Virtual Thread 上的阻塞 Socket I/O 可被中斷（會關閉 socket），
+ * 因此即使上游尚未回應標頭（等待首個 token 期間）也能取消。
+ *
+ * @see StreamingProxyHandler
+ */
+class ClientDisconnectListener implements AsyncListener {
+
+    private static final Logger log = LoggerFactory.getLogger(ClientDisconnectListener.class);
+
+    private final AsyncContext asyncContext;
+    private final AtomicBoolean disconnected = new AtomicBoolean();
+    private final AtomicBoolean completed = new AtomicBoolean();
+
+    private Thread relayThread;
+    private InputStream upstreamBody;
+
+    ClientDisconnectListener(AsyncContext asyncContext) {
+        this.asyncContext = asyncContext;
+    }
+
+    /**
+     * 標記目前執行緒開始等待/讀取上游（斷線時會被中斷）
+     */
+    synchronized void upstreamStarted() {
+        this.relayThread = Thread.currentThread();
+        if (disconnected.get()) {
+            relayThread.interrupt();
+        }
+    }
+
+    /**
+     * 綁定上游回應串流（斷線時會被關閉）
+     */
+    synchronized void bindUpstream(InputStream upstreamBody) {
+        this.upstreamBody = upstreamBody;
+        if (disconnected.get()) {
+            abortUpstream();
+        }
+    }
+
+    /**
+     * 上游處理結束：解除綁定並清除可能殘留的中斷狀態，讓後續的用量發送不受影響
+     */
+    synchronized void upstreamFinished() {
+        this.relayThread = null;
+        this.upstreamBody = null;
+        Thread.interrupted();
+    }
+
+    /**
+     * 客戶端是否已斷線（或 AsyncContext 逾時）
+     */
+    boolean isDisconnected() {
+        return disconnected.get();
+    }
+
+    /**
+     * 結束 AsyncContext（只會執行一次）
+     */
+    void complete() {
+        if (completed.compareAndSet(false, true)) {
+            try {
+                asyncContext.complete();
+            } catch (IllegalStateException e) {
+                log.debug("AsyncContext already completed: {}", e.getMessage());
+            }
+        }
+    }
+
+    @Override
+    public void onComplete(AsyncEvent event) {
+        completed.set(true);
+    }
+
+    @Override
+    public void onTimeout(AsyncEvent event) {
+        log.warn("Streaming response timed out, aborting upstream request");
+        disconnect();
+    }
+
+    @Override
+    public void onError(AsyncEvent event) {
+        Throwable cause = event.getThrowable();
+        log.warn("Client disconnected during streaming: {} (aborting upstream request)",
+            cause != null ? cause.getMessage() : "unknown");
+        disconnect();
+    }
+
+    @Override
+    public void onStartAsync(AsyncEvent event) {
+        // 不需要處理
+    }
+
+    private void disconnect() {
+        if (disconnected.compareAndSet(false, true)) {
+            synchronized (this) {
+                abortUpstream();
+                if (relayThread != null) {
+                    relayThread.interrupt();
+                }
+            }
+        }
+        complete();
+    }
+
+    private void abortUpstream() {
+        UpstreamConnections.abort(upstreamBody);
+    }
+}
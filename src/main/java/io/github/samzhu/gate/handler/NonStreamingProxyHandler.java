@@ -1,5 +1,10 @@
 package io.github.samzhu.gate.handler;
 
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
 import java.time.Instant;
 import java.util.Map;
 
@@ -9,24 +14,30 @@ import org.springframework.http.HttpStatus;
 import org.springframework.http.HttpStatusCode;
 import org.springframework.http.MediaType;
 import org.springframework.stereotype.Component;
+import org.springframework.http.client.ClientHttpResponse;
 import org.springframework.web.client.RestClient;
 import org.springframework.web.servlet.function.ServerResponse;
 
 import io.micrometer.tracing.Tracer;
-import com.fasterxml.jackson.databind.JsonNode;
-import com.fasterxml.jackson.databind.ObjectMapper;
 
-import io.github.samzhu.gate.config.AnthropicProperties;
+import io.github.samzhu.gate.metrics.PromptCacheMetrics;
+import io.github.samzhu.gate.model.RequestEnvelope;
 import io.github.samzhu.gate.model.UsageEventData;
+import io.github.samzhu.gate.service.ApiKeyLease;
+import io.github.samzhu.gate.service.CoalescedRequest;
+import io.github.samzhu.gate.service.ResponseCache;
+import io.github.samzhu.gate.service.SharedResponse;
 import io.github.samzhu.gate.service.UsageEventPublisher;
+import io.github.samzhu.gate.util.ResponseUsageTee;
+import io.github.samzhu.gate.util.UsageJsonScanner;
 
 /**
  * 非串流代理處理器
  *
  * <p>處理 Claude API 的非串流 JSON 回應（{@code stream: false}），執行以下功能：
  * <ul>
- *   <li>代理請求到 Anthropic API</li>
- *   <li>解析完整 JSON 回應提取 Token 用量：
+ *   <li>代理請求到 Anthropic API，回應本體以固定大小的 chunk 直接串流給客戶端（不整份讀入記憶體）</li>
+ *   <li>以 {@link ResponseUsageTee} 旁路掃描 head / tail 提取 Token 用量（與串流共用 {@link UsageJsonScanner}）：
  *       <ul>
  *         <li>{@code usage.input_tokens} - 輸入 Token 數</li>
  *         <li>{@code usage.output_tokens} - 輸出 Token 數</li>
@@ -34,9 +45,15 @@ import io.github.samzhu.gate.service.UsageEventPublisher;
  *         <li>{@code usage.cache_read_input_tokens} - 快取讀取 Token</li>
  *       </ul>
  *   </li>
- *   <li>發送 CloudEvents 格式的用量事件到 Pub/Sub</li>
+ *   <li>回應本體送完後發送 CloudEvents 格式的用量事件到 Pub/Sub</li>
+ *   <li>可快取的請求（{@link ResponseCache}）保留完整的 2xx 本體，送完後寫入快取</li>
+ *   <li>single-flight 合併的領頭請求（{@link CoalescedRequest}）保留完整本體，送完後分享給跟隨者；
+ *       跟隨者由 {@link #handleShared} 回應</li>
  * </ul>
  *
+ * <p>上游回應以 {@code exchange(..., false)} 取得後不會自動關閉，
+ * 由 write function 轉發完畢後關閉（歸還連線）。上游回應 429 / 529 時由 {@link UpstreamFailover} 換 Key 重試。
+ *
  * <p>注意：Claude Code CLI 主要使用串流模式，非串流模式較少使用。
  *
  * @see StreamingProxyHandler
@@ -47,123 +64,264 @@ public class NonStreamingProxyHandler {
 
     private static final Logger log = LoggerFactory.getLogger(NonStreamingProxyHandler.class);
 
+    private static final int RELAY_BUFFER_SIZE = 8192;
+    private static final int ERROR_LOG_LIMIT = 4096;
+
     private final UsageEventPublisher usageEventPublisher;
-    private final ObjectMapper objectMapper;
     private final RestClient restClient;
     private final Tracer tracer;
+    private final UpstreamFailover upstreamFailover;
+    private final PromptCacheMetrics promptCacheMetrics;
+    private final ResponseCache responseCache;
 
     /**
      * 建構子
      *
-     * <p>重要：使用 Spring 自動配置的 {@code RestClient.Builder} 來建立 {@code RestClient}，
-     * 這樣才能自動啟用 Tracing 功能（Trace Context 傳播、子 Span 建立）。
+     * <p>使用共用的 {@code anthropicRestClient}（見 {@link io.github.samzhu.gate.config.UpstreamHttpClientConfig}）：
+     * 由 Spring 自動配置的 {@code RestClient.Builder} 建立（Tracing 自動傳播），並使用統一配置的上游連線池。
      *
-     * @param anthropicProperties Anthropic API 配置
      * @param usageEventPublisher 用量事件發布器
-     * @param objectMapper JSON 物件映射器
-     * @param restClientBuilder Spring 自動配置的 RestClient.Builder（已包含 Tracing instrumentation）
+     * @param anthropicRestClient 共用的 Anthropic API RestClient
      * @param tracer Micrometer Tracer
+     * @param upstreamFailover 429 / 529 換 Key 重試
+     * @param promptCacheMetrics prompt cache 命中指標
+     * @param responseCache {@code temperature: 0} 回應快取
      * @see <a href="https://docs.spring.io/spring-boot/reference/actuator/tracing.html">Spring Boot Tracing</a>
      */
     public NonStreamingProxyHandler(
-            AnthropicProperties anthropicProperties,
             UsageEventPublisher usageEventPublisher,
-            ObjectMapper objectMapper,
-            RestClient.Builder restClientBuilder,
-            Tracer tracer) {
+            RestClient anthropicRestClient,
+            Tracer tracer,
+            UpstreamFailover upstreamFailover,
+            PromptCacheMetrics promptCacheMetrics,
+            ResponseCache responseCache) {
         this.usageEventPublisher = usageEventPublisher;
-        this.objectMapper = objectMapper;
         this.tracer = tracer;
-        // 使用 Spring 自動配置的 Builder，確保 Tracing 自動傳播
-        this.restClient = restClientBuilder
-            .baseUrl(anthropicProperties.baseUrl())
-            .build();
+        this.restClient = anthropicRestClient;
+        this.upstreamFailover = upstreamFailover;
+        this.promptCacheMetrics = promptCacheMetrics;
+        this.responseCache = responseCache;
     }
 
     /**
      * 處理非串流請求
      *
-     * @param requestBody      請求體
-     * @param apiKey           Anthropic API Key
+     * @param requestBody      請求體（送出上游後釋放，回應轉發完成時 complete）
+     * @param envelope         請求 envelope（已由路由解析，不再重複解析請求體）
+     * @param apiKeyLease      API Key 租約（回應轉發完成時釋放）
      * @param subject          用戶識別碼
-     * @param keyAlias         API Key 別名
      * @param anthropicHeaders 所有 anthropic-* headers（透明轉發）
+     * @param responseCacheKey 回應快取 key，null 表示不可快取
+     * @param coalesced        single-flight 合併的領頭請求，null 表示不參與合併
      * @return ServerResponse
      */
-    public ServerResponse handleNonStreaming(String requestBody, String apiKey, String subject,
-                                              String keyAlias, Map<String, String> anthropicHeaders) {
+    public ServerResponse handleNonStreaming(ProxyRequestBody requestBody, RequestEnvelope envelope,
+                                              ApiKeyLease apiKeyLease, String subject,
+                                              Map<String, String> anthropicHeaders, String responseCacheKey,
+                                              CoalescedRequest coalesced) {
         long startTime = System.currentTimeMillis();
         String traceId = getCurrentTraceId();
 
         try {
-            // 建立 RestClient 請求
-            RestClient.RequestBodySpec requestSpec = restClient.post()
-                .uri("/v1/messages")
-                .contentType(MediaType.APPLICATION_JSON)
-                .header("x-api-key", apiKey);
-
-            // 設定預設 anthropic-version（如果客戶端沒有提供）
-            if (!anthropicHeaders.containsKey("anthropic-version")) {
-                requestSpec.header("anthropic-version", "2023-06-01");
-            }
-
-            // 透明轉發所有 anthropic-* headers
-            for (Map.Entry<String, String> entry : anthropicHeaders.entrySet()) {
-                requestSpec.header(entry.getKey(), entry.getValue());
-            }
-
-            // 使用 exchange() 方法來取得完整的回應資訊
-            // exchange() 會自動傳播 Trace Context 並建立子 Span
-            return requestSpec.body(requestBody)
-                .exchange((request, response) -> {
-                    String responseBody = new String(response.getBody().readAllBytes());
+            // 使用 exchange() 方法取得回應，close=false：回應本體留給 write function 串流轉發
+            // exchange() 會自動傳播 Trace Context 並建立子 Span；429 / 529 時由 UpstreamFailover 換 Key 重試
+            return upstreamFailover.exchange(apiKeyLease,
+                lease -> upstreamRequest(lease, requestBody, anthropicHeaders),
+                (response, servingLease) -> {
+                    // 上游已收到完整請求本體且不再重試：釋放位元組
+                    requestBody.release();
                     HttpStatusCode statusCode = response.getStatusCode();
 
                     // 從回應 header 提取 Anthropic request-id
                     String anthropicRequestId = response.getHeaders().getFirst("request-id");
+                    MediaType contentType = response.getHeaders().getContentType();
+
+                    // 直接使用 HttpStatusCode：529 (overloaded) 等非標準狀態碼無法轉成 HttpStatus
+                    return ServerResponse.status(statusCode)
+                        .contentType(contentType != null ? contentType : MediaType.APPLICATION_JSON)
+                        .build((servletRequest, servletResponse) -> {
+                            // 回應快取（只存 2xx）與合併的跟隨者需要完整本體
+                            ByteArrayOutputStream capture = coalesced != null
+                                || (responseCacheKey != null && statusCode.is2xxSuccessful())
+                                ? new ByteArrayOutputStream() : null;
+                            try {
+                                boolean relayed = relayResponse(response, statusCode, servletResponse.getOutputStream(),
+                                    envelope, startTime, servingLease, traceId, anthropicRequestId, subject, capture);
+                                if (relayed && capture != null) {
+                                    byte[] body = capture.toByteArray();
+                                    if (statusCode.is2xxSuccessful()) {
+                                        responseCache.put(responseCacheKey, body);
+                                    }
+                                    if (coalesced != null) {
+                                        coalesced.complete(new SharedResponse(statusCode.value(),
+                                            contentType != null ? contentType.toString() : null,
+                                            anthropicRequestId, servingLease.alias(), body));
+                                    }
+                                }
+                            } finally {
+                                // 未能分享完整回應時，跟隨者各自送出請求（已分享時為 no-op）
+                                if (coalesced != null) {
+                                    coalesced.abandon();
+                                }
+                                requestBody.complete();
+                                servingLease.release();
+                            }
+                            return null;
+                        });
+                }, false);
 
-                    String status = "success";
-                    if (!statusCode.is2xxSuccessful()) {
-                        log.error("Upstream error: status={}, body={}, anthropicRequestId={}",
-                            statusCode.value(), responseBody, anthropicRequestId);
-                        status = "error";
-                    }
+        } catch (Exception e) {
+            if (coalesced != null) {
+                coalesced.abandon();
+            }
+            requestBody.complete();
+            apiKeyLease.release();
+            log.error("Unexpected error during non-streaming request: {}", e.getMessage(), e);
+            return buildErrorResponse(e.getMessage(), startTime, apiKeyLease.alias(), traceId, subject);
+        }
+    }
 
-                    // 解析回應並提取用量資訊
-                    UsageEventData eventData = parseUsageFromResponse(
-                        responseBody, startTime, status, keyAlias, traceId, anthropicRequestId, subject);
+    /**
+     * 建立上游請求（每次嘗試以對應租約的 Key 重新建立）
+     */
+    private RestClient.RequestHeadersSpec<?> upstreamRequest(ApiKeyLease lease, ProxyRequestBody requestBody,
+                                                             Map<String, String> anthropicHeaders) {
+        RestClient.RequestBodySpec requestSpec = restClient.post()
+            .uri("/v1/messages")
+            .contentType(MediaType.APPLICATION_JSON)
+            .header("x-api-key", lease.key());
 
-                    // 發送用量事件
-                    usageEventPublisher.publish(eventData);
+        // 設定預設 anthropic-version（如果客戶端沒有提供）
+        if (!anthropicHeaders.containsKey("anthropic-version")) {
+            requestSpec.header("anthropic-version", "2023-06-01");
+        }
 
-                    // 記錄 Token 用量 - 用於監控和計費追蹤
-                    log.info("Token usage: subject={}, inputTokens={}, outputTokens={}, model={}, latencyMs={}",
-                        subject,
-                        eventData.inputTokens(),
-                        eventData.outputTokens(),
-                        eventData.model(),
-                        eventData.latencyMs());
+        // 透明轉發所有 anthropic-* headers
+        for (Map.Entry<String, String> entry : anthropicHeaders.entrySet()) {
+            requestSpec.header(entry.getKey(), entry.getValue());
+        }
 
-                    log.debug("Non-streaming completed: keyAlias={}, traceId={}, anthropicRequestId={}, messageId={}",
-                        keyAlias, traceId, anthropicRequestId, eventData.messageId());
+        return requestSpec.contentLength(requestBody.length()).body(requestBody);
+    }
 
-                    return ServerResponse.status(HttpStatus.valueOf(statusCode.value()))
-                        .contentType(MediaType.APPLICATION_JSON)
-                        .body(responseBody);
-                });
+    /**
+     * 將上游回應本體轉發給客戶端，同時旁路掃描用量，結束後發送用量事件
+     *
+     * <p>每個 chunk 先寫給客戶端，再交給 {@link ResponseUsageTee}，掃描不會延後資料送達。
+     *
+     * @param capture 保留完整本體的緩衝區，null 表示不保留
+     * @return 上游本體完整轉發給客戶端時返回 true
+     */
+    private boolean relayResponse(ClientHttpResponse response, HttpStatusCode statusCode, OutputStream clientStream,
+                                  RequestEnvelope envelope, long startTime, ApiKeyLease servingLease, String traceId,
+                                  String anthropicRequestId, String subject, ByteArrayOutputStream capture) {
+        String keyAlias = servingLease.alias();
+        ResponseUsageTee usageTee = new ResponseUsageTee();
+        ByteArrayOutputStream errorCapture = statusCode.is2xxSuccessful() ? null : new ByteArrayOutputStream();
+        boolean relayed = false;
+        String status = statusCode.is2xxSuccessful() ? "success" : "error";
+
+        try (response; InputStream upstreamBody = response.getBody()) {
+            byte[] buffer = new byte[RELAY_BUFFER_SIZE];
+            int read;
+            while ((read = upstreamBody.read(buffer)) >= 0) {
+                // 客戶端寫入失敗與上游讀取失敗分開處理
+                try {
+                    clientStream.write(buffer, 0, read);
+                } catch (IOException e) {
+                    log.warn("Client disconnected during non-streaming response: {}", e.getMessage());
+                    status = "client_disconnected";
+                    // 中止上游連線，避免關閉回應時把剩餘本體讀完
+                    UpstreamConnections.abort(upstreamBody);
+                    break;
+                }
+                usageTee.update(buffer, 0, read);
+                if (errorCapture != null && errorCapture.size() < ERROR_LOG_LIMIT) {
+                    errorCapture.write(buffer, 0, Math.min(read, ERROR_LOG_LIMIT - errorCapture.size()));
+                }
+                if (capture != null) {
+                    capture.write(buffer, 0, read);
+                }
+            }
+            if (!"client_disconnected".equals(status)) {
+                clientStream.flush();
+                relayed = true;
+            }
+        } catch (IOException e) {
+            log.error("IO error while relaying non-streaming response: {}", e.getMessage(), e);
+            status = "error";
+        }
 
-        } catch (Exception e) {
-            log.error("Unexpected error during non-streaming request: {}", e.getMessage(), e);
-            return buildErrorResponse(e.getMessage(), startTime, keyAlias, traceId, subject);
+        if (errorCapture != null) {
+            log.error("Upstream error: status={}, body={}, anthropicRequestId={}",
+                statusCode.value(), errorCapture.toString(StandardCharsets.UTF_8), anthropicRequestId);
         }
+
+        // 解析回應並提取用量資訊
+        UsageEventData eventData = buildUsageEventData(usageTee, envelope, startTime, status, keyAlias, traceId,
+            anthropicRequestId, subject, UsageEventData.RESPONSE_SOURCE_UPSTREAM);
+
+        // 發送用量事件
+        usageEventPublisher.publish(eventData);
+        promptCacheMetrics.record(servingLease.routing(), eventData);
+
+        // 記錄 Token 用量 - 用於監控和計費追蹤
+        log.info("Token usage: subject={}, inputTokens={}, outputTokens={}, model={}, latencyMs={}",
+            subject,
+            eventData.inputTokens(),
+            eventData.outputTokens(),
+            eventData.model(),
+            eventData.latencyMs());
+
+        log.debug("Non-streaming completed: keyAlias={}, traceId={}, anthropicRequestId={}, messageId={}",
+            keyAlias, traceId, anthropicRequestId, eventData.messageId());
+        return relayed;
+    }
+
+    /**
+     * 以領頭請求分享的上游回應回應跟隨者（single-flight 合併）
+     *
+     * <p>不取得 API Key、不送往上游；用量事件以跟隨者的 subject 發送，標記為 {@code response_source: coalesced}，
+     * {@code key_alias} 與 {@code anthropic_request_id} 為領頭的上游請求。不計入 prompt cache 指標。
+     *
+     * @param shared    領頭分享的回應
+     * @param envelope  請求 envelope
+     * @param startTime 跟隨者開始等待的時間（latency 包含等待時間）
+     * @param subject   用戶識別碼
+     * @return ServerResponse
+     */
+    public ServerResponse handleShared(SharedResponse shared, RequestEnvelope envelope, long startTime,
+                                       String subject) {
+        String traceId = getCurrentTraceId();
+        HttpStatusCode statusCode = HttpStatusCode.valueOf(shared.status());
+        ResponseUsageTee usageTee = new ResponseUsageTee();
+        usageTee.update(shared.body(), 0, shared.body().length);
+
+        UsageEventData eventData = buildUsageEventData(usageTee, envelope, startTime,
+            statusCode.is2xxSuccessful() ? "success" : "error", shared.keyAlias(), traceId,
+            shared.anthropicRequestId(), subject, UsageEventData.RESPONSE_SOURCE_COALESCED);
+        usageEventPublisher.publish(eventData);
+
+        log.info("Token usage: subject={}, inputTokens={}, outputTokens={}, model={}, latencyMs={}, source={}",
+            subject,
+            eventData.inputTokens(),
+            eventData.outputTokens(),
+            eventData.model(),
+            eventData.latencyMs(),
+            eventData.responseSource());
+
+        return ServerResponse.status(statusCode)
+            .contentType(shared.contentType() != null
+                ? MediaType.parseMediaType(shared.contentType()) : MediaType.APPLICATION_JSON)
+            .body(shared.body());
     }
 
     /**
-     * 從回應中解析用量資訊
+     * 從掃描結果建立用量事件
      */
-    private UsageEventData parseUsageFromResponse(String responseBody, long startTime,
-                                                   String status, String keyAlias, String traceId,
-                                                   String anthropicRequestId, String userId) {
+    private UsageEventData buildUsageEventData(ResponseUsageTee usageTee, RequestEnvelope envelope, long startTime,
+                                               String status, String keyAlias, String traceId,
+                                               String anthropicRequestId, String userId, String responseSource) {
         UsageEventData.Builder builder = UsageEventData.builder()
             .userId(userId)
             .eventTime(Instant.now())
@@ -172,51 +330,24 @@ public class NonStreamingProxyHandler {
             .status(status)
             .keyAlias(keyAlias)
             .traceId(traceId)
-            .anthropicRequestId(anthropicRequestId);
+            .anthropicRequestId(anthropicRequestId)
+            .responseSource(responseSource)
+            .model(envelope.model());
 
         try {
-            JsonNode root = objectMapper.readTree(responseBody);
+            UsageJsonScanner usage = usageTee.finish();
 
-            // 提取 model
-            if (root.has("model")) {
-                builder.model(root.get("model").asText());
-            }
-
-            // 提取 message id
-            if (root.has("id")) {
-                builder.messageId(root.get("id").asText());
-            }
-
-            // 提取 stop_reason
-            if (root.has("stop_reason") && !root.get("stop_reason").isNull()) {
-                builder.stopReason(root.get("stop_reason").asText());
-            }
-
-            // 提取 usage
-            if (root.has("usage")) {
-                JsonNode usage = root.get("usage");
-
-                if (usage.has("input_tokens")) {
-                    builder.inputTokens(usage.get("input_tokens").asInt());
-                }
-                if (usage.has("output_tokens")) {
-                    builder.outputTokens(usage.get("output_tokens").asInt());
-                }
-                if (usage.has("cache_creation_input_tokens")) {
-                    builder.cacheCreationTokens(usage.get("cache_creation_input_tokens").asInt());
-                }
-                if (usage.has("cache_read_input_tokens")) {
-                    builder.cacheReadTokens(usage.get("cache_read_input_tokens").asInt());
-                }
-            }
-
-            // 提取錯誤類型 (如果是錯誤回應)
-            if (root.has("error")) {
-                JsonNode error = root.get("error");
-                if (error.has("type")) {
-                    builder.errorType(error.get("type").asText());
-                }
+            if (usage.getModel() != null) {
+                builder.model(usage.getModel());
             }
+            builder.messageId(usage.getMessageId())
+                .stopReason(usage.getStopReason())
+                .inputTokens(Math.max(usage.getInputTokens(), 0))
+                .outputTokens(Math.max(usage.getOutputTokens(), 0))
+                .cacheCreationTokens(Math.max(usage.getCacheCreationTokens(), 0))
+                .cacheReadTokens(Math.max(usage.getCacheReadTokens(), 0))
+                // 提取錯誤類型 (如果是錯誤回應)
+                .errorType(usage.getErrorType());
 
         } catch (Exception e) {
             log.warn("Failed to parse usage from response: {}", e.getMessage());
@@ -0,0 +1,84 @@
+package io.github.samzhu.gate.handler;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicReference;
+
+import org.springframework.http.StreamingHttpOutputMessage;
+
+import io.github.samzhu.gate.metrics.RequestMemoryMetrics;
+
+/**
+ * 可釋放的代理請求本體
+ *
+ * <p>以位元組持有 {@code /v1/messages} 請求本體，並以 {@link StreamingHttpOutputMessage.Body}
+ * 直接寫入上游連線。串流回應可能持續 10 分鐘，handler 在收到上游回應（本體已送出）後呼叫
+ * {@link #release()}，之後位元組陣列即不可達，不會隨著長串流一直留在 heap。
+ *
+ * <p>生命週期：
+ * <ol>
+ *   <li>建立 - 計入 {@code gate.requests.inflight} 與 {@code gate.request.body.retained}</li>
+ *   <li>{@link #release()} - 上游請求送出後釋放位元組</li>
+ *   <li>{@link #complete()} - 請求處理結束（同時確保已釋放）</li>
+ * </ol>
+ *
+ * @see RequestMemoryMetrics
+ */
+public final class ProxyRequestBody implements StreamingHttpOutputMessage.Body {
+
+    private final RequestMemoryMetrics metrics;
+    private final int length;
+    private final AtomicBoolean completed = new AtomicBoolean();
+    private final AtomicReference<byte[]> bytes;
+
+    public ProxyRequestBody(byte[] bytes, RequestMemoryMetrics metrics) {
+        this.bytes = new AtomicReference<>(bytes);
+        this.length = bytes.length;
+        this.metrics = metrics;
+        metrics.requestStarted(length);
+    }
+
+    /**
+     * 本體位元組數（用於 Content-Length，釋放後仍可取得）
+     */
+    public int length() {
+        return length;
+    }
+
+    @Override
+    public void writeTo(OutputStream outputStream) throws IOException {
+        byte[] current = bytes.get();
+        if (current == null) {
+            throw new IllegalStateException("Request body already released");
+        }
+        outputStream.write(current);
+    }
+
+    /**
+     * 本體可重複寫入，直到被釋放為止
+     */
+    @Override
+    public boolean repeatable() {
+        return bytes.get() != null;
+    }
+
+    /**
+     * 釋放本體位元組（可重複呼叫）
+     */
+    public void release() {
+        if (bytes.getAndSet(null) != null) {
+            metrics.bodyReleased(length);
+        }
+    }
+
+    /**
+     * 請求處理結束（只會計算一次）
+     */
+    public void complete() {
+        if (completed.compareAndSet(false, true)) {
+            release();
+            metrics.requestCompleted();
+        }
+    }
+}
@@ -0,0 +1,56 @@
+package io.github.samzhu.gate.handler;
+
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * 全域重試預算（token bucket）
+ *
+ * <p>每個請求存入 {@code ratio} 個重試額度，每次重試提領 1 個，額度上限為 {@code reserve}。
+ * 上游全面故障時重試次數被限制在「請求量 × ratio + reserve」以內，重試不會放大故障。
+ *
+ * <p>以千分之一為單位的 {@link AtomicLong} 實作，不加鎖。
+ */
+final class RetryBudget {
+
+    private static final long SCALE = 1000;
+
+    private final long depositPerRequest;
+    private final long capacity;
+    private final AtomicLong balance;
+
+    RetryBudget(double ratio, int reserve) {
+        this.depositPerRequest = Math.round(ratio * SCALE);
+        this.capacity = Math.max(reserve * SCALE, depositPerRequest);
+        this.balance = new AtomicLong(capacity);
+    }
+
+    /**
+     * 新請求存入重試額度
+     */
+    void deposit() {
+        balance.getAndUpdate(current -> Math.min(capacity, current + depositPerRequest));
+    }
+
+    /**
+     * 嘗試提領一次重試額度
+     *
+     * @return 額度足夠時為 true
+     */
+    boolean tryWithdraw() {
+        long current;
+        do {
+            current = balance.get();
+            if (current < SCALE) {
+                return false;
+            }
+        } while (!balance.compareAndSet(current, current - SCALE));
+        return true;
+    }
+
+    /**
+     * 目前可用的重試次數
+     */
+    double available() {
+        return (double) balance.get() / SCALE;
+    }
+}
@@ -1,6 +1,7 @@
 package io.github.samzhu.gate.handler;
 
 import java.util.Map;
+import java.util.function.Consumer;
 
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
@@ -11,7 +12,7 @@ import org.springframework.stereotype.Component;
 import org.springframework.web.client.RestClient;
 import org.springframework.web.servlet.function.ServerResponse;
 
-import io.github.samzhu.gate.config.AnthropicProperties;
+import io.github.samzhu.gate.service.ApiKeyLease;
 
 /**
  * 簡單代理處理器
@@ -22,6 +23,7 @@ import io.github.samzhu.gate.config.AnthropicProperties;
  * </ul>
  *
  * <p>此處理器直接轉發請求到 Anthropic API，不進行用量追蹤。
+ * 成功回應可交給呼叫端快取（見 {@link io.github.samzhu.gate.service.CountTokensCache}）。
  *
  * @see NonStreamingProxyHandler
  * @see <a href="https://platform.claude.com/docs/en/api/messages/count_tokens">Claude Count Tokens API</a>
@@ -36,18 +38,14 @@ public class SimpleProxyHandler {
     /**
      * 建構子
      *
-     * <p>重要：使用 Spring 自動配置的 {@code RestClient.Builder} 來建立 {@code RestClient}，
-     * 這樣才能自動啟用 Tracing 功能（Trace Context 傳播、子 Span 建立）。
+     * <p>使用共用的 {@code anthropicRestClient}（見 {@link io.github.samzhu.gate.config.UpstreamHttpClientConfig}）：
+     * 由 Spring 自動配置的 {@code RestClient.Builder} 建立（Tracing 自動傳播），並使用統一配置的上游連線池。
      *
-     * @param anthropicProperties Anthropic API 配置
-     * @param restClientBuilder Spring 自動配置的 RestClient.Builder（已包含 Tracing instrumentation）
+     * @param anthropicRestClient 共用的 Anthropic API RestClient
      * @see <a href="https://docs.spring.io/spring-boot/reference/actuator/tracing.html">Spring Boot Tracing</a>
      */
-    public SimpleProxyHandler(AnthropicProperties anthropicProperties, RestClient.Builder restClientBuilder) {
-        // 使用 Spring 自動配置的 Builder，確保 Tracing 自動傳播
-        this.restClient = restClientBuilder
-            .baseUrl(anthropicProperties.baseUrl())
-            .build();
+    public SimpleProxyHandler(RestClient anthropicRestClient) {
+        this.restClient = anthropicRestClient;
     }
 
     /**
@@ -55,21 +53,22 @@ public class SimpleProxyHandler {
      *
      * @param path             API 路徑（例如 /v1/messages/count_tokens）
      * @param requestBody      請求體
-     * @param apiKey           Anthropic API Key
-     * @param keyAlias         API Key 別名（用於日誌）
+     * @param apiKeyLease      API Key 租約（回報上游狀態碼與 rate limit；由呼叫端釋放）
      * @param anthropicHeaders 所有 anthropic-* headers（透明轉發）
+     * @param onSuccess        收到 2xx 回應時接收回應本體
      * @return ServerResponse
      */
-    public ServerResponse proxyRequest(String path, String requestBody, String apiKey,
-                                        String keyAlias, Map<String, String> anthropicHeaders) {
+    public ServerResponse proxyRequest(String path, byte[] requestBody, ApiKeyLease apiKeyLease,
+                                        Map<String, String> anthropicHeaders, Consumer<byte[]> onSuccess) {
         long startTime = System.currentTimeMillis();
+        String keyAlias = apiKeyLease.alias();
 
         try {
             // 建立 RestClient 請求
             RestClient.RequestBodySpec requestSpec = restClient.post()
                 .uri(path)
                 .contentType(MediaType.APPLICATION_JSON)
-                .header("x-api-key", apiKey);
+                .header("x-api-key", apiKeyLease.key());
 
             // 設定預設 anthropic-version（如果客戶端沒有提供）
             if (!anthropicHeaders.containsKey("anthropic-version")) {
@@ -87,8 +86,10 @@ public class SimpleProxyHandler {
             // exchange() 會自動傳播 Trace Context 並建立子 Span
             return requestSpec.body(requestBody)
                 .exchange((request, response) -> {
-                    String responseBody = new String(response.getBody().readAllBytes());
+                    byte[] responseBody = response.getBody().readAllBytes();
                     HttpStatusCode statusCode = response.getStatusCode();
+                    apiKeyLease.recordStatus(statusCode);
+                    apiKeyLease.recordRateLimits(response.getHeaders());
                     long latencyMs = System.currentTimeMillis() - startTime;
 
                     String anthropicRequestId = response.getHeaders().getFirst("request-id");
@@ -99,9 +100,10 @@ public class SimpleProxyHandler {
                     } else {
                         log.debug("Proxy completed: path={}, keyAlias={}, anthropicRequestId={}, latencyMs={}",
                             path, keyAlias, anthropicRequestId, latencyMs);
+                        onSuccess.accept(responseBody);
                     }
 
-                    return ServerResponse.status(HttpStatus.valueOf(statusCode.value()))
+                    return ServerResponse.status(statusCode)
                         .contentType(MediaType.APPLICATION_JSON)
                         .body(responseBody);
                 });
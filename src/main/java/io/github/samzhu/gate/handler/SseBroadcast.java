@@ -0,0 +1,381 @@
+package io.github.samzhu.gate.handler;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InterruptedIOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * 單一上游 SSE 串流的廣播緩衝區（串流 fan-out）
+ *
+ * <p>上游讀取執行緒把從上游讀到的每個 frame 以 {@link #publish} 放入緩衝區，所有客戶端（包含領頭請求自己的客戶端）
+ * 都以 {@link Subscription}（{@link InputStream}）從第一個 frame 開始讀取：先重播已產生的事件，再接續即時事件。
+ *
+ * <p>緩衝區有上限（{@code maxBytes}）：
+ * <ul>
+ *   <li>超過上限時從最舊的 frame 開始丟棄，此後不再接受新的訂閱者（重播已不完整）</li>
+ *   <li>讀取位置落在已丟棄範圍的訂閱者（消費太慢）讀取時得到 {@link LaggedException}，只影響該訂閱者</li>
+ * </ul>
+ *
+ * <p>每個訂閱者有自己的讀取位置與轉發執行緒，上游讀取執行緒只寫入緩衝區、從不寫給任何客戶端，
+ * 慢速客戶端不會拖慢上游讀取或其他訂閱者。
+ *
+ * <p>最後一個訂閱者在串流結束前離開時，廣播被放棄（abandoned）：不再接受新訂閱者，並中止上游請求
+ * （關閉以 {@link #bindUpstream} 綁定的回應串流、中斷以 {@link #upstreamStarted} 標記的讀取執行緒）。
+ * 只要還有任何訂閱者，單一客戶端斷線不會中止共用的上游串流。
+ *
+ * <p>執行緒安全：上游讀取執行緒與所有訂閱者共用同一把鎖，frame 以不可變的位元組陣列保存。
+ *
+ * @see StreamFanOut
+ */
+public final class SseBroadcast {
+
+    private static final int COMPACT_THRESHOLD = 1024;
+
+    private final long maxBytes;
+    private final Runnable onClosed;
+    private final ReentrantLock lock = new ReentrantLock();
+    private final Condition changed = lock.newCondition();
+
+    /** frame 序號 {@code i} 位於 {@code frames[i - baseIndex]}，已丟棄的位置為 null（累積後一次壓縮） */
+    private final List<byte[]> frames = new ArrayList<>();
+    private long baseIndex;
+    /** 緩衝區中第一個保留的 frame 序號 */
+    private long firstIndex;
+    private long retainedBytes;
+    private boolean trimmed;
+    private boolean finished;
+    private boolean completed;
+    private boolean upstreamError;
+    private String keyAlias;
+    private String anthropicRequestId;
+    private int subscribers;
+    private boolean abandoned;
+    private Thread upstreamThread;
+    private InputStream upstreamBody;
+
+    SseBroadcast(long maxBytes, Runnable onClosed) {
+        this.maxBytes = maxBytes;
+        this.onClosed = onClosed;
+    }
+
+    /**
+     * 標記目前執行緒開始等待/讀取上游（廣播被放棄時會被中斷）
+     */
+    void upstreamStarted() {
+        lock.lock();
+        try {
+            this.upstreamThread = Thread.currentThread();
+            if (abandoned) {
+                upstreamThread.interrupt();
+            }
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * 綁定上游回應串流（廣播被放棄時會被中止）
+     */
+    void bindUpstream(InputStream upstreamBody) {
+        lock.lock();
+        try {
+            this.upstreamBody = upstreamBody;
+            if (abandoned) {
+                UpstreamConnections.abort(upstreamBody);
+            }
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * 上游處理結束：解除綁定並清除可能殘留的中斷狀態
+     */
+    void upstreamFinished() {
+        lock.lock();
+        try {
+            this.upstreamThread = null;
+            this.upstreamBody = null;
+        } finally {
+            lock.unlock();
+        }
+        Thread.interrupted();
+    }
+
+    /**
+     * 是否因所有訂閱者都已離開而放棄（上游請求已中止）
+     */
+    boolean abandoned() {
+        lock.lock();
+        try {
+            return abandoned;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * 上游已回應（上游讀取執行緒呼叫）
+     *
+     * @param keyAlias           實際服務此串流的 Key 別名
+     * @param anthropicRequestId 上游 request-id
+     * @param success            上游是否回應 2xx
+     */
+    void upstreamResponded(String keyAlias, String anthropicRequestId, boolean success) {
+        lock.lock();
+        try {
+            this.keyAlias = keyAlias;
+            this.anthropicRequestId = anthropicRequestId;
+            this.upstreamError = !success;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * 放入一個 frame（上游讀取執行緒呼叫，位元組會被複製）
+     */
+    void publish(byte[] buffer, int offset, int length) {
+        byte[] frame = new byte[length];
+        System.arraycopy(buffer, offset, frame, 0, length);
+        boolean closeToSubscribers = false;
+        lock.lock();
+        try {
+            if (finished || abandoned) {
+                return;
+            }
+            frames.add(frame);
+            retainedBytes += length;
+            long lastIndex = baseIndex + frames.size() - 1;
+            while (retainedBytes > maxBytes && firstIndex < lastIndex) {
+                int slot = (int) (firstIndex - baseIndex);
+                retainedBytes -= frames.get(slot).length;
+                frames.set(slot, null);
+                firstIndex++;
+                if (!trimmed) {
+                    trimmed = true;
+                    closeToSubscribers = true;
+                }
+            }
+            compact();
+            changed.signalAll();
+        } finally {
+            lock.unlock();
+        }
+        if (closeToSubscribers) {
+            onClosed.run();
+        }
+    }
+
+    /**
+     * 丟棄的位置超過一半時移除，避免長串流累積大量空位
+     */
+    private void compact() {
+        int dropped = (int) (firstIndex - baseIndex);
+        if (dropped >= COMPACT_THRESHOLD && dropped > frames.size() / 2) {
+            frames.subList(0, dropped).clear();
+            baseIndex = firstIndex;
+        }
+    }
+
+    /**
+     * 上游串流結束（上游讀取執行緒呼叫，只有第一次生效）
+     *
+     * @param completed 上游串流是否完整結束；false 時訂閱者讀完緩衝區後得到 {@link IOException}
+     */
+    public void finish(boolean completed) {
+        lock.lock();
+        try {
+            if (finished) {
+                return;
+            }
+            this.finished = true;
+            this.completed = completed;
+            changed.signalAll();
+        } finally {
+            lock.unlock();
+        }
+        onClosed.run();
+    }
+
+    /**
+     * 加入訂閱（從第一個 frame 開始讀取）
+     *
+     * @return 訂閱；緩衝區已丟棄過 frame、串流已結束或已被放棄時為 null
+     */
+    Subscription subscribe() {
+        lock.lock();
+        try {
+            if (trimmed || finished || abandoned) {
+                return null;
+            }
+            subscribers++;
+            return new Subscription(firstIndex);
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * 以 {@link InputStream} 讀取廣播內容的訂閱者
+     *
+     * <p>非執行緒安全：每個訂閱者由自己的轉發執行緒讀取。
+     */
+    public final class Subscription extends InputStream {
+
+        private long nextIndex;
+        private byte[] current;
+        private int position;
+        private boolean closed;
+
+        private Subscription(long nextIndex) {
+            this.nextIndex = nextIndex;
+        }
+
+        /**
+         * 實際服務此串流的 Key 別名（上游回應後才有值）
+         */
+        public String keyAlias() {
+            lock.lock();
+            try {
+                return keyAlias;
+            } finally {
+                lock.unlock();
+            }
+        }
+
+        /**
+         * 上游 request-id（上游回應後才有值）
+         */
+        public String anthropicRequestId() {
+            lock.lock();
+            try {
+                return anthropicRequestId;
+            } finally {
+                lock.unlock();
+            }
+        }
+
+        /**
+         * 上游是否回應錯誤狀態碼（錯誤本體仍會以 frame 送給訂閱者）
+         */
+        public boolean upstreamError() {
+            lock.lock();
+            try {
+                return upstreamError;
+            } finally {
+                lock.unlock();
+            }
+        }
+
+        @Override
+        public int read() throws IOException {
+            byte[] single = new byte[1];
+            return read(single, 0, 1) < 0 ? -1 : single[0] & 0xFF;
+        }
+
+        @Override
+        public int read(byte[] buffer, int offset, int length) throws IOException {
+            if (length == 0) {
+                return 0;
+            }
+            if (current == null || position >= current.length) {
+                current = nextFrame();
+                position = 0;
+                if (current == null) {
+                    return -1;
+                }
+            }
+            int count = Math.min(length, current.length - position);
+            System.arraycopy(current, position, buffer, offset, count);
+            position += count;
+            return count;
+        }
+
+        /**
+         * 取得下一個 frame，尚未產生時等待
+         *
+         * @return frame，串流完整結束時為 null
+         */
+        private byte[] nextFrame() throws IOException {
+            lock.lock();
+            try {
+                while (true) {
+                    if (closed) {
+                        throw new IOException("Subscription closed");
+                    }
+                    if (nextIndex < firstIndex) {
+                        throw new LaggedException();
+                    }
+                    if (nextIndex < baseIndex + frames.size()) {
+                        return frames.get((int) (nextIndex++ - baseIndex));
+                    }
+                    if (finished) {
+                        if (completed) {
+                            return null;
+                        }
+                        throw new IOException("Shared upstream stream ended unexpectedly");
+                    }
+                    changed.await();
+                }
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new InterruptedIOException("Interrupted while waiting for shared stream");
+            } finally {
+                lock.unlock();
+            }
+        }
+
+        /**
+         * 結束訂閱（轉發結束或客戶端斷線時由 {@link ClientDisconnectListener} 呼叫，喚醒等待中的讀取）
+         *
+         * <p>最後一個訂閱者在串流結束前離開時放棄廣播並中止上游請求。
+         */
+        @Override
+        public void close() {
+            boolean abandon = false;
+            lock.lock();
+            try {
+                if (closed) {
+                    return;
+                }
+                closed = true;
+                if (--subscribers == 0 && !finished && !abandoned) {
+                    abandoned = true;
+                    abandon = true;
+                    frames.clear();
+                    retainedBytes = 0;
+                    UpstreamConnections.abort(upstreamBody);
+                    if (upstreamThread != null) {
+                        upstreamThread.interrupt();
+                    }
+                }
+                changed.signalAll();
+            } finally {
+                lock.unlock();
+            }
+            if (abandon) {
+                onClosed.run();
+            }
+        }
+    }
+
+    /**
+     * 訂閱者消費太慢，讀取位置已被丟棄
+     */
+    static final class LaggedException extends IOException {
+
+        LaggedException() {
+            super("Subscriber fell behind the shared stream buffer", null);
+        }
+
+        @Override
+        public synchronized Throwable fillInStackTrace() {
+            return this;
+        }
+    }
+}
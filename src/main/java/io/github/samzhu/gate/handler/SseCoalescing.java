@@ -0,0 +1,56 @@
+package io.github.samzhu.gate.handler;
+
+/**
+ * SSE 寫入合併（coalescing）選項
+ *
+ * <p>由客戶端以 header 逐請求啟用，適合不需要逐 token 送達的批次型消費者：
+ * <ul>
+ *   <li>{@code x-gate-coalesce-ms} - {@code content_block_delta} 最多延遲多少毫秒再送出（上限 1000）</li>
+ *   <li>{@code x-gate-coalesce-bytes} - 緩衝超過多少位元組立即送出（上限 64 KiB）</li>
+ * </ul>
+ *
+ * <p>只提供其中一個 header 時，另一個使用預設值（50ms / 16 KiB）。兩者皆未提供或無效時不啟用。
+ *
+ * @param lingerMillis 最長延遲（毫秒）
+ * @param maxBytes     緩衝上限（位元組）
+ * @see SseFrameWriter
+ */
+public record SseCoalescing(long lingerMillis, int maxBytes) {
+
+    public static final String LINGER_HEADER = "x-gate-coalesce-ms";
+    public static final String MAX_BYTES_HEADER = "x-gate-coalesce-bytes";
+
+    static final long DEFAULT_LINGER_MILLIS = 50;
+    static final int DEFAULT_MAX_BYTES = 16 * 1024;
+    static final long MAX_LINGER_MILLIS = 1000;
+    static final int MAX_BYTES_LIMIT = 64 * 1024;
+
+    /**
+     * 從 header 值建立合併選項
+     *
+     * @param lingerHeader   {@code x-gate-coalesce-ms} 值（可為 null）
+     * @param maxBytesHeader {@code x-gate-coalesce-bytes} 值（可為 null）
+     * @return 合併選項，未啟用返回 null
+     */
+    public static SseCoalescing fromHeaders(String lingerHeader, String maxBytesHeader) {
+        long linger = parse(lingerHeader);
+        long bytes = parse(maxBytesHeader);
+        if (linger <= 0 && bytes <= 0) {
+            return null;
+        }
+        return new SseCoalescing(
+            linger > 0 ? Math.min(linger, MAX_LINGER_MILLIS) : DEFAULT_LINGER_MILLIS,
+            bytes > 0 ? (int) Math.min(bytes, MAX_BYTES_LIMIT) : DEFAULT_MAX_BYTES);
+    }
+
+    private static long parse(String value) {
+        if (value == null || value.isBlank()) {
+            return 0;
+        }
+        try {
+            return Long.parseLong(value.trim());
+        } catch (NumberFormatException e) {
+            return 0;
+        }
+    }
+}
@@ -0,0 +1,196 @@
+package io.github.samzhu.gate.handler;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+
+import io.micrometer.core.instrument.Counter;
+
+/**
+ * SSE frame 寫入器
+ *
+ * <p>預設模式下每個 frame 寫入後立即 flush（逐 token 送達）。
+ * 啟用 {@link SseCoalescing} 時，可延遲的 frame（{@code content_block_delta}）會先累積在緩衝區，
+ * 直到以下任一條件才合併為一次寫入：
+ * <ul>
+ *   <li>距離第一個緩衝 frame 超過 linger 時間（由此串流自己的 flush 執行緒送出）</li>
+ *   <li>緩衝超過位元組上限</li>
+ *   <li>遇到不可延遲的 frame（{@code message_start}、{@code message_stop}、{@code error} 等），
+ *       先送出緩衝內容再立即寫入該 frame，維持事件順序</li>
+ * </ul>
+ *
+ * <p>第一個可延遲 frame 一律立即送出，合併不影響 TTFT。
+ *
+ * <p>到期 flush：轉發執行緒可能正阻塞在上游讀取，無法自己檢查期限，因此每個合併串流在第一次緩衝時
+ * 啟動一條自己的 Virtual Thread，等到期限後寫入並 flush，{@link #close()} 時結束。
+ * 對客戶端 socket 的寫入只發生在該串流自己的執行緒上，慢速客戶端不會延遲其他串流的 flush。
+ *
+ * <p>轉發執行緒與 flush 執行緒以 {@link ReentrantLock} 互斥寫入（Virtual Thread 友善）。
+ * flush 執行緒寫入失敗時，例外會在轉發執行緒下一次寫入時拋出。
+ *
+ * @see SseCoalescing
+ * @see StreamingProxyHandler
+ */
+class SseFrameWriter implements Closeable {
+
+    private final OutputStream out;
+    private final SseCoalescing coalescing;
+    private final Counter flushes;
+    private final ReentrantLock lock = new ReentrantLock();
+    private final Condition bufferChanged = lock.newCondition();
+
+    private byte[] buffer;
+    private int count;
+    private long deadlineNanos;
+    private boolean firstDeferrableWritten;
+    private boolean closed;
+    private Thread flusher;
+    private IOException flushFailure;
+
+    private SseFrameWriter(OutputStream out, SseCoalescing coalescing, Counter flushes) {
+        this.out = out;
+        this.coalescing = coalescing;
+        this.flushes = flushes;
+    }
+
+    /**
+     * 逐 frame flush 的寫入器
+     */
+    static SseFrameWriter immediate(OutputStream out, Counter flushes) {
+        return new SseFrameWriter(out, null, flushes);
+    }
+
+    /**
+     * 合併寫入器
+     */
+    static SseFrameWriter coalescing(OutputStream out, SseCoalescing coalescing, Counter flushes) {
+        return new SseFrameWriter(out, coalescing, flushes);
+    }
+
+    /**
+     * 寫入一個 SSE frame
+     *
+     * @param frame      frame 所在的緩衝區（呼叫返回後即可重複使用）
+     * @param offset     起點
+     * @param length     長度
+     * @param deferrable 是否允許延遲送出
+     */
+    void write(byte[] frame, int offset, int length, boolean deferrable) throws IOException {
+        if (coalescing == null) {
+            out.write(frame, offset, length);
+            flush();
+            return;
+        }
+
+        lock.lock();
+        try {
+            throwFlushFailure();
+            if (!deferrable || !firstDeferrableWritten) {
+                firstDeferrableWritten |= deferrable;
+                drainBuffer();
+                out.write(frame, offset, length);
+                flush();
+                return;
+            }
+
+            if (count + length > coalescing.maxBytes()) {
+                drainBuffer();
+                if (length >= coalescing.maxBytes()) {
+                    out.write(frame, offset, length);
+                    flush();
+                    return;
+                }
+                flush();
+            }
+            if (buffer == null) {
+                buffer = new byte[coalescing.maxBytes()];
+            }
+            System.arraycopy(frame, offset, buffer, count, length);
+            if (count == 0) {
+                deadlineNanos = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(coalescing.lingerMillis());
+                if (flusher == null) {
+                    flusher = Thread.ofVirtual().name("sse-coalesce-flush").start(this::flushOnDeadline);
+                }
+                bufferChanged.signal();
+            }
+            count += length;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * 送出所有緩衝內容並結束 flush 執行緒
+     */
+    @Override
+    public void close() throws IOException {
+        if (coalescing == null) {
+            return;
+        }
+        lock.lock();
+        try {
+            closed = true;
+            bufferChanged.signal();
+            if (count > 0) {
+                drainBuffer();
+                flush();
+            }
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * flush 執行緒：緩衝區有內容時等到期限再送出，直到 {@link #close()}
+     */
+    private void flushOnDeadline() {
+        lock.lock();
+        try {
+            while (!closed) {
+                if (count == 0) {
+                    bufferChanged.await();
+                    continue;
+                }
+                long remaining = deadlineNanos - System.nanoTime();
+                if (remaining > 0) {
+                    bufferChanged.awaitNanos(remaining);
+                    continue;
+                }
+                drainBuffer();
+                flush();
+            }
+        } catch (IOException e) {
+            flushFailure = e;
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * 將緩衝內容寫入底層串流（不 flush）
+     */
+    private void drainBuffer() throws IOException {
+        if (count > 0) {
+            out.write(buffer, 0, count);
+            count = 0;
+        }
+    }
+
+    private void flush() throws IOException {
+        out.flush();
+        flushes.increment();
+    }
+
+    private void throwFlushFailure() throws IOException {
+        if (flushFailure != null) {
+            IOException failure = flushFailure;
+            flushFailure = null;
+            throw failure;
+        }
+    }
+}
@@ -0,0 +1,128 @@
+package io.github.samzhu.gate.handler;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.stereotype.Component;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+
+import io.github.samzhu.gate.config.AnthropicProperties;
+import io.github.samzhu.gate.model.RequestEnvelope;
+import io.github.samzhu.gate.service.RequestCoalescer;
+
+/**
+ * 相同串流請求的 fan-out（共用同一個上游 SSE 串流）
+ *
+ * <p>{@link RequestCoalescer} 的串流版本，同樣由 {@code anthropic.api.coalescing} 啟用，
+ * 使用相同的 key（只有 {@code temperature: 0} 的請求參與）：
+ * <ul>
+ *   <li>第一個請求成為領頭，照常取得 API Key 並送往上游；獨立的上游讀取執行緒只把每個 frame 放入 {@link SseBroadcast}</li>
+ *   <li>領頭自己的客戶端與之後到達的相同請求一樣以訂閱者身分讀取廣播（各自的轉發執行緒），
+ *       後者不取得 API Key；先重播已產生的事件，再接續即時事件</li>
+ *   <li>緩衝區超過 {@code stream-buffer} 後不再接受新訂閱者（之後的請求各自送往上游）；
+ *       已訂閱但消費太慢、落後超出緩衝範圍的訂閱者收到錯誤事件，不影響其他訂閱者（包含領頭）</li>
+ *   <li>任何一個客戶端斷線只結束自己的訂閱；最後一個訂閱者離開時才中止上游請求</li>
+ *   <li>上游串流中斷時，訂閱者讀完緩衝區後收到錯誤事件</li>
+ * </ul>
+ *
+ * <p>指標：
+ * <ul>
+ *   <li>{@code gate.fanout.requests{outcome}} - {@code leader}（送往上游）、{@code attached}（省下的上游請求）</li>
+ *   <li>{@code gate.fanout.lagged} - 因消費太慢而中斷的訂閱者</li>
+ *   <li>{@code gate.fanout.active} - 目前可加入的上游串流數</li>
+ * </ul>
+ *
+ * @see SseBroadcast
+ * @see StreamingProxyHandler
+ */
+@Component
+public class StreamFanOut {
+
+    private static final Logger log = LoggerFactory.getLogger(StreamFanOut.class);
+
+    private final RequestCoalescer requestCoalescer;
+    private final long bufferBytes;
+    private final Map<String, SseBroadcast> active = new ConcurrentHashMap<>();
+    private final Counter leaders;
+    private final Counter attached;
+    private final Counter lagged;
+
+    public StreamFanOut(RequestCoalescer requestCoalescer, AnthropicProperties anthropicProperties,
+                        MeterRegistry meterRegistry) {
+        this.requestCoalescer = requestCoalescer;
+        this.bufferBytes = anthropicProperties.coalescing().streamBuffer().toBytes();
+        this.leaders = outcome(meterRegistry, "leader");
+        this.attached = outcome(meterRegistry, "attached");
+        this.lagged = Counter.builder("gate.fanout.lagged")
+            .description("Stream subscribers dropped for falling behind the shared buffer")
+            .register(meterRegistry);
+        Gauge.builder("gate.fanout.active", active, Map::size)
+            .description("Upstream streams that identical requests can currently attach to")
+            .register(meterRegistry);
+    }
+
+    private static Counter outcome(MeterRegistry meterRegistry, String outcome) {
+        return Counter.builder("gate.fanout.requests")
+            .description("Streaming requests by fan-out outcome")
+            .tag("outcome", outcome)
+            .register(meterRegistry);
+    }
+
+    /**
+     * 加入（或建立）相同請求的上游串流
+     *
+     * @param envelope         請求 envelope
+     * @param anthropicHeaders 所有 anthropic-* headers
+     * @return 參與 fan-out 的請求；停用、請求不可合併（非串流、{@code temperature} 不為 0）
+     *         或既有串流已無法加入時為 null
+     */
+    public Membership join(RequestEnvelope envelope, Map<String, String> anthropicHeaders) {
+        String key = envelope.stream() ? requestCoalescer.key(envelope, anthropicHeaders) : null;
+        if (key == null) {
+            return null;
+        }
+        while (true) {
+            SseBroadcast existing = active.get(key);
+            if (existing != null) {
+                SseBroadcast.Subscription subscription = existing.subscribe();
+                if (subscription == null) {
+                    // 緩衝區已截斷或剛結束，自行送往上游（不取代既有項目，由其 onClosed 移除）
+                    return null;
+                }
+                attached.increment();
+                log.debug("Attached to in-flight upstream stream: model={}", envelope.model());
+                return new Membership(existing, subscription, false);
+            }
+            SseBroadcast[] holder = new SseBroadcast[1];
+            SseBroadcast created = new SseBroadcast(bufferBytes, () -> active.remove(key, holder[0]));
+            holder[0] = created;
+            if (active.putIfAbsent(key, created) == null) {
+                leaders.increment();
+                // 領頭的客戶端同樣以訂閱讀取，與上游讀取分開
+                return new Membership(created, created.subscribe(), true);
+            }
+        }
+    }
+
+    /**
+     * 記錄因消費太慢而中斷的訂閱者
+     */
+    void recordLagged() {
+        lagged.increment();
+    }
+
+    /**
+     * fan-out 中的角色
+     *
+     * @param broadcast    共用的廣播緩衝區
+     * @param subscription 此請求客戶端的讀取端（領頭也有）
+     * @param leader       是否為送往上游的領頭請求
+     */
+    public record Membership(SseBroadcast broadcast, SseBroadcast.Subscription subscription, boolean leader) {
+    }
+}
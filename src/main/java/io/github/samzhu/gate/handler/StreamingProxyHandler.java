@@ -1,27 +1,41 @@
 package io.github.samzhu.gate.handler;
 
-import java.io.BufferedReader;
+import java.io.ByteArrayOutputStream;
 import java.io.IOException;
 import java.io.InputStream;
-import java.io.InputStreamReader;
+import java.io.OutputStream;
 import java.nio.charset.StandardCharsets;
 import java.util.Map;
 
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
+import org.springframework.http.CacheControl;
 import org.springframework.http.HttpStatusCode;
 import org.springframework.http.MediaType;
 import org.springframework.stereotype.Component;
+import org.springframework.core.task.SimpleAsyncTaskExecutor;
+import org.springframework.core.task.support.ContextPropagatingTaskDecorator;
 import org.springframework.web.client.RestClient;
-import org.springframework.web.context.request.async.AsyncRequestNotUsableException;
 import org.springframework.web.servlet.function.ServerResponse;
 
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
 import io.micrometer.tracing.Tracer;
-import com.fasterxml.jackson.databind.ObjectMapper;
 
-import io.github.samzhu.gate.config.AnthropicProperties; // 用於建構子中取得 baseUrl
+import jakarta.servlet.AsyncContext;
+import jakarta.servlet.http.HttpServletResponse;
+
+import io.github.samzhu.gate.metrics.PromptCacheMetrics;
+import io.github.samzhu.gate.metrics.StreamLatencyRecorder;
+import io.github.samzhu.gate.metrics.StreamingMetrics;
+import io.github.samzhu.gate.model.RequestEnvelope;
 import io.github.samzhu.gate.model.UsageEventData;
+import io.github.samzhu.gate.service.ApiKeyLease;
+import io.github.samzhu.gate.service.ResponseCache;
 import io.github.samzhu.gate.service.UsageEventPublisher;
+import io.github.samzhu.gate.util.SseFrameReader;
+import io.github.samzhu.gate.util.SseMessageAssembler;
+import io.github.samzhu.gate.util.SseMessageReplay;
 import io.github.samzhu.gate.util.SseParser;
 import io.github.samzhu.gate.util.TokenExtractor;
 
@@ -31,19 +45,41 @@ import io.github.samzhu.gate.util.TokenExtractor;
  * <p>處理 Claude API 的 SSE（Server-Sent Events）串流回應，執行以下功能：
  * <ul>
  *   <li>代理請求到 Anthropic API（{@code stream: true}）</li>
- *   <li>透傳 SSE 事件給客戶端（即時回應）</li>
- *   <li>解析 SSE 事件提取 Token 用量：
+ *   <li>位元組層級透傳 SSE 事件給客戶端（即時回應，不解碼、不重新編碼）</li>
+ *   <li>依事件類型過濾後解析 SSE 事件提取 Token 用量（{@code content_block_delta}、{@code ping} 不解析）：
  *       <ul>
  *         <li>{@code message_start} - 提取 input_tokens、model、message_id</li>
  *         <li>{@code message_delta} - 提取 output_tokens、stop_reason</li>
  *       </ul>
  *   </li>
+ *   <li>客戶端斷線時立即中止上游請求（{@link ClientDisconnectListener}）</li>
+ *   <li>上游回應 429 / 529 且尚未轉發任何位元組時換 Key 重試（{@link UpstreamFailover}）</li>
+ *   <li>選擇性合併 {@code content_block_delta} 寫入（{@link SseCoalescing}，由請求 header 啟用）</li>
+ *   <li>可快取的請求（{@link ResponseCache}）以 {@link SseMessageAssembler} 組回完整 Message，串流正常結束後寫入快取</li>
+ *   <li>相同請求共用上游串流（{@link StreamFanOut}）：領頭的上游讀取執行緒只把每個 frame 放入 {@link SseBroadcast}，
+ *       所有客戶端（包含領頭自己的客戶端，見 {@link #handleSubscriber}）以同一個轉發迴圈各自從緩衝區讀取</li>
  *   <li>串流結束後發送 CloudEvents 格式的用量事件</li>
  * </ul>
  *
- * <p>使用 {@link ServerResponse#sse} 建立 SSE 回應，支援長達 10 分鐘的串流。
+ * <p>執行模型：write function 啟動 Servlet AsyncContext 後立即返回，轉發迴圈在獨立的
+ * Virtual Thread 上執行（透過 {@link ContextPropagatingTaskDecorator} 傳播 Trace Context）。
+ * 請求執行緒返回後，容器才能在客戶端斷線時主動通知 AsyncListener，不必等到下一次寫入失敗。
+ *
+ * <p>指標：
+ * <ul>
+ *   <li>{@code gate.sse.frames{outcome=parsed}} - 交給 Jackson 解析的 frame 數</li>
+ *   <li>{@code gate.sse.frames{outcome=skipped}} - 依事件類型略過解析的 frame 數</li>
+ *   <li>{@code gate.sse.flushes{mode=immediate|coalesced}} - 對客戶端的 flush 次數</li>
+ *   <li>TTFT、inter-token 間隔、tokens/sec histogram - 見 {@link StreamingMetrics}</li>
+ * </ul>
+ *
+ * <p>Zero-copy 轉發：以 {@link SseFrameReader} 在上游位元組上掃描 frame 邊界（{@code \n\n}），
+ * 將原始位元組片段直接寫入 Servlet OutputStream，只有需要的 {@code data:} 內容會被掃描供用量解析。
+ * 相較於 {@code BufferedReader.readLine()} + {@link ServerResponse#sse} 的做法，
+ * 每個 {@code content_block_delta} 省去多次 String 複製與重新編碼。支援長達 10 分鐘的串流。
  *
  * @see NonStreamingProxyHandler
+ * @see SseFrameReader
  * @see TokenExtractor
  * @see <a href="https://platform.claude.com/docs/en/build-with-claude/streaming">Claude Streaming</a>
  */
@@ -52,209 +88,592 @@ public class StreamingProxyHandler {
 
     private static final Logger log = LoggerFactory.getLogger(StreamingProxyHandler.class);
 
+    private static final byte[] DATA_FIELD = "data:".getBytes(StandardCharsets.US_ASCII);
+
     private final UsageEventPublisher usageEventPublisher;
-    private final ObjectMapper objectMapper;
     private final RestClient restClient;
     private final Tracer tracer;
+    private final StreamingMetrics streamingMetrics;
+    private final UpstreamFailover upstreamFailover;
+    private final PromptCacheMetrics promptCacheMetrics;
+    private final ResponseCache responseCache;
+    private final StreamFanOut streamFanOut;
+    private final Counter parsedFrames;
+    private final Counter skippedFrames;
+    private final Counter immediateFlushes;
+    private final Counter coalescedFlushes;
+    private final SimpleAsyncTaskExecutor relayExecutor;
 
     /**
      * 建構子
      *
-     * <p>重要：使用 Spring 自動配置的 {@code RestClient.Builder} 來建立 {@code RestClient}，
-     * 這樣才能自動啟用 Tracing 功能（Trace Context 傳播、子 Span 建立）。
+     * <p>使用共用的 {@code anthropicRestClient}（見 {@link io.github.samzhu.gate.config.UpstreamHttpClientConfig}）：
+     * 由 Spring 自動配置的 {@code RestClient.Builder} 建立（Tracing 自動傳播），並使用統一配置的上游連線池。
      *
-     * @param anthropicProperties Anthropic API 配置
      * @param usageEventPublisher 用量事件發布器
-     * @param objectMapper JSON 物件映射器
-     * @param restClientBuilder Spring 自動配置的 RestClient.Builder（已包含 Tracing instrumentation）
+     * @param anthropicRestClient 共用的 Anthropic API RestClient
      * @param tracer Micrometer Tracer
+     * @param meterRegistry Micrometer 指標註冊表
+     * @param streamingMetrics 串流延遲指標
+     * @param upstreamFailover 429 / 529 換 Key 重試
+     * @param promptCacheMetrics prompt cache 命中指標
+     * @param responseCache {@code temperature: 0} 回應快取
+     * @param streamFanOut 相同串流請求的 fan-out
      * @see <a href="https://docs.spring.io/spring-boot/reference/actuator/tracing.html">Spring Boot Tracing</a>
      */
     public StreamingProxyHandler(
-            AnthropicProperties anthropicProperties,
             UsageEventPublisher usageEventPublisher,
-            ObjectMapper objectMapper,
-            RestClient.Builder restClientBuilder,
-            Tracer tracer) {
+            RestClient anthropicRestClient,
+            Tracer tracer,
+            MeterRegistry meterRegistry,
+            StreamingMetrics streamingMetrics,
+            UpstreamFailover upstreamFailover,
+            PromptCacheMetrics promptCacheMetrics,
+            ResponseCache responseCache,
+            StreamFanOut streamFanOut) {
         this.usageEventPublisher = usageEventPublisher;
-        this.objectMapper = objectMapper;
         this.tracer = tracer;
-        // 使用 Spring 自動配置的 Builder，確保 Tracing 自動傳播
-        this.restClient = restClientBuilder
-            .baseUrl(anthropicProperties.baseUrl())
-            .build();
+        this.streamingMetrics = streamingMetrics;
+        this.upstreamFailover = upstreamFailover;
+        this.promptCacheMetrics = promptCacheMetrics;
+        this.responseCache = responseCache;
+        this.streamFanOut = streamFanOut;
+        this.parsedFrames = Counter.builder("gate.sse.frames")
+            .description("SSE frames fully deserialized for usage extraction")
+            .tag("outcome", "parsed")
+            .register(meterRegistry);
+        this.skippedFrames = Counter.builder("gate.sse.frames")
+            .description("SSE frames relayed without JSON parsing")
+            .tag("outcome", "skipped")
+            .register(meterRegistry);
+        this.immediateFlushes = Counter.builder("gate.sse.flushes")
+            .description("Flushes of SSE bytes to the client")
+            .tag("mode", "immediate")
+            .register(meterRegistry);
+        this.coalescedFlushes = Counter.builder("gate.sse.flushes")
+            .description("Flushes of SSE bytes to the client")
+            .tag("mode", "coalesced")
+            .register(meterRegistry);
+        // 轉發迴圈使用 Virtual Thread，並傳播 Trace Context 到新執行緒
+        this.relayExecutor = new SimpleAsyncTaskExecutor("sse-relay-");
+        this.relayExecutor.setVirtualThreads(true);
+        this.relayExecutor.setTaskDecorator(new ContextPropagatingTaskDecorator());
+        this.restClient = anthropicRestClient;
     }
 
     /**
      * 處理串流請求，返回 ServerResponse
      *
-     * @param requestBody      請求體
-     * @param apiKey           Anthropic API Key
+     * @param requestBody      請求體（送出上游後釋放，串流結束時 complete）
+     * @param envelope         請求 envelope（已由路由解析，不再重複解析請求體）
+     * @param apiKeyLease      API Key 租約（串流結束時釋放）
      * @param subject          用戶識別碼
-     * @param keyAlias         API Key 別名
      * @param anthropicHeaders 所有 anthropic-* headers（透明轉發）
-     * @return ServerResponse with SSE
+     * @param coalescing       SSE 寫入合併選項，null 表示逐 frame flush
+     * @param responseCacheKey 回應快取 key，null 表示不可快取
+     * @param fanOut           共用給相同請求的上游串流（fan-out 領頭），null 表示不共用
+     * @param requestStartNanos Gateway 收到請求的時間（{@link System#nanoTime()}，{@code gate.stream.ttft} 的起點）
+     * @return ServerResponse with SSE（text/event-stream，由 write function 直接寫入原始位元組）
      */
-    public ServerResponse handleStreaming(String requestBody, String apiKey, String subject,
-                                           String keyAlias, Map<String, String> anthropicHeaders) {
-        if (apiKey == null) {
+    public ServerResponse handleStreaming(ProxyRequestBody requestBody, RequestEnvelope envelope,
+                                           ApiKeyLease apiKeyLease, String subject,
+                                           Map<String, String> anthropicHeaders, SseCoalescing coalescing,
+                                           String responseCacheKey, StreamFanOut.Membership fanOut,
+                                           long requestStartNanos) {
+        if (apiKeyLease == null) {
+            requestBody.complete();
+            if (fanOut != null) {
+                fanOut.broadcast().finish(false);
+            }
             return ServerResponse.status(500)
                 .body("{\"type\":\"error\",\"error\":{\"type\":\"api_error\",\"message\":\"No API key available\"}}");
         }
 
         String traceId = getCurrentTraceId();
+        StreamLatencyRecorder latencyRecorder = streamingMetrics.newRecorder(requestStartNanos);
 
-        return ServerResponse.sse(sseBuilder -> {
-            processStream(sseBuilder, requestBody, apiKey, subject, keyAlias, traceId, anthropicHeaders);
-        });
+        if (fanOut != null) {
+            // 上游讀取不寫給任何客戶端；領頭的客戶端與其他訂閱者一樣從廣播緩衝區讀取
+            relayExecutor.execute(() -> pumpUpstream(requestBody, envelope, apiKeyLease, subject, traceId,
+                anthropicHeaders, responseCacheKey, fanOut.broadcast(), latencyRecorder));
+            return subscriberResponse(fanOut.subscription(), envelope, subject, traceId, coalescing, true);
+        }
+
+        return ServerResponse.ok()
+            .contentType(MediaType.TEXT_EVENT_STREAM)
+            .cacheControl(CacheControl.noCache())
+            .build((servletRequest, servletResponse) -> {
+                // 啟動 AsyncContext：逾時設為 0（不逾時），串流長度由上游 read-timeout 限制
+                AsyncContext asyncContext = servletRequest.startAsync(servletRequest, servletResponse);
+                asyncContext.setTimeout(0);
+                ClientDisconnectListener disconnectListener = new ClientDisconnectListener(asyncContext);
+                asyncContext.addListener(disconnectListener);
+
+                relayExecutor.execute(() -> {
+                    try {
+                        processStream(servletResponse, requestBody, envelope, apiKeyLease, subject, traceId,
+                            anthropicHeaders, coalescing, responseCacheKey, disconnectListener, latencyRecorder);
+                    } finally {
+                        disconnectListener.complete();
+                    }
+                });
+                return null;
+            });
     }
 
-    private void processStream(ServerResponse.SseBuilder sseBuilder, String requestBody, String apiKey,
-                               String subject, String keyAlias, String traceId,
-                               Map<String, String> anthropicHeaders) {
-        TokenExtractor tokenExtractor = new TokenExtractor();
-        SseParser sseParser = new SseParser(objectMapper);
+    private void processStream(HttpServletResponse servletResponse, ProxyRequestBody requestBody,
+                               RequestEnvelope envelope, ApiKeyLease apiKeyLease,
+                               String subject, String traceId,
+                               Map<String, String> anthropicHeaders, SseCoalescing coalescing,
+                               String responseCacheKey, ClientDisconnectListener disconnectListener,
+                               StreamLatencyRecorder latencyRecorder) {
+        TokenExtractor tokenExtractor = new TokenExtractor(envelope.model());
+        SseParser sseParser = new SseParser();
+        SseMessageAssembler assembler = responseCacheKey != null ? new SseMessageAssembler() : null;
         final String[] status = {"success"};
         final String[] anthropicRequestId = {null};
+        // 重試換 Key 後，實際服務此請求的 Key 租約
+        final ApiKeyLease[] servingLease = {apiKeyLease};
 
         try {
-            // 建立 RestClient 請求
-            RestClient.RequestBodySpec requestSpec = restClient.post()
-                .uri("/v1/messages")
-                .contentType(MediaType.APPLICATION_JSON)
-                .header("x-api-key", apiKey);
-
-            // 設定預設 anthropic-version（如果客戶端沒有提供）
-            if (!anthropicHeaders.containsKey("anthropic-version")) {
-                requestSpec.header("anthropic-version", "2023-06-01");
-            }
-
-            // 透明轉發所有 anthropic-* headers
-            for (Map.Entry<String, String> entry : anthropicHeaders.entrySet()) {
-                requestSpec.header(entry.getKey(), entry.getValue());
-            }
+            OutputStream clientStream = servletResponse.getOutputStream();
 
             // 使用 exchange() 方法來取得 InputStream，這樣可以處理串流回應
             // exchange() 會自動傳播 Trace Context 並建立子 Span
-            requestSpec.body(requestBody)
-                .exchange((request, response) -> {
+            // 客戶端斷線時 disconnectListener 會中斷此執行緒並關閉上游串流
+            // 429 / 529 在轉發任何位元組之前由 UpstreamFailover 換 Key 重試
+            disconnectListener.upstreamStarted();
+            upstreamFailover.exchange(apiKeyLease,
+                lease -> {
+                    latencyRecorder.upstreamStarted();
+                    return upstreamRequest(lease, requestBody, anthropicHeaders);
+                },
+                (response, lease) -> {
+                    servingLease[0] = lease;
+                    latencyRecorder.servedBy(lease.alias());
+                    // 上游已收到完整請求本體且不再重試：釋放位元組，避免在整個串流期間佔用 heap
+                    requestBody.release();
                     try {
+                        InputStream upstreamBody = response.getBody();
+                        disconnectListener.bindUpstream(upstreamBody);
+
                         // 從回應 header 提取 Anthropic request-id
                         anthropicRequestId[0] = response.getHeaders().getFirst("request-id");
                         HttpStatusCode statusCode = response.getStatusCode();
 
                         if (!statusCode.is2xxSuccessful()) {
-                            try (InputStream errorStream = response.getBody()) {
-                                String errorBody = new String(errorStream.readAllBytes(), StandardCharsets.UTF_8);
+                            try (InputStream errorStream = upstreamBody) {
+                                byte[] errorBody = errorStream.readAllBytes();
                                 log.error("Upstream error: status={}, body={}, anthropicRequestId={}",
-                                    statusCode.value(), errorBody, anthropicRequestId[0]);
-                                sseBuilder.data(errorBody);
-                                sseBuilder.complete();
+                                    statusCode.value(), new String(errorBody, StandardCharsets.UTF_8),
+                                    anthropicRequestId[0]);
+                                clientStream.write(errorFrame(errorBody));
+                                clientStream.flush();
                                 status[0] = "error";
                             }
                             return null;
                         }
 
                         // 處理成功的串流回應
-                        processStreamResponse(response.getBody(), sseBuilder, sseParser, tokenExtractor);
-                        return null;
-                    } catch (AsyncRequestNotUsableException e) {
-                        // 客戶端提前斷開連接
-                        log.warn("Client disconnected during streaming: {} (this is common for long LLM responses)",
-                            e.getMessage());
-                        status[0] = "client_disconnected";
+                        SseFrameWriter frameWriter = coalescing != null
+                            ? SseFrameWriter.coalescing(clientStream, coalescing, coalescedFlushes)
+                            : SseFrameWriter.immediate(clientStream, immediateFlushes);
+                        processStreamResponse(upstreamBody, frameWriter, sseParser, tokenExtractor, assembler,
+                            null, latencyRecorder);
+                        if (assembler != null) {
+                            responseCache.put(responseCacheKey, assembler.toMessage());
+                        }
                         return null;
                     } catch (IOException e) {
-                        if (isClientDisconnectedException(e)) {
+                        if (disconnectListener.isDisconnected() || isClientDisconnectedException(e)) {
                             log.warn("Client disconnected (Broken pipe) during streaming: {}", e.getMessage());
                             status[0] = "client_disconnected";
                         } else {
                             log.error("IO error during streaming: {}", e.getMessage(), e);
                             status[0] = "error";
-                            try {
-                                sseBuilder.error(e);
-                            } catch (Exception ignored) {}
+                            writeErrorEvent(clientStream, e);
                         }
                         return null;
                     }
-                });
+                }, true);
         } catch (Exception e) {
             // 檢查根本原因是否為客戶端斷開
-            if (isClientDisconnectedException(e)) {
+            if (disconnectListener.isDisconnected() || isClientDisconnectedException(e)) {
                 log.warn("Client disconnected during streaming: {}", e.getMessage());
                 status[0] = "client_disconnected";
             } else {
                 log.error("Unexpected error during streaming: {}", e.getMessage(), e);
                 status[0] = "error";
                 try {
-                    sseBuilder.error(e);
+                    writeErrorEvent(servletResponse.getOutputStream(), e);
                 } catch (Exception ignored) {}
             }
         } finally {
-            publishUsageEvent(tokenExtractor, status[0], keyAlias, traceId, anthropicRequestId[0], subject);
+            disconnectListener.upstreamFinished();
+            requestBody.complete();
+            servingLease[0].release();
+            apiKeyLease.release();
+            latencyRecorder.finish(tokenExtractor.getOutputTokens());
+            // 客戶端斷線時仍記錄中止前已取得的用量
+            publishUsageEvent(tokenExtractor, status[0], servingLease[0], traceId, anthropicRequestId[0], subject);
+        }
+    }
+
+    /**
+     * fan-out 領頭的上游讀取（不寫給任何客戶端）
+     *
+     * <p>送出上游請求（429 / 529 同樣換 Key 重試），把每個 frame 放入廣播緩衝區並提取用量；
+     * 所有客戶端（包含領頭自己的客戶端）都以 {@link SseBroadcast.Subscription} 在各自的執行緒讀取，
+     * 慢速客戶端不會拖慢上游讀取。上游錯誤回應包成單一 frame 放入緩衝區。
+     *
+     * <p>最後一個訂閱者離開時 {@link SseBroadcast} 中止上游請求，用量事件以 {@code client_disconnected} 記錄。
+     *
+     * <p>上游呼叫的用量事件與 prompt cache 指標在此以領頭的 subject 記錄一次；延遲指標只記錄上游 TTFT、
+     * inter-token 間隔與 tokens/sec（沒有單一客戶端可量測客戶端 TTFT）。
+     */
+    private void pumpUpstream(ProxyRequestBody requestBody, RequestEnvelope envelope, ApiKeyLease apiKeyLease,
+                              String subject, String traceId, Map<String, String> anthropicHeaders,
+                              String responseCacheKey, SseBroadcast broadcast,
+                              StreamLatencyRecorder latencyRecorder) {
+        TokenExtractor tokenExtractor = new TokenExtractor(envelope.model());
+        SseMessageAssembler assembler = responseCacheKey != null ? new SseMessageAssembler() : null;
+        final String[] status = {"success"};
+        final String[] anthropicRequestId = {null};
+        // 上游回應是否已完整放入廣播緩衝區（訂閱者據此判斷串流是否正常結束）
+        final boolean[] broadcastComplete = {false};
+        final ApiKeyLease[] servingLease = {apiKeyLease};
+
+        try {
+            // 所有訂閱者離開時 broadcast 會中斷此執行緒並中止上游串流
+            broadcast.upstreamStarted();
+            upstreamFailover.exchange(apiKeyLease,
+                lease -> {
+                    latencyRecorder.upstreamStarted();
+                    return upstreamRequest(lease, requestBody, anthropicHeaders);
+                },
+                (response, lease) -> {
+                    servingLease[0] = lease;
+                    latencyRecorder.servedBy(lease.alias());
+                    requestBody.release();
+                    InputStream upstreamBody = response.getBody();
+                    broadcast.bindUpstream(upstreamBody);
+
+                    anthropicRequestId[0] = response.getHeaders().getFirst("request-id");
+                    HttpStatusCode statusCode = response.getStatusCode();
+                    broadcast.upstreamResponded(lease.alias(), anthropicRequestId[0], statusCode.is2xxSuccessful());
+
+                    if (!statusCode.is2xxSuccessful()) {
+                        try (InputStream errorStream = upstreamBody) {
+                            byte[] errorBody = errorStream.readAllBytes();
+                            log.error("Upstream error: status={}, body={}, anthropicRequestId={}",
+                                statusCode.value(), new String(errorBody, StandardCharsets.UTF_8),
+                                anthropicRequestId[0]);
+                            byte[] frame = errorFrame(errorBody);
+                            broadcast.publish(frame, 0, frame.length);
+                            broadcastComplete[0] = true;
+                            status[0] = "error";
+                        }
+                        return null;
+                    }
+
+                    processStreamResponse(upstreamBody, null, new SseParser(), tokenExtractor, assembler,
+                        broadcast, latencyRecorder);
+                    broadcastComplete[0] = true;
+                    if (assembler != null) {
+                        responseCache.put(responseCacheKey, assembler.toMessage());
+                    }
+                    return null;
+                }, true);
+        } catch (Exception e) {
+            if (broadcast.abandoned()) {
+                log.warn("All clients of shared stream disconnected, upstream aborted: {}", e.getMessage());
+                status[0] = "client_disconnected";
+            } else {
+                log.error("Error reading shared upstream stream: {}", e.getMessage(), e);
+                status[0] = "error";
+            }
+        } finally {
+            broadcast.finish(broadcastComplete[0]);
+            broadcast.upstreamFinished();
+            requestBody.complete();
+            servingLease[0].release();
+            apiKeyLease.release();
+            latencyRecorder.finish(tokenExtractor.getOutputTokens());
+            publishUsageEvent(tokenExtractor, status[0], servingLease[0], traceId, anthropicRequestId[0], subject);
         }
     }
 
+    /**
+     * 建立上游請求（每次嘗試依租約帶入對應的 API Key）
+     */
+    private RestClient.RequestHeadersSpec<?> upstreamRequest(ApiKeyLease lease, ProxyRequestBody requestBody,
+                                                             Map<String, String> anthropicHeaders) {
+        RestClient.RequestBodySpec requestSpec = restClient.post()
+            .uri("/v1/messages")
+            .contentType(MediaType.APPLICATION_JSON)
+            .header("x-api-key", lease.key());
+
+        // 設定預設 anthropic-version（如果客戶端沒有提供）
+        if (!anthropicHeaders.containsKey("anthropic-version")) {
+            requestSpec.header("anthropic-version", "2023-06-01");
+        }
+
+        // 透明轉發所有 anthropic-* headers
+        for (Map.Entry<String, String> entry : anthropicHeaders.entrySet()) {
+            requestSpec.header(entry.getKey(), entry.getValue());
+        }
+
+        return requestSpec.contentLength(requestBody.length()).body(requestBody);
+    }
+
     /**
      * 處理串流回應的內部方法
+     *
+     * <p>逐 frame 將上游原始位元組寫回客戶端並 flush，之後才掃描 {@code data:} 內容提取用量，
+     * 確保用量解析不會延後事件送達。只有 {@link SseParser#requiresParsing} 判定的事件會被解析。
+     *
+     * <p>{@code content_block_delta} 在寫入前後各取一次時間戳：讀到時記錄上游 TTFT 與 inter-token 間隔，
+     * flush 之後記錄客戶端 TTFT（合併模式下第一個 delta 仍會立即送出）。
+     *
+     * <p>只有 {@code content_block_delta} 可被合併延遲，其他事件一律立即送出。
+     *
+     * <p>{@code assembler} 不為 null 時（可快取的請求），每個事件的 data 也交給它組回完整 Message。
+     *
+     * <p>{@code broadcast} 不為 null 時（fan-out 上游讀取），每個 frame 只放入廣播緩衝區：
+     * {@code frameWriter} 為 null，不寫給任何客戶端，也不記錄客戶端 TTFT。
+     *
+     * <p>訂閱者以同一個方法轉發（{@code inputStream} 為 {@link SseBroadcast.Subscription}），
+     * 不記錄延遲指標（{@code latencyRecorder} 為 null）；{@code gate.sse.frames} 只計入上游讀取，
+     * 共用的上游串流不因訂閱者數量重複計數。
      */
-    private void processStreamResponse(InputStream inputStream, ServerResponse.SseBuilder sseBuilder,
-                                        SseParser sseParser, TokenExtractor tokenExtractor) throws IOException {
-        try (BufferedReader reader = new BufferedReader(
-                new InputStreamReader(inputStream, StandardCharsets.UTF_8))) {
-
-            String line;
-            StringBuilder eventBuilder = new StringBuilder();
-            String currentEventType = null;
-
-            while ((line = reader.readLine()) != null) {
-                if (line.isEmpty()) {
-                    // 空行表示事件結束，發送累積的事件
-                    if (eventBuilder.length() > 0) {
-                        String eventData = eventBuilder.toString();
-
-                        // 解析並提取 Token 用量
-                        String dataContent = sseParser.extractData(eventData);
-                        if (dataContent != null) {
-                            var streamEvent = sseParser.parse(dataContent);
-                            if (streamEvent != null) {
-                                tokenExtractor.processEvent(streamEvent);
-                            }
+    private void processStreamResponse(InputStream inputStream, SseFrameWriter frameWriter,
+                                        SseParser sseParser, TokenExtractor tokenExtractor,
+                                        SseMessageAssembler assembler, SseBroadcast broadcast,
+                                        StreamLatencyRecorder latencyRecorder) throws IOException {
+        // frameWriter 為 null 時（fan-out 上游讀取）try-with-resources 不會關閉它
+        try (inputStream; frameWriter) {
+            try {
+                SseFrameReader frameReader = new SseFrameReader(inputStream);
+                boolean upstream = !(inputStream instanceof SseBroadcast.Subscription);
+
+                while (frameReader.next()) {
+                    if (broadcast != null) {
+                        broadcast.publish(frameReader.buffer(), frameReader.frameOffset(), frameReader.frameLength());
+                    }
+
+                    boolean contentDelta = sseParser.isContentDelta(frameReader);
+                    if (contentDelta && latencyRecorder != null) {
+                        latencyRecorder.upstreamDelta(tokenExtractor.getModel());
+                    }
+
+                    // 轉發原始事件給客戶端（不解碼、不重新編碼）
+                    if (frameWriter != null) {
+                        frameWriter.write(frameReader.buffer(), frameReader.frameOffset(), frameReader.frameLength(),
+                            contentDelta);
+                    }
+
+                    if (assembler != null && frameReader.hasData()) {
+                        assembler.accept(frameReader.dataBuffer(), frameReader.dataOffset(), frameReader.dataLength());
+                    }
+
+                    if (contentDelta) {
+                        if (latencyRecorder != null && frameWriter != null) {
+                            latencyRecorder.clientDelta();
+                        }
+                        if (upstream) {
+                            skippedFrames.increment();
                         }
+                        continue;
+                    }
 
-                        // 轉發原始事件給客戶端
-                        if (currentEventType != null && dataContent != null) {
-                            sseBuilder.event(currentEventType);
-                            sseBuilder.data(dataContent);
-                        } else if (dataContent != null) {
-                            sseBuilder.data(dataContent);
+                    // 只解析帶有用量資訊的事件，其餘 frame 不經過 Jackson
+                    if (!sseParser.requiresParsing(frameReader)) {
+                        if (upstream && frameReader.hasData()) {
+                            skippedFrames.increment();
                         }
+                        continue;
+                    }
 
-                        eventBuilder.setLength(0);
-                        currentEventType = null;
+                    // 解析並提取 Token 用量（直接掃描 frame 緩衝區，不建立 String）
+                    if (upstream) {
+                        parsedFrames.increment();
                     }
-                    continue;
+                    tokenExtractor.processEvent(sseParser.parse(frameReader));
                 }
+            } catch (IOException | RuntimeException e) {
+                // 中止上游連線：關閉前不讀完剩餘串流（HttpClient 預設會 drain 以重用連線）
+                UpstreamConnections.abort(inputStream);
+                throw e;
+            }
+        }
+    }
+
+    /**
+     * 以共用的上游串流回應（fan-out 訂閱者）
+     *
+     * <p>不取得 API Key、不送往上游：從 {@link SseBroadcast} 先重播已產生的事件，再接續即時事件。
+     * 轉發在自己的 Virtual Thread 上執行，客戶端斷線時只結束此訂閱。
+     *
+     * <p>用量事件帶有 {@code response_source: coalesced}，{@code key_alias} 與 {@code anthropic_request_id}
+     * 為領頭的上游請求；不計入延遲與 prompt cache 指標（已由領頭的上游讀取記錄）。
+     *
+     * <p>領頭自己的客戶端也以同樣的方式轉發（見 {@link #handleStreaming}），但不另外發送用量事件。
+     *
+     * @param subscription 訂閱者的讀取端
+     * @param envelope     請求 envelope
+     * @param subject      用戶識別碼
+     * @param coalescing   SSE 寫入合併選項，null 表示逐 frame flush
+     * @return ServerResponse with SSE
+     */
+    public ServerResponse handleSubscriber(SseBroadcast.Subscription subscription, RequestEnvelope envelope,
+                                           String subject, SseCoalescing coalescing) {
+        return subscriberResponse(subscription, envelope, subject, getCurrentTraceId(), coalescing, false);
+    }
+
+    private ServerResponse subscriberResponse(SseBroadcast.Subscription subscription, RequestEnvelope envelope,
+                                              String subject, String traceId, SseCoalescing coalescing,
+                                              boolean leader) {
+        return ServerResponse.ok()
+            .contentType(MediaType.TEXT_EVENT_STREAM)
+            .cacheControl(CacheControl.noCache())
+            .build((servletRequest, servletResponse) -> {
+                AsyncContext asyncContext = servletRequest.startAsync(servletRequest, servletResponse);
+                asyncContext.setTimeout(0);
+                ClientDisconnectListener disconnectListener = new ClientDisconnectListener(asyncContext);
+                asyncContext.addListener(disconnectListener);
+
+                relayExecutor.execute(() -> {
+                    try {
+                        relaySubscription(servletResponse, subscription, envelope, subject, traceId, coalescing,
+                            disconnectListener, leader);
+                    } finally {
+                        disconnectListener.complete();
+                    }
+                });
+                return null;
+            });
+    }
 
-                if (line.startsWith("event:")) {
-                    currentEventType = line.substring(6).trim();
-                } else if (line.startsWith("data:")) {
-                    if (eventBuilder.length() > 0) {
-                        eventBuilder.append("\n");
+    private void relaySubscription(HttpServletResponse servletResponse, SseBroadcast.Subscription subscription,
+                                   RequestEnvelope envelope, String subject, String traceId,
+                                   SseCoalescing coalescing, ClientDisconnectListener disconnectListener,
+                                   boolean leader) {
+        TokenExtractor tokenExtractor = new TokenExtractor(envelope.model());
+        String status = "success";
+
+        try {
+            OutputStream clientStream = servletResponse.getOutputStream();
+            // 客戶端斷線時 disconnectListener 關閉訂閱，喚醒等待中的讀取
+            disconnectListener.upstreamStarted();
+            disconnectListener.bindUpstream(subscription);
+            SseFrameWriter frameWriter = coalescing != null
+                ? SseFrameWriter.coalescing(clientStream, coalescing, coalescedFlushes)
+                : SseFrameWriter.immediate(clientStream, immediateFlushes);
+            try {
+                processStreamResponse(subscription, frameWriter, new SseParser(), tokenExtractor, null, null, null);
+                if (subscription.upstreamError()) {
+                    status = "error";
+                }
+            } catch (IOException e) {
+                if (disconnectListener.isDisconnected() || isClientDisconnectedException(e)) {
+                    log.warn("Client disconnected during shared streaming: {}", e.getMessage());
+                    status = "client_disconnected";
+                } else {
+                    if (e instanceof SseBroadcast.LaggedException) {
+                        streamFanOut.recordLagged();
                     }
-                    eventBuilder.append(line);
+                    log.warn("Shared stream interrupted: {}", e.getMessage());
+                    status = "error";
+                    writeErrorEvent(clientStream, e);
                 }
             }
+        } catch (Exception e) {
+            if (disconnectListener.isDisconnected() || isClientDisconnectedException(e)) {
+                log.warn("Client disconnected during shared streaming: {}", e.getMessage());
+                status = "client_disconnected";
+            } else {
+                log.error("Unexpected error during shared streaming: {}", e.getMessage(), e);
+                status = "error";
+                try {
+                    writeErrorEvent(servletResponse.getOutputStream(), e);
+                } catch (Exception ignored) {}
+            }
+        } finally {
+            disconnectListener.upstreamFinished();
+            // 最後一個訂閱者離開時 SseBroadcast 中止上游請求
+            subscription.close();
+            // 領頭的用量已由上游讀取記錄（pumpUpstream）
+            if (!leader) {
+                publishCoalescedUsageEvent(tokenExtractor, status, subscription, traceId, subject);
+            }
+        }
+    }
 
-            sseBuilder.complete();
+    private void publishCoalescedUsageEvent(TokenExtractor tokenExtractor, String status,
+                                            SseBroadcast.Subscription subscription, String traceId,
+                                            String subject) {
+        UsageEventData eventData = tokenExtractor.buildUsageEventData(status, subscription.keyAlias(), traceId,
+            subscription.anthropicRequestId(), subject, UsageEventData.RESPONSE_SOURCE_COALESCED);
+        usageEventPublisher.publish(eventData);
+        log.info("Token usage: subject={}, inputTokens={}, outputTokens={}, model={}, latencyMs={}, source={}",
+            subject,
+            eventData.inputTokens(),
+            eventData.outputTokens(),
+            eventData.model(),
+            eventData.latencyMs(),
+            eventData.responseSource());
+    }
+
+    /**
+     * 上游錯誤回應本體包成單一 SSE frame，每一行各自一個 {@code data:} 欄位
+     *
+     * <p>錯誤本體可能是多行內容（格式化的 JSON、中間代理的 HTML 502 頁面），
+     * 直接寫入會讓空行提前結束 frame；與 {@code SseBuilder.data(String)} 相同，
+     * 以 CR、LF 或 CRLF 分行，結尾的換行不另產生空的 {@code data:} 欄位。
+     */
+    private static byte[] errorFrame(byte[] errorBody) {
+        ByteArrayOutputStream frame = new ByteArrayOutputStream(errorBody.length + 16);
+        int end = errorBody.length;
+        if (end > 0 && errorBody[end - 1] == '\n') {
+            end--;
+        }
+        if (end > 0 && errorBody[end - 1] == '\r') {
+            end--;
+        }
+        int lineStart = 0;
+        for (int i = 0; i <= end; i++) {
+            if (i == end || errorBody[i] == '\n' || errorBody[i] == '\r') {
+                frame.write(DATA_FIELD, 0, DATA_FIELD.length);
+                frame.write(errorBody, lineStart, i - lineStart);
+                frame.write('\n');
+                if (i < end && errorBody[i] == '\r' && i + 1 < end && errorBody[i + 1] == '\n') {
+                    i++;
+                }
+                lineStart = i + 1;
+            }
         }
+        frame.write('\n');
+        return frame.toByteArray();
+    }
+
+    /**
+     * 串流中途發生錯誤時，以 Anthropic 相容的 {@code error} 事件通知客戶端
+     */
+    private void writeErrorEvent(OutputStream clientStream, Exception e) {
+        try {
+            clientStream.write(SseMessageReplay.error(
+                e.getMessage() != null ? e.getMessage() : "Stream interrupted"));
+            clientStream.flush();
+        } catch (Exception ignored) {}
     }
 
     private void publishUsageEvent(TokenExtractor tokenExtractor, String status,
-                                    String keyAlias, String traceId,
+                                    ApiKeyLease servingLease, String traceId,
                                     String anthropicRequestId, String subject) {
+        String keyAlias = servingLease.alias();
         UsageEventData eventData = tokenExtractor.buildUsageEventData(status, keyAlias, traceId, anthropicRequestId, subject);
         usageEventPublisher.publish(eventData);
+        promptCacheMetrics.record(servingLease.routing(), eventData);
 
         // 記錄 Token 用量 - 用於監控和計費追蹤
         log.info("Token usage: subject={}, inputTokens={}, outputTokens={}, model={}, latencyMs={}",
@@ -285,6 +704,8 @@ public class StreamingProxyHandler {
 
     /**
      * 檢查異常是否為客戶端斷開連接導致
+     *
+     * <p>備援判斷：主要由 {@link ClientDisconnectListener} 主動偵測，此方法處理寫入時才發現斷線的情況。
      * <p>常見情況：
      * <ul>
      *   <li>Broken pipe - 客戶端關閉連接後伺服器嘗試寫入</li>
@@ -0,0 +1,48 @@
+package io.github.samzhu.gate.handler;
+
+import java.io.IOException;
+import java.io.InputStream;
+
+import org.apache.hc.core5.http.io.EofSensorInputStream;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * 上游連線工具
+ *
+ * <p>Apache HttpClient 的回應串流在 {@code close()} 時會把剩餘本體讀完，讓連線可以回到連線池重用。
+ * 對於可能還要生成數分鐘的串流，這等於在客戶端離開後繼續消耗上游 token 與連線。
+ * {@link #abort(InputStream)} 改為直接中止連線（連線不回收），立即停止上游生成。
+ *
+ * <p>HTTP/2 傳輸（JDK HttpClient）的回應串流在 {@code close()} 時即取消訂閱並 reset 該 stream，
+ * 不影響共用同一條連線的其他串流。
+ *
+ * @see ClientDisconnectListener
+ */
+final class UpstreamConnections {
+
+    private static final Logger log = LoggerFactory.getLogger(UpstreamConnections.class);
+
+    private UpstreamConnections() {
+    }
+
+    /**
+     * 中止上游回應串流（不 drain 剩餘本體）
+     *
+     * @param upstreamBody 上游回應串流
+     */
+    static void abort(InputStream upstreamBody) {
+        if (upstreamBody == null) {
+            return;
+        }
+        try {
+            if (upstreamBody instanceof EofSensorInputStream sensorStream) {
+                sensorStream.abort();
+            } else {
+                upstreamBody.close();
+            }
+        } catch (IOException e) {
+            log.debug("Failed to abort upstream body: {}", e.getMessage());
+        }
+    }
+}
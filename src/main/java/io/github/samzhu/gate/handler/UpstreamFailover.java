@@ -0,0 +1,258 @@
+package io.github.samzhu.gate.handler;
+
+import java.io.IOException;
+import java.time.Duration;
+import java.time.ZonedDateTime;
+import java.time.format.DateTimeFormatter;
+import java.time.format.DateTimeParseException;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.function.Function;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.http.client.ClientHttpResponse;
+import org.springframework.stereotype.Component;
+import org.springframework.web.client.ResourceAccessException;
+import org.springframework.web.client.RestClient;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.DistributionSummary;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+
+import io.github.samzhu.gate.config.AnthropicProperties;
+import io.github.samzhu.gate.config.UpstreamRetryConfig;
+import io.github.samzhu.gate.service.ApiKeyLease;
+import io.github.samzhu.gate.service.ApiKeyRotationService;
+
+/**
+ * 上游 429 / 529 換 Key 重試
+ *
+ * <p>上游回應 {@code 429}（rate limit）或 {@code 529}（overloaded）時，回應狀態碼在任何位元組送給客戶端之前就已確定，
+ * 此時可以安全地以另一把 Key 重送請求（{@link ProxyRequestBody} 在釋放前可重複寫入）：
+ * <ul>
+ *   <li>429 - 該 Key 在 {@code retry-after} 內不再分配（{@link ApiKeyLease#coolDown}），有其他 Key 時立即換 Key 重試</li>
+ *   <li>529 - 上游整體過載，依 {@code retry-after}（或指數退避）等待後換 Key 重試</li>
+ *   <li>等待時間超過 {@code max-retry-after}、達到 {@code max-attempts} 或全域重試預算耗盡時，直接回傳上游錯誤</li>
+ * </ul>
+ *
+ * <p>重試判斷在交給 handler 的 response callback 之前完成；handler 一旦開始轉發（SSE 位元組已送出），
+ * 就不會再重試。
+ *
+ * <p>租約：被換掉的 Key 租約由此處釋放；最後一次嘗試的租約交給 handler，由 handler 在請求結束時釋放。
+ * 發生例外時此處釋放當次租約。
+ *
+ * <p>指標：
+ * <ul>
+ *   <li>{@code gate.upstream.attempts} - 每個請求的上游嘗試次數</li>
+ *   <li>{@code gate.upstream.retries{status, outcome}} - 429 / 529 的處理結果
+ *       （{@code retried}、{@code max_attempts}、{@code retry_after_too_long}、{@code budget_exhausted}）</li>
+ *   <li>{@code gate.upstream.retry.budget} - 目前可用的重試次數</li>
+ * </ul>
+ *
+ * @see UpstreamRetryConfig
+ * @see RetryBudget
+ */
+@Component
+public class UpstreamFailover {
+
+    private static final Logger log = LoggerFactory.getLogger(UpstreamFailover.class);
+
+    private static final int TOO_MANY_REQUESTS = 429;
+    private static final int OVERLOADED = 529;
+    private static final Duration INITIAL_BACKOFF = Duration.ofMillis(500);
+    private static final Duration DEFAULT_COOL_DOWN = Duration.ofSeconds(1);
+
+    private final ApiKeyRotationService apiKeyRotationService;
+    private final UpstreamRetryConfig retryConfig;
+    private final RetryBudget retryBudget;
+    private final MeterRegistry meterRegistry;
+    private final DistributionSummary attempts;
+
+    public UpstreamFailover(
+            ApiKeyRotationService apiKeyRotationService,
+            AnthropicProperties anthropicProperties,
+            MeterRegistry meterRegistry) {
+        this.apiKeyRotationService = apiKeyRotationService;
+        this.retryConfig = anthropicProperties.retry();
+        this.retryBudget = new RetryBudget(retryConfig.budgetRatio(), retryConfig.budgetReserve());
+        this.meterRegistry = meterRegistry;
+        this.attempts = DistributionSummary.builder("gate.upstream.attempts")
+            .description("Upstream attempts per proxied request")
+            .baseUnit("attempts")
+            .register(meterRegistry);
+        Gauge.builder("gate.upstream.retry.budget", retryBudget, RetryBudget::available)
+            .description("Retries currently available in the global retry budget")
+            .register(meterRegistry);
+    }
+
+    /**
+     * 上游回應處理（最後一次嘗試）
+     *
+     * @param <T> 回傳型別
+     */
+    @FunctionalInterface
+    interface ResponseHandler<T> {
+
+        /**
+         * @param response 上游回應
+         * @param lease    實際服務此請求的 Key 租約（請求結束時由 handler 釋放）
+         */
+        T handle(ClientHttpResponse response, ApiKeyLease lease) throws IOException;
+    }
+
+    /**
+     * 送出上游請求，429 / 529 時換 Key 重試
+     *
+     * @param initialLease 第一次嘗試使用的 Key 租約
+     * @param request      依租約建立請求（每次嘗試重新建立，帶入對應的 {@code x-api-key}）
+     * @param handler      非重試回應的處理
+     * @param close        是否在 handler 返回後關閉回應（同 {@link RestClient.RequestHeadersSpec#exchange}）
+     */
+    <T> T exchange(ApiKeyLease initialLease,
+                   Function<ApiKeyLease, RestClient.RequestHeadersSpec<?>> request,
+                   ResponseHandler<T> handler, boolean close) {
+        retryBudget.deposit();
+        ApiKeyLease lease = initialLease;
+        int attempt = 0;
+        try {
+            while (true) {
+                attempt++;
+                ApiKeyLease current = lease;
+                int currentAttempt = attempt;
+                Object result = request.apply(current).exchange((clientRequest, response) -> {
+                    current.recordStatus(response.getStatusCode());
+                    current.recordRateLimits(response.getHeaders());
+                    Retry retry = retryFor(response, current, currentAttempt);
+                    if (retry != null) {
+                        response.close();
+                        return retry;
+                    }
+                    return handler.handle(response, current);
+                }, close);
+
+                if (result instanceof Retry retry) {
+                    current.release();
+                    lease = retry.lease();
+                    pause(retry.delay());
+                    continue;
+                }
+                @SuppressWarnings("unchecked")
+                T value = (T) result;
+                return value;
+            }
+        } catch (RuntimeException e) {
+            lease.release();
+            throw e;
+        } finally {
+            attempts.record(attempt);
+        }
+    }
+
+    /**
+     * 判斷是否重試；需要重試時取得下一把 Key 的租約
+     *
+     * @return 重試資訊，不重試時為 null
+     */
+    private Retry retryFor(ClientHttpResponse response, ApiKeyLease current, int attempt) throws IOException {
+        int status = response.getStatusCode().value();
+        if (status != TOO_MANY_REQUESTS && status != OVERLOADED) {
+            return null;
+        }
+        if (attempt >= retryConfig.maxAttempts()) {
+            countRetry(status, "max_attempts");
+            return null;
+        }
+
+        Duration retryAfter = parseRetryAfter(response.getHeaders().getFirst("retry-after"));
+        if (status == TOO_MANY_REQUESTS) {
+            current.coolDown(retryAfter != null ? retryAfter : DEFAULT_COOL_DOWN);
+        }
+
+        ApiKeyLease next = apiKeyRotationService.acquireOther(current.streaming(), current.alias());
+        // 429 是單一 Key 的限制，換 Key 後不需等待；529 與只剩同一把 Key 時依 retry-after 等待
+        Duration delay = next != null && status == TOO_MANY_REQUESTS
+            ? Duration.ZERO
+            : (retryAfter != null ? retryAfter : backoff(attempt));
+
+        if (delay.compareTo(retryConfig.maxRetryAfter()) > 0) {
+            releaseIfPresent(next);
+            countRetry(status, "retry_after_too_long");
+            return null;
+        }
+        if (!retryBudget.tryWithdraw()) {
+            releaseIfPresent(next);
+            countRetry(status, "budget_exhausted");
+            return null;
+        }
+        if (next == null) {
+            next = apiKeyRotationService.acquire(current.streaming());
+        }
+
+        countRetry(status, "retried");
+        log.warn("Upstream returned {} on key {}, retrying on key {} in {} ms (attempt {}/{})",
+            status, current.alias(), next.alias(), delay.toMillis(), attempt + 1, retryConfig.maxAttempts());
+        return new Retry(next, delay);
+    }
+
+    private void countRetry(int status, String outcome) {
+        Counter.builder("gate.upstream.retries")
+            .description("Upstream 429/529 responses by retry outcome")
+            .tag("status", String.valueOf(status))
+            .tag("outcome", outcome)
+            .register(meterRegistry)
+            .increment();
+    }
+
+    private static void releaseIfPresent(ApiKeyLease lease) {
+        if (lease != null) {
+            lease.release();
+        }
+    }
+
+    /**
+     * 指數退避（含 jitter）：500ms、1s、2s...
+     */
+    private static Duration backoff(int attempt) {
+        long base = INITIAL_BACKOFF.toMillis() << Math.min(attempt - 1, 10);
+        return Duration.ofMillis(ThreadLocalRandom.current().nextLong(base / 2, base + 1));
+    }
+
+    /**
+     * 解析 {@code retry-after}（秒數或 HTTP-date）
+     */
+    static Duration parseRetryAfter(String value) {
+        if (value == null || value.isBlank()) {
+            return null;
+        }
+        try {
+            return Duration.ofSeconds(Math.max(0, Long.parseLong(value.trim())));
+        } catch (NumberFormatException e) {
+            try {
+                ZonedDateTime at = ZonedDateTime.parse(value.trim(), DateTimeFormatter.RFC_1123_DATE_TIME);
+                Duration delay = Duration.between(ZonedDateTime.now(at.getZone()), at);
+                return delay.isNegative() ? Duration.ZERO : delay;
+            } catch (DateTimeParseException ignored) {
+                return null;
+            }
+        }
+    }
+
+    /**
+     * 重試前等待（客戶端斷線時 {@link ClientDisconnectListener} 會中斷此執行緒）
+     */
+    private static void pause(Duration delay) {
+        if (delay.isZero()) {
+            return;
+        }
+        try {
+            Thread.sleep(delay);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new ResourceAccessException("Interrupted while waiting to retry upstream request");
+        }
+    }
+
+    private record Retry(ApiKeyLease lease, Duration delay) {
+    }
+}
@@ -1,11 +1,15 @@
 package io.github.samzhu.gate.health;
 
+import java.util.LinkedHashMap;
+import java.util.Map;
+
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.springframework.boot.actuate.health.Health;
 import org.springframework.boot.actuate.health.HealthIndicator;
 import org.springframework.stereotype.Component;
 
+import io.github.samzhu.gate.service.ApiKeyLoad;
 import io.github.samzhu.gate.service.ApiKeyRotationService;
 
 /**
@@ -15,7 +19,9 @@ import io.github.samzhu.gate.service.ApiKeyRotationService;
  *
  * <p>健康狀態：
  * <ul>
- *   <li>UP - 至少有一個 API Key 已配置，包含 key 數量</li>
+ *   <li>UP - 至少有一個 API Key 已配置，包含 key 數量、被剔除的 Key 數量、熱更新後仍在 draining 的舊 Key，
+ *       與每個 Key 的即時負載及健康狀態
+ *       （所有 Key 都被剔除時仍為 UP：請求以 fail-open 繼續送往上游，不讓 readiness 把 instance 移出服務）</li>
  *   <li>DOWN - 沒有配置任何 API Key</li>
  * </ul>
  *
@@ -27,7 +33,17 @@ import io.github.samzhu.gate.service.ApiKeyRotationService;
  *   "components": {
  *     "apiKey": {
  *       "status": "UP",
- *       "details": { "count": 2 }
+ *       "details": {
+ *         "count": 2,
+ *         "ejected": 1,
+ *         "draining": ["old-primary"],
+ *         "keys": {
+ *           "primary": { "weight": 2, "inFlightRequests": 5, "inFlightStreams": 4, "rateLimitHeadroom": 0.82,
+ *                        "state": "CLOSED", "failureRate": 1.0 },
+ *           "secondary": { "weight": 1, "inFlightRequests": 0, "inFlightStreams": 0, "rateLimitHeadroom": 1.0,
+ *                          "state": "OPEN", "failureRate": 100.0 }
+ *         }
+ *       }
  *     }
  *   }
  * }
@@ -58,9 +74,30 @@ public class ApiKeyHealthIndicator implements HealthIndicator {
                 .build();
         }
 
-        log.debug("API Key health check passed: {} key(s) available", keyCount);
+        long ejected = apiKeyRotationService.getKeyLoads().stream()
+            .filter(ApiKeyLoad::ejected)
+            .count();
+        log.debug("API Key health check passed: {} key(s) available, {} ejected", keyCount, ejected);
         return Health.up()
             .withDetail("count", keyCount)
+            .withDetail("ejected", ejected)
+            .withDetail("draining", apiKeyRotationService.getDrainingKeyLoads().stream().map(ApiKeyLoad::alias).toList())
+            .withDetail("keys", keyLoads())
             .build();
     }
+
+    private Map<String, Map<String, Object>> keyLoads() {
+        Map<String, Map<String, Object>> loads = new LinkedHashMap<>();
+        for (ApiKeyLoad load : apiKeyRotationService.getKeyLoads()) {
+            Map<String, Object> detail = new LinkedHashMap<>();
+            detail.put("weight", load.weight());
+            detail.put("inFlightRequests", load.inFlightRequests());
+            detail.put("inFlightStreams", load.inFlightStreams());
+            detail.put("rateLimitHeadroom", Math.round(load.headroom() * 1000) / 1000.0);
+            detail.put("state", load.healthState());
+            detail.put("failureRate", load.failureRate());
+            loads.put(load.alias(), detail);
+        }
+        return loads;
+    }
 }
@@ -0,0 +1,71 @@
+package io.github.samzhu.gate.health;
+
+import java.io.IOException;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.springframework.boot.actuate.endpoint.annotation.Endpoint;
+import org.springframework.boot.actuate.endpoint.annotation.ReadOperation;
+import org.springframework.boot.actuate.endpoint.annotation.WriteOperation;
+import org.springframework.stereotype.Component;
+
+import io.github.samzhu.gate.service.ApiKeyLoad;
+import io.github.samzhu.gate.service.ApiKeyPoolReloader;
+import io.github.samzhu.gate.service.ApiKeyPoolUpdate;
+import io.github.samzhu.gate.service.ApiKeyRotationService;
+
+/**
+ * API Key 池管理端點
+ *
+ * <ul>
+ *   <li>{@code GET /actuator/apikeys} - 目前的 Key（alias 與權重）與仍在 draining 的舊 Key</li>
+ *   <li>{@code POST /actuator/apikeys} - 立即重新讀取 {@code anthropic.api.keys-file}，回傳變更摘要</li>
+ * </ul>
+ *
+ * <p>回應只包含 alias，不包含 Key 值；POST 不接受任何輸入，只會重新讀取已掛載的檔案。
+ *
+ * <p>預設不開放：需要時加入 {@code management.endpoints.web.exposure.include}。
+ * 開放後仍需有效 JWT Token（見 {@link io.github.samzhu.gate.config.SecurityConfig}），
+ * 建議另以 {@code management.server.port} 將管理端點限制在內部網路。
+ *
+ * @see ApiKeyPoolReloader
+ */
+@Component
+@Endpoint(id = "apikeys")
+public class ApiKeysEndpoint {
+
+    private final ApiKeyRotationService apiKeyRotationService;
+    private final ApiKeyPoolReloader apiKeyPoolReloader;
+
+    public ApiKeysEndpoint(ApiKeyRotationService apiKeyRotationService, ApiKeyPoolReloader apiKeyPoolReloader) {
+        this.apiKeyRotationService = apiKeyRotationService;
+        this.apiKeyPoolReloader = apiKeyPoolReloader;
+    }
+
+    @ReadOperation
+    public Map<String, Object> keys() {
+        Map<String, Object> result = new LinkedHashMap<>();
+        result.put("reloadable", apiKeyPoolReloader.enabled());
+        result.put("keys", describe(apiKeyRotationService.getKeyLoads()));
+        result.put("draining", describe(apiKeyRotationService.getDrainingKeyLoads()));
+        return result;
+    }
+
+    @WriteOperation
+    public ApiKeyPoolUpdate reload() throws IOException {
+        return apiKeyPoolReloader.reload();
+    }
+
+    private static List<Map<String, Object>> describe(List<ApiKeyLoad> loads) {
+        return loads.stream()
+            .map(load -> {
+                Map<String, Object> detail = new LinkedHashMap<>();
+                detail.put("alias", load.alias());
+                detail.put("weight", load.weight());
+                detail.put("inFlightRequests", load.inFlightRequests());
+                return detail;
+            })
+            .toList();
+    }
+}
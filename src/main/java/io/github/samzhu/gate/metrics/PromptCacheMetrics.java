@@ -0,0 +1,64 @@
+package io.github.samzhu.gate.metrics;
+
+import java.util.EnumMap;
+import java.util.Map;
+
+import org.springframework.stereotype.Component;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+
+import io.github.samzhu.gate.model.UsageEventData;
+import io.github.samzhu.gate.service.KeyRouting;
+
+/**
+ * Prompt cache 命中指標（依 API Key 選擇方式分組）
+ *
+ * <p>{@code gate.prompt.cache.tokens{routing, type}} 累計上游回報的輸入 token：
+ * <ul>
+ *   <li>{@code type=read} - 從快取讀取（{@code cache_read_input_tokens}）</li>
+ *   <li>{@code type=creation} - 寫入快取（{@code cache_creation_input_tokens}）</li>
+ *   <li>{@code type=uncached} - 快取斷點之後的輸入（{@code input_tokens}）</li>
+ * </ul>
+ *
+ * <p>快取命中率 = read / (read + creation + uncached)，以 {@code routing} 比較親和路由
+ * （{@code affinity}、{@code spillover}）與最低負載選擇（{@code least_loaded}）的差異。
+ *
+ * @see KeyRouting
+ */
+@Component
+public class PromptCacheMetrics {
+
+    private final Map<KeyRouting, Counter> readTokens = new EnumMap<>(KeyRouting.class);
+    private final Map<KeyRouting, Counter> creationTokens = new EnumMap<>(KeyRouting.class);
+    private final Map<KeyRouting, Counter> uncachedTokens = new EnumMap<>(KeyRouting.class);
+
+    public PromptCacheMetrics(MeterRegistry meterRegistry) {
+        for (KeyRouting routing : KeyRouting.values()) {
+            readTokens.put(routing, counter(meterRegistry, routing, "read"));
+            creationTokens.put(routing, counter(meterRegistry, routing, "creation"));
+            uncachedTokens.put(routing, counter(meterRegistry, routing, "uncached"));
+        }
+    }
+
+    private static Counter counter(MeterRegistry meterRegistry, KeyRouting routing, String type) {
+        return Counter.builder("gate.prompt.cache.tokens")
+            .description("Input tokens by prompt cache outcome and API key routing")
+            .baseUnit("tokens")
+            .tag("routing", routing.tag())
+            .tag("type", type)
+            .register(meterRegistry);
+    }
+
+    /**
+     * 記錄一次請求的輸入 token
+     *
+     * @param routing   服務此請求的 Key 的選擇方式
+     * @param eventData 用量事件
+     */
+    public void record(KeyRouting routing, UsageEventData eventData) {
+        readTokens.get(routing).increment(eventData.cacheReadTokens());
+        creationTokens.get(routing).increment(eventData.cacheCreationTokens());
+        uncachedTokens.get(routing).increment(eventData.inputTokens());
+    }
+}
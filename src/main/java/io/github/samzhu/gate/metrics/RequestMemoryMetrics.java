@@ -0,0 +1,79 @@
+package io.github.samzhu.gate.metrics;
+
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.springframework.stereotype.Component;
+
+import io.micrometer.core.instrument.DistributionSummary;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+
+/**
+ * 請求本體記憶體指標
+ *
+ * <p>追蹤 {@code /v1/messages} 請求本體在 heap 中被持有的位元組數，用來確認請求本體在送出上游後即被釋放：
+ * <ul>
+ *   <li>{@code gate.requests.inflight} - 處理中的 messages 請求數（包含長時間串流）</li>
+ *   <li>{@code gate.request.body.retained} - 目前仍被持有的請求本體位元組總數</li>
+ *   <li>{@code gate.request.body.retained.per.request} - 平均每個處理中請求持有的位元組數</li>
+ *   <li>{@code gate.request.body.size} - 請求本體大小分佈</li>
+ * </ul>
+ *
+ * <p>正常情況下 retained 只反映「正在送往上游」的請求；串流期間若持續偏高，代表有本體未被釋放。
+ *
+ * @see io.github.samzhu.gate.handler.ProxyRequestBody
+ */
+@Component
+public class RequestMemoryMetrics {
+
+    private final AtomicInteger inFlight = new AtomicInteger();
+    private final AtomicLong retainedBytes = new AtomicLong();
+    private final DistributionSummary bodySize;
+
+    public RequestMemoryMetrics(MeterRegistry meterRegistry) {
+        Gauge.builder("gate.requests.inflight", inFlight, AtomicInteger::get)
+            .description("Messages requests currently being proxied")
+            .register(meterRegistry);
+        Gauge.builder("gate.request.body.retained", retainedBytes, AtomicLong::get)
+            .description("Request body bytes currently held in heap")
+            .baseUnit("bytes")
+            .register(meterRegistry);
+        Gauge.builder("gate.request.body.retained.per.request", this, RequestMemoryMetrics::retainedPerRequest)
+            .description("Average request body bytes held per in-flight request")
+            .baseUnit("bytes")
+            .register(meterRegistry);
+        this.bodySize = DistributionSummary.builder("gate.request.body.size")
+            .description("Size of messages request bodies")
+            .baseUnit("bytes")
+            .register(meterRegistry);
+    }
+
+    /**
+     * 請求開始，本體進入 heap
+     */
+    public void requestStarted(int bodyBytes) {
+        inFlight.incrementAndGet();
+        retainedBytes.addAndGet(bodyBytes);
+        bodySize.record(bodyBytes);
+    }
+
+    /**
+     * 請求本體已釋放（送出上游後）
+     */
+    public void bodyReleased(int bodyBytes) {
+        retainedBytes.addAndGet(-bodyBytes);
+    }
+
+    /**
+     * 請求處理結束（串流結束、回應轉發完成或失敗）
+     */
+    public void requestCompleted() {
+        inFlight.decrementAndGet();
+    }
+
+    private double retainedPerRequest() {
+        int requests = inFlight.get();
+        return requests > 0 ? (double) retainedBytes.get() / requests : 0;
+    }
+}
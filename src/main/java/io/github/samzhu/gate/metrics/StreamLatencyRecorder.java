@@ -0,0 +1,98 @@
+package io.github.samzhu.gate.metrics;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 單一串流請求的延遲記錄器
+ *
+ * <p>由轉發迴圈在關鍵時間點呼叫，時間戳一律使用 {@link System#nanoTime()}：
+ * <ol>
+ *   <li>{@link #upstreamStarted()} - 即將送出上游請求（每次嘗試都會呼叫，換 Key 重試時以最後一次為準）</li>
+ *   <li>{@link #servedBy(String)} - 上游回應不再重試，記下實際服務此請求的 Key</li>
+ *   <li>{@link #upstreamDelta(String)} - 從上游讀到 {@code content_block_delta}（寫給客戶端之前）</li>
+ *   <li>{@link #clientDelta()} - 該 delta 已寫入並 flush 給客戶端</li>
+ *   <li>{@link #finish(int)} - 串流結束，計算 tokens/sec</li>
+ * </ol>
+ *
+ * <p>model 在 {@code message_start} 之後、Key 在重試結束後才會得知，Meter 於第一個 delta 時解析並快取。
+ *
+ * <p>非執行緒安全：每個串流請求使用獨立實例。
+ *
+ * @see StreamingMetrics
+ */
+public class StreamLatencyRecorder {
+
+    private final StreamingMetrics streamingMetrics;
+    private final long requestStartNanos;
+
+    private String keyAlias;
+    private StreamingMetrics.Meters meters;
+    private long upstreamStartNanos;
+    private long firstDeltaNanos = -1;
+    private long lastDeltaNanos = -1;
+    private boolean firstDeltaWritten;
+
+    StreamLatencyRecorder(StreamingMetrics streamingMetrics, long requestStartNanos) {
+        this.streamingMetrics = streamingMetrics;
+        this.requestStartNanos = requestStartNanos;
+        this.upstreamStartNanos = requestStartNanos;
+    }
+
+    /**
+     * 記錄送出上游請求的時間
+     */
+    public void upstreamStarted() {
+        this.upstreamStartNanos = System.nanoTime();
+    }
+
+    /**
+     * 記錄實際服務此請求的 Key（{@code UpstreamFailover} 換 Key 重試後可能不是第一次嘗試的 Key）
+     *
+     * @param keyAlias API Key 別名
+     */
+    public void servedBy(String keyAlias) {
+        this.keyAlias = keyAlias;
+    }
+
+    /**
+     * 從上游讀到一個 {@code content_block_delta}
+     *
+     * @param model 目前已知的模型（來自 {@code message_start}，可能為 null）
+     */
+    public void upstreamDelta(String model) {
+        long now = System.nanoTime();
+        if (meters == null) {
+            meters = streamingMetrics.meters(model, keyAlias);
+        }
+        if (firstDeltaNanos < 0) {
+            firstDeltaNanos = now;
+            meters.upstreamTtft().record(now - upstreamStartNanos, TimeUnit.NANOSECONDS);
+        } else {
+            meters.interToken().record(now - lastDeltaNanos, TimeUnit.NANOSECONDS);
+        }
+        lastDeltaNanos = now;
+    }
+
+    /**
+     * {@code content_block_delta} 已 flush 給客戶端（只有第一個會被記錄為 TTFT）
+     */
+    public void clientDelta() {
+        if (!firstDeltaWritten && meters != null) {
+            firstDeltaWritten = true;
+            meters.ttft().record(System.nanoTime() - requestStartNanos, TimeUnit.NANOSECONDS);
+        }
+    }
+
+    /**
+     * 串流結束，記錄生成階段的輸出速率
+     *
+     * @param outputTokens 最終 output_tokens
+     */
+    public void finish(int outputTokens) {
+        if (meters == null || outputTokens <= 0 || lastDeltaNanos <= firstDeltaNanos) {
+            return;
+        }
+        double seconds = (lastDeltaNanos - firstDeltaNanos) / 1_000_000_000.0;
+        meters.tokensPerSecond().record(outputTokens / seconds);
+    }
+}
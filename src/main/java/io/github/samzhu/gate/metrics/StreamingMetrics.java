@@ -0,0 +1,104 @@
+package io.github.samzhu.gate.metrics;
+
+import java.time.Duration;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+import org.springframework.stereotype.Component;
+
+import io.micrometer.core.instrument.DistributionSummary;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+
+/**
+ * 串流延遲指標
+ *
+ * <p>以 Micrometer histogram 記錄 LLM 串流的關鍵延遲，依 {@code model}、{@code key.alias} 分組，
+ * 透過既有的 Micrometer registry（OTLP）匯出：
+ * <ul>
+ *   <li>{@code gate.stream.ttft} - Gateway 收到請求到第一個 {@code content_block_delta} 寫給客戶端（客戶端感受的 TTFT）</li>
+ *   <li>{@code gate.stream.upstream.ttft} - 送出上游請求到讀到第一個 {@code content_block_delta}（上游 TTFT）</li>
+ *   <li>{@code gate.stream.inter.token} - 相鄰兩個 {@code content_block_delta} 的間隔</li>
+ *   <li>{@code gate.stream.tokens.per.second} - 生成階段（首個到最後一個 delta）的輸出速率</li>
+ * </ul>
+ *
+ * <p>{@code gate.stream.ttft} 與 {@code gate.stream.upstream.ttft} 的差值即為 Gateway 附加的延遲
+ * （讀取請求體、請求解析、快取查詢、Key 選擇、連線取得、轉發 flush）。
+ *
+ * <p>低開銷：每組 (model, keyAlias) 的 Meter 只建立一次並快取，
+ * 每個 delta 只需一次 {@link System#nanoTime()} 與 {@link Timer#record(long, java.util.concurrent.TimeUnit)}。
+ *
+ * @see StreamLatencyRecorder
+ * @see io.github.samzhu.gate.handler.StreamingProxyHandler
+ */
+@Component
+public class StreamingMetrics {
+
+    static final String UNKNOWN_MODEL = "unknown";
+
+    private final MeterRegistry meterRegistry;
+    private final ConcurrentMap<MeterKey, Meters> meters = new ConcurrentHashMap<>();
+
+    public StreamingMetrics(MeterRegistry meterRegistry) {
+        this.meterRegistry = meterRegistry;
+    }
+
+    /**
+     * 建立單一串流請求的延遲記錄器
+     *
+     * @param requestStartNanos Gateway 收到請求的時間（{@link System#nanoTime()}）
+     * @return 延遲記錄器（非執行緒安全，僅供轉發執行緒使用）
+     */
+    public StreamLatencyRecorder newRecorder(long requestStartNanos) {
+        return new StreamLatencyRecorder(this, requestStartNanos);
+    }
+
+    Meters meters(String model, String keyAlias) {
+        return meters.computeIfAbsent(
+            new MeterKey(model != null ? model : UNKNOWN_MODEL, keyAlias != null ? keyAlias : "unknown"),
+            this::register);
+    }
+
+    private Meters register(MeterKey key) {
+        Timer ttft = Timer.builder("gate.stream.ttft")
+            .description("Time from request received by the gateway to first content_block_delta written to the client")
+            .tag("model", key.model())
+            .tag("key.alias", key.keyAlias())
+            .publishPercentileHistogram()
+            .minimumExpectedValue(Duration.ofMillis(10))
+            .maximumExpectedValue(Duration.ofSeconds(120))
+            .register(meterRegistry);
+        Timer upstreamTtft = Timer.builder("gate.stream.upstream.ttft")
+            .description("Time from upstream request sent to first content_block_delta received from Anthropic")
+            .tag("model", key.model())
+            .tag("key.alias", key.keyAlias())
+            .publishPercentileHistogram()
+            .minimumExpectedValue(Duration.ofMillis(10))
+            .maximumExpectedValue(Duration.ofSeconds(120))
+            .register(meterRegistry);
+        Timer interToken = Timer.builder("gate.stream.inter.token")
+            .description("Gap between consecutive content_block_delta events")
+            .tag("model", key.model())
+            .tag("key.alias", key.keyAlias())
+            .publishPercentileHistogram()
+            .minimumExpectedValue(Duration.ofMillis(1))
+            .maximumExpectedValue(Duration.ofSeconds(30))
+            .register(meterRegistry);
+        DistributionSummary tokensPerSecond = DistributionSummary.builder("gate.stream.tokens.per.second")
+            .description("Output tokens per second during the generation phase")
+            .baseUnit("tokens")
+            .tag("model", key.model())
+            .tag("key.alias", key.keyAlias())
+            .publishPercentileHistogram()
+            .minimumExpectedValue(1.0)
+            .maximumExpectedValue(1000.0)
+            .register(meterRegistry);
+        return new Meters(ttft, upstreamTtft, interToken, tokensPerSecond);
+    }
+
+    private record MeterKey(String model, String keyAlias) {
+    }
+
+    record Meters(Timer ttft, Timer upstreamTtft, Timer interToken, DistributionSummary tokensPerSecond) {
+    }
+}
@@ -0,0 +1,131 @@
+package io.github.samzhu.gate.metrics;
+
+import java.io.IOException;
+import java.net.Socket;
+import java.util.concurrent.TimeUnit;
+
+import javax.net.ssl.SSLSocket;
+
+import org.apache.hc.client5.http.HttpRoute;
+import org.apache.hc.client5.http.classic.ExecChain;
+import org.apache.hc.client5.http.classic.ExecChainHandler;
+import org.apache.hc.client5.http.classic.ExecRuntime;
+import org.apache.hc.client5.http.ssl.TlsSocketStrategy;
+import org.apache.hc.core5.http.ClassicHttpRequest;
+import org.apache.hc.core5.http.ClassicHttpResponse;
+import org.apache.hc.core5.http.HttpException;
+import org.apache.hc.core5.http.Method;
+import org.apache.hc.core5.http.protocol.HttpContext;
+import org.springframework.stereotype.Component;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+
+/**
+ * 上游連線建立指標
+ *
+ * <p>補足 {@code PoolingHttpClientConnectionManagerMetricsBinder}（leased / available / pending）
+ * 沒有涵蓋的連線建立成本：
+ * <ul>
+ *   <li>{@code gate.upstream.connection.lease} - 從連線池取得連線的等待時間（池滿時會排隊）</li>
+ *   <li>{@code gate.upstream.connection.connect} - 建立新連線的時間（DNS + TCP + TLS）</li>
+ *   <li>{@code gate.upstream.tls.handshake} - TLS 握手時間</li>
+ *   <li>{@code gate.upstream.requests{connection=cold|warm}} - 代理請求使用新建連線（cold）或重用連線（warm）的次數；
+ *       連線預熱送出的 {@code HEAD} 請求不計入</li>
+ * </ul>
+ *
+ * <p>實作方式：
+ * <ul>
+ *   <li>以 exec interceptor 掛在 HttpClient 的 {@code CONNECT} 元素之前，先自行取得並連線 endpoint
+ *       （{@code ConnectExec} 看到已連線的 endpoint 會直接略過），分別量測 lease 與 connect</li>
+ *   <li>以 {@link TlsSocketStrategy} 包裝量測 TLS 握手</li>
+ * </ul>
+ *
+ * <p>經由 proxy 的 route 需要 tunnel 建立流程，交回 {@code ConnectExec} 處理，只量測 lease。
+ *
+ * @see io.github.samzhu.gate.config.UpstreamHttpClientConfig
+ */
+@Component
+public class UpstreamConnectionMetrics implements ExecChainHandler {
+
+    private final Timer leaseTimer;
+    private final Timer connectTimer;
+    private final Timer tlsHandshakeTimer;
+    private final Counter coldRequests;
+    private final Counter warmRequests;
+
+    public UpstreamConnectionMetrics(MeterRegistry meterRegistry) {
+        this.leaseTimer = Timer.builder("gate.upstream.connection.lease")
+            .description("Time waiting to lease an upstream connection from the pool")
+            .publishPercentileHistogram()
+            .register(meterRegistry);
+        this.connectTimer = Timer.builder("gate.upstream.connection.connect")
+            .description("Time to establish a new upstream connection (DNS, TCP and TLS)")
+            .publishPercentileHistogram()
+            .register(meterRegistry);
+        this.tlsHandshakeTimer = Timer.builder("gate.upstream.tls.handshake")
+            .description("Time spent in the upstream TLS handshake")
+            .publishPercentileHistogram()
+            .register(meterRegistry);
+        this.coldRequests = connectionCounter(meterRegistry, "cold");
+        this.warmRequests = connectionCounter(meterRegistry, "warm");
+    }
+
+    private static Counter connectionCounter(MeterRegistry meterRegistry, String connection) {
+        return Counter.builder("gate.upstream.requests")
+            .description("Upstream requests by whether they had to open a new connection")
+            .tag("connection", connection)
+            .register(meterRegistry);
+    }
+
+    @Override
+    public ClassicHttpResponse execute(ClassicHttpRequest request, ExecChain.Scope scope, ExecChain chain)
+            throws IOException, HttpException {
+        ExecRuntime runtime = scope.execRuntime;
+        HttpRoute route = scope.route;
+
+        if (!runtime.isEndpointAcquired()) {
+            long start = System.nanoTime();
+            runtime.acquireEndpoint(scope.exchangeId, route, scope.clientContext.getUserToken(), scope.clientContext);
+            leaseTimer.record(System.nanoTime() - start, TimeUnit.NANOSECONDS);
+        }
+
+        boolean cold = !runtime.isEndpointConnected();
+        if (!Method.HEAD.isSame(request.getMethod())) {
+            (cold ? coldRequests : warmRequests).increment();
+        }
+
+        if (cold && route.getProxyHost() == null) {
+            long start = System.nanoTime();
+            try {
+                runtime.connectEndpoint(scope.clientContext);
+            } catch (IOException | RuntimeException e) {
+                runtime.discardEndpoint();
+                throw e;
+            }
+            connectTimer.record(System.nanoTime() - start, TimeUnit.NANOSECONDS);
+        }
+
+        return chain.proceed(request, scope);
+    }
+
+    /**
+     * 包裝 TLS 策略以量測握手時間
+     *
+     * @param delegate 實際的 TLS 策略
+     * @return 帶有計時的 TLS 策略
+     */
+    public TlsSocketStrategy instrument(TlsSocketStrategy delegate) {
+        return new TlsSocketStrategy() {
+            @Override
+            public SSLSocket upgrade(Socket socket, String target, int port, Object attachment,
+                                     HttpContext context) throws IOException {
+                long start = System.nanoTime();
+                SSLSocket sslSocket = delegate.upgrade(socket, target, port, attachment, context);
+                tlsHandshakeTimer.record(System.nanoTime() - start, TimeUnit.NANOSECONDS);
+                return sslSocket;
+            }
+        };
+    }
+}
@@ -0,0 +1,194 @@
+package io.github.samzhu.gate.metrics;
+
+import java.net.http.HttpClient;
+import java.security.KeyManagementException;
+import java.security.SecureRandom;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import javax.net.ssl.KeyManager;
+import javax.net.ssl.SSLContext;
+import javax.net.ssl.SSLContextSpi;
+import javax.net.ssl.SSLEngine;
+import javax.net.ssl.SSLParameters;
+import javax.net.ssl.SSLServerSocketFactory;
+import javax.net.ssl.SSLSessionContext;
+import javax.net.ssl.SSLSocketFactory;
+import javax.net.ssl.TrustManager;
+
+import org.springframework.stereotype.Component;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.DistributionSummary;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+
+/**
+ * HTTP/2 上游傳輸指標
+ *
+ * <p>{@code anthropic.api.transport: http2} 時由 JDK HttpClient 處理上游連線，
+ * 連線池不對外暴露，改以下列指標觀察多工效果：
+ * <ul>
+ *   <li>{@code gate.upstream.streams.active{protocol}} - 進行中的上游回應串流數（依實際協商的協定）</li>
+ *   <li>{@code gate.upstream.streams.concurrent{protocol}} - 每個新串流開始時同協定的並行串流數；
+ *       JDK HttpClient 對同一 authority 共用一條 HTTP/2 連線，{@code h2} 即為該連線上的多工串流數</li>
+ *   <li>{@code gate.upstream.connections.opened} - 建立的 TLS 連線數（每條連線建立一個 {@link SSLEngine}）</li>
+ * </ul>
+ *
+ * <p>{@code protocol} 為 {@code h2} 或 {@code http/1.1}；上游未經 ALPN 同意 h2 時，
+ * 串流會出現在 {@code http/1.1}，代表已退回每個串流一條連線。
+ *
+ * @see io.github.samzhu.gate.config.UpstreamHttpClientConfig
+ */
+@Component
+public class UpstreamStreamMetrics {
+
+    public static final String PROTOCOL_HTTP_2 = "h2";
+    public static final String PROTOCOL_HTTP_1_1 = "http/1.1";
+
+    private final AtomicInteger http2Streams = new AtomicInteger();
+    private final AtomicInteger http11Streams = new AtomicInteger();
+    private final DistributionSummary http2Concurrency;
+    private final DistributionSummary http11Concurrency;
+    private final Counter connectionsOpened;
+
+    public UpstreamStreamMetrics(MeterRegistry meterRegistry) {
+        Gauge.builder("gate.upstream.streams.active", http2Streams, AtomicInteger::get)
+            .description("Upstream response streams currently open")
+            .tag("protocol", PROTOCOL_HTTP_2)
+            .register(meterRegistry);
+        Gauge.builder("gate.upstream.streams.active", http11Streams, AtomicInteger::get)
+            .description("Upstream response streams currently open")
+            .tag("protocol", PROTOCOL_HTTP_1_1)
+            .register(meterRegistry);
+        this.http2Concurrency = concurrency(meterRegistry, PROTOCOL_HTTP_2);
+        this.http11Concurrency = concurrency(meterRegistry, PROTOCOL_HTTP_1_1);
+        this.connectionsOpened = Counter.builder("gate.upstream.connections.opened")
+            .description("Upstream TLS connections opened by the JDK HttpClient")
+            .register(meterRegistry);
+    }
+
+    private static DistributionSummary concurrency(MeterRegistry meterRegistry, String protocol) {
+        return DistributionSummary.builder("gate.upstream.streams.concurrent")
+            .description("Concurrent upstream streams on the same protocol when a new stream starts")
+            .baseUnit("streams")
+            .tag("protocol", protocol)
+            .publishPercentileHistogram()
+            .register(meterRegistry);
+    }
+
+    /**
+     * 包裝 JDK HttpClient 以追蹤回應串流
+     *
+     * @param delegate 實際的 HttpClient
+     * @return 帶有串流追蹤的 HttpClient
+     */
+    public HttpClient instrument(HttpClient delegate) {
+        return new StreamTrackingHttpClient(delegate, this);
+    }
+
+    /**
+     * 包裝 SSLContext 以計算建立的連線數
+     *
+     * @param delegate 實際的 SSLContext
+     * @return 建立 {@link SSLEngine} 時計數的 SSLContext
+     */
+    public SSLContext instrument(SSLContext delegate) {
+        return new SSLContext(new CountingSslContextSpi(delegate, connectionsOpened),
+                delegate.getProvider(), delegate.getProtocol()) {
+        };
+    }
+
+    /**
+     * 目前進行中的上游串流數（不分協定）
+     */
+    public int activeStreams() {
+        return http2Streams.get() + http11Streams.get();
+    }
+
+    /**
+     * 上游回應串流開始（收到回應 header）
+     *
+     * @param version 實際協商的 HTTP 版本
+     */
+    void streamOpened(HttpClient.Version version) {
+        if (version == HttpClient.Version.HTTP_2) {
+            http2Concurrency.record(http2Streams.incrementAndGet());
+        } else {
+            http11Concurrency.record(http11Streams.incrementAndGet());
+        }
+    }
+
+    /**
+     * 上游回應串流結束（讀完、錯誤或被取消）
+     *
+     * @param version 實際協商的 HTTP 版本
+     */
+    void streamClosed(HttpClient.Version version) {
+        if (version == HttpClient.Version.HTTP_2) {
+            http2Streams.decrementAndGet();
+        } else {
+            http11Streams.decrementAndGet();
+        }
+    }
+
+    /**
+     * 委派給原 SSLContext，每建立一個 client {@link SSLEngine}（即一條新連線）時計數
+     */
+    private static final class CountingSslContextSpi extends SSLContextSpi {
+
+        private final SSLContext delegate;
+        private final Counter connectionsOpened;
+
+        CountingSslContextSpi(SSLContext delegate, Counter connectionsOpened) {
+            this.delegate = delegate;
+            this.connectionsOpened = connectionsOpened;
+        }
+
+        @Override
+        protected void engineInit(KeyManager[] km, TrustManager[] tm, SecureRandom sr) throws KeyManagementException {
+            delegate.init(km, tm, sr);
+        }
+
+        @Override
+        protected SSLSocketFactory engineGetSocketFactory() {
+            return delegate.getSocketFactory();
+        }
+
+        @Override
+        protected SSLServerSocketFactory engineGetServerSocketFactory() {
+            return delegate.getServerSocketFactory();
+        }
+
+        @Override
+        protected SSLEngine engineCreateSSLEngine() {
+            connectionsOpened.increment();
+            return delegate.createSSLEngine();
+        }
+
+        @Override
+        protected SSLEngine engineCreateSSLEngine(String host, int port) {
+            connectionsOpened.increment();
+            return delegate.createSSLEngine(host, port);
+        }
+
+        @Override
+        protected SSLSessionContext engineGetServerSessionContext() {
+            return delegate.getServerSessionContext();
+        }
+
+        @Override
+        protected SSLSessionContext engineGetClientSessionContext() {
+            return delegate.getClientSessionContext();
+        }
+
+        @Override
+        protected SSLParameters engineGetDefaultSSLParameters() {
+            return delegate.getDefaultSSLParameters();
+        }
+
+        @Override
+        protected SSLParameters engineGetSupportedSSLParameters() {
+            return delegate.getSupportedSSLParameters();
+        }
+    }
+}
@@ -0,0 +1,54 @@
+package io.github.samzhu.gate.model;
+
+import java.util.Map;
+
+/**
+ * Messages API 請求外層欄位（envelope）
+ *
+ * <p>由 {@link io.github.samzhu.gate.util.RequestEnvelopeReader} 單次掃描請求本體的根層級欄位取得，
+ * 路由與各 handler 共用，不需要再次解析請求本體：
+ * <ul>
+ *   <li>{@code stream} - 是否為串流請求（決定路由）</li>
+ *   <li>{@code model} - 請求的模型（上游未回應 model 時作為用量事件的備援）</li>
+ *   <li>{@code max_tokens} - 最大輸出 token 數</li>
+ *   <li>{@code metadata} - 請求 metadata 的字串欄位（如 {@code user_id}）</li>
+ *   <li>{@code cachePrefixHash} - 可快取前綴的 hash（親和路由用，見下方說明）</li>
+ *   <li>{@code temperature} - 取樣溫度</li>
+ *   <li>{@code canonicalHash} - 請求內容的正規化 hash（回應快取用，只在 {@code temperature: 0} 時計算）</li>
+ * </ul>
+ *
+ * <p>{@code messages}、{@code system}、{@code tools} 等大型欄位只被走訪，不解碼字串內容、不建立任何物件。
+ *
+ * <p>{@code cachePrefixHash}：只在親和路由模式為 {@code cache-prefix} 時計算。
+ * 請求任何位置帶有 {@code cache_control} 時，對 {@code tools}、{@code system} 與第一則 message 的原始位元組計算 hash。快取斷點每一輪都會往後移動，若 hash 到最後一個斷點，
+ * 同一段對話每一輪都會得到不同的值；對話開頭在整段對話中不變，且一定包含在被快取的前綴內，
+ * 因此同一段對話的每一輪都會送往同一把 Key。
+ *
+ * <p>{@code canonicalHash}：除 {@code stream} 以外的所有根層級欄位，依欄位名稱排序後對「名稱 + 原始位元組」
+ * 計算 SHA-256，欄位順序不同的相同請求得到相同的值，串流與非串流請求共用同一個值。
+ *
+ * @param stream    是否為串流請求
+ * @param model     模型名稱，未提供為 null
+ * @param maxTokens max_tokens，未提供為 null
+ * @param metadata  metadata 中的字串欄位，未提供為空 Map
+ * @param cachePrefixHash 可快取前綴的 hash，未啟用 {@code cache-prefix} 親和路由或請求沒有 {@code cache_control} 時為 null
+ * @param temperature     取樣溫度，未提供為 null
+ * @param canonicalHash   請求內容的 SHA-256 hex，{@code temperature} 不為 0 時為 null
+ */
+public record RequestEnvelope(
+    boolean stream,
+    String model,
+    Integer maxTokens,
+    Map<String, String> metadata,
+    Long cachePrefixHash,
+    Double temperature,
+    String canonicalHash
+) {
+
+    /** 無法解析的請求本體（交由上游回應 400） */
+    public static final RequestEnvelope EMPTY = new RequestEnvelope(false, null, null, Map.of(), null, null, null);
+
+    public RequestEnvelope {
+        metadata = metadata == null ? Map.of() : Map.copyOf(metadata);
+    }
+}
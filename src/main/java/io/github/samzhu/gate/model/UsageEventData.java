@@ -85,6 +85,9 @@ import com.fasterxml.jackson.annotation.JsonProperty;
  *         <li>{@code keyAlias} - 使用的 API Key 別名</li>
  *         <li>{@code traceId} - OpenTelemetry Trace ID（用於端到端追蹤）</li>
  *         <li>{@code anthropicRequestId} - Anthropic 回應的 request-id（req_xxx，用於向 Anthropic 客服報告問題）</li>
+ *         <li>{@code responseSource} - 回應來源：{@code upstream}（Anthropic API）、{@code cache}（Gate 回應快取重播）
+ *             或 {@code coalesced}（共用同時進行中的相同請求的上游回應）；後兩者的 token 欄位為原始回應的用量，
+ *             未實際消耗上游 token</li>
  *       </ul>
  *   </li>
  * </ul>
@@ -142,8 +145,20 @@ public record UsageEventData(
     String traceId,
 
     @JsonProperty("anthropic_request_id")
-    String anthropicRequestId
+    String anthropicRequestId,
+
+    @JsonProperty("response_source")
+    String responseSource
 ) {
+    /** 回應來自 Anthropic API */
+    public static final String RESPONSE_SOURCE_UPSTREAM = "upstream";
+
+    /** 回應由 Gate 回應快取重播 */
+    public static final String RESPONSE_SOURCE_CACHE = "cache";
+
+    /** 共用同時進行中的相同請求的上游回應（single-flight 合併） */
+    public static final String RESPONSE_SOURCE_COALESCED = "coalesced";
+
     public static Builder builder() {
         return new Builder();
     }
@@ -165,6 +180,7 @@ public record UsageEventData(
         private String keyAlias;
         private String traceId;
         private String anthropicRequestId;
+        private String responseSource = RESPONSE_SOURCE_UPSTREAM;
 
         public Builder userId(String userId) {
             this.userId = userId;
@@ -246,13 +262,18 @@ public record UsageEventData(
             return this;
         }
 
+        public Builder responseSource(String responseSource) {
+            this.responseSource = responseSource;
+            return this;
+        }
+
         public UsageEventData build() {
             return new UsageEventData(
                 userId, eventTime,
                 model, inputTokens, outputTokens,
                 cacheCreationTokens, cacheReadTokens,
                 messageId, latencyMs, stream, stopReason,
-                status, errorType, keyAlias, traceId, anthropicRequestId
+                status, errorType, keyAlias, traceId, anthropicRequestId, responseSource
             );
         }
     }
@@ -0,0 +1,106 @@
+package io.github.samzhu.gate.service;
+
+import java.time.Duration;
+import java.time.Instant;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpStatusCode;
+
+/**
+ * API Key 使用租約
+ *
+ * <p>由 {@link ApiKeyRotationService#acquire(boolean)} 取得，代表一個進行中的請求佔用該 Key 的負載。
+ * handler 在請求結束時（串流結束、回應轉發完成或失敗）呼叫 {@link #release()}，可重複呼叫。
+ *
+ * <p>收到上游回應時呼叫 {@link #recordStatus(HttpStatusCode)} 更新該 Key 的健康狀態；
+ * 探測請求（被剔除的 Key 重新納入前的試探）未收到回應就釋放時，探測名額會歸還。
+ *
+ * @see ApiKeyLoad
+ */
+public final class ApiKeyLease {
+
+    private final ApiKeyLoad load;
+    private final boolean streaming;
+    private final boolean probe;
+    private final KeyRouting routing;
+    private final long acquiredNanos = System.nanoTime();
+    private final AtomicBoolean statusRecorded = new AtomicBoolean();
+    private final AtomicBoolean released = new AtomicBoolean();
+
+    ApiKeyLease(ApiKeyLoad load, boolean streaming, boolean probe, KeyRouting routing) {
+        this.load = load;
+        this.streaming = streaming;
+        this.probe = probe;
+        this.routing = routing;
+    }
+
+    /**
+     * Anthropic API Key
+     */
+    public String key() {
+        return load.key();
+    }
+
+    /**
+     * API Key 別名
+     */
+    public String alias() {
+        return load.alias();
+    }
+
+    /**
+     * 以上游回應的 {@code anthropic-ratelimit-*} headers 更新該 Key 的剩餘額度
+     *
+     * @param responseHeaders 上游回應 headers
+     */
+    public void recordRateLimits(HttpHeaders responseHeaders) {
+        load.budget().update(responseHeaders);
+    }
+
+    /**
+     * 以上游回應狀態碼更新該 Key 的健康狀態（只會記錄一次）
+     *
+     * @param status 上游回應狀態碼
+     */
+    public void recordStatus(HttpStatusCode status) {
+        if (statusRecorded.compareAndSet(false, true)) {
+            load.recordStatus(status.value(), System.nanoTime() - acquiredNanos);
+        }
+    }
+
+    /**
+     * 上游回應 429：在 {@code retryAfter} 內不再分配此 Key
+     *
+     * @param retryAfter 上游要求的等待時間
+     */
+    public void coolDown(Duration retryAfter) {
+        load.budget().coolDown(Instant.now().plus(retryAfter));
+    }
+
+    /**
+     * 此 Key 的選擇方式（親和、溢出、最低負載或換 Key 重試）
+     */
+    public KeyRouting routing() {
+        return routing;
+    }
+
+    /**
+     * 是否為串流請求
+     */
+    public boolean streaming() {
+        return streaming;
+    }
+
+    /**
+     * 釋放租約（只會計算一次）
+     */
+    public void release() {
+        if (released.compareAndSet(false, true)) {
+            load.release(streaming);
+            if (probe && statusRecorded.compareAndSet(false, true)) {
+                load.releaseProbe();
+            }
+        }
+    }
+}
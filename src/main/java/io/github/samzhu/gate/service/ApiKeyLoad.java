@@ -0,0 +1,201 @@
+package io.github.samzhu.gate.service;
+
+import java.time.Instant;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import io.github.resilience4j.circuitbreaker.CircuitBreaker;
+
+import io.github.samzhu.gate.config.ApiKeyConfig;
+
+/**
+ * 單一 API Key 的即時負載
+ *
+ * <p>以 lock-free 計數器追蹤進行中的請求與串流（串流同時計入請求）：
+ * <ul>
+ *   <li>{@code inFlightRequests} - 進行中的請求數（串流與非串流）</li>
+ *   <li>{@code inFlightStreams} - 進行中的串流數（可能持續 10 分鐘，佔用 rate limit 較久）</li>
+ * </ul>
+ *
+ * <p>並記錄上游回報的 rate limit 剩餘額度（{@link RateLimitBudget}），{@code headroom} 為剩餘比例：
+ * <ul>
+ *   <li>負載分數 = (inFlightRequests + inFlightStreams + 1) / (weight × headroom)，串流因此計兩次；
+ *       剩餘額度較多的 Key 分到較多新請求，讓各 Key 的額度以相近速率消耗</li>
+ *   <li>headroom 低於 {@value #EXHAUSTION_THRESHOLD} 視為即將耗盡，在 reset 前不再分配（除非所有 Key 都已耗盡）</li>
+ * </ul>
+ *
+ * <p>被動健康追蹤（outlier ejection）：每個 Key 各有一個 Resilience4j {@link CircuitBreaker}，
+ * 以上游回應狀態碼判斷（{@code 401}、{@code 403}、{@code 429}、{@code 5xx} 為失敗）：
+ * <ul>
+ *   <li>{@code CLOSED} - 正常分配</li>
+ *   <li>{@code OPEN} - 失敗率超過門檻，在 {@code wait-duration-in-open-state} 內不再分配（被撤銷或被限流的 Key 不再吃掉 1/N 流量）</li>
+ *   <li>{@code HALF_OPEN} - 等待期過後只放行 {@code permitted-number-of-calls-in-half-open-state} 個探測請求，
+ *       探測成功率達標才重新納入</li>
+ * </ul>
+ *
+ * @see ApiKeyRotationService
+ * @see ApiKeyLease
+ */
+public final class ApiKeyLoad {
+
+    static final double EXHAUSTION_THRESHOLD = 0.05;
+    private static final double MIN_HEADROOM = 0.01;
+
+    private final ApiKeyConfig config;
+    private final CircuitBreaker circuitBreaker;
+    private final RateLimitBudget budget = new RateLimitBudget();
+    private final AtomicInteger inFlightRequests = new AtomicInteger();
+    private final AtomicInteger inFlightStreams = new AtomicInteger();
+
+    ApiKeyLoad(ApiKeyConfig config, CircuitBreaker circuitBreaker) {
+        this.config = config;
+        this.circuitBreaker = circuitBreaker;
+    }
+
+    public String alias() {
+        return config.alias();
+    }
+
+    public int weight() {
+        return config.weight();
+    }
+
+    public int inFlightRequests() {
+        return inFlightRequests.get();
+    }
+
+    public int inFlightStreams() {
+        return inFlightStreams.get();
+    }
+
+    /**
+     * 目前的 rate limit 剩餘比例（0.0 ~ 1.0）
+     */
+    public double headroom() {
+        return budget.headroom(Instant.now());
+    }
+
+    /**
+     * 健康狀態（{@code CLOSED}、{@code OPEN}、{@code HALF_OPEN}）
+     */
+    public String healthState() {
+        return circuitBreaker.getState().name();
+    }
+
+    /**
+     * 滑動視窗內的失敗率（%），呼叫數未達 {@code minimum-number-of-calls} 時為 -1
+     */
+    public float failureRate() {
+        return circuitBreaker.getMetrics().getFailureRate();
+    }
+
+    String key() {
+        return config.value();
+    }
+
+    ApiKeyConfig config() {
+        return config;
+    }
+
+    String circuitBreakerName() {
+        return circuitBreaker.getName();
+    }
+
+    RateLimitBudget budget() {
+        return budget;
+    }
+
+    /**
+     * 進行中的負載（串流計兩次，與負載分數一致）
+     */
+    int outstanding() {
+        return inFlightRequests.get() + inFlightStreams.get();
+    }
+
+    /**
+     * 負載分數（越低越優先）
+     */
+    double score(double headroom) {
+        double load = outstanding() + 1;
+        return load / (config.weight() * Math.max(headroom, MIN_HEADROOM));
+    }
+
+    /**
+     * 是否被剔除（{@code OPEN}、{@code HALF_OPEN}：只接受探測請求）
+     */
+    public boolean ejected() {
+        CircuitBreaker.State state = circuitBreaker.getState();
+        return state == CircuitBreaker.State.OPEN
+            || state == CircuitBreaker.State.HALF_OPEN
+            || state == CircuitBreaker.State.FORCED_OPEN;
+    }
+
+    /**
+     * 被剔除的 Key 嘗試取得探測名額（等待期已過時 OPEN 會轉為 HALF_OPEN）
+     *
+     * @return 取得名額時為 true，必須以 {@link #recordStatus} 或 {@link #releaseProbe()} 歸還
+     */
+    boolean tryAcquireProbe() {
+        return circuitBreaker.tryAcquirePermission();
+    }
+
+    /**
+     * 探測請求未取得上游回應（連線失敗、客戶端斷線）：歸還探測名額，不計入成功或失敗
+     */
+    void releaseProbe() {
+        circuitBreaker.releasePermission();
+    }
+
+    /**
+     * 記錄上游回應狀態碼
+     *
+     * @param status        HTTP 狀態碼
+     * @param durationNanos 送出請求到收到回應 header 的時間
+     */
+    void recordStatus(int status, long durationNanos) {
+        if (isKeyFailure(status)) {
+            circuitBreaker.onError(durationNanos, TimeUnit.NANOSECONDS, new UpstreamStatusException(status));
+        } else {
+            circuitBreaker.onSuccess(durationNanos, TimeUnit.NANOSECONDS);
+        }
+    }
+
+    /**
+     * 代表 Key 本身（撤銷、權限、限流）或上游在這把 Key 上失敗的狀態碼；其他 4xx 是請求內容的問題
+     */
+    private static boolean isKeyFailure(int status) {
+        return status == 401 || status == 403 || status == 429 || status >= 500;
+    }
+
+    /**
+     * 計入一個進行中的請求
+     *
+     * @param streaming 是否為串流請求
+     * @param probe     是否佔用探測名額
+     * @param routing   選擇方式
+     */
+    ApiKeyLease acquire(boolean streaming, boolean probe, KeyRouting routing) {
+        inFlightRequests.incrementAndGet();
+        if (streaming) {
+            inFlightStreams.incrementAndGet();
+        }
+        return new ApiKeyLease(this, streaming, probe, routing);
+    }
+
+    void release(boolean streaming) {
+        if (streaming) {
+            inFlightStreams.decrementAndGet();
+        }
+        inFlightRequests.decrementAndGet();
+    }
+
+    /**
+     * 以狀態碼記錄失敗時交給 {@link CircuitBreaker} 的例外（不建立 stack trace）
+     */
+    static final class UpstreamStatusException extends RuntimeException {
+
+        UpstreamStatusException(int status) {
+            super("Upstream responded " + status, null, false, false);
+        }
+    }
+}
@@ -0,0 +1,26 @@
+package io.github.samzhu.gate.service;
+
+import java.util.List;
+
+/**
+ * API Key 池快照（不可變）
+ *
+ * <p>Key 清單、hash ring 與總權重一起替換，選擇時只讀取一次 {@code volatile} 參考，
+ * 同一次選擇看到的一定是同一個版本的 Key 池。
+ *
+ * @param keyLoads    Key 與其即時負載（依配置順序）
+ * @param ring        親和路由 hash ring
+ * @param totalWeight 所有 Key 的權重總和
+ * @see ApiKeyRotationService
+ */
+record ApiKeyPool(
+    List<ApiKeyLoad> keyLoads,
+    KeyAffinityRing ring,
+    int totalWeight
+) {
+
+    static ApiKeyPool of(List<ApiKeyLoad> keyLoads) {
+        List<ApiKeyLoad> loads = List.copyOf(keyLoads);
+        return new ApiKeyPool(loads, new KeyAffinityRing(loads), loads.stream().mapToInt(ApiKeyLoad::weight).sum());
+    }
+}
@@ -0,0 +1,155 @@
+package io.github.samzhu.gate.service;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.stereotype.Component;
+
+import com.fasterxml.jackson.core.JsonFactory;
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.core.JsonToken;
+
+import jakarta.annotation.PreDestroy;
+
+import io.github.samzhu.gate.config.AnthropicProperties;
+import io.github.samzhu.gate.config.ApiKeyConfig;
+import io.github.samzhu.gate.config.ApiKeysFileConfig;
+
+/**
+ * API Key 檔案熱更新
+ *
+ * <p>{@code spring.cloud.refresh} 為了 AOT / Native Image 停用，{@code @ConfigurationProperties} 無法在執行期重新綁定。
+ * 啟用 {@code anthropic.api.keys-file} 後改由此元件讀取掛載的 secret 檔案：
+ * <ol>
+ *   <li>啟動 - 建構時同步載入一次，取代 {@code anthropic.api.keys}（檔案無效時啟動失敗）</li>
+ *   <li>輪詢 - 每隔 {@code poll-interval} 讀取檔案，內容的 SHA-256 改變時呼叫
+ *       {@link ApiKeyRotationService#replaceKeys}（Kubernetes / Cloud Run 以 symlink 替換 secret，
+ *       以內容比對而非修改時間判斷）</li>
+ *   <li>手動 - {@code POST /actuator/apikeys} 立即重新讀取（見 {@link io.github.samzhu.gate.health.ApiKeysEndpoint}）</li>
+ * </ol>
+ *
+ * <p>執行期讀取失敗（檔案不存在、JSON 錯誤、清單為空）時記錄錯誤並保留目前的 Key 池。
+ * 以 Jackson 低階 {@link JsonParser} 解析，不需要反射註冊。
+ *
+ * @see ApiKeysFileConfig
+ */
+@Component
+public class ApiKeyPoolReloader {
+
+    private static final Logger log = LoggerFactory.getLogger(ApiKeyPoolReloader.class);
+    private static final JsonFactory JSON_FACTORY = new JsonFactory();
+
+    private final ApiKeysFileConfig keysFile;
+    private final ApiKeyRotationService apiKeyRotationService;
+    private final ScheduledThreadPoolExecutor pollScheduler;
+    private byte[] lastDigest;
+
+    public ApiKeyPoolReloader(AnthropicProperties anthropicProperties, ApiKeyRotationService apiKeyRotationService) {
+        this.keysFile = anthropicProperties.keysFile();
+        this.apiKeyRotationService = apiKeyRotationService;
+        this.pollScheduler = new ScheduledThreadPoolExecutor(1,
+            Thread.ofPlatform().name("api-key-reload").daemon().factory());
+        if (keysFile.enabled()) {
+            try {
+                reload();
+            } catch (IOException | RuntimeException e) {
+                throw new IllegalStateException("Failed to load API keys from " + keysFile.path(), e);
+            }
+            long intervalMillis = keysFile.pollInterval().toMillis();
+            pollScheduler.scheduleWithFixedDelay(this::poll, intervalMillis, intervalMillis, TimeUnit.MILLISECONDS);
+        }
+    }
+
+    @PreDestroy
+    void shutdown() {
+        pollScheduler.shutdownNow();
+    }
+
+    /**
+     * 是否啟用 API Key 檔案
+     */
+    public boolean enabled() {
+        return keysFile.enabled();
+    }
+
+    /**
+     * 立即重新讀取 API Key 檔案（內容未變更時不替換 Key 池）
+     *
+     * @return 變更摘要
+     * @throws IOException              檔案無法讀取
+     * @throws IllegalArgumentException 檔案內容無效
+     * @throws IllegalStateException    未啟用 API Key 檔案
+     */
+    public synchronized ApiKeyPoolUpdate reload() throws IOException {
+        if (!keysFile.enabled()) {
+            throw new IllegalStateException("anthropic.api.keys-file.path is not configured");
+        }
+        byte[] content = Files.readAllBytes(Path.of(keysFile.path()));
+        byte[] digest = sha256(content);
+        if (Arrays.equals(digest, lastDigest)) {
+            List<String> aliases = apiKeyRotationService.getKeyLoads().stream().map(ApiKeyLoad::alias).toList();
+            return new ApiKeyPoolUpdate(List.of(), List.of(), List.of(), aliases);
+        }
+        ApiKeyPoolUpdate update = apiKeyRotationService.replaceKeys(parse(content));
+        lastDigest = digest;
+        return update;
+    }
+
+    private void poll() {
+        try {
+            reload();
+        } catch (Exception e) {
+            log.error("Failed to reload API keys from {}, keeping current keys: {}", keysFile.path(), e.getMessage());
+        }
+    }
+
+    /**
+     * 解析 API Key JSON 陣列
+     */
+    static List<ApiKeyConfig> parse(byte[] content) throws IOException {
+        List<ApiKeyConfig> keys = new ArrayList<>();
+        try (JsonParser parser = JSON_FACTORY.createParser(content)) {
+            if (parser.nextToken() != JsonToken.START_ARRAY) {
+                throw new IllegalArgumentException("API key file must contain a JSON array");
+            }
+            while (parser.nextToken() == JsonToken.START_OBJECT) {
+                String alias = null;
+                String value = null;
+                Integer weight = null;
+                while (parser.nextToken() == JsonToken.FIELD_NAME) {
+                    String fieldName = parser.currentName();
+                    JsonToken token = parser.nextToken();
+                    switch (fieldName) {
+                        case "alias" -> alias = token == JsonToken.VALUE_STRING ? parser.getText() : null;
+                        case "value" -> value = token == JsonToken.VALUE_STRING ? parser.getText() : null;
+                        case "weight" -> weight = token == JsonToken.VALUE_NUMBER_INT ? parser.getIntValue() : null;
+                        default -> parser.skipChildren();
+                    }
+                }
+                keys.add(new ApiKeyConfig(alias, value, weight));
+            }
+            if (parser.currentToken() != JsonToken.END_ARRAY) {
+                throw new IllegalArgumentException("API key file entries must be JSON objects");
+            }
+        }
+        return keys;
+    }
+
+    private static byte[] sha256(byte[] content) {
+        try {
+            return MessageDigest.getInstance("SHA-256").digest(content);
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+}
@@ -0,0 +1,27 @@
+package io.github.samzhu.gate.service;
+
+import java.util.List;
+
+/**
+ * API Key 池替換結果（只含 alias，不含 Key 值）
+ *
+ * @param added     新增的 Key
+ * @param rotated   同一 alias 但 Key 值或權重變更（舊 Key 進行中的請求完成後退場）
+ * @param removed   移除的 Key（進行中的請求完成後退場）
+ * @param unchanged 未變更的 Key（保留負載、rate limit 與健康狀態）
+ * @see ApiKeyRotationService#replaceKeys
+ */
+public record ApiKeyPoolUpdate(
+    List<String> added,
+    List<String> rotated,
+    List<String> removed,
+    List<String> unchanged
+) {
+
+    /**
+     * 是否有任何變更
+     */
+    public boolean changed() {
+        return !added.isEmpty() || !rotated.isEmpty() || !removed.isEmpty();
+    }
+}
@@ -1,74 +1,361 @@
 package io.github.samzhu.gate.service;
 
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
 import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CopyOnWriteArrayList;
 import java.util.concurrent.atomic.AtomicInteger;
 
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.springframework.stereotype.Service;
 
+import io.github.resilience4j.circuitbreaker.CircuitBreaker;
+import io.github.resilience4j.circuitbreaker.CircuitBreakerConfig;
+import io.github.resilience4j.circuitbreaker.CircuitBreakerRegistry;
+
 import io.github.samzhu.gate.config.AnthropicProperties;
 import io.github.samzhu.gate.config.ApiKeyConfig;
+import io.github.samzhu.gate.config.KeyAffinityConfig;
+import io.github.samzhu.gate.config.KeyAffinityMode;
+import io.github.samzhu.gate.model.RequestEnvelope;
 
 /**
  * API Key 輪換服務
  *
- * <p>使用 Round Robin（循環輪換）策略分配 Anthropic API Key，實現：
+ * <p>使用 Least Outstanding Requests（最少進行中請求）策略分配 Anthropic API Key：
  * <ul>
- *   <li>負載分散：將請求平均分配到多組 API Key</li>
- *   <li>配額管理：避免單一 Key 過快達到 Rate Limit</li>
- *   <li>容錯能力：支援多組 Key 備援</li>
+ *   <li>負載感知：新請求交給負載分數最低的 Key，正在服務多個長串流的 Key 不會與閒置 Key 以相同速率接到新工作</li>
+ *   <li>權重：負載分數 = (進行中請求 + 進行中串流 + 1) / (weight × headroom)，rate limit tier 較高的 Key 可承擔較多並行請求</li>
+ *   <li>額度感知：handler 將上游回應的 {@code anthropic-ratelimit-*} headers 回報給 {@link ApiKeyLease#recordRateLimits}，
+ *       剩餘額度（headroom）較多的 Key 分到較多新請求，即將耗盡的 Key 在 429 之前就被避開</li>
+ *   <li>平手時輪換：每次從不同的起點掃描，負載相同時（例如低流量）退化為 Round Robin</li>
+ *   <li>剔除異常 Key：依 401 / 403 / 429 / 5xx 比例判斷，被剔除的 Key 在等待期內不分配，
+ *       之後以少量探測請求決定是否重新納入（見 {@link ApiKeyLoad}）</li>
  * </ul>
  *
- * <p>執行緒安全：使用 {@link AtomicInteger} 確保並發存取時的正確性。
+ * <p>每個 Key 的 {@link CircuitBreaker}（{@code anthropic-api-<alias>}）沿用 {@code resilience4j.circuitbreaker.instances.anthropic-api}
+ * 的配置（失敗率門檻、滑動視窗、等待時間、半開探測數）。所有 Key 都被剔除時不拒絕請求，
+ * 仍交給負載最低的 Key（fail-open），避免上游全面故障時閘道自己也完全停擺。
+ *
+ * <p>執行緒安全：負載以 {@link ApiKeyLoad} 的 lock-free 計數器追蹤，選擇過程不加鎖
+ * （並發選擇可能同時選中同一個 Key，只影響平衡精確度，不影響正確性）。
+ *
+ * <p>熱更新：Key 池是不可變的 {@link ApiKeyPool} 快照，{@link #replaceKeys} 以 copy-on-write 整份替換
+ * （見 {@link ApiKeyPoolReloader}）。未變更的 Key 沿用原本的 {@link ApiKeyLoad}（負載、rate limit、健康狀態不重置）；
+ * 被移除或輪換的 Key 不再被選中，已持有租約的請求繼續使用舊 Key 直到結束（draining）。
+ *
+ * <p>Prompt cache 親和路由（{@code anthropic.api.affinity}）：以 consistent hashing 把同一個親和鍵
+ * （JWT subject 或可快取前綴）固定送往同一把 Key，讓 prompt cache 留在同一個組織內被重複讀取。
+ * 採 bounded-load 規則：首選 Key 的負載超過平均的 {@code load-factor} 倍、被剔除或額度將盡時，
+ * 改用 hash ring 上的下一把 Key（見 {@link KeyRouting}）。
+ *
+ * <p>使用方式：handler 以 {@link #acquire(RequestEnvelope, String)} 或 {@link #acquire(boolean)} 取得 {@link ApiKeyLease}，請求結束時呼叫
+ * {@link ApiKeyLease#release()} 扣除負載。
  *
  * @see ApiKeyConfig
- * @see ApiKeySelection
+ * @see ApiKeyLoad
+ * @see ApiKeyLease
  */
 @Service
 public class ApiKeyRotationService {
 
     private static final Logger log = LoggerFactory.getLogger(ApiKeyRotationService.class);
 
-    private final List<ApiKeyConfig> apiKeys;
+    static final String CIRCUIT_BREAKER_NAME = "anthropic-api";
+
+    private final CircuitBreakerRegistry circuitBreakerRegistry;
+    private final CircuitBreakerConfig breakerConfig;
+    private final KeyAffinityConfig affinity;
+    private final List<ApiKeyLoad> draining = new CopyOnWriteArrayList<>();
     private final AtomicInteger counter = new AtomicInteger(0);
+    private volatile ApiKeyPool pool;
 
-    public ApiKeyRotationService(AnthropicProperties properties) {
-        this.apiKeys = properties.keys();
-        if (apiKeys == null || apiKeys.isEmpty()) {
-            log.warn("No Anthropic API keys configured. Please configure anthropic.api.keys in application.yaml");
+    public ApiKeyRotationService(AnthropicProperties properties, CircuitBreakerRegistry circuitBreakerRegistry) {
+        List<ApiKeyConfig> apiKeys = properties.keys();
+        this.circuitBreakerRegistry = circuitBreakerRegistry;
+        this.breakerConfig = circuitBreakerRegistry.find(CIRCUIT_BREAKER_NAME)
+            .map(CircuitBreaker::getCircuitBreakerConfig)
+            .or(() -> circuitBreakerRegistry.getConfiguration(CIRCUIT_BREAKER_NAME))
+            .orElseGet(circuitBreakerRegistry::getDefaultConfig);
+        this.affinity = properties.affinity();
+        this.pool = ApiKeyPool.of(apiKeys.stream().map(this::newKeyLoad).toList());
+        if (apiKeys.isEmpty()) {
+            log.warn("No Anthropic API keys configured. Please configure anthropic.api.keys or anthropic.api.keys-file");
         } else {
-            log.info("Loaded {} Anthropic API key(s): {}",
-                apiKeys.size(),
-                apiKeys.stream().map(ApiKeyConfig::alias).toList());
+            log.info("Loaded {} Anthropic API key(s): {}", apiKeys.size(), describe(apiKeys));
+        }
+    }
+
+    private ApiKeyLoad newKeyLoad(ApiKeyConfig key) {
+        String alias = key.alias();
+        CircuitBreaker circuitBreaker = circuitBreakerRegistry.circuitBreaker(CIRCUIT_BREAKER_NAME + "-" + alias,
+            breakerConfig);
+        circuitBreaker.getEventPublisher().onStateTransition(event ->
+            log.warn("API key {} health: {}", alias, event.getStateTransition()));
+        return new ApiKeyLoad(key, circuitBreaker);
+    }
+
+    private static List<String> describe(List<ApiKeyConfig> keys) {
+        return keys.stream().map(key -> key.alias() + "(weight=" + key.weight() + ")").toList();
+    }
+
+    /**
+     * 以新的 Key 清單替換 Key 池（copy-on-write）
+     *
+     * <p>以 alias 對應新舊 Key：Key 值與權重相同者沿用原本的 {@link ApiKeyLoad}；
+     * 其餘舊 Key 移入 draining，進行中的請求結束後退場，其 {@link CircuitBreaker} 自 registry 移除，
+     * 新的同名 Key 以全新的健康狀態開始。
+     *
+     * @param keys 新的 Key 清單
+     * @return 變更摘要
+     * @throws IllegalArgumentException Key 清單為空或 alias 重複（維持原本的 Key 池）
+     */
+    public synchronized ApiKeyPoolUpdate replaceKeys(List<ApiKeyConfig> keys) {
+        if (keys == null || keys.isEmpty()) {
+            throw new IllegalArgumentException("Refusing to replace API keys with an empty list");
+        }
+        Set<String> aliases = new HashSet<>();
+        for (ApiKeyConfig key : keys) {
+            if (!aliases.add(key.alias())) {
+                throw new IllegalArgumentException("Duplicate API key alias: " + key.alias());
+            }
+        }
+
+        Map<String, ApiKeyLoad> current = new HashMap<>();
+        for (ApiKeyLoad load : pool.keyLoads()) {
+            current.put(load.alias(), load);
+        }
+        List<ApiKeyLoad> next = new ArrayList<>(keys.size());
+        List<String> added = new ArrayList<>();
+        List<String> rotated = new ArrayList<>();
+        List<String> unchanged = new ArrayList<>();
+        for (ApiKeyConfig key : keys) {
+            ApiKeyLoad existing = current.remove(key.alias());
+            if (existing != null && existing.config().equals(key)) {
+                next.add(existing);
+                unchanged.add(key.alias());
+                continue;
+            }
+            if (existing != null) {
+                retire(existing);
+                rotated.add(key.alias());
+            } else {
+                added.add(key.alias());
+            }
+            next.add(newKeyLoad(key));
+        }
+        List<String> removed = new ArrayList<>();
+        for (ApiKeyLoad load : current.values()) {
+            retire(load);
+            removed.add(load.alias());
+        }
+
+        this.pool = ApiKeyPool.of(next);
+        ApiKeyPoolUpdate update = new ApiKeyPoolUpdate(added, rotated, removed, unchanged);
+        if (update.changed()) {
+            log.info("API key pool replaced: added={}, rotated={}, removed={}, keys={}",
+                added, rotated, removed, describe(keys));
+        }
+        pruneDrained();
+        return update;
+    }
+
+    /**
+     * 舊 Key 退場：不再被選中，已持有的租約照常釋放
+     */
+    private void retire(ApiKeyLoad load) {
+        circuitBreakerRegistry.remove(load.circuitBreakerName());
+        draining.add(load);
+    }
+
+    /**
+     * 仍有進行中請求的已移除 Key（已完成者自清單移除）
+     */
+    public List<ApiKeyLoad> getDrainingKeyLoads() {
+        pruneDrained();
+        return List.copyOf(draining);
+    }
+
+    private void pruneDrained() {
+        for (ApiKeyLoad load : draining) {
+            if (load.inFlightRequests() == 0 && draining.remove(load)) {
+                log.info("API key {} drained", load.alias());
+            }
+        }
+    }
+
+    /**
+     * 親和路由是否以可快取前綴為親和鍵（決定 {@link RequestEnvelope#cachePrefixHash()} 是否需要計算）
+     */
+    public boolean usesCachePrefixAffinity() {
+        return affinity.mode() == KeyAffinityMode.CACHE_PREFIX;
+    }
+
+    /**
+     * 依親和路由模式取得 API Key 並計入一個進行中的請求
+     *
+     * <p>沒有親和鍵時（模式為 {@code none}、請求沒有 {@code cache_control} 等）等同 {@link #acquire(boolean)}。
+     *
+     * @param envelope 請求 envelope（{@code stream} 與可快取前綴 hash）
+     * @param subject  JWT subject
+     * @return ApiKeyLease，請求結束時必須 release；若無配置則返回 null
+     */
+    public ApiKeyLease acquire(RequestEnvelope envelope, String subject) {
+        Long affinityHash = switch (affinity.mode()) {
+            case NONE -> null;
+            case SUBJECT -> subject != null ? KeyAffinityRing.hash(subject) : null;
+            case CACHE_PREFIX -> envelope.cachePrefixHash();
+        };
+        if (affinityHash == null) {
+            return acquire(envelope.stream());
         }
+        return selectByAffinity(affinityHash, envelope.stream());
+    }
+
+    /**
+     * 取得負載最低的 API Key 並計入一個進行中的請求
+     *
+     * @param streaming 是否為串流請求（串流另外計入 inFlightStreams）
+     * @return ApiKeyLease，請求結束時必須 release；若無配置則返回 null
+     */
+    public ApiKeyLease acquire(boolean streaming) {
+        return selectLeastLoaded(null, streaming, KeyRouting.LEAST_LOADED);
+    }
+
+    /**
+     * 取得負載最低、且不是 {@code excludedAlias} 的 API Key（重試時換 Key）
+     *
+     * @param streaming     是否為串流請求
+     * @param excludedAlias 要排除的 Key 別名（剛回應 429 / 529 的 Key）
+     * @return ApiKeyLease，若沒有其他 Key 則返回 null
+     */
+    public ApiKeyLease acquireOther(boolean streaming, String excludedAlias) {
+        return selectLeastLoaded(excludedAlias, streaming, KeyRouting.FAILOVER);
     }
 
     /**
-     * Round Robin 策略取得下一個 API Key 及其 alias
+     * 取得負載最低的 API Key 及其 alias（不計入負載）
      *
      * @return ApiKeySelection 包含 key 和 alias，若無配置則返回 null
      */
     public ApiKeySelection getNextApiKey() {
-        if (apiKeys == null || apiKeys.isEmpty()) {
+        ApiKeyLease lease = selectLeastLoaded(null, false, KeyRouting.LEAST_LOADED);
+        if (lease == null) {
             return null;
         }
-        int index = Math.abs(counter.getAndIncrement() % apiKeys.size());
-        ApiKeyConfig config = apiKeys.get(index);
-        return new ApiKeySelection(config.value(), config.alias());
+        // 不追蹤負載：立即釋放（未取得回應的探測名額一併歸還）
+        lease.release();
+        return new ApiKeySelection(lease.key(), lease.alias());
+    }
+
+    /**
+     * 每個 Key 目前的負載（依配置順序）
+     */
+    public List<ApiKeyLoad> getKeyLoads() {
+        return pool.keyLoads();
     }
 
     /**
      * 取得可用的 API Key 數量
      */
     public int getKeyCount() {
-        return apiKeys != null ? apiKeys.size() : 0;
+        return pool.keyLoads().size();
     }
 
     /**
      * 檢查是否有可用的 API Key
      */
     public boolean hasAvailableKeys() {
-        return apiKeys != null && !apiKeys.isEmpty();
+        return !pool.keyLoads().isEmpty();
+    }
+
+    /**
+     * 選擇負載分數最低的 Key 並計入負載
+     *
+     * <p>優先順序：
+     * <ol>
+     *   <li>等待期已過的被剔除 Key 取得探測名額時，直接交給它（探測需要真實流量）</li>
+     *   <li>未被剔除且額度充足的 Key 中分數最低者</li>
+     *   <li>未被剔除但即將耗盡額度的 Key 中分數最低者（由上游回應 429）</li>
+     *   <li>全部被剔除時，分數最低的被剔除 Key（fail-open）</li>
+     * </ol>
+     */
+    private ApiKeyLease selectLeastLoaded(String excludedAlias, boolean streaming, KeyRouting routing) {
+        List<ApiKeyLoad> keyLoads = pool.keyLoads();
+        int size = keyLoads.size();
+        if (size == 0) {
+            return null;
+        }
+        Instant now = Instant.now();
+        int start = Math.floorMod(counter.getAndIncrement(), size);
+        ApiKeyLoad best = null;
+        ApiKeyLoad bestExhausted = null;
+        ApiKeyLoad bestEjected = null;
+        double bestScore = Double.MAX_VALUE;
+        double bestExhaustedScore = Double.MAX_VALUE;
+        double bestEjectedScore = Double.MAX_VALUE;
+        for (int i = 0; i < size; i++) {
+            ApiKeyLoad candidate = keyLoads.get((start + i) % size);
+            if (candidate.alias().equals(excludedAlias)) {
+                continue;
+            }
+            double headroom = candidate.budget().headroom(now);
+            double score = candidate.score(headroom);
+            if (candidate.ejected()) {
+                if (candidate.tryAcquireProbe()) {
+                    return candidate.acquire(streaming, true, routing);
+                }
+                if (score < bestEjectedScore) {
+                    bestEjected = candidate;
+                    bestEjectedScore = score;
+                }
+            } else if (headroom < ApiKeyLoad.EXHAUSTION_THRESHOLD) {
+                if (score < bestExhaustedScore) {
+                    bestExhausted = candidate;
+                    bestExhaustedScore = score;
+                }
+            } else if (score < bestScore) {
+                best = candidate;
+                bestScore = score;
+            }
+        }
+        ApiKeyLoad selected = best != null ? best : (bestExhausted != null ? bestExhausted : bestEjected);
+        return selected != null ? selected.acquire(streaming, false, routing) : null;
+    }
+
+    /**
+     * 沿 hash ring 選擇第一把未飽和、未被剔除且額度充足的 Key；都不可用時退回最低負載選擇
+     */
+    private ApiKeyLease selectByAffinity(long affinityHash, boolean streaming) {
+        ApiKeyPool current = pool;
+        List<ApiKeyLoad> order = current.ring().lookup(affinityHash);
+        Instant now = Instant.now();
+        int totalOutstanding = 0;
+        for (ApiKeyLoad load : current.keyLoads()) {
+            totalOutstanding += load.outstanding();
+        }
+        for (int i = 0; i < order.size(); i++) {
+            ApiKeyLoad candidate = order.get(i);
+            if (candidate.ejected()
+                    || candidate.budget().headroom(now) < ApiKeyLoad.EXHAUSTION_THRESHOLD
+                    || saturated(candidate, totalOutstanding, current.totalWeight())) {
+                continue;
+            }
+            return candidate.acquire(streaming, false, i == 0 ? KeyRouting.AFFINITY : KeyRouting.SPILLOVER);
+        }
+        return selectLeastLoaded(null, streaming, KeyRouting.LEAST_LOADED);
+    }
+
+    /**
+     * bounded-load：加入此請求後超過依 weight 分配的「平均負載 × load-factor」即為飽和
+     */
+    private boolean saturated(ApiKeyLoad candidate, int totalOutstanding, int totalWeight) {
+        double capacity = Math.ceil(affinity.loadFactor() * (totalOutstanding + 1) * candidate.weight() / totalWeight);
+        return candidate.outstanding() + 1 > capacity;
     }
 }
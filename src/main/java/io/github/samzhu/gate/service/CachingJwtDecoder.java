@@ -0,0 +1,151 @@
+package io.github.samzhu.gate.service;
+
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.HexFormat;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.security.oauth2.jwt.Jwt;
+import org.springframework.security.oauth2.jwt.JwtDecoder;
+import org.springframework.security.oauth2.jwt.JwtException;
+
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import com.github.benmanes.caffeine.cache.Expiry;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.cache.CaffeineCacheMetrics;
+
+import io.github.samzhu.gate.config.JwtCacheConfig;
+
+/**
+ * 已驗證 JWT 快取（位於 Resource Server 的 {@link JwtDecoder} 之前）
+ *
+ * <p>每個請求都會經過 {@link JwtDecoder} 以 RSA / EC 驗證簽章，而 Claude Code 會連續數小時重用同一個 bearer token。
+ * 快取驗證成功的 {@link Jwt}，同一個 token 只驗證一次簽章：
+ * <ul>
+ *   <li>Key：token 的 SHA-256（不以原始 token 作為 key）</li>
+ *   <li>過期：token 的 {@code exp} 與 {@code max-ttl} 較早者；{@code exp} 已過或 {@code nbf} 尚未到的 token 不快取</li>
+ *   <li>淘汰：Caffeine W-TinyLFU，最多 {@code max-entries} 個 token</li>
+ *   <li>只快取驗證成功的結果，驗證失敗一律交給 delegate 重新驗證</li>
+ *   <li>JWKS 金鑰輪替時（{@link #invalidateAll}）清空快取，之後每個 token 以新的金鑰重新驗證一次</li>
+ * </ul>
+ *
+ * <p>指標（Micrometer {@link CaffeineCacheMetrics}，{@code cache="jwt"}）：
+ * {@code cache.gets{result=hit|miss}}、{@code cache.puts}、{@code cache.evictions}、{@code cache.size}；
+ * {@code gate.jwt.cache.invalidations} - 因金鑰輪替清空快取的次數。
+ *
+ * @see JwtCacheConfig
+ * @see JwkSetPrefetcher
+ * @see io.github.samzhu.gate.config.SecurityConfig
+ */
+public class CachingJwtDecoder implements JwtDecoder {
+
+    private static final Logger log = LoggerFactory.getLogger(CachingJwtDecoder.class);
+
+    static final String CACHE_NAME = "jwt";
+
+    private final JwtDecoder delegate;
+    private final Cache<String, Jwt> cache;
+    private final Duration maxTtl;
+    private final Counter invalidations;
+
+    public CachingJwtDecoder(JwtDecoder delegate, JwtCacheConfig config, MeterRegistry meterRegistry) {
+        this.delegate = delegate;
+        this.maxTtl = config.maxTtl();
+        this.invalidations = Counter.builder("gate.jwt.cache.invalidations")
+            .description("Validated JWT cache flushes caused by JWKS key rotation")
+            .register(meterRegistry);
+        if (!config.enabled()) {
+            this.cache = null;
+            log.info("JWT cache disabled");
+            return;
+        }
+        this.cache = Caffeine.newBuilder()
+            .maximumSize(config.maxEntries())
+            .expireAfter(new TokenExpiry())
+            .recordStats()
+            .build();
+        CaffeineCacheMetrics.monitor(meterRegistry, cache, CACHE_NAME);
+        log.info("JWT cache enabled: maxEntries={}, maxTtl={}", config.maxEntries(), config.maxTtl());
+    }
+
+    @Override
+    public Jwt decode(String token) throws JwtException {
+        if (cache == null) {
+            return delegate.decode(token);
+        }
+        String key = digest(token);
+        Jwt cached = cache.getIfPresent(key);
+        if (cached != null) {
+            return cached;
+        }
+        Jwt jwt = delegate.decode(token);
+        if (remaining(jwt, Instant.now()) > 0) {
+            cache.put(key, jwt);
+        }
+        return jwt;
+    }
+
+    /**
+     * 清空快取（JWKS 金鑰輪替時呼叫）
+     */
+    public void invalidateAll() {
+        if (cache != null) {
+            cache.invalidateAll();
+            invalidations.increment();
+            log.info("JWKS key set changed, validated JWT cache cleared");
+        }
+    }
+
+    /**
+     * 可快取的剩餘時間（奈秒）：{@code exp} 與 {@code max-ttl} 較早者，{@code nbf} 尚未到時為 0
+     */
+    private long remaining(Jwt jwt, Instant now) {
+        Instant notBefore = jwt.getNotBefore();
+        if (notBefore != null && notBefore.isAfter(now)) {
+            return 0;
+        }
+        long ttl = maxTtl.toNanos();
+        Instant expiresAt = jwt.getExpiresAt();
+        if (expiresAt != null) {
+            ttl = Math.min(ttl, Duration.between(now, expiresAt).toNanos());
+        }
+        return Math.max(ttl, 0);
+    }
+
+    private static String digest(String token) {
+        try {
+            MessageDigest digest = MessageDigest.getInstance("SHA-256");
+            return HexFormat.of().formatHex(digest.digest(token.getBytes(StandardCharsets.US_ASCII)));
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    /**
+     * 依 token 的 {@code exp} 決定每個 entry 的存活時間（讀取不延長）
+     */
+    private final class TokenExpiry implements Expiry<String, Jwt> {
+
+        @Override
+        public long expireAfterCreate(String key, Jwt jwt, long currentTime) {
+            return remaining(jwt, Instant.now());
+        }
+
+        @Override
+        public long expireAfterUpdate(String key, Jwt jwt, long currentTime, long currentDuration) {
+            return remaining(jwt, Instant.now());
+        }
+
+        @Override
+        public long expireAfterRead(String key, Jwt jwt, long currentTime, long currentDuration) {
+            return currentDuration;
+        }
+    }
+}
@@ -0,0 +1,66 @@
+package io.github.samzhu.gate.service;
+
+import java.util.concurrent.CompletableFuture;
+
+/**
+ * 參與 single-flight 合併的請求
+ *
+ * <ul>
+ *   <li>領頭（{@link #leader()} 為 true）- 送出上游請求，完成後以 {@link #complete} 分享回應；
+ *       無法取得完整回應時以 {@link #abandon()} 讓跟隨者各自送出請求</li>
+ *   <li>跟隨者 - 以 {@link #await()} 等待領頭的回應（有上限），取得 null 時自行送出請求</li>
+ * </ul>
+ *
+ * <p>{@link #complete} 與 {@link #abandon()} 只對領頭有效且只有第一次呼叫生效，可在 finally 中無條件呼叫。
+ *
+ * @see RequestCoalescer
+ */
+public final class CoalescedRequest {
+
+    private final RequestCoalescer coalescer;
+    private final String key;
+    private final CompletableFuture<SharedResponse> result;
+    private final boolean leader;
+
+    CoalescedRequest(RequestCoalescer coalescer, String key, CompletableFuture<SharedResponse> result,
+                     boolean leader) {
+        this.coalescer = coalescer;
+        this.key = key;
+        this.result = result;
+        this.leader = leader;
+    }
+
+    /**
+     * 是否為領頭請求（負責送出上游請求）
+     */
+    public boolean leader() {
+        return leader;
+    }
+
+    /**
+     * 跟隨者等待領頭的回應
+     *
+     * @return 分享的回應；逾時或領頭放棄時為 null（呼叫端應自行送出上游請求）
+     */
+    public SharedResponse await() {
+        return leader ? null : coalescer.await(result);
+    }
+
+    /**
+     * 領頭分享完整的上游回應
+     */
+    public void complete(SharedResponse response) {
+        if (leader) {
+            coalescer.finish(key, result, response);
+        }
+    }
+
+    /**
+     * 領頭未能取得完整回應，跟隨者改為各自送出請求
+     */
+    public void abandon() {
+        if (leader) {
+            coalescer.finish(key, result, null);
+        }
+    }
+}
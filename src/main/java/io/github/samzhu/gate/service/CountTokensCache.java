@@ -0,0 +1,99 @@
+package io.github.samzhu.gate.service;
+
+import java.security.MessageDigest;
+import java.util.Map;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.stereotype.Component;
+
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.cache.CaffeineCacheMetrics;
+
+import io.github.samzhu.gate.config.AnthropicProperties;
+import io.github.samzhu.gate.config.CountTokensCacheConfig;
+
+/**
+ * count_tokens 回應快取（content-addressed）
+ *
+ * <p>Claude Code 在每輪對話前後頻繁呼叫 {@code count_tokens}，請求內容幾乎相同。
+ * 以「請求本體 + 所有 {@code anthropic-*} headers」的 SHA-256 為 key 快取上游的成功回應，
+ * 命中時不需要取得 API Key、不需要上游往返：
+ * <ul>
+ *   <li>淘汰：Caffeine W-TinyLFU，權重為回應本體位元組數，總量不超過 {@code max-size}</li>
+ *   <li>過期：寫入後 {@code ttl}</li>
+ *   <li>只快取 2xx 回應；token 數只取決於請求內容與 API 版本，與使用哪一把 Key 無關</li>
+ * </ul>
+ *
+ * <p>Key 以原始位元組計算（不重新序列化 JSON）：同一個客戶端送出的相同內容位元組相同，
+ * 正規化 JSON 的成本會抵銷快取省下的時間。
+ *
+ * <p>指標（Micrometer {@link CaffeineCacheMetrics}，{@code cache="count_tokens"}）：
+ * {@code cache.gets{result=hit|miss}}、{@code cache.puts}、{@code cache.evictions}、
+ * {@code cache.eviction.weight}、{@code cache.size}。
+ *
+ * @see CountTokensCacheConfig
+ */
+@Component
+public class CountTokensCache {
+
+    private static final Logger log = LoggerFactory.getLogger(CountTokensCache.class);
+
+    static final String CACHE_NAME = "count_tokens";
+
+    /** 每個 entry 除回應本體外的估計開銷（key 字串、entry 物件） */
+    private static final int ENTRY_OVERHEAD_BYTES = 256;
+
+    private final Cache<String, byte[]> cache;
+
+    public CountTokensCache(AnthropicProperties anthropicProperties, MeterRegistry meterRegistry) {
+        CountTokensCacheConfig config = anthropicProperties.countTokensCache();
+        if (!config.enabled()) {
+            this.cache = null;
+            log.info("count_tokens cache disabled");
+            return;
+        }
+        this.cache = Caffeine.newBuilder()
+            .maximumWeight(config.maxSize().toBytes())
+            .weigher((String key, byte[] body) -> body.length + ENTRY_OVERHEAD_BYTES)
+            .expireAfterWrite(config.ttl())
+            .recordStats()
+            .build();
+        CaffeineCacheMetrics.monitor(meterRegistry, cache, CACHE_NAME);
+    }
+
+    /**
+     * 計算快取 key
+     *
+     * @param body             請求本體
+     * @param anthropicHeaders 所有 anthropic-* headers（依名稱排序後計入）
+     * @return SHA-256 hex 字串
+     */
+    public String key(byte[] body, Map<String, String> anthropicHeaders) {
+        MessageDigest digest = RequestKeyDigest.sha256();
+        RequestKeyDigest.updateHeaders(digest, anthropicHeaders);
+        digest.update(body);
+        return RequestKeyDigest.hex(digest);
+    }
+
+    /**
+     * 查詢快取的回應本體
+     *
+     * @return 回應本體，未命中（或停用）時為 null
+     */
+    public byte[] get(String key) {
+        return cache != null ? cache.getIfPresent(key) : null;
+    }
+
+    /**
+     * 寫入成功的回應本體
+     */
+    public void put(String key, byte[] responseBody) {
+        if (cache != null) {
+            cache.put(key, responseBody);
+        }
+    }
+}
@@ -0,0 +1,294 @@
+package io.github.samzhu.gate.service;
+
+import java.io.IOException;
+import java.net.URI;
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.text.ParseException;
+import java.time.Duration;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.boot.ApplicationArguments;
+import org.springframework.boot.ApplicationRunner;
+import org.springframework.boot.autoconfigure.security.oauth2.resource.OAuth2ResourceServerProperties;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpMethod;
+import org.springframework.http.MediaType;
+import org.springframework.http.client.ClientHttpRequest;
+import org.springframework.http.client.ClientHttpResponse;
+import org.springframework.http.client.SimpleClientHttpRequestFactory;
+import org.springframework.stereotype.Component;
+
+import com.nimbusds.jose.jwk.JWK;
+import com.nimbusds.jose.jwk.JWKSelector;
+import com.nimbusds.jose.jwk.JWKSet;
+import com.nimbusds.jose.jwk.source.JWKSource;
+import com.nimbusds.jose.proc.SecurityContext;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+
+import jakarta.annotation.PreDestroy;
+
+import io.github.samzhu.gate.config.GateJwtProperties;
+import io.github.samzhu.gate.config.JwksRefreshConfig;
+
+/**
+ * JWKS 預先載入與背景更新（JWT 簽章驗證的金鑰來源）
+ *
+ * <p>Nimbus 預設在第一個請求、以及遇到未知 {@code kid} 時同步下載 {@code jwk-set-uri}，
+ * 新 instance 的第一個請求與金鑰輪替後的請求都會卡在網路往返上。改為：
+ * <ol>
+ *   <li>啟動 - 以 {@link ApplicationRunner} 同步載入；Spring Boot 在所有 runner 完成後才將 readiness 切換為
+ *       {@code ACCEPTING_TRAFFIC}，instance 接流量前金鑰已就緒。載入失敗時以指數退避重試，
+ *       {@value #STARTUP_ATTEMPTS} 次都失敗則 runner 拋出例外、啟動失敗（沒有金鑰的 instance 不會進入 ready）</li>
+ *   <li>背景更新 - 每隔 {@code refresh-interval}（回應帶有較短的 {@code Cache-Control: max-age} 時為其 80%）
+ *       在背景重新下載，間隔隨機提前最多 {@code jitter} 比例</li>
+ *   <li>未知 {@code kid} - 不等待下載，立即以目前的金鑰驗證（該請求失敗），同時在背景提前更新
+ *       （距上次嘗試至少 {@value #ON_DEMAND_COOLDOWN_SECONDS} 秒）</li>
+ *   <li>下載失敗 - 保留上一份成功的金鑰，{@value #FAILURE_RETRY_SECONDS} 秒後重試</li>
+ * </ol>
+ *
+ * <p>驗證從不等待網路。金鑰內容變更時通知 {@link #addChangeListener} 註冊的監聽者
+ * （例如 {@link CachingJwtDecoder#invalidateAll}）。
+ *
+ * <p>指標：
+ * <ul>
+ *   <li>{@code gate.jwks.refreshes{outcome=changed|unchanged|failed}} - 下載結果</li>
+ *   <li>{@code gate.jwks.age} - 距上次成功下載的秒數</li>
+ *   <li>{@code gate.jwks.keys} - 目前的金鑰數</li>
+ * </ul>
+ *
+ * @see JwksRefreshConfig
+ * @see io.github.samzhu.gate.config.SecurityConfig
+ */
+@Component
+public class JwkSetPrefetcher implements JWKSource<SecurityContext>, ApplicationRunner {
+
+    private static final Logger log = LoggerFactory.getLogger(JwkSetPrefetcher.class);
+
+    static final long FAILURE_RETRY_SECONDS = 30;
+    /** 啟動時載入的嘗試次數（每次間隔 1、2、4… 秒） */
+    static final int STARTUP_ATTEMPTS = 5;
+    static final long ON_DEMAND_COOLDOWN_SECONDS = 30;
+    private static final Pattern MAX_AGE = Pattern.compile("max-age=(\\d+)");
+    private static final MediaType JWK_SET_MEDIA_TYPE = MediaType.valueOf("application/jwk-set+json");
+
+    private final URI jwkSetUri;
+    private final JwksRefreshConfig config;
+    private final SimpleClientHttpRequestFactory requestFactory;
+    private final ScheduledThreadPoolExecutor refreshScheduler;
+    private final List<Runnable> changeListeners = new CopyOnWriteArrayList<>();
+    private final ReentrantLock loadLock = new ReentrantLock();
+    private final AtomicBoolean onDemandQueued = new AtomicBoolean();
+    private final Counter changed;
+    private final Counter unchanged;
+    private final Counter failed;
+
+    private volatile JWKSet keySet;
+    private volatile long lastSuccessNanos;
+    private volatile long lastAttemptNanos;
+    private byte[] lastDigest;
+
+    public JwkSetPrefetcher(OAuth2ResourceServerProperties resourceServerProperties,
+                            GateJwtProperties gateJwtProperties,
+                            MeterRegistry meterRegistry) {
+        this.jwkSetUri = URI.create(resourceServerProperties.getJwt().getJwkSetUri());
+        this.config = gateJwtProperties.jwks();
+        this.requestFactory = new SimpleClientHttpRequestFactory();
+        this.requestFactory.setConnectTimeout(config.timeout());
+        this.requestFactory.setReadTimeout(config.timeout());
+        this.refreshScheduler = new ScheduledThreadPoolExecutor(1,
+            Thread.ofPlatform().name("jwks-refresh").daemon().factory());
+        this.changed = outcome(meterRegistry, "changed");
+        this.unchanged = outcome(meterRegistry, "unchanged");
+        this.failed = outcome(meterRegistry, "failed");
+        Gauge.builder("gate.jwks.age", this, JwkSetPrefetcher::ageSeconds)
+            .description("Seconds since the JWK set was last fetched successfully")
+            .baseUnit("seconds")
+            .register(meterRegistry);
+        Gauge.builder("gate.jwks.keys", this, prefetcher -> {
+                JWKSet current = prefetcher.keySet;
+                return current != null ? current.getKeys().size() : 0;
+            })
+            .description("Keys in the current JWK set")
+            .register(meterRegistry);
+    }
+
+    private static Counter outcome(MeterRegistry meterRegistry, String outcome) {
+        return Counter.builder("gate.jwks.refreshes")
+            .description("JWK set downloads by outcome")
+            .tag("outcome", outcome)
+            .register(meterRegistry);
+    }
+
+    @Override
+    public void run(ApplicationArguments args) throws InterruptedException {
+        long start = System.nanoTime();
+        Duration next = refresh();
+        for (int attempt = 1; keySet == null && attempt < STARTUP_ATTEMPTS; attempt++) {
+            Duration backoff = Duration.ofSeconds(1L << (attempt - 1));
+            log.warn("Retrying JWK set load in {} s (attempt {}/{})", backoff.toSeconds(), attempt + 1,
+                STARTUP_ATTEMPTS);
+            Thread.sleep(backoff);
+            next = refresh();
+        }
+        if (keySet == null) {
+            // 沒有金鑰時所有請求都會以 401 結束：不讓 readiness 進入 ACCEPTING_TRAFFIC
+            throw new IllegalStateException("Failed to load JWK set from " + jwkSetUri + " after "
+                + STARTUP_ATTEMPTS + " attempts");
+        }
+        log.info("Loaded {} JWK(s) from {} in {} ms", keySet.getKeys().size(), jwkSetUri,
+            TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start));
+        schedule(next);
+    }
+
+    @PreDestroy
+    void shutdown() {
+        refreshScheduler.shutdownNow();
+    }
+
+    /**
+     * 註冊金鑰內容變更的監聽者（第一次載入不通知）
+     */
+    public void addChangeListener(Runnable listener) {
+        changeListeners.add(listener);
+    }
+
+    @Override
+    public List<JWK> get(JWKSelector jwkSelector, SecurityContext context) {
+        JWKSet current = keySet;
+        if (current == null) {
+            // 啟動載入完成前（readiness 尚未 UP）：不等待下載，請求以 401 結束
+            requestRefresh();
+            return List.of();
+        }
+        List<JWK> matches = jwkSelector.select(current);
+        if (matches.isEmpty()) {
+            requestRefresh();
+        }
+        return matches;
+    }
+
+    /**
+     * 未知 {@code kid} 或尚無金鑰：在背景提前更新（不等待結果）
+     */
+    private void requestRefresh() {
+        long sinceAttempt = System.nanoTime() - lastAttemptNanos;
+        if (sinceAttempt < TimeUnit.SECONDS.toNanos(ON_DEMAND_COOLDOWN_SECONDS)
+                || !onDemandQueued.compareAndSet(false, true)) {
+            return;
+        }
+        refreshScheduler.execute(() -> {
+            try {
+                refresh();
+            } finally {
+                onDemandQueued.set(false);
+            }
+        });
+    }
+
+    /**
+     * 排程下一次背景更新（隨機提前最多 {@code jitter} 比例）
+     */
+    private void schedule(Duration delay) {
+        long delayMillis = delay.toMillis();
+        long jittered = delayMillis - (long) (delayMillis * config.jitter() * ThreadLocalRandom.current().nextDouble());
+        refreshScheduler.schedule(() -> schedule(refresh()), Math.max(jittered, 1), TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * 下載並替換金鑰（失敗時保留目前的金鑰）
+     *
+     * @return 到下一次更新的間隔
+     */
+    private Duration refresh() {
+        loadLock.lock();
+        try {
+            lastAttemptNanos = System.nanoTime();
+            ClientHttpRequest request = requestFactory.createRequest(jwkSetUri, HttpMethod.GET);
+            request.getHeaders().setAccept(List.of(MediaType.APPLICATION_JSON, JWK_SET_MEDIA_TYPE));
+            byte[] content;
+            String cacheControl;
+            try (ClientHttpResponse response = request.execute()) {
+                if (!response.getStatusCode().is2xxSuccessful()) {
+                    throw new IOException("HTTP " + response.getStatusCode().value());
+                }
+                content = response.getBody().readAllBytes();
+                cacheControl = response.getHeaders().getFirst(HttpHeaders.CACHE_CONTROL);
+            }
+            JWKSet parsed = JWKSet.parse(new String(content, StandardCharsets.UTF_8));
+            if (parsed.getKeys().isEmpty()) {
+                throw new IllegalArgumentException("JWK set contains no keys");
+            }
+
+            byte[] digest = sha256(content);
+            boolean rotated = lastDigest != null && !MessageDigest.isEqual(lastDigest, digest);
+            if (lastDigest == null || rotated) {
+                keySet = parsed;
+                lastDigest = digest;
+                changed.increment();
+            } else {
+                unchanged.increment();
+            }
+            lastSuccessNanos = System.nanoTime();
+            if (rotated) {
+                log.info("JWK set changed: {} key(s)", parsed.getKeys().size());
+                changeListeners.forEach(Runnable::run);
+            }
+            return nextInterval(cacheControl);
+        } catch (IOException | ParseException | RuntimeException e) {
+            failed.increment();
+            log.error("Failed to fetch JWK set from {}, keeping {} key(s): {}", jwkSetUri,
+                keySet != null ? keySet.getKeys().size() : 0, e.getMessage());
+            return Duration.ofSeconds(Math.min(FAILURE_RETRY_SECONDS, config.refreshInterval().toSeconds()));
+        } finally {
+            loadLock.unlock();
+        }
+    }
+
+    /**
+     * {@code refresh-interval} 與 {@code max-age} 的 80% 較短者
+     */
+    private Duration nextInterval(String cacheControl) {
+        Duration interval = config.refreshInterval();
+        if (cacheControl != null) {
+            Matcher matcher = MAX_AGE.matcher(cacheControl);
+            if (matcher.find()) {
+                try {
+                    Duration ahead = Duration.ofSeconds(Long.parseLong(matcher.group(1))).multipliedBy(4).dividedBy(5);
+                    if (!ahead.isZero() && ahead.compareTo(interval) < 0) {
+                        interval = ahead;
+                    }
+                } catch (NumberFormatException ignored) {
+                    // max-age 超出範圍時沿用 refresh-interval
+                }
+            }
+        }
+        return interval;
+    }
+
+    private double ageSeconds() {
+        return keySet != null ? (System.nanoTime() - lastSuccessNanos) / 1e9 : Double.NaN;
+    }
+
+    private static byte[] sha256(byte[] content) {
+        try {
+            return MessageDigest.getInstance("SHA-256").digest(content);
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+}
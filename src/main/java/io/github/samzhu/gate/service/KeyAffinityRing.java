@@ -0,0 +1,81 @@
+package io.github.samzhu.gate.service;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * API Key consistent hash ring
+ *
+ * <p>每把 Key 依 weight 放置 {@value #VIRTUAL_NODES_PER_WEIGHT} × weight 個虛擬節點，
+ * 親和鍵順時針遇到的第一個節點即為首選 Key，之後遇到的其他 Key 依序為備援。
+ * Key 增減時只有落在該 Key 節點上的親和鍵會移動，其他對話的快取不受影響。
+ *
+ * <p>建立後不可變，可在多執行緒間共用。
+ */
+final class KeyAffinityRing {
+
+    private static final int VIRTUAL_NODES_PER_WEIGHT = 64;
+
+    private final long[] positions;
+    private final ApiKeyLoad[] owners;
+    private final int keyCount;
+
+    KeyAffinityRing(List<ApiKeyLoad> keyLoads) {
+        List<long[]> nodes = new ArrayList<>();
+        for (int index = 0; index < keyLoads.size(); index++) {
+            ApiKeyLoad load = keyLoads.get(index);
+            for (int i = 0; i < VIRTUAL_NODES_PER_WEIGHT * load.weight(); i++) {
+                nodes.add(new long[] {hash(load.alias() + "#" + i), index});
+            }
+        }
+        nodes.sort((a, b) -> Long.compare(a[0], b[0]));
+        this.positions = new long[nodes.size()];
+        this.owners = new ApiKeyLoad[nodes.size()];
+        for (int i = 0; i < nodes.size(); i++) {
+            positions[i] = nodes.get(i)[0];
+            owners[i] = keyLoads.get((int) nodes.get(i)[1]);
+        }
+        this.keyCount = keyLoads.size();
+    }
+
+    /**
+     * 親和鍵對應的 Key 順序（首選 Key 在前，每把 Key 只出現一次）
+     *
+     * @param affinityHash 親和鍵 hash
+     * @return Key 順序，ring 為空時為空 List
+     */
+    List<ApiKeyLoad> lookup(long affinityHash) {
+        List<ApiKeyLoad> order = new ArrayList<>(keyCount);
+        if (positions.length == 0) {
+            return order;
+        }
+        int start = Arrays.binarySearch(positions, affinityHash);
+        if (start < 0) {
+            start = -start - 1;
+        }
+        for (int i = 0; i < positions.length && order.size() < keyCount; i++) {
+            ApiKeyLoad owner = owners[(start + i) % positions.length];
+            if (!order.contains(owner)) {
+                order.add(owner);
+            }
+        }
+        return order;
+    }
+
+    /**
+     * 字串的 64-bit hash（SHA-256 前 8 bytes，分佈均勻且跨 instance 一致）
+     */
+    static long hash(String value) {
+        try {
+            byte[] digest = MessageDigest.getInstance("SHA-256").digest(value.getBytes(StandardCharsets.UTF_8));
+            return ByteBuffer.wrap(digest).getLong();
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+}
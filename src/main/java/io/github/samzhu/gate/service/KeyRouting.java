@@ -0,0 +1,37 @@
+package io.github.samzhu.gate.service;
+
+/**
+ * API Key 的選擇方式（指標 {@code routing} tag）
+ *
+ * <ul>
+ *   <li>{@link #AFFINITY} - 親和鍵對應的首選 Key</li>
+ *   <li>{@link #SPILLOVER} - 首選 Key 飽和、被剔除或額度將盡，改用 hash ring 上的下一把 Key</li>
+ *   <li>{@link #LEAST_LOADED} - 沒有親和鍵（或 ring 上所有 Key 都不可用），選負載最低的 Key</li>
+ *   <li>{@link #FAILOVER} - 上游 429 / 529 後換 Key 重試</li>
+ * </ul>
+ *
+ * @see ApiKeyRotationService
+ */
+public enum KeyRouting {
+
+    AFFINITY("affinity"),
+
+    SPILLOVER("spillover"),
+
+    LEAST_LOADED("least_loaded"),
+
+    FAILOVER("failover");
+
+    private final String tag;
+
+    KeyRouting(String tag) {
+        this.tag = tag;
+    }
+
+    /**
+     * 指標 tag 值
+     */
+    public String tag() {
+        return tag;
+    }
+}
@@ -0,0 +1,104 @@
+package io.github.samzhu.gate.service;
+
+import java.time.Instant;
+import java.time.format.DateTimeParseException;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.springframework.http.HttpHeaders;
+
+/**
+ * 單一 API Key 的 rate limit 剩餘額度
+ *
+ * <p>Anthropic 每個回應都帶有 {@code anthropic-ratelimit-*} headers，記錄最近一次觀察到的值：
+ * <ul>
+ *   <li>{@code anthropic-ratelimit-requests-limit / -remaining / -reset}</li>
+ *   <li>{@code anthropic-ratelimit-input-tokens-limit / -remaining / -reset}</li>
+ *   <li>{@code anthropic-ratelimit-output-tokens-limit / -remaining / -reset}</li>
+ *   <li>{@code anthropic-ratelimit-tokens-limit / -remaining / -reset}</li>
+ * </ul>
+ *
+ * <p>{@link #headroom(Instant)} 為所有維度中最小的 remaining / limit 比例；
+ * 已過 reset 時間的維度視為已補滿，尚未觀察到任何 header 時為 1.0。
+ * 收到 429 時以 {@link #coolDown(Instant)} 將 headroom 壓為 0，直到 {@code retry-after} 到期。
+ *
+ * <p>以 volatile 不可變快照更新，讀取不加鎖；回應亂序到達時以最後寫入者為準。
+ *
+ * @see <a href="https://docs.claude.com/en/api/rate-limits#response-headers">Rate limit response headers</a>
+ */
+final class RateLimitBudget {
+
+    private static final String HEADER_PREFIX = "anthropic-ratelimit-";
+    private static final String[] DIMENSIONS = {"requests", "input-tokens", "output-tokens", "tokens"};
+
+    private volatile List<Limit> limits = List.of();
+    private volatile Instant coolDownUntil = Instant.MIN;
+
+    /**
+     * 從上游回應 headers 更新剩餘額度（沒有 rate limit headers 時保留前值）
+     */
+    void update(HttpHeaders headers) {
+        List<Limit> observed = new ArrayList<>(DIMENSIONS.length);
+        for (String dimension : DIMENSIONS) {
+            long limit = parseLong(headers.getFirst(HEADER_PREFIX + dimension + "-limit"));
+            long remaining = parseLong(headers.getFirst(HEADER_PREFIX + dimension + "-remaining"));
+            if (limit > 0 && remaining >= 0) {
+                observed.add(new Limit(dimension, limit, remaining,
+                    parseInstant(headers.getFirst(HEADER_PREFIX + dimension + "-reset"))));
+            }
+        }
+        if (!observed.isEmpty()) {
+            limits = List.copyOf(observed);
+        }
+    }
+
+    /**
+     * 剩餘額度比例（0.0 ~ 1.0）
+     */
+    double headroom(Instant now) {
+        if (now.isBefore(coolDownUntil)) {
+            return 0.0;
+        }
+        double headroom = 1.0;
+        for (Limit limit : limits) {
+            if (limit.reset() == null || now.isBefore(limit.reset())) {
+                headroom = Math.min(headroom, (double) limit.remaining() / limit.limit());
+            }
+        }
+        return headroom;
+    }
+
+    /**
+     * 在指定時間前視為額度耗盡（429 + retry-after）
+     */
+    void coolDown(Instant until) {
+        if (until.isAfter(coolDownUntil)) {
+            coolDownUntil = until;
+        }
+    }
+
+    private static long parseLong(String value) {
+        if (value == null) {
+            return -1;
+        }
+        try {
+            return Long.parseLong(value.trim());
+        } catch (NumberFormatException e) {
+            return -1;
+        }
+    }
+
+    private static Instant parseInstant(String value) {
+        if (value == null) {
+            return null;
+        }
+        try {
+            return Instant.parse(value.trim());
+        } catch (DateTimeParseException e) {
+            return null;
+        }
+    }
+
+    private record Limit(String dimension, long limit, long remaining, Instant reset) {
+    }
+}
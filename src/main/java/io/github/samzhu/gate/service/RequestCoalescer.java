@@ -0,0 +1,161 @@
+package io.github.samzhu.gate.service;
+
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.time.Duration;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.stereotype.Component;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+
+import io.github.samzhu.gate.config.AnthropicProperties;
+import io.github.samzhu.gate.config.RequestCoalescingConfig;
+import io.github.samzhu.gate.model.RequestEnvelope;
+
+/**
+ * 相同非串流請求的 single-flight 合併
+ *
+ * <p>Agent 群組同時送出相同的請求（重試、fan-out eval）時，每個請求都會送往上游。
+ * 啟用 {@code anthropic.api.coalescing} 後，同一時間每個 key 只有一個上游請求：
+ * <ul>
+ *   <li>Key：{@link RequestEnvelope#canonicalHash()} + 所有 {@code anthropic-*} headers 的 SHA-256；
+ *       只有 {@code temperature: 0} 的非串流請求參與（其他溫度的相同請求本來就預期得到不同結果）</li>
+ *   <li>第一個請求成為領頭，照常取得 API Key 並送往上游，回應本體轉發給自己的客戶端時同時保留完整內容</li>
+ *   <li>之後到達的相同請求成為跟隨者，不取得 API Key，最多等待 {@code max-wait}；
+ *       領頭完成後共用同一份回應（包含上游錯誤回應，避免上游故障時放大流量）</li>
+ *   <li>跟隨者逾時、領頭失敗或客戶端中斷時，跟隨者各自送出上游請求</li>
+ * </ul>
+ *
+ * <p>跟隨者以自己的 subject 發送用量事件（{@code response_source: coalesced}），{@code key_alias} 與
+ * {@code anthropic_request_id} 為領頭的上游請求；計費端可依 {@code anthropic_request_id} 歸併同一次上游呼叫。
+ *
+ * <p>指標：
+ * <ul>
+ *   <li>{@code gate.coalescing.requests{outcome}} - {@code leader}（送往上游）、{@code shared}（省下的上游請求）、
+ *       {@code timeout}、{@code fallback}（領頭未能分享回應）</li>
+ *   <li>{@code gate.coalescing.wait} - 跟隨者的等待時間</li>
+ *   <li>{@code gate.coalescing.inflight} - 目前有跟隨者可加入的上游請求數</li>
+ * </ul>
+ *
+ * @see RequestCoalescingConfig
+ * @see CoalescedRequest
+ */
+@Component
+public class RequestCoalescer {
+
+    private static final Logger log = LoggerFactory.getLogger(RequestCoalescer.class);
+
+    private final RequestCoalescingConfig config;
+    private final Map<String, CompletableFuture<SharedResponse>> inFlight = new ConcurrentHashMap<>();
+    private final Counter leaders;
+    private final Counter shared;
+    private final Counter timeouts;
+    private final Counter fallbacks;
+    private final Timer waitTimer;
+
+    public RequestCoalescer(AnthropicProperties anthropicProperties, MeterRegistry meterRegistry) {
+        this.config = anthropicProperties.coalescing();
+        this.leaders = outcome(meterRegistry, "leader");
+        this.shared = outcome(meterRegistry, "shared");
+        this.timeouts = outcome(meterRegistry, "timeout");
+        this.fallbacks = outcome(meterRegistry, "fallback");
+        this.waitTimer = Timer.builder("gate.coalescing.wait")
+            .description("Time coalesced requests waited for the leading upstream call")
+            .register(meterRegistry);
+        Gauge.builder("gate.coalescing.inflight", inFlight, Map::size)
+            .description("Upstream calls that identical requests can currently join")
+            .register(meterRegistry);
+        if (config.enabled()) {
+            log.info("Request coalescing enabled: maxWait={}, streamBuffer={}", config.maxWait(), config.streamBuffer());
+        }
+    }
+
+    private static Counter outcome(MeterRegistry meterRegistry, String outcome) {
+        return Counter.builder("gate.coalescing.requests")
+            .description("Non-streaming requests by single-flight coalescing outcome")
+            .tag("outcome", outcome)
+            .register(meterRegistry);
+    }
+
+    /**
+     * 加入（或建立）相同請求的上游呼叫
+     *
+     * @param envelope         請求 envelope
+     * @param anthropicHeaders 所有 anthropic-* headers
+     * @return 參與合併的請求；停用或請求不可合併（串流、{@code temperature} 不為 0）時為 null
+     */
+    public CoalescedRequest join(RequestEnvelope envelope, Map<String, String> anthropicHeaders) {
+        String key = envelope.stream() ? null : key(envelope, anthropicHeaders);
+        if (key == null) {
+            return null;
+        }
+        CompletableFuture<SharedResponse> created = new CompletableFuture<>();
+        CompletableFuture<SharedResponse> existing = inFlight.putIfAbsent(key, created);
+        if (existing == null) {
+            leaders.increment();
+            return new CoalescedRequest(this, key, created, true);
+        }
+        return new CoalescedRequest(this, key, existing, false);
+    }
+
+    /**
+     * 跟隨者等待領頭的回應（最多 {@code max-wait}）
+     */
+    SharedResponse await(CompletableFuture<SharedResponse> result) {
+        long start = System.nanoTime();
+        try {
+            SharedResponse response = result.get(config.maxWait().toMillis(), TimeUnit.MILLISECONDS);
+            (response != null ? shared : fallbacks).increment();
+            return response;
+        } catch (TimeoutException e) {
+            timeouts.increment();
+            log.debug("Coalesced request gave up waiting after {}", config.maxWait());
+            return null;
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            fallbacks.increment();
+            return null;
+        } catch (ExecutionException e) {
+            fallbacks.increment();
+            return null;
+        } finally {
+            waitTimer.record(Duration.ofNanos(System.nanoTime() - start));
+        }
+    }
+
+    /**
+     * 領頭結束：先移除（之後到達的請求建立新的上游呼叫），再喚醒跟隨者
+     */
+    void finish(String key, CompletableFuture<SharedResponse> result, SharedResponse response) {
+        inFlight.remove(key, result);
+        result.complete(response);
+    }
+
+    /**
+     * 計算合併 key（串流 fan-out 共用，見 {@link io.github.samzhu.gate.handler.StreamFanOut}）
+     *
+     * @param envelope         請求 envelope
+     * @param anthropicHeaders 所有 anthropic-* headers（依名稱排序後計入）
+     * @return SHA-256 hex 字串；停用或請求不可合併（{@code temperature} 不為 0）時為 null
+     */
+    public String key(RequestEnvelope envelope, Map<String, String> anthropicHeaders) {
+        if (!config.enabled() || envelope.canonicalHash() == null) {
+            return null;
+        }
+        MessageDigest digest = RequestKeyDigest.sha256();
+        RequestKeyDigest.updateHeaders(digest, anthropicHeaders);
+        digest.update(envelope.canonicalHash().getBytes(StandardCharsets.US_ASCII));
+        return RequestKeyDigest.hex(digest);
+    }
+}
@@ -0,0 +1,54 @@
+package io.github.samzhu.gate.service;
+
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.HexFormat;
+import java.util.Map;
+import java.util.TreeMap;
+
+/**
+ * 請求 key 的 SHA-256 計算（{@link CountTokensCache}、{@link ResponseCache}、{@link RequestCoalescer} 共用）
+ *
+ * <p>anthropic-* headers 依名稱排序後以 {@code name:value\n} 計入，最後寫入一個 {@code 0} 分隔請求內容；
+ * header 順序不影響結果，{@code anthropic-beta} 等 header 不同的請求得到不同的 key。
+ */
+final class RequestKeyDigest {
+
+    private RequestKeyDigest() {
+    }
+
+    /**
+     * 建立 SHA-256 digest
+     */
+    static MessageDigest sha256() {
+        try {
+            return MessageDigest.getInstance("SHA-256");
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    /**
+     * 計入排序後的 anthropic-* headers 與分隔位元組
+     *
+     * @param digest           SHA-256 digest
+     * @param anthropicHeaders 所有 anthropic-* headers
+     */
+    static void updateHeaders(MessageDigest digest, Map<String, String> anthropicHeaders) {
+        for (Map.Entry<String, String> header : new TreeMap<>(anthropicHeaders).entrySet()) {
+            digest.update(header.getKey().getBytes(StandardCharsets.UTF_8));
+            digest.update((byte) ':');
+            digest.update(header.getValue().getBytes(StandardCharsets.UTF_8));
+            digest.update((byte) '\n');
+        }
+        digest.update((byte) 0);
+    }
+
+    /**
+     * 完成計算並轉為 hex 字串
+     */
+    static String hex(MessageDigest digest) {
+        return HexFormat.of().formatHex(digest.digest());
+    }
+}
@@ -0,0 +1,114 @@
+package io.github.samzhu.gate.service;
+
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.util.Map;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.stereotype.Component;
+
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.cache.CaffeineCacheMetrics;
+
+import io.github.samzhu.gate.config.AnthropicProperties;
+import io.github.samzhu.gate.config.ResponseCacheConfig;
+import io.github.samzhu.gate.model.RequestEnvelope;
+
+/**
+ * {@code temperature: 0} Messages 回應快取（exact match）
+ *
+ * <p>CI agent、eval 迴圈會逐字重送相同的 {@code temperature: 0} 請求，每次都負擔完整的上游延遲與 token。
+ * 啟用 {@code anthropic.api.response-cache} 後，以請求內容快取最終的 Message JSON：
+ * <ul>
+ *   <li>Key：{@link RequestEnvelope#canonicalHash()}（不含 {@code stream}）+ subject + 所有 {@code anthropic-*} headers
+ *       的 SHA-256；串流與非串流請求共用同一份快取，subject 不同的用戶不共用</li>
+ *   <li>寫入：上游 2xx 且回應完整（非串流為完整本體；串流為收到 {@code message_stop} 後組回的 Message）</li>
+ *   <li>命中：非串流直接回應 Message JSON；串流重播為合成的 SSE 事件序列
+ *       （見 {@link io.github.samzhu.gate.util.SseMessageReplay}），不取得 API Key、不送往上游</li>
+ *   <li>淘汰：Caffeine W-TinyLFU，權重為 Message 位元組數，總量不超過 {@code max-size}；寫入後 {@code ttl} 過期</li>
+ * </ul>
+ *
+ * <p>命中時的用量事件帶有 {@code response_source: cache}，token 欄位為原始回應的用量，
+ * 計費端可據此區分（未實際消耗上游 token）。
+ *
+ * <p>指標（Micrometer {@link CaffeineCacheMetrics}，{@code cache="responses"}）：
+ * {@code cache.gets{result=hit|miss}}、{@code cache.puts}、{@code cache.evictions}、{@code cache.size}。
+ *
+ * @see ResponseCacheConfig
+ * @see CountTokensCache
+ */
+@Component
+public class ResponseCache {
+
+    private static final Logger log = LoggerFactory.getLogger(ResponseCache.class);
+
+    static final String CACHE_NAME = "responses";
+
+    /** 每個 entry 除 Message 本體外的估計開銷（key 字串、entry 物件） */
+    private static final int ENTRY_OVERHEAD_BYTES = 256;
+
+    private final Cache<String, byte[]> cache;
+
+    public ResponseCache(AnthropicProperties anthropicProperties, MeterRegistry meterRegistry) {
+        ResponseCacheConfig config = anthropicProperties.responseCache();
+        if (!config.enabled()) {
+            this.cache = null;
+            log.info("Response cache disabled");
+            return;
+        }
+        this.cache = Caffeine.newBuilder()
+            .maximumWeight(config.maxSize().toBytes())
+            .weigher((String key, byte[] message) -> message.length + ENTRY_OVERHEAD_BYTES)
+            .expireAfterWrite(config.ttl())
+            .recordStats()
+            .build();
+        CaffeineCacheMetrics.monitor(meterRegistry, cache, CACHE_NAME);
+        log.info("Response cache enabled: maxSize={}, ttl={}", config.maxSize(), config.ttl());
+    }
+
+    /**
+     * 計算快取 key
+     *
+     * @param envelope         請求 envelope
+     * @param subject          用戶識別碼
+     * @param anthropicHeaders 所有 anthropic-* headers（依名稱排序後計入）
+     * @return SHA-256 hex 字串；快取停用或請求不可快取（{@code temperature} 不為 0）時為 null
+     */
+    public String key(RequestEnvelope envelope, String subject, Map<String, String> anthropicHeaders) {
+        if (cache == null || envelope.canonicalHash() == null) {
+            return null;
+        }
+        MessageDigest digest = RequestKeyDigest.sha256();
+        digest.update(subject.getBytes(StandardCharsets.UTF_8));
+        digest.update((byte) 0);
+        RequestKeyDigest.updateHeaders(digest, anthropicHeaders);
+        digest.update(envelope.canonicalHash().getBytes(StandardCharsets.US_ASCII));
+        return RequestKeyDigest.hex(digest);
+    }
+
+    /**
+     * 查詢快取的 Message
+     *
+     * @param key 快取 key（null 表示不可快取）
+     * @return Message JSON，未命中時為 null
+     */
+    public byte[] get(String key) {
+        return cache != null && key != null ? cache.getIfPresent(key) : null;
+    }
+
+    /**
+     * 寫入完整的 Message
+     *
+     * @param key     快取 key（null 時不寫入）
+     * @param message Message JSON
+     */
+    public void put(String key, byte[] message) {
+        if (cache != null && key != null && message != null) {
+            cache.put(key, message);
+        }
+    }
+}
@@ -0,0 +1,20 @@
+package io.github.samzhu.gate.service;
+
+/**
+ * 領頭請求取得的完整上游回應（分享給合併的跟隨者）
+ *
+ * @param status             上游 HTTP 狀態碼
+ * @param contentType        上游 Content-Type，未提供為 null
+ * @param anthropicRequestId 上游 request-id
+ * @param keyAlias           實際服務此回應的 Key 別名
+ * @param body               完整回應本體
+ * @see RequestCoalescer
+ */
+public record SharedResponse(
+    int status,
+    String contentType,
+    String anthropicRequestId,
+    String keyAlias,
+    byte[] body
+) {
+}
@@ -0,0 +1,171 @@
+package io.github.samzhu.gate.service;
+
+import java.io.IOException;
+import java.net.URI;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.apache.hc.client5.http.impl.io.PoolingHttpClientConnectionManager;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.boot.ApplicationArguments;
+import org.springframework.boot.ApplicationRunner;
+import org.springframework.http.HttpMethod;
+import org.springframework.http.client.ClientHttpRequestFactory;
+import org.springframework.http.client.ClientHttpResponse;
+import org.springframework.stereotype.Component;
+
+import jakarta.annotation.PreDestroy;
+
+import io.github.samzhu.gate.config.AnthropicProperties;
+import io.github.samzhu.gate.config.UpstreamPrewarmConfig;
+import io.github.samzhu.gate.config.UpstreamTransport;
+import io.github.samzhu.gate.metrics.UpstreamStreamMetrics;
+
+/**
+ * 上游連線預熱
+ *
+ * <p>Cloud Run 新 instance 的第一批請求需要負擔 DNS + TCP + TLS 建立時間，
+ * 在 scale-out 時表現為 TTFT 尖峰。啟用 {@code anthropic.api.prewarm} 後：
+ * <ol>
+ *   <li>啟動 - 以 {@link ApplicationRunner} 同時送出 N 個 {@code HEAD /} 請求建立 N 條連線。
+ *       Spring Boot 在所有 runner 完成後才將 readiness 切換為 {@code ACCEPTING_TRAFFIC}，
+ *       因此 startup probe（{@code /actuator/health/readiness}）會等到預熱完成（最多 {@code timeout}）</li>
+ *   <li>閒置 - 每隔 {@code keepalive-interval} 補送 keepalive 請求，數量為預熱目標扣除使用中的連線，
+ *       避免連線被 idle eviction 或上游關閉</li>
+ * </ol>
+ *
+ * <p>預熱請求直接使用 {@code anthropicRequestFactory}（不經 RestClient，不產生 Span），
+ * 不帶 API Key，不消耗 token 或 rate limit。HTTP/2 傳輸所有串流共用一條連線，只預熱一條。
+ *
+ * <p>預熱效果以 {@code gate.upstream.requests{connection=cold|warm}} 觀察
+ * （見 {@link io.github.samzhu.gate.metrics.UpstreamConnectionMetrics}）。
+ *
+ * @see UpstreamPrewarmConfig
+ */
+@Component
+public class UpstreamConnectionWarmer implements ApplicationRunner {
+
+    private static final Logger log = LoggerFactory.getLogger(UpstreamConnectionWarmer.class);
+
+    private final UpstreamPrewarmConfig prewarm;
+    private final UpstreamTransport transport;
+    private final URI pingUri;
+    private final ClientHttpRequestFactory requestFactory;
+    private final PoolingHttpClientConnectionManager connectionManager;
+    private final UpstreamStreamMetrics upstreamStreamMetrics;
+    private final ExecutorService pingExecutor;
+    private final ScheduledThreadPoolExecutor keepaliveScheduler;
+
+    public UpstreamConnectionWarmer(
+            AnthropicProperties anthropicProperties,
+            ClientHttpRequestFactory anthropicRequestFactory,
+            PoolingHttpClientConnectionManager anthropicConnectionManager,
+            UpstreamStreamMetrics upstreamStreamMetrics) {
+        this.prewarm = anthropicProperties.prewarm();
+        this.transport = anthropicProperties.transport();
+        this.pingUri = URI.create(anthropicProperties.baseUrl()).resolve("/");
+        this.requestFactory = anthropicRequestFactory;
+        this.connectionManager = anthropicConnectionManager;
+        this.upstreamStreamMetrics = upstreamStreamMetrics;
+        this.pingExecutor = Executors.newVirtualThreadPerTaskExecutor();
+        this.keepaliveScheduler = new ScheduledThreadPoolExecutor(1,
+            Thread.ofPlatform().name("upstream-keepalive").daemon().factory());
+    }
+
+    @Override
+    public void run(ApplicationArguments args) {
+        if (!prewarm.enabled()) {
+            return;
+        }
+
+        int target = targetConnections();
+        long start = System.nanoTime();
+        int warmed = warm(target);
+        log.info("Pre-warmed {}/{} upstream connection(s) to {} in {} ms",
+            warmed, target, pingUri, TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start));
+
+        long intervalMillis = prewarm.keepaliveInterval().toMillis();
+        keepaliveScheduler.scheduleWithFixedDelay(this::keepalive, intervalMillis, intervalMillis,
+            TimeUnit.MILLISECONDS);
+    }
+
+    @PreDestroy
+    void shutdown() {
+        keepaliveScheduler.shutdownNow();
+        pingExecutor.shutdownNow();
+    }
+
+    /**
+     * 補足閒置連線：只對未被真實流量使用的部分送出 keepalive
+     */
+    private void keepalive() {
+        int idle = targetConnections() - busyConnections();
+        if (idle > 0) {
+            int warmed = warm(idle);
+            log.debug("Upstream keepalive: {}/{} connection(s) refreshed", warmed, idle);
+        }
+    }
+
+    private int targetConnections() {
+        return transport == UpstreamTransport.HTTP2 ? 1 : prewarm.connections();
+    }
+
+    private int busyConnections() {
+        return transport == UpstreamTransport.HTTP2
+            ? upstreamStreamMetrics.activeStreams()
+            : connectionManager.getTotalStats().getLeased();
+    }
+
+    /**
+     * 同時送出 {@code count} 個 HEAD 請求
+     *
+     * <p>每個請求收到回應後等待其他請求也收到回應才關閉，確保連線池建立 {@code count} 條不同連線，
+     * 而不是重用剛歸還的同一條連線。
+     *
+     * @return 成功取得回應的請求數
+     */
+    private int warm(int count) {
+        Duration timeout = prewarm.timeout();
+        CountDownLatch responded = new CountDownLatch(count);
+        AtomicInteger warmed = new AtomicInteger();
+        List<Callable<Void>> pings = new ArrayList<>(count);
+        for (int i = 0; i < count; i++) {
+            pings.add(() -> {
+                ping(responded, warmed, timeout);
+                return null;
+            });
+        }
+
+        try {
+            pingExecutor.invokeAll(pings, timeout.toMillis(), TimeUnit.MILLISECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        return warmed.get();
+    }
+
+    private void ping(CountDownLatch responded, AtomicInteger warmed, Duration timeout) throws InterruptedException {
+        ClientHttpResponse response;
+        try {
+            response = requestFactory.createRequest(pingUri, HttpMethod.HEAD).execute();
+        } catch (IOException | RuntimeException e) {
+            responded.countDown();
+            log.debug("Upstream warm-up request failed: {}", e.getMessage());
+            return;
+        }
+        try (response) {
+            warmed.incrementAndGet();
+            responded.countDown();
+            responded.await(timeout.toMillis(), TimeUnit.MILLISECONDS);
+        }
+    }
+}
@@ -1,8 +1,14 @@
 package io.github.samzhu.gate.service;
 
 import java.net.URI;
+import java.time.Duration;
 import java.time.OffsetDateTime;
+import java.util.ArrayList;
+import java.util.List;
 import java.util.UUID;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.TimeUnit;
 
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
@@ -11,6 +17,15 @@ import org.springframework.cloud.stream.function.StreamBridge;
 import org.springframework.messaging.Message;
 import org.springframework.stereotype.Service;
 
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+
+import jakarta.annotation.PreDestroy;
+
+import io.github.samzhu.gate.config.GateUsageProperties;
+import io.github.samzhu.gate.config.UsagePublisherConfig;
 import io.github.samzhu.gate.model.UsageEventData;
 
 /**
@@ -30,6 +45,22 @@ import io.github.samzhu.gate.model.UsageEventData;
  *   <li>{@code id}: OpenTelemetry Trace ID（用於端到端追蹤）</li>
  * </ul>
  *
+ * <p>非同步發送：{@link #publish} 只把事件放入有界佇列（多個請求執行緒寫入、單一發送執行緒讀取），
+ * broker 延遲不再加在回應完成時間上。發送執行緒取出事件後立即交給 {@link StreamBridge}，不在此處湊批
+ * （需要批次發送時使用 binder 自身的批次設定）。佇列滿時依 {@code overflow} 處理：
+ * {@code block}（請求執行緒最多等待 {@code block-timeout}，流量控制）、{@code drop-newest}、{@code drop-oldest}。
+ * 關閉時停止接收並在 {@value #SHUTDOWN_DRAIN_SECONDS} 秒內送完佇列中的事件。
+ * {@code queue-capacity: 0} 時維持在請求執行緒同步發送。
+ *
+ * <p>指標：
+ * <ul>
+ *   <li>{@code gate.usage.queue.depth} - 等待發送的事件數</li>
+ *   <li>{@code gate.usage.publish.latency} - 事件從放入佇列到送出的時間</li>
+ *   <li>{@code gate.usage.events{outcome=published|failed}} - 發送結果</li>
+ *   <li>{@code gate.usage.dropped{reason=overflow|shutdown}} - 未發送即捨棄的事件</li>
+ * </ul>
+ *
+ * @see UsagePublisherConfig
  * @see UsageEventData
  * @see <a href="https://cloudevents.io/">CloudEvents Specification</a>
  */
@@ -42,16 +73,161 @@ public class UsageEventPublisher {
     private static final String EVENT_TYPE = "io.github.samzhu.gate.usage.v1";
     private static final URI EVENT_SOURCE = URI.create("/gate/messages");
 
+    static final long SHUTDOWN_DRAIN_SECONDS = 5;
+    /** 發送執行緒閒置時檢查關閉狀態的間隔 */
+    private static final long IDLE_POLL_MILLIS = 100;
+
     private final StreamBridge streamBridge;
+    private final UsagePublisherConfig config;
+    private final BlockingQueue<PendingEvent> queue;
+    private final Thread publisherThread;
+    private final Counter published;
+    private final Counter failed;
+    private final Counter droppedOverflow;
+    private final Counter droppedShutdown;
+    private final Timer publishLatency;
+    private volatile boolean running = true;
 
-    public UsageEventPublisher(StreamBridge streamBridge) {
+    public UsageEventPublisher(StreamBridge streamBridge, GateUsageProperties gateUsageProperties,
+                               MeterRegistry meterRegistry) {
         this.streamBridge = streamBridge;
-        log.info("UsageEventPublisher initialized: bindingName={}, streamBridge={}",
-            BINDING_NAME, streamBridge.getClass().getSimpleName());
+        this.config = gateUsageProperties.publisher();
+        this.published = outcome(meterRegistry, "published");
+        this.failed = outcome(meterRegistry, "failed");
+        this.droppedOverflow = dropped(meterRegistry, "overflow");
+        this.droppedShutdown = dropped(meterRegistry, "shutdown");
+        this.publishLatency = Timer.builder("gate.usage.publish.latency")
+            .description("Time from enqueueing a usage event until it was handed to the binder")
+            .register(meterRegistry);
+
+        if (config.enabled()) {
+            this.queue = new ArrayBlockingQueue<>(config.queueCapacity());
+            Gauge.builder("gate.usage.queue.depth", queue, BlockingQueue::size)
+                .description("Usage events waiting to be published")
+                .register(meterRegistry);
+            this.publisherThread = Thread.ofPlatform().name("usage-publisher").daemon().start(this::drain);
+        } else {
+            this.queue = null;
+            this.publisherThread = null;
+        }
+        log.info("UsageEventPublisher initialized: bindingName={}, streamBridge={}, async={}, queueCapacity={}, "
+                + "overflow={}",
+            BINDING_NAME, streamBridge.getClass().getSimpleName(), config.enabled(), config.queueCapacity(),
+            config.overflow());
+    }
+
+    private static Counter outcome(MeterRegistry meterRegistry, String outcome) {
+        return Counter.builder("gate.usage.events")
+            .description("Usage events handed to the binder by outcome")
+            .tag("outcome", outcome)
+            .register(meterRegistry);
+    }
+
+    private static Counter dropped(MeterRegistry meterRegistry, String reason) {
+        return Counter.builder("gate.usage.dropped")
+            .description("Usage events dropped before publishing")
+            .tag("reason", reason)
+            .register(meterRegistry);
+    }
+
+    /**
+     * 發送用量事件（非同步模式下放入佇列後立即返回）
+     *
+     * @param eventData 用量事件資料（包含 userId 和 eventTime）
+     */
+    public void publish(UsageEventData eventData) {
+        if (queue == null) {
+            long start = System.nanoTime();
+            send(eventData);
+            publishLatency.record(System.nanoTime() - start, TimeUnit.NANOSECONDS);
+            return;
+        }
+        if (!running) {
+            drop(droppedShutdown, eventData, "publisher stopped");
+            return;
+        }
+        PendingEvent event = new PendingEvent(eventData, System.nanoTime());
+        if (queue.offer(event)) {
+            return;
+        }
+        switch (config.overflow()) {
+            case BLOCK -> {
+                try {
+                    if (queue.offer(event, config.blockTimeout().toNanos(), TimeUnit.NANOSECONDS)) {
+                        return;
+                    }
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+                drop(droppedOverflow, eventData, "queue full");
+            }
+            case DROP_OLDEST -> {
+                while (!queue.offer(event)) {
+                    PendingEvent evicted = queue.poll();
+                    if (evicted != null) {
+                        drop(droppedOverflow, evicted.data(), "queue full, evicted oldest");
+                    }
+                }
+            }
+            case DROP_NEWEST -> drop(droppedOverflow, eventData, "queue full");
+        }
+    }
+
+    private void drop(Counter counter, UsageEventData eventData, String reason) {
+        counter.increment();
+        log.warn("Usage event dropped ({}): traceId={}, subject={}, model={}, inputTokens={}, outputTokens={}",
+            reason, eventData.traceId(), eventData.userId(), eventData.model(), eventData.inputTokens(),
+            eventData.outputTokens());
     }
 
     /**
-     * 發送用量事件到訊息佇列
+     * 發送執行緒：逐一取出事件並立即發送，關閉後送完佇列中剩餘的事件
+     */
+    private void drain() {
+        while (running || !queue.isEmpty()) {
+            PendingEvent event;
+            try {
+                event = queue.poll(IDLE_POLL_MILLIS, TimeUnit.MILLISECONDS);
+            } catch (InterruptedException e) {
+                // 關閉逾時被中斷：其餘事件由 shutdown() 記為捨棄
+                return;
+            }
+            if (event != null) {
+                send(event.data());
+                publishLatency.record(System.nanoTime() - event.enqueuedNanos(), TimeUnit.NANOSECONDS);
+            }
+            if (Thread.currentThread().isInterrupted()) {
+                return;
+            }
+        }
+    }
+
+    /**
+     * 關閉：停止接收新事件，在時限內送完佇列中的事件，其餘記為捨棄
+     */
+    @PreDestroy
+    void shutdown() {
+        if (publisherThread == null) {
+            return;
+        }
+        running = false;
+        try {
+            publisherThread.join(Duration.ofSeconds(SHUTDOWN_DRAIN_SECONDS));
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        if (publisherThread.isAlive()) {
+            publisherThread.interrupt();
+        }
+        List<PendingEvent> remaining = new ArrayList<>();
+        queue.drainTo(remaining);
+        for (PendingEvent event : remaining) {
+            drop(droppedShutdown, event.data(), "shutdown drain timed out");
+        }
+    }
+
+    /**
+     * 將用量事件交給訊息佇列（發送執行緒或同步模式下的請求執行緒）
      *
      * <p>使用 Spring Cloud Function 的 {@link CloudEventMessageBuilder} 建構
      * CloudEvents <b>Binary Mode</b> 訊息：
@@ -84,7 +260,7 @@ public class UsageEventPublisher {
      *
      * @param eventData 用量事件資料（包含 userId 和 eventTime）
      */
-    public void publish(UsageEventData eventData) {
+    private void send(UsageEventData eventData) {
         try {
             // 使用 traceId 作為 CloudEvent ID，若無則產生 UUID
             String eventId = eventData.traceId() != null ? eventData.traceId() : UUID.randomUUID().toString();
@@ -108,12 +284,15 @@ public class UsageEventPublisher {
             boolean sent = streamBridge.send(BINDING_NAME, message);
 
             if (sent) {
+                published.increment();
                 log.debug("Usage event published: traceId={}, subject={}, model={}, inputTokens={}, outputTokens={}",
                     eventId, subject, eventData.model(), eventData.inputTokens(), eventData.outputTokens());
             } else {
+                failed.increment();
                 log.warn("Failed to publish usage event: traceId={}", eventId);
             }
         } catch (Exception e) {
+            failed.increment();
             // Pub/Sub 發送失敗不應影響主要代理功能
             // 記錄詳細錯誤資訊以便排查 Binder 問題
             String rootCause = e.getCause() != null ? e.getCause().getClass().getSimpleName() : "N/A";
@@ -121,4 +300,10 @@ public class UsageEventPublisher {
                 e.getClass().getSimpleName(), e.getMessage(), rootCause, BINDING_NAME, e);
         }
     }
+
+    /**
+     * 佇列中的事件與放入時間
+     */
+    private record PendingEvent(UsageEventData data, long enqueuedNanos) {
+    }
 }
@@ -0,0 +1,249 @@
+package io.github.samzhu.gate.util;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.HashMap;
+import java.util.HexFormat;
+import java.util.Map;
+import java.util.TreeMap;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.core.JsonToken;
+
+import io.github.samzhu.gate.model.RequestEnvelope;
+
+/**
+ * Messages API 請求 envelope 讀取器
+ *
+ * <p>以 Jackson 低階 {@link JsonParser} 單次走訪請求本體的根層級欄位，取出路由與計費需要的
+ * {@code stream}、{@code model}、{@code max_tokens}、{@code metadata}。
+ * 其他欄位（{@code messages}、{@code system}、{@code tools} 動輒數百 KB）以
+ * {@link JsonParser#skipChildren()} 略過：字串內容不解碼、不建立 JsonNode。
+ *
+ * <p>相較於 {@code ObjectMapper.readTree()}，不會為了讀一個 boolean 而建立整份請求的 DOM。
+ *
+ * <p>親和路由使用可快取前綴時（{@code cachePrefix = true}），{@code tools}、{@code system}、{@code messages}
+ * 在同一次掃描中逐 token 走訪（字串內容仍不解碼），找出 {@code cache_control} 並記錄前綴的位元組範圍，
+ * 用來計算 {@link RequestEnvelope#cachePrefixHash()}；其他模式下這些欄位同樣以 {@code skipChildren()} 略過，
+ * 不走訪也不計算 hash。
+ *
+ * <p>同時記錄每個根層級欄位的位元組範圍；{@code temperature: 0} 時據此計算
+ * {@link RequestEnvelope#canonicalHash()}（回應快取 key）。
+ *
+ * @see RequestEnvelope
+ * @see io.github.samzhu.gate.config.GatewayConfig
+ */
+public final class RequestEnvelopeReader {
+
+    private static final Logger log = LoggerFactory.getLogger(RequestEnvelopeReader.class);
+
+    /** metadata 最多保留的欄位數（避免客戶端塞入大量欄位） */
+    private static final int MAX_METADATA_FIELDS = 16;
+
+    private static final String CACHE_CONTROL = "cache_control";
+
+    private RequestEnvelopeReader() {
+    }
+
+    /**
+     * 讀取請求 envelope
+     *
+     * @param body        請求本體（UTF-8 JSON）
+     * @param cachePrefix 是否計算可快取前綴 hash（親和路由模式為 {@code cache-prefix} 時）
+     * @return 請求 envelope，本體不是 JSON 物件時返回 {@link RequestEnvelope#EMPTY}
+     */
+    public static RequestEnvelope read(byte[] body, boolean cachePrefix) {
+        if (body == null || body.length == 0) {
+            return RequestEnvelope.EMPTY;
+        }
+
+        boolean stream = false;
+        String model = null;
+        Integer maxTokens = null;
+        Map<String, String> metadata = null;
+        Double temperature = null;
+        PrefixScan prefix = cachePrefix ? new PrefixScan() : null;
+        Map<String, long[]> fields = new TreeMap<>();
+
+        try (JsonParser parser = UsageJsonScanner.JSON_FACTORY.createParser(body)) {
+            if (parser.nextToken() != JsonToken.START_OBJECT) {
+                return RequestEnvelope.EMPTY;
+            }
+            while (parser.nextToken() == JsonToken.FIELD_NAME) {
+                String fieldName = parser.currentName();
+                JsonToken value = parser.nextToken();
+                long start = parser.currentTokenLocation().getByteOffset();
+                switch (fieldName) {
+                    case "stream" -> stream = value == JsonToken.VALUE_TRUE;
+                    case "model" -> model = value == JsonToken.VALUE_STRING ? parser.getText() : null;
+                    case "max_tokens" -> maxTokens = value == JsonToken.VALUE_NUMBER_INT ? parser.getIntValue() : null;
+                    case "temperature" -> temperature = value.isNumeric() ? parser.getDoubleValue() : null;
+                    case "metadata" -> metadata = value == JsonToken.START_OBJECT ? readMetadata(parser) : null;
+                    case "tools", "system", "messages" -> {
+                        if (prefix != null) {
+                            scanPrefixField(parser, fieldName, prefix);
+                        } else {
+                            parser.skipChildren();
+                        }
+                    }
+                    default -> parser.skipChildren();
+                }
+                if (!"stream".equals(fieldName)) {
+                    // 字串值需讀完才能取得結束位置（結構值已走到結束 token）
+                    parser.finishToken();
+                    fields.put(fieldName, new long[] {start, parser.currentLocation().getByteOffset()});
+                }
+            }
+        } catch (IOException e) {
+            log.warn("Failed to parse request envelope: {}", e.getMessage());
+            return RequestEnvelope.EMPTY;
+        }
+
+        String canonicalHash = temperature != null && temperature == 0.0 ? canonicalHash(body, fields) : null;
+        Long cachePrefixHash = prefix != null ? prefix.hash(body) : null;
+        return new RequestEnvelope(stream, model, maxTokens, metadata, cachePrefixHash, temperature, canonicalHash);
+    }
+
+    /**
+     * 走訪可快取前綴的欄位（{@code tools}、{@code system}、{@code messages}）
+     */
+    private static void scanPrefixField(JsonParser parser, String fieldName, PrefixScan prefix) throws IOException {
+        switch (fieldName) {
+            case "tools" -> prefix.tools = scanValue(parser, prefix);
+            case "system" -> prefix.system = scanValue(parser, prefix);
+            default -> scanMessages(parser, prefix);
+        }
+    }
+
+    /**
+     * 走訪 messages 陣列，只記錄第一則 message 的範圍（其餘 message 只檢查 {@code cache_control}）
+     */
+    private static void scanMessages(JsonParser parser, PrefixScan prefix) throws IOException {
+        if (parser.currentToken() != JsonToken.START_ARRAY) {
+            parser.skipChildren();
+            return;
+        }
+        JsonToken token;
+        while ((token = parser.nextToken()) != null && token != JsonToken.END_ARRAY) {
+            long[] range = scanValue(parser, prefix);
+            if (prefix.firstMessage == null) {
+                prefix.firstMessage = range;
+            }
+        }
+    }
+
+    /**
+     * 走訪目前的值直到結束，遇到 {@code cache_control} 欄位時標記
+     *
+     * @return 值的位元組範圍 {@code [start, end)}
+     */
+    private static long[] scanValue(JsonParser parser, PrefixScan prefix) throws IOException {
+        long start = parser.currentTokenLocation().getByteOffset();
+        if (parser.currentToken().isStructStart()) {
+            int depth = 1;
+            while (depth > 0) {
+                JsonToken token = parser.nextToken();
+                if (token == null) {
+                    break;
+                }
+                if (token.isStructStart()) {
+                    depth++;
+                } else if (token.isStructEnd()) {
+                    depth--;
+                } else if (token == JsonToken.FIELD_NAME && CACHE_CONTROL.equals(parser.currentName())) {
+                    prefix.cacheControl = true;
+                }
+            }
+        } else {
+            // 字串需讀完才能取得結束位置
+            parser.finishToken();
+        }
+        return new long[] {start, parser.currentLocation().getByteOffset()};
+    }
+
+    /**
+     * 請求內容的正規化 hash：根層級欄位依名稱排序，對「名稱 + 原始位元組」計算 SHA-256
+     *
+     * <p>欄位值以原始位元組計入（不重新序列化），同一個客戶端重送的相同請求位元組相同；
+     * 根層級欄位順序不影響結果，{@code stream} 不計入。
+     *
+     * @return SHA-256 hex 字串
+     */
+    private static String canonicalHash(byte[] body, Map<String, long[]> fields) {
+        MessageDigest digest = sha256();
+        for (Map.Entry<String, long[]> field : fields.entrySet()) {
+            long[] range = field.getValue();
+            digest.update(field.getKey().getBytes(StandardCharsets.UTF_8));
+            digest.update((byte) 0);
+            if (range[0] >= 0 && range[1] <= body.length && range[0] < range[1]) {
+                digest.update(body, (int) range[0], (int) (range[1] - range[0]));
+            }
+            digest.update((byte) 0);
+        }
+        return HexFormat.of().formatHex(digest.digest());
+    }
+
+    private static MessageDigest sha256() {
+        try {
+            return MessageDigest.getInstance("SHA-256");
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    /**
+     * 讀取 metadata 物件中的字串欄位（巢狀結構略過）
+     */
+    private static Map<String, String> readMetadata(JsonParser parser) throws IOException {
+        Map<String, String> metadata = new HashMap<>();
+        while (parser.nextToken() == JsonToken.FIELD_NAME) {
+            String fieldName = parser.currentName();
+            JsonToken value = parser.nextToken();
+            if (value == JsonToken.VALUE_STRING && metadata.size() < MAX_METADATA_FIELDS) {
+                metadata.put(fieldName, parser.getText());
+            } else {
+                parser.skipChildren();
+            }
+        }
+        return metadata;
+    }
+
+    /**
+     * 可快取前綴的掃描結果
+     */
+    private static final class PrefixScan {
+
+        private boolean cacheControl;
+        private long[] tools;
+        private long[] system;
+        private long[] firstMessage;
+
+        /**
+         * 前綴 hash（SHA-256 前 8 bytes），沒有 {@code cache_control} 時為 null
+         */
+        Long hash(byte[] body) {
+            if (!cacheControl) {
+                return null;
+            }
+            MessageDigest digest = sha256();
+            // 各段之間以欄位序號分隔，避免不同切分得到相同位元組序列
+            update(digest, body, tools, 1);
+            update(digest, body, system, 2);
+            update(digest, body, firstMessage, 3);
+            return ByteBuffer.wrap(digest.digest()).getLong();
+        }
+
+        private static void update(MessageDigest digest, byte[] body, long[] range, int field) {
+            digest.update((byte) field);
+            if (range != null && range[0] >= 0 && range[1] <= body.length && range[0] < range[1]) {
+                digest.update(body, (int) range[0], (int) (range[1] - range[0]));
+            }
+        }
+    }
+}
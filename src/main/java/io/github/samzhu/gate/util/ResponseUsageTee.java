@@ -0,0 +1,174 @@
+package io.github.samzhu.gate.util;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.core.async.ByteArrayFeeder;
+
+/**
+ * 非串流回應的用量旁路掃描器（bounded tee）
+ *
+ * <p>回應本體邊轉發給客戶端邊餵入本掃描器，記憶體用量固定，與回應大小無關：
+ * <ul>
+ *   <li><b>Head</b> - 前 {@value #HEAD_LIMIT} 位元組餵給 Jackson non-blocking parser，
+ *       取得 {@code id}、{@code type}、{@code model}（Anthropic 將這些欄位放在 {@code content} 之前）；
+ *       錯誤回應通常整份落在 head 內，直接完整解析</li>
+ *   <li><b>Tail</b> - 環狀緩衝保留最後 {@value #TAIL_LIMIT} 位元組，結束時從最後一個
+ *       {@code "stop_reason"} 欄位開始（補上 {@code &#123;}）解析 {@code stop_reason} 與 {@code usage}</li>
+ * </ul>
+ *
+ * <p>為何不全程使用 non-blocking parser：{@code content[].text} 這類長字串在 token 完成前
+ * 會被 parser 完整累積在內部緩衝區，64k output 的回應等於又複製一份本體。
+ *
+ * <p>Tail 定位的正確性：JSON 字串內的雙引號必定被跳脫為 {@code \"}，
+ * 因此 {@code "stop_reason"} 位元組序列只會出現在真正的欄位名稱（或字串值），
+ * 而根層級的 {@code stop_reason} 位於 {@code content} 之後，取最後一次出現即可。
+ *
+ * <p>非執行緒安全：每個回應使用獨立實例。
+ *
+ * @see UsageJsonScanner
+ * @see io.github.samzhu.gate.handler.NonStreamingProxyHandler
+ */
+public class ResponseUsageTee {
+
+    private static final Logger log = LoggerFactory.getLogger(ResponseUsageTee.class);
+
+    static final int HEAD_LIMIT = 8192;
+    static final int TAIL_LIMIT = 8192;
+    private static final byte[] STOP_REASON_FIELD = "\"stop_reason\"".getBytes(StandardCharsets.US_ASCII);
+
+    private final UsageJsonScanner head = new UsageJsonScanner();
+    private JsonParser headParser;
+    private int headFed;
+    private boolean headDone;
+
+    private final byte[] tail = new byte[TAIL_LIMIT];
+    private long total;
+
+    /**
+     * 餵入一段回應位元組（呼叫返回後緩衝區即可重複使用）
+     */
+    public void update(byte[] data, int offset, int length) {
+        if (length <= 0) {
+            return;
+        }
+        feedHead(data, offset, length);
+        feedTail(data, offset, length);
+        total += length;
+    }
+
+    /**
+     * 回應結束，合併 head 與 tail 的掃描結果
+     *
+     * @return 掃描結果（欄位可能為 null / {@link UsageJsonScanner#ABSENT}）
+     */
+    public UsageJsonScanner finish() {
+        closeHead();
+        if (head.isCompleted()) {
+            return head;
+        }
+
+        int tailLength = (int) Math.min(total, TAIL_LIMIT);
+        byte[] window = tailWindow(tailLength);
+        int fieldStart = lastIndexOf(window, STOP_REASON_FIELD);
+        if (fieldStart < 0) {
+            log.debug("No stop_reason field in the last {} bytes of response ({} bytes total)", tailLength, total);
+            return head;
+        }
+
+        // 從 "stop_reason" 開始到根物件結尾，補上 '{' 即為合法 JSON 物件
+        byte[] fragment = new byte[window.length - fieldStart + 1];
+        fragment[0] = '{';
+        System.arraycopy(window, fieldStart, fragment, 1, window.length - fieldStart);
+        try {
+            head.mergeMissing(UsageJsonScanner.scan(fragment));
+        } catch (IOException e) {
+            log.debug("Failed to scan response tail: {}", e.getMessage());
+        }
+        return head;
+    }
+
+    private void feedHead(byte[] data, int offset, int length) {
+        if (headDone) {
+            return;
+        }
+        try {
+            if (headParser == null) {
+                headParser = UsageJsonScanner.JSON_FACTORY.createNonBlockingByteArrayParser();
+            }
+            int chunk = Math.min(length, HEAD_LIMIT - headFed);
+            ((ByteArrayFeeder) headParser.getNonBlockingInputFeeder()).feedInput(data, offset, offset + chunk);
+            headFed += chunk;
+            if (head.consume(headParser, false) || headFed >= HEAD_LIMIT) {
+                closeHead();
+            }
+        } catch (IOException e) {
+            log.debug("Failed to scan response head: {}", e.getMessage());
+            closeHead();
+        }
+    }
+
+    private void closeHead() {
+        headDone = true;
+        if (headParser != null) {
+            try {
+                headParser.close();
+            } catch (IOException ignored) {
+                // non-blocking parser 沒有底層資源
+            }
+            headParser = null;
+        }
+    }
+
+    private void feedTail(byte[] data, int offset, int length) {
+        if (length >= TAIL_LIMIT) {
+            System.arraycopy(data, offset + length - TAIL_LIMIT, tail, 0, TAIL_LIMIT);
+            // 對齊環狀位置：讓 total + length 對應到 index 0
+            rotateTo((int) ((total + length) % TAIL_LIMIT));
+            return;
+        }
+        int position = (int) (total % TAIL_LIMIT);
+        int first = Math.min(length, TAIL_LIMIT - position);
+        System.arraycopy(data, offset, tail, position, first);
+        if (first < length) {
+            System.arraycopy(data, offset + first, tail, 0, length - first);
+        }
+    }
+
+    /**
+     * 將線性排列的 tail 內容旋轉到環狀位置（只在單次輸入超過 tail 大小時發生）
+     */
+    private void rotateTo(int position) {
+        if (position == 0) {
+            return;
+        }
+        byte[] linear = tail.clone();
+        System.arraycopy(linear, 0, tail, position, TAIL_LIMIT - position);
+        System.arraycopy(linear, TAIL_LIMIT - position, tail, 0, position);
+    }
+
+    private byte[] tailWindow(int tailLength) {
+        if (total <= TAIL_LIMIT) {
+            return Arrays.copyOf(tail, tailLength);
+        }
+        int position = (int) (total % TAIL_LIMIT);
+        byte[] window = new byte[TAIL_LIMIT];
+        System.arraycopy(tail, position, window, 0, TAIL_LIMIT - position);
+        System.arraycopy(tail, 0, window, TAIL_LIMIT - position, position);
+        return window;
+    }
+
+    private static int lastIndexOf(byte[] data, byte[] pattern) {
+        for (int i = data.length - pattern.length; i >= 0; i--) {
+            if (Arrays.equals(data, i, i + pattern.length, pattern, 0, pattern.length)) {
+                return i;
+            }
+        }
+        return -1;
+    }
+}
@@ -0,0 +1,282 @@
+package io.github.samzhu.gate.util;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+
+/**
+ * SSE 位元組層級 frame 讀取器
+ *
+ * <p>直接在上游回應的位元組上掃描 SSE frame 邊界（空行，{@code \n\n} 或 {@code \r\n\r\n}），
+ * 不經過 {@code InputStreamReader} 解碼，讓呼叫端可以把原始位元組片段原封不動寫回客戶端：
+ * <ul>
+ *   <li>{@link #next()} - 讀取下一個完整 frame（包含結尾空行）</li>
+ *   <li>{@link #buffer()}、{@link #frameOffset()}、{@link #frameLength()} - 目前 frame 的位元組範圍</li>
+ *   <li>{@link #isEventType(byte[])} - 不解碼即比對 {@code event:} 類型</li>
+ *   <li>{@link #dataBuffer()}、{@link #dataOffset()}、{@link #dataLength()} - {@code data:} 內容範圍（供用量解析）</li>
+ * </ul>
+ *
+ * <p>注意：回傳的位元組範圍只在下一次呼叫 {@link #next()} 之前有效，緩衝區會被重複使用。
+ *
+ * <p>非執行緒安全：每個串流請求使用獨立實例。
+ *
+ * @see io.github.samzhu.gate.handler.StreamingProxyHandler
+ * @see <a href="https://html.spec.whatwg.org/multipage/server-sent-events.html">SSE Specification</a>
+ */
+public class SseFrameReader {
+
+    private static final int INITIAL_BUFFER_SIZE = 8192;
+    private static final byte[] EVENT_FIELD = "event:".getBytes(StandardCharsets.US_ASCII);
+    private static final byte[] DATA_FIELD = "data:".getBytes(StandardCharsets.US_ASCII);
+
+    private final InputStream inputStream;
+
+    private byte[] buffer = new byte[INITIAL_BUFFER_SIZE];
+    private int start;
+    private int limit;
+    private int scanFrom;
+    private int frameEnd = -1;
+    private boolean eof;
+
+    private int eventOffset;
+    private int eventLength = -1;
+
+    private byte[] dataBuffer;
+    private int dataOffset;
+    private int dataLength = -1;
+
+    public SseFrameReader(InputStream inputStream) {
+        this.inputStream = inputStream;
+    }
+
+    /**
+     * 讀取下一個完整的 SSE frame
+     *
+     * <p>上游結束時若還有未以空行結尾的殘餘位元組，會當作最後一個 frame 回傳，確保不遺失任何資料。
+     *
+     * @return 有下一個 frame 返回 true，串流結束返回 false
+     * @throws IOException 讀取上游失敗
+     */
+    public boolean next() throws IOException {
+        if (frameEnd >= 0) {
+            start = frameEnd;
+            frameEnd = -1;
+        }
+
+        while (true) {
+            int end = findFrameEnd();
+            if (end >= 0) {
+                frameEnd = end;
+                parseFields();
+                return true;
+            }
+            if (eof) {
+                if (limit > start) {
+                    frameEnd = limit;
+                    scanFrom = limit;
+                    parseFields();
+                    return true;
+                }
+                return false;
+            }
+            fill();
+        }
+    }
+
+    /**
+     * 目前 frame 所在的緩衝區
+     */
+    public byte[] buffer() {
+        return buffer;
+    }
+
+    /**
+     * 目前 frame 在緩衝區中的起點
+     */
+    public int frameOffset() {
+        return start;
+    }
+
+    /**
+     * 目前 frame 的位元組長度（包含結尾空行）
+     */
+    public int frameLength() {
+        return frameEnd - start;
+    }
+
+    /**
+     * 目前 frame 是否包含 {@code event:} 行
+     */
+    public boolean hasEventType() {
+        return eventLength >= 0;
+    }
+
+    /**
+     * 比對目前 frame 的 {@code event:} 類型（不建立 String）
+     *
+     * @param eventType ASCII 編碼的事件類型
+     * @return 類型相同返回 true
+     */
+    public boolean isEventType(byte[] eventType) {
+        return eventLength == eventType.length
+            && Arrays.equals(buffer, eventOffset, eventOffset + eventLength, eventType, 0, eventType.length);
+    }
+
+    /**
+     * 取得目前 frame 的 {@code event:} 類型
+     *
+     * @return 事件類型，無 event 行返回 null
+     */
+    public String eventType() {
+        return eventLength >= 0
+            ? new String(buffer, eventOffset, eventLength, StandardCharsets.UTF_8)
+            : null;
+    }
+
+    /**
+     * 目前 frame 是否包含 {@code data:} 行
+     */
+    public boolean hasData() {
+        return dataLength >= 0;
+    }
+
+    /**
+     * {@code data:} 內容所在的緩衝區
+     *
+     * <p>單行 data（Anthropic 的格式）直接指向 frame 緩衝區；
+     * 多行 data 依 SSE 規範以 {@code \n} 串接到獨立緩衝區。
+     */
+    public byte[] dataBuffer() {
+        return dataBuffer;
+    }
+
+    public int dataOffset() {
+        return dataOffset;
+    }
+
+    public int dataLength() {
+        return dataLength;
+    }
+
+    /**
+     * 在目前 frame 中搜尋 event / data 欄位位置
+     */
+    private void parseFields() {
+        eventLength = -1;
+        dataLength = -1;
+        dataBuffer = null;
+
+        int lineStart = start;
+        while (lineStart < frameEnd) {
+            int lineEnd = lineStart;
+            while (lineEnd < frameEnd && buffer[lineEnd] != '\n') {
+                lineEnd++;
+            }
+            int contentEnd = lineEnd;
+            if (contentEnd > lineStart && buffer[contentEnd - 1] == '\r') {
+                contentEnd--;
+            }
+
+            if (startsWith(lineStart, contentEnd, EVENT_FIELD)) {
+                int valueStart = valueStart(lineStart + EVENT_FIELD.length, contentEnd);
+                eventOffset = valueStart;
+                eventLength = contentEnd - valueStart;
+            } else if (startsWith(lineStart, contentEnd, DATA_FIELD)) {
+                int valueStart = valueStart(lineStart + DATA_FIELD.length, contentEnd);
+                appendData(valueStart, contentEnd - valueStart);
+            }
+
+            lineStart = lineEnd + 1;
+        }
+    }
+
+    private void appendData(int offset, int length) {
+        if (dataLength < 0) {
+            dataBuffer = buffer;
+            dataOffset = offset;
+            dataLength = length;
+            return;
+        }
+        // 多行 data：串接到獨立緩衝區（Anthropic 實際上不會送出多行 data）
+        byte[] joined = new byte[dataLength + 1 + length];
+        System.arraycopy(dataBuffer, dataOffset, joined, 0, dataLength);
+        joined[dataLength] = '\n';
+        System.arraycopy(buffer, offset, joined, dataLength + 1, length);
+        dataBuffer = joined;
+        dataOffset = 0;
+        dataLength = joined.length;
+    }
+
+    private boolean startsWith(int from, int to, byte[] prefix) {
+        return to - from >= prefix.length
+            && Arrays.equals(buffer, from, from + prefix.length, prefix, 0, prefix.length);
+    }
+
+    /**
+     * 欄位值起點：依 SSE 規範略過冒號後的單一空白
+     */
+    private int valueStart(int from, int to) {
+        return from < to && buffer[from] == ' ' ? from + 1 : from;
+    }
+
+    /**
+     * 搜尋 frame 結尾（空行），找到返回結尾之後的位置，否則返回 -1
+     */
+    private int findFrameEnd() {
+        for (int i = Math.max(scanFrom, start); i < limit; i++) {
+            if (buffer[i] != '\n') {
+                continue;
+            }
+            if (i + 1 >= limit) {
+                scanFrom = i;
+                return -1;
+            }
+            byte next = buffer[i + 1];
+            if (next == '\n') {
+                scanFrom = i + 2;
+                return i + 2;
+            }
+            if (next == '\r') {
+                if (i + 2 >= limit) {
+                    scanFrom = i;
+                    return -1;
+                }
+                if (buffer[i + 2] == '\n') {
+                    scanFrom = i + 3;
+                    return i + 3;
+                }
+            }
+        }
+        scanFrom = limit;
+        return -1;
+    }
+
+    /**
+     * 從上游讀取更多位元組，必要時壓縮或擴充緩衝區
+     */
+    private void fill() throws IOException {
+        if (start == limit) {
+            start = 0;
+            limit = 0;
+            scanFrom = 0;
+        } else if (limit == buffer.length) {
+            if (start > 0) {
+                int remaining = limit - start;
+                System.arraycopy(buffer, start, buffer, 0, remaining);
+                scanFrom = Math.max(scanFrom - start, 0);
+                start = 0;
+                limit = remaining;
+            } else {
+                buffer = Arrays.copyOf(buffer, buffer.length * 2);
+            }
+        }
+
+        int read = inputStream.read(buffer, limit, buffer.length - limit);
+        if (read < 0) {
+            eof = true;
+        } else {
+            limit += read;
+        }
+    }
+}
@@ -0,0 +1,409 @@
+package io.github.samzhu.gate.util;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.StringWriter;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.core.JsonToken;
+
+/**
+ * 將串流事件組回完整的 Message JSON（回應快取用）
+ *
+ * <p>依序餵入每個 SSE 事件的 {@code data:} 內容，串流正常結束（{@code message_stop}）後
+ * 以 {@link #toMessage()} 取得與非串流回應相同格式的 Message：
+ * <ul>
+ *   <li>{@code message_start} - Message 的其他欄位（{@code id}、{@code model}、{@code usage}...）</li>
+ *   <li>{@code content_block_start} - 區塊的初始內容</li>
+ *   <li>{@code content_block_delta} - 依 delta 類型累加：{@code text_delta}、{@code thinking_delta}、
+ *       {@code signature_delta}、{@code input_json_delta}（串接後於輸出時驗證為 JSON）、{@code citations_delta}</li>
+ *   <li>{@code message_delta} - {@code stop_reason}、{@code stop_sequence} 與最終 {@code usage}（覆蓋初始值）</li>
+ * </ul>
+ *
+ * <p>遇到 {@code error} 事件、未知的 delta 類型或無法解析的資料時放棄組裝（{@link #isComplete()} 為 false），
+ * 不快取可能不完整的回應。
+ *
+ * <p>只在請求可快取時建立（{@code temperature: 0} 且啟用回應快取），每個 delta 都需要解碼。
+ * 以 Jackson 低階 API 處理，不建立 JsonNode。
+ *
+ * <p>非執行緒安全：每個串流請求使用獨立實例。
+ *
+ * @see SseMessageReplay
+ * @see io.github.samzhu.gate.service.ResponseCache
+ */
+public class SseMessageAssembler {
+
+    private static final Logger log = LoggerFactory.getLogger(SseMessageAssembler.class);
+
+    private static final Set<String> SUPPORTED_DELTAS = Set.of(
+        "text_delta", "thinking_delta", "signature_delta", "input_json_delta", "citations_delta");
+
+    private byte[] messageStart;
+    private final List<Block> blocks = new ArrayList<>();
+    private final Map<String, String> delta = new LinkedHashMap<>();
+    private final Map<String, String> usage = new LinkedHashMap<>();
+    private boolean complete;
+    private boolean failed;
+
+    /**
+     * 餵入一個 SSE 事件的 data 內容
+     */
+    public void accept(byte[] data, int offset, int length) {
+        if (failed || complete || length <= 0) {
+            return;
+        }
+        try (JsonParser parser = UsageJsonScanner.JSON_FACTORY.createParser(data, offset, length)) {
+            if (parser.nextToken() != JsonToken.START_OBJECT) {
+                return;
+            }
+            // Anthropic 固定將 type 放在第一個欄位
+            if (parser.nextToken() != JsonToken.FIELD_NAME || !"type".equals(parser.currentName())) {
+                fail("event without leading type");
+                return;
+            }
+            parser.nextToken();
+            switch (parser.getText()) {
+                case "message_start" -> messageStart = copy(data, offset, length);
+                case "content_block_start" -> onBlockStart(parser, data, offset, length);
+                case "content_block_delta" -> onBlockDelta(parser);
+                case "message_delta" -> onMessageDelta(parser);
+                case "message_stop" -> complete = messageStart != null;
+                case "error" -> fail("error event");
+                default -> {
+                    // ping、content_block_stop 不影響內容
+                }
+            }
+        } catch (IOException | RuntimeException e) {
+            fail(e.getMessage());
+        }
+    }
+
+    /**
+     * 串流是否完整結束（收到 {@code message_stop} 且沒有放棄組裝）
+     */
+    public boolean isComplete() {
+        return complete && !failed;
+    }
+
+    /**
+     * 輸出完整的 Message JSON
+     *
+     * @return Message JSON（UTF-8），串流未完整結束或無法輸出時為 null
+     */
+    public byte[] toMessage() {
+        if (!isComplete()) {
+            return null;
+        }
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        try (JsonParser parser = UsageJsonScanner.JSON_FACTORY.createParser(messageStart);
+             JsonGenerator generator = UsageJsonScanner.JSON_FACTORY.createGenerator(out)) {
+            if (!moveToField(parser, "message") || parser.nextToken() != JsonToken.START_OBJECT) {
+                return null;
+            }
+            generator.writeStartObject();
+            while (parser.nextToken() == JsonToken.FIELD_NAME) {
+                String field = parser.currentName();
+                parser.nextToken();
+                generator.writeFieldName(field);
+                switch (field) {
+                    case "content" -> {
+                        parser.skipChildren();
+                        writeContent(generator);
+                    }
+                    case "usage" -> {
+                        Map<String, String> merged = readFields(parser);
+                        merged.putAll(usage);
+                        writeFields(generator, merged);
+                    }
+                    case "stop_reason", "stop_sequence" -> {
+                        String value = delta.get(field);
+                        if (value != null) {
+                            parser.skipChildren();
+                            generator.writeRawValue(value);
+                        } else {
+                            generator.copyCurrentStructure(parser);
+                        }
+                    }
+                    default -> generator.copyCurrentStructure(parser);
+                }
+            }
+            generator.writeEndObject();
+        } catch (IOException | RuntimeException e) {
+            log.debug("Failed to assemble streamed message: {}", e.getMessage());
+            return null;
+        }
+        return out.toByteArray();
+    }
+
+    private void onBlockStart(JsonParser parser, byte[] data, int offset, int length) throws IOException {
+        int index = readIndex(parser);
+        if (index != blocks.size()) {
+            fail("unexpected content block index " + index);
+            return;
+        }
+        blocks.add(new Block(copy(data, offset, length)));
+    }
+
+    private void onBlockDelta(JsonParser parser) throws IOException {
+        int index = -1;
+        while (parser.nextToken() == JsonToken.FIELD_NAME) {
+            String field = parser.currentName();
+            parser.nextToken();
+            if ("index".equals(field)) {
+                index = parser.getIntValue();
+            } else if ("delta".equals(field) && index >= 0 && index < blocks.size()) {
+                blocks.get(index).apply(parser, this);
+            } else {
+                parser.skipChildren();
+            }
+        }
+    }
+
+    private void onMessageDelta(JsonParser parser) throws IOException {
+        while (parser.nextToken() == JsonToken.FIELD_NAME) {
+            String field = parser.currentName();
+            parser.nextToken();
+            switch (field) {
+                case "delta" -> delta.putAll(readFields(parser));
+                case "usage" -> usage.putAll(readFields(parser));
+                default -> parser.skipChildren();
+            }
+        }
+    }
+
+    private void writeContent(JsonGenerator generator) throws IOException {
+        generator.writeStartArray();
+        for (Block block : blocks) {
+            block.write(generator);
+        }
+        generator.writeEndArray();
+    }
+
+    private void fail(String reason) {
+        if (!failed) {
+            failed = true;
+            log.debug("Streamed message will not be cached: {}", reason);
+        }
+    }
+
+    /**
+     * 讀取 content_block_start / delta 的 {@code index}（Anthropic 固定放在 type 之後）
+     */
+    private static int readIndex(JsonParser parser) throws IOException {
+        if (parser.nextToken() == JsonToken.FIELD_NAME && "index".equals(parser.currentName())
+                && parser.nextToken() == JsonToken.VALUE_NUMBER_INT) {
+            return parser.getIntValue();
+        }
+        return -1;
+    }
+
+    /**
+     * 前進到目前物件中指定的欄位（值之前）
+     */
+    private static boolean moveToField(JsonParser parser, String name) throws IOException {
+        if (parser.currentToken() == null && parser.nextToken() != JsonToken.START_OBJECT) {
+            return false;
+        }
+        while (parser.nextToken() == JsonToken.FIELD_NAME) {
+            if (name.equals(parser.currentName())) {
+                return true;
+            }
+            parser.nextToken();
+            parser.skipChildren();
+        }
+        return false;
+    }
+
+    /**
+     * 讀取物件的欄位為「名稱 → 原始 JSON 值」（保持順序）
+     */
+    private static Map<String, String> readFields(JsonParser parser) throws IOException {
+        Map<String, String> fields = new LinkedHashMap<>();
+        if (parser.currentToken() != JsonToken.START_OBJECT) {
+            parser.skipChildren();
+            return fields;
+        }
+        while (parser.nextToken() == JsonToken.FIELD_NAME) {
+            String field = parser.currentName();
+            parser.nextToken();
+            fields.put(field, raw(parser));
+        }
+        return fields;
+    }
+
+    private static void writeFields(JsonGenerator generator, Map<String, String> fields) throws IOException {
+        generator.writeStartObject();
+        for (Map.Entry<String, String> field : fields.entrySet()) {
+            generator.writeFieldName(field.getKey());
+            generator.writeRawValue(field.getValue());
+        }
+        generator.writeEndObject();
+    }
+
+    /**
+     * 目前的值序列化為 JSON 字串
+     */
+    static String raw(JsonParser parser) throws IOException {
+        StringWriter writer = new StringWriter();
+        try (JsonGenerator generator = UsageJsonScanner.JSON_FACTORY.createGenerator(writer)) {
+            generator.copyCurrentStructure(parser);
+        }
+        return writer.toString();
+    }
+
+    private static byte[] copy(byte[] data, int offset, int length) {
+        byte[] copy = new byte[length];
+        System.arraycopy(data, offset, copy, 0, length);
+        return copy;
+    }
+
+    /**
+     * 單一 content block：初始內容 + 累加的 delta
+     */
+    private static final class Block {
+
+        private final byte[] start;
+        private StringBuilder text;
+        private StringBuilder thinking;
+        private String signature;
+        private StringBuilder input;
+        private List<String> citations;
+
+        Block(byte[] start) {
+            this.start = start;
+        }
+
+        void apply(JsonParser parser, SseMessageAssembler assembler) throws IOException {
+            String type = null;
+            while (parser.nextToken() == JsonToken.FIELD_NAME) {
+                String field = parser.currentName();
+                parser.nextToken();
+                switch (field) {
+                    case "type" -> type = parser.getText();
+                    case "text" -> text = append(text, parser.getText());
+                    case "thinking" -> thinking = append(thinking, parser.getText());
+                    case "signature" -> signature = parser.getText();
+                    case "partial_json" -> input = append(input, parser.getText());
+                    case "citation" -> {
+                        if (citations == null) {
+                            citations = new ArrayList<>();
+                        }
+                        citations.add(raw(parser));
+                    }
+                    default -> parser.skipChildren();
+                }
+            }
+            if (type == null || !SUPPORTED_DELTAS.contains(type)) {
+                assembler.fail("unsupported delta type " + type);
+            }
+        }
+
+        /**
+         * 輸出區塊：以初始內容為基礎，累加過的欄位以累加結果取代
+         */
+        void write(JsonGenerator generator) throws IOException {
+            try (JsonParser parser = UsageJsonScanner.JSON_FACTORY.createParser(start)) {
+                if (!moveToField(parser, "content_block") || parser.nextToken() != JsonToken.START_OBJECT) {
+                    throw new IOException("content_block_start without content_block");
+                }
+                boolean signatureWritten = false;
+                boolean citationsWritten = false;
+                generator.writeStartObject();
+                while (parser.nextToken() == JsonToken.FIELD_NAME) {
+                    String field = parser.currentName();
+                    parser.nextToken();
+                    generator.writeFieldName(field);
+                    switch (field) {
+                        case "text" -> writeString(generator, parser, text);
+                        case "thinking" -> writeString(generator, parser, thinking);
+                        case "signature" -> {
+                            signatureWritten = true;
+                            if (signature != null) {
+                                parser.skipChildren();
+                                generator.writeString(signature);
+                            } else {
+                                generator.copyCurrentStructure(parser);
+                            }
+                        }
+                        case "input" -> {
+                            if (input != null) {
+                                parser.skipChildren();
+                                writeInput(generator);
+                            } else {
+                                generator.copyCurrentStructure(parser);
+                            }
+                        }
+                        case "citations" -> {
+                            citationsWritten = true;
+                            if (citations != null) {
+                                parser.skipChildren();
+                                writeCitations(generator);
+                            } else {
+                                generator.copyCurrentStructure(parser);
+                            }
+                        }
+                        default -> generator.copyCurrentStructure(parser);
+                    }
+                }
+                if (signature != null && !signatureWritten) {
+                    generator.writeStringField("signature", signature);
+                }
+                if (citations != null && !citationsWritten) {
+                    generator.writeFieldName("citations");
+                    writeCitations(generator);
+                }
+                generator.writeEndObject();
+            }
+        }
+
+        private static void writeString(JsonGenerator generator, JsonParser parser, StringBuilder value)
+                throws IOException {
+            if (value != null) {
+                // 初始值（通常為空字串）與累加結果串接
+                String initial = parser.currentToken() == JsonToken.VALUE_STRING ? parser.getText() : "";
+                generator.writeString(initial + value);
+            } else {
+                generator.copyCurrentStructure(parser);
+            }
+        }
+
+        /**
+         * 串接後的 {@code partial_json} 重新解析後輸出（同時驗證為完整 JSON）；沒有內容時為 {@code {}}
+         */
+        private void writeInput(JsonGenerator generator) throws IOException {
+            if (input.isEmpty()) {
+                generator.writeStartObject();
+                generator.writeEndObject();
+                return;
+            }
+            try (JsonParser parser = UsageJsonScanner.JSON_FACTORY.createParser(input.toString())) {
+                parser.nextToken();
+                generator.copyCurrentStructure(parser);
+                if (parser.nextToken() != null) {
+                    throw new IOException("trailing content after tool input");
+                }
+            }
+        }
+
+        private void writeCitations(JsonGenerator generator) throws IOException {
+            generator.writeStartArray();
+            for (String citation : citations) {
+                generator.writeRawValue(citation);
+            }
+            generator.writeEndArray();
+        }
+
+        private static StringBuilder append(StringBuilder builder, String value) {
+            return (builder != null ? builder : new StringBuilder()).append(value);
+        }
+    }
+}
@@ -0,0 +1,256 @@
+package io.github.samzhu.gate.util;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.core.JsonToken;
+
+/**
+ * 將完整的 Message JSON 轉為合成的 SSE 事件序列（回應快取重播用）
+ *
+ * <p>產生與 Anthropic 串流相同結構的事件，讓串流客戶端無法分辨來源：
+ * <pre>
+ * message_start        （content 為空陣列，stop_reason / stop_sequence 為 null）
+ * content_block_start  （每個區塊；text / thinking / signature 為空字串，input 為 {}）
+ * content_block_delta  （每個區塊一次：citations_delta、text_delta、thinking_delta、signature_delta、input_json_delta）
+ * content_block_stop
+ * message_delta        （stop_reason、stop_sequence、usage）
+ * message_stop
+ * </pre>
+ *
+ * <p>每種內容只送出一個 delta（不模擬逐 token 輸出），其他區塊類型（{@code redacted_thinking}、
+ * 伺服器工具結果等）在 {@code content_block_start} 中完整送出。
+ *
+ * @see SseMessageAssembler
+ * @see io.github.samzhu.gate.handler.CachedResponseHandler
+ */
+public final class SseMessageReplay {
+
+    private SseMessageReplay() {
+    }
+
+    /**
+     * 產生 SSE 事件序列
+     *
+     * @param message Message JSON（UTF-8）
+     * @return SSE 位元組（每個事件以空行結尾）
+     * @throws IOException Message 不是合法的 JSON 物件
+     */
+    public static byte[] replay(byte[] message) throws IOException {
+        ByteArrayOutputStream out = new ByteArrayOutputStream(message.length + 1024);
+        List<String> blocks = new ArrayList<>();
+        Map<String, String> delta = new LinkedHashMap<>();
+        String usage = "{}";
+
+        // message_start：其餘欄位依原順序輸出
+        ByteArrayOutputStream start = new ByteArrayOutputStream(256);
+        try (JsonParser parser = UsageJsonScanner.JSON_FACTORY.createParser(message);
+             JsonGenerator generator = UsageJsonScanner.JSON_FACTORY.createGenerator(start)) {
+            if (parser.nextToken() != JsonToken.START_OBJECT) {
+                throw new IOException("Cached message is not a JSON object");
+            }
+            generator.writeStartObject();
+            generator.writeStringField("type", "message_start");
+            generator.writeFieldName("message");
+            generator.writeStartObject();
+            while (parser.nextToken() == JsonToken.FIELD_NAME) {
+                String field = parser.currentName();
+                parser.nextToken();
+                generator.writeFieldName(field);
+                switch (field) {
+                    case "content" -> {
+                        if (parser.currentToken() == JsonToken.START_ARRAY) {
+                            while (parser.nextToken() != JsonToken.END_ARRAY) {
+                                blocks.add(SseMessageAssembler.raw(parser));
+                            }
+                        } else {
+                            parser.skipChildren();
+                        }
+                        generator.writeStartArray();
+                        generator.writeEndArray();
+                    }
+                    case "stop_reason", "stop_sequence" -> {
+                        delta.put(field, SseMessageAssembler.raw(parser));
+                        generator.writeNull();
+                    }
+                    case "usage" -> {
+                        usage = SseMessageAssembler.raw(parser);
+                        generator.writeRawValue(usage);
+                    }
+                    default -> generator.copyCurrentStructure(parser);
+                }
+            }
+            generator.writeEndObject();
+            generator.writeEndObject();
+        }
+        writeEvent(out, "message_start", start.toByteArray());
+
+        for (int index = 0; index < blocks.size(); index++) {
+            writeBlock(out, index, blocks.get(index));
+        }
+
+        writeEvent(out, "message_delta", json(generator -> {
+            generator.writeStringField("type", "message_delta");
+            generator.writeFieldName("delta");
+            generator.writeStartObject();
+            for (Map.Entry<String, String> field : delta.entrySet()) {
+                generator.writeFieldName(field.getKey());
+                generator.writeRawValue(field.getValue());
+            }
+            generator.writeEndObject();
+        }, usage));
+        writeEvent(out, "message_stop", json(generator -> generator.writeStringField("type", "message_stop"), null));
+        return out.toByteArray();
+    }
+
+    /**
+     * 單一區塊：content_block_start（內容欄位清空）、各內容一個 delta、content_block_stop
+     */
+    private static void writeBlock(ByteArrayOutputStream out, int index, String block) throws IOException {
+        List<byte[]> deltas = new ArrayList<>();
+        ByteArrayOutputStream start = new ByteArrayOutputStream(128);
+        try (JsonParser parser = UsageJsonScanner.JSON_FACTORY.createParser(block);
+             JsonGenerator generator = UsageJsonScanner.JSON_FACTORY.createGenerator(start)) {
+            parser.nextToken();
+            generator.writeStartObject();
+            generator.writeStringField("type", "content_block_start");
+            generator.writeNumberField("index", index);
+            generator.writeFieldName("content_block");
+            generator.writeStartObject();
+            while (parser.nextToken() == JsonToken.FIELD_NAME) {
+                String field = parser.currentName();
+                parser.nextToken();
+                switch (field) {
+                    case "text" -> {
+                        generator.writeStringField(field, "");
+                        deltas.add(delta(index, "text_delta", "text", parser.getText()));
+                    }
+                    case "thinking" -> {
+                        generator.writeStringField(field, "");
+                        deltas.add(delta(index, "thinking_delta", "thinking", parser.getText()));
+                    }
+                    case "signature" -> {
+                        generator.writeStringField(field, "");
+                        deltas.add(delta(index, "signature_delta", "signature", parser.getText()));
+                    }
+                    case "input" -> {
+                        generator.writeFieldName(field);
+                        generator.writeStartObject();
+                        generator.writeEndObject();
+                        deltas.add(delta(index, "input_json_delta", "partial_json",
+                            SseMessageAssembler.raw(parser)));
+                    }
+                    case "citations" -> {
+                        if (parser.currentToken() == JsonToken.START_ARRAY) {
+                            // citation 送在對應文字之前
+                            List<byte[]> citations = new ArrayList<>();
+                            while (parser.nextToken() != JsonToken.END_ARRAY) {
+                                citations.add(citationDelta(index, SseMessageAssembler.raw(parser)));
+                            }
+                            deltas.addAll(0, citations);
+                        } else {
+                            parser.skipChildren();
+                        }
+                    }
+                    default -> {
+                        generator.writeFieldName(field);
+                        generator.copyCurrentStructure(parser);
+                    }
+                }
+            }
+            generator.writeEndObject();
+            generator.writeEndObject();
+        }
+
+        writeEvent(out, "content_block_start", start.toByteArray());
+        for (byte[] delta : deltas) {
+            writeEvent(out, "content_block_delta", delta);
+        }
+        writeEvent(out, "content_block_stop", json(generator -> {
+            generator.writeStringField("type", "content_block_stop");
+            generator.writeNumberField("index", index);
+        }, null));
+    }
+
+    /**
+     * 產生 Anthropic 相容的 {@code error} 事件（串流中途發生錯誤時通知客戶端）
+     *
+     * <p>訊息由 {@link JsonGenerator} 跳脫（引號、反斜線、換行與控制字元），不會破壞 {@code data:} 行。
+     *
+     * @param message 錯誤訊息
+     * @return 單一 SSE 事件位元組
+     */
+    public static byte[] error(String message) throws IOException {
+        ByteArrayOutputStream out = new ByteArrayOutputStream(128);
+        writeEvent(out, "error", json(generator -> {
+            generator.writeStringField("type", "error");
+            generator.writeFieldName("error");
+            generator.writeStartObject();
+            generator.writeStringField("type", "api_error");
+            generator.writeStringField("message", message);
+            generator.writeEndObject();
+        }, null));
+        return out.toByteArray();
+    }
+
+    private static byte[] delta(int index, String type, String field, String value) throws IOException {
+        return json(generator -> {
+            generator.writeStringField("type", "content_block_delta");
+            generator.writeNumberField("index", index);
+            generator.writeFieldName("delta");
+            generator.writeStartObject();
+            generator.writeStringField("type", type);
+            generator.writeStringField(field, value);
+            generator.writeEndObject();
+        }, null);
+    }
+
+    private static byte[] citationDelta(int index, String citation) throws IOException {
+        return json(generator -> {
+            generator.writeStringField("type", "content_block_delta");
+            generator.writeNumberField("index", index);
+            generator.writeFieldName("delta");
+            generator.writeStartObject();
+            generator.writeStringField("type", "citations_delta");
+            generator.writeFieldName("citation");
+            generator.writeRawValue(citation);
+            generator.writeEndObject();
+        }, null);
+    }
+
+    /**
+     * 產生單一 JSON 物件（{@code usage} 不為 null 時附加在最後）
+     */
+    private static byte[] json(Fields fields, String usage) throws IOException {
+        ByteArrayOutputStream out = new ByteArrayOutputStream(128);
+        try (JsonGenerator generator = UsageJsonScanner.JSON_FACTORY.createGenerator(out)) {
+            generator.writeStartObject();
+            fields.write(generator);
+            if (usage != null) {
+                generator.writeFieldName("usage");
+                generator.writeRawValue(usage);
+            }
+            generator.writeEndObject();
+        }
+        return out.toByteArray();
+    }
+
+    private static void writeEvent(ByteArrayOutputStream out, String event, byte[] data) throws IOException {
+        out.write(("event: " + event + "\ndata: ").getBytes(StandardCharsets.US_ASCII));
+        out.write(data);
+        out.write('\n');
+        out.write('\n');
+    }
+
+    @FunctionalInterface
+    private interface Fields {
+        void write(JsonGenerator generator) throws IOException;
+    }
+}
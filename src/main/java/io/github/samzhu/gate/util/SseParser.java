@@ -1,12 +1,11 @@
 package io.github.samzhu.gate.util;
 
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
-import com.fasterxml.jackson.databind.ObjectMapper;
-
-import io.github.samzhu.gate.model.StreamEvent;
-
 /**
  * SSE（Server-Sent Events）事件解析工具
  *
@@ -14,9 +13,13 @@ import io.github.samzhu.gate.model.StreamEvent;
  * <ul>
  *   <li>提取 {@code data:} 行內容</li>
  *   <li>提取 {@code event:} 行類型</li>
- *   <li>將 JSON data 解析為 {@link StreamEvent} 物件</li>
+ *   <li>以 {@link UsageJsonScanner} 掃描 JSON data 的用量欄位（不做反射綁定）</li>
+ *   <li>依事件類型判斷是否需要解析（{@link #requiresParsing(SseFrameReader)}）</li>
  * </ul>
  *
+ * <p>事件類型過濾：只有 {@code message_start}、{@code message_delta}、{@code error} 帶有用量或錯誤資訊，
+ * 其他事件（每個回應數千個 {@code content_block_delta}、{@code ping}）不需要交給 Jackson 反序列化。
+ *
  * <p>SSE 格式範例：
  * <pre>{@code
  * event: message_start
@@ -26,7 +29,7 @@ import io.github.samzhu.gate.model.StreamEvent;
  * data: {"type":"content_block_delta","delta":{"type":"text_delta","text":"Hello"}}
  * }</pre>
  *
- * @see StreamEvent
+ * @see UsageJsonScanner
  * @see io.github.samzhu.gate.handler.StreamingProxyHandler
  * @see <a href="https://html.spec.whatwg.org/multipage/server-sent-events.html">SSE Specification</a>
  */
@@ -34,31 +37,113 @@ public class SseParser {
 
     private static final Logger log = LoggerFactory.getLogger(SseParser.class);
 
-    private final ObjectMapper objectMapper;
-
-    public SseParser(ObjectMapper objectMapper) {
-        this.objectMapper = objectMapper;
-    }
+    private static final byte[] MESSAGE_START = ascii("message_start");
+    private static final byte[] MESSAGE_DELTA = ascii("message_delta");
+    private static final byte[] ERROR = ascii("error");
+    private static final byte[] CONTENT_BLOCK_DELTA = ascii("content_block_delta");
+    private static final byte[] TYPE_PREFIX = ascii("{\"type\":\"");
 
     /**
-     * 解析 SSE data 行內容為 StreamEvent
+     * 掃描 SSE frame 的 data 內容，提取用量欄位
+     *
+     * <p>直接在 frame 緩衝區上掃描，不建立 data 字串。
      *
-     * @param dataLine SSE data 行（不含 "data: " 前綴）
-     * @return StreamEvent，解析失敗返回 null
+     * @param frame 目前的 SSE frame
+     * @return 掃描結果，無 data 或解析失敗返回 null
      */
-    public StreamEvent parse(String dataLine) {
-        if (dataLine == null || dataLine.isBlank() || "[DONE]".equals(dataLine.trim())) {
+    public UsageJsonScanner parse(SseFrameReader frame) {
+        if (!frame.hasData() || frame.dataLength() == 0) {
             return null;
         }
 
         try {
-            return objectMapper.readValue(dataLine, StreamEvent.class);
+            return UsageJsonScanner.scan(frame.dataBuffer(), frame.dataOffset(), frame.dataLength());
         } catch (Exception e) {
-            log.debug("Failed to parse SSE data: {}", dataLine, e);
+            if (log.isDebugEnabled()) {
+                log.debug("Failed to parse SSE data: {}", new String(frame.dataBuffer(), frame.dataOffset(),
+                    frame.dataLength(), StandardCharsets.UTF_8), e);
+            }
             return null;
         }
     }
 
+    /**
+     * 判斷 SSE frame 是否需要完整解析
+     *
+     * <p>優先使用 {@code event:} 行判斷；沒有 event 行時，檢查 data 開頭的 {@code {"type":"...} 前綴。
+     * 無法判斷格式時保守地返回 true，避免漏算用量。
+     *
+     * @param frame 目前的 SSE frame
+     * @return 只有 message_start、message_delta、error 事件返回 true
+     */
+    public boolean requiresParsing(SseFrameReader frame) {
+        if (!frame.hasData()) {
+            return false;
+        }
+        if (frame.hasEventType()) {
+            return frame.isEventType(MESSAGE_START)
+                || frame.isEventType(MESSAGE_DELTA)
+                || frame.isEventType(ERROR);
+        }
+        return peekType(frame.dataBuffer(), frame.dataOffset(), frame.dataLength());
+    }
+
+    /**
+     * 判斷 SSE frame 是否為 {@code content_block_delta} 事件（用於 inter-token 延遲量測）
+     *
+     * @param frame 目前的 SSE frame
+     * @return content_block_delta 事件返回 true
+     */
+    public boolean isContentDelta(SseFrameReader frame) {
+        if (frame.hasEventType()) {
+            return frame.isEventType(CONTENT_BLOCK_DELTA);
+        }
+        if (!frame.hasData()) {
+            return false;
+        }
+        int typeStart = typeStart(frame.dataBuffer(), frame.dataOffset(), frame.dataLength());
+        return typeStart >= 0 && typeEquals(frame.dataBuffer(), typeStart,
+            frame.dataOffset() + frame.dataLength(), CONTENT_BLOCK_DELTA);
+    }
+
+    /**
+     * 檢查 data JSON 的 {@code "type"} 前綴（Anthropic 固定將 type 放在第一個欄位）
+     */
+    private boolean peekType(byte[] data, int offset, int length) {
+        int typeStart = typeStart(data, offset, length);
+        if (typeStart < 0) {
+            return true;
+        }
+        int end = offset + length;
+        return typeEquals(data, typeStart, end, MESSAGE_START)
+            || typeEquals(data, typeStart, end, MESSAGE_DELTA)
+            || typeEquals(data, typeStart, end, ERROR);
+    }
+
+    /**
+     * @return type 值的起點，data 不是以 {@code {"type":"} 開頭返回 -1
+     */
+    private int typeStart(byte[] data, int offset, int length) {
+        int typeStart = offset + TYPE_PREFIX.length;
+        if (length < TYPE_PREFIX.length
+                || !Arrays.equals(data, offset, typeStart, TYPE_PREFIX, 0, TYPE_PREFIX.length)) {
+            return -1;
+        }
+        return typeStart;
+    }
+
+    private boolean typeEquals(byte[] data, int typeStart, int end, byte[] expected) {
+        int typeEnd = typeStart;
+        while (typeEnd < end && data[typeEnd] != '"') {
+            typeEnd++;
+        }
+        return Arrays.equals(data, typeStart, typeEnd, expected, 0, expected.length);
+    }
+
+    private static byte[] ascii(String value) {
+        return value.getBytes(StandardCharsets.US_ASCII);
+    }
+
     /**
      * 從 SSE 行提取 data 內容
      *
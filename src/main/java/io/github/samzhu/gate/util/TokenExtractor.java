@@ -4,7 +4,6 @@ import java.time.Instant;
 import java.util.concurrent.atomic.AtomicInteger;
 import java.util.concurrent.atomic.AtomicReference;
 
-import io.github.samzhu.gate.model.StreamEvent;
 import io.github.samzhu.gate.model.UsageEventData;
 
 /**
@@ -16,8 +15,11 @@ import io.github.samzhu.gate.model.UsageEventData;
  * <ul>
  *   <li>{@code message_start} 事件 - 提取 input_tokens、cache tokens、model、message_id</li>
  *   <li>{@code message_delta} 事件 - 提取最終 output_tokens、stop_reason</li>
+ *   <li>{@code error} 事件 - 提取錯誤類型</li>
  * </ul>
  *
+ * <p>事件內容由 {@link UsageJsonScanner} 以 token 走訪方式取得，不綁定 record。
+ *
  * <p>執行緒安全：使用 {@link java.util.concurrent.atomic.AtomicInteger} 和
  * {@link java.util.concurrent.atomic.AtomicReference} 確保並發存取安全，
  * 但通常每個串流請求會獨立使用一個實例。
@@ -26,12 +28,12 @@ import io.github.samzhu.gate.model.UsageEventData;
  * <pre>{@code
  * TokenExtractor extractor = new TokenExtractor();
  * // 處理每個 SSE 事件
- * streamEvents.forEach(extractor::processEvent);
+ * extractor.processEvent(sseParser.parse(frame));
  * // 串流結束後建立用量資料
  * UsageEventData data = extractor.buildUsageEventData("success", keyAlias, traceId);
  * }</pre>
  *
- * @see io.github.samzhu.gate.model.StreamEvent
+ * @see UsageJsonScanner
  * @see io.github.samzhu.gate.model.UsageEventData
  * @see io.github.samzhu.gate.handler.StreamingProxyHandler
  */
@@ -44,27 +46,40 @@ public class TokenExtractor {
     private final AtomicReference<String> model = new AtomicReference<>();
     private final AtomicReference<String> messageId = new AtomicReference<>();
     private final AtomicReference<String> stopReason = new AtomicReference<>();
+    private final AtomicReference<String> errorType = new AtomicReference<>();
     private final long startTime;
 
     public TokenExtractor() {
+        this(null);
+    }
+
+    /**
+     * @param requestedModel 請求中的 model（{@code message_start} 會以上游實際模型覆蓋）
+     */
+    public TokenExtractor(String requestedModel) {
         this.startTime = System.currentTimeMillis();
+        this.model.set(requestedModel);
     }
 
     /**
      * 處理串流事件，提取 Token 用量
      *
-     * @param event 串流事件
+     * @param event 串流事件的掃描結果
      */
-    public void processEvent(StreamEvent event) {
+    public void processEvent(UsageJsonScanner event) {
         if (event == null) {
             return;
         }
 
         if (event.isMessageStart()) {
             // 從 message_start 提取 input_tokens, model, message_id
-            inputTokens.set(event.getInputTokens());
-            cacheCreationTokens.set(event.getCacheCreationTokens());
-            cacheReadTokens.set(event.getCacheReadTokens());
+            inputTokens.set(Math.max(event.getInputTokens(), 0));
+            cacheCreationTokens.set(Math.max(event.getCacheCreationTokens(), 0));
+            cacheReadTokens.set(Math.max(event.getCacheReadTokens(), 0));
+            // message_start 已回報的 output_tokens（串流中途中止時作為已消耗的輸出量）
+            if (event.getOutputTokens() > 0) {
+                outputTokens.set(event.getOutputTokens());
+            }
             String eventModel = event.getModel();
             if (eventModel != null) {
                 model.set(eventModel);
@@ -83,6 +98,12 @@ public class TokenExtractor {
             if (eventStopReason != null) {
                 stopReason.set(eventStopReason);
             }
+        } else if (event.isError()) {
+            // 串流中途的 error 事件（如 overloaded_error）
+            String eventErrorType = event.getErrorType();
+            if (eventErrorType != null) {
+                errorType.set(eventErrorType);
+            }
         }
     }
 
@@ -98,6 +119,23 @@ public class TokenExtractor {
      */
     public UsageEventData buildUsageEventData(String status, String keyAlias, String traceId,
                                                String anthropicRequestId, String userId) {
+        return buildUsageEventData(status, keyAlias, traceId, anthropicRequestId, userId,
+            UsageEventData.RESPONSE_SOURCE_UPSTREAM);
+    }
+
+    /**
+     * 建立用量事件資料（指定回應來源，例如共用上游串流的訂閱者）
+     *
+     * @param status 請求狀態 (success/error/client_disconnected)
+     * @param keyAlias API Key 別名
+     * @param traceId OpenTelemetry Trace ID
+     * @param anthropicRequestId Anthropic 回應的 request-id header
+     * @param userId 用戶識別碼（來自 JWT sub claim）
+     * @param responseSource 回應來源（{@code upstream} / {@code coalesced}）
+     * @return 用量事件資料
+     */
+    public UsageEventData buildUsageEventData(String status, String keyAlias, String traceId,
+                                               String anthropicRequestId, String userId, String responseSource) {
         return UsageEventData.builder()
             .userId(userId)
             .eventTime(Instant.now())
@@ -111,9 +149,11 @@ public class TokenExtractor {
             .stream(true)
             .stopReason(stopReason.get())
             .status(status)
+            .errorType(errorType.get())
             .keyAlias(keyAlias)
             .traceId(traceId)
             .anthropicRequestId(anthropicRequestId)
+            .responseSource(responseSource)
             .build();
     }
 
@@ -0,0 +1,300 @@
+package io.github.samzhu.gate.util;
+
+import java.io.IOException;
+
+import com.fasterxml.jackson.core.JsonFactory;
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.core.JsonToken;
+
+/**
+ * Claude API 用量欄位掃描器
+ *
+ * <p>使用 Jackson 低階 {@link JsonParser} 逐 token 走訪 JSON，只取出計費需要的欄位，
+ * 其他子樹（{@code content}、{@code delta.text} 等）直接略過，不建立任何 record 或 JsonNode：
+ * <ul>
+ *   <li>{@code type} - 事件/回應類型</li>
+ *   <li>{@code id}、{@code model}、{@code stop_reason} - 位於根層級或 {@code message} 物件內</li>
+ *   <li>{@code delta.stop_reason} - {@code message_delta} 事件的結束原因</li>
+ *   <li>{@code usage.*} - 位於根層級或 {@code message.usage}</li>
+ *   <li>{@code error.type} - 錯誤類型</li>
+ * </ul>
+ *
+ * <p>同一個掃描器同時服務兩種資料來源：
+ * <ul>
+ *   <li>SSE 事件的 data JSON（{@code message_start}、{@code message_delta}、{@code error}）</li>
+ *   <li>非串流回應的完整 Message JSON</li>
+ * </ul>
+ *
+ * <p>不使用反射綁定，因此不需要在 {@link io.github.samzhu.gate.config.NativeImageHints} 註冊。
+ *
+ * <p>非執行緒安全：每次掃描使用獨立實例。
+ *
+ * @see TokenExtractor
+ * @see <a href="https://platform.claude.com/docs/en/build-with-claude/streaming">Claude Streaming</a>
+ */
+public class UsageJsonScanner {
+
+    /** 欄位值不存在時的 token 數標記 */
+    public static final int ABSENT = -1;
+
+    static final JsonFactory JSON_FACTORY = new JsonFactory();
+    private static final int MAX_TRACKED_DEPTH = 4;
+
+    private String type;
+    private String messageId;
+    private String model;
+    private String stopReason;
+    private String errorType;
+    private int inputTokens = ABSENT;
+    private int outputTokens = ABSENT;
+    private int cacheCreationTokens = ABSENT;
+    private int cacheReadTokens = ABSENT;
+
+    // 走訪狀態：containers[d] 為開啟深度 d 物件的欄位名稱（根物件為 null）
+    private final String[] containers = new String[MAX_TRACKED_DEPTH];
+    private int depth;
+    private int skipDepth;
+    private String fieldName;
+    private boolean completed;
+
+    /**
+     * 掃描完整的 JSON 位元組
+     *
+     * @param data   JSON 所在的緩衝區
+     * @param offset 起點
+     * @param length 長度
+     * @return 掃描結果
+     * @throws IOException JSON 格式錯誤
+     */
+    public static UsageJsonScanner scan(byte[] data, int offset, int length) throws IOException {
+        UsageJsonScanner scanner = new UsageJsonScanner();
+        try (JsonParser parser = JSON_FACTORY.createParser(data, offset, length)) {
+            scanner.consume(parser, true);
+        }
+        return scanner;
+    }
+
+    /**
+     * 掃描完整的 JSON 位元組
+     *
+     * @param data JSON 位元組
+     * @return 掃描結果
+     * @throws IOException JSON 格式錯誤
+     */
+    public static UsageJsonScanner scan(byte[] data) throws IOException {
+        return scan(data, 0, data.length);
+    }
+
+    /**
+     * 從 parser 讀取 token 直到根物件結束或輸入暫時不足
+     *
+     * @param parser   JSON parser
+     * @param blocking 是否為阻塞式 parser（可直接使用 {@link JsonParser#skipChildren()}）
+     * @return 根物件已完整讀取返回 true
+     */
+    boolean consume(JsonParser parser, boolean blocking) throws IOException {
+        JsonToken token;
+        while (!completed && (token = parser.nextToken()) != null && token != JsonToken.NOT_AVAILABLE) {
+            if (skipDepth > 0) {
+                if (token.isStructStart()) {
+                    skipDepth++;
+                } else if (token.isStructEnd()) {
+                    skipDepth--;
+                }
+                continue;
+            }
+
+            switch (token) {
+                case FIELD_NAME -> fieldName = parser.currentName();
+                case START_OBJECT -> {
+                    if (depth == 0 || isTrackedContainer(fieldName)) {
+                        depth++;
+                        containers[depth] = depth == 1 ? null : fieldName;
+                    } else {
+                        skip(parser, blocking);
+                    }
+                }
+                case START_ARRAY -> skip(parser, blocking);
+                case END_OBJECT -> {
+                    depth--;
+                    if (depth == 0) {
+                        completed = true;
+                    }
+                }
+                case VALUE_STRING -> onString(parser);
+                case VALUE_NUMBER_INT -> onInt(parser);
+                default -> {
+                    // 其他值（null、boolean、浮點數）不需要
+                }
+            }
+        }
+        return completed;
+    }
+
+    /**
+     * 以另一次掃描的結果補齊本掃描缺少的欄位（已存在的值優先）
+     *
+     * @param other 另一段 JSON 的掃描結果
+     */
+    void mergeMissing(UsageJsonScanner other) {
+        if (type == null) {
+            type = other.type;
+        }
+        if (messageId == null) {
+            messageId = other.messageId;
+        }
+        if (model == null) {
+            model = other.model;
+        }
+        if (stopReason == null) {
+            stopReason = other.stopReason;
+        }
+        if (errorType == null) {
+            errorType = other.errorType;
+        }
+        if (inputTokens == ABSENT) {
+            inputTokens = other.inputTokens;
+        }
+        if (outputTokens == ABSENT) {
+            outputTokens = other.outputTokens;
+        }
+        if (cacheCreationTokens == ABSENT) {
+            cacheCreationTokens = other.cacheCreationTokens;
+        }
+        if (cacheReadTokens == ABSENT) {
+            cacheReadTokens = other.cacheReadTokens;
+        }
+    }
+
+    /**
+     * 根物件是否已完整讀取
+     */
+    boolean isCompleted() {
+        return completed;
+    }
+
+    private void skip(JsonParser parser, boolean blocking) throws IOException {
+        if (blocking) {
+            parser.skipChildren();
+        } else {
+            skipDepth = 1;
+        }
+    }
+
+    /**
+     * 只進入帶有用量資訊的物件：{@code message}、{@code usage}、{@code delta}、{@code error}、{@code message.usage}
+     */
+    private boolean isTrackedContainer(String name) {
+        if (depth == 1) {
+            return "message".equals(name) || "usage".equals(name)
+                || "delta".equals(name) || "error".equals(name);
+        }
+        return depth == 2 && "message".equals(containers[2]) && "usage".equals(name);
+    }
+
+    private void onString(JsonParser parser) throws IOException {
+        if (depth == 0 || fieldName == null) {
+            return;
+        }
+        String container = containers[depth];
+        if (container == null) {
+            switch (fieldName) {
+                case "type" -> type = parser.getText();
+                case "id" -> messageId = parser.getText();
+                case "model" -> model = parser.getText();
+                case "stop_reason" -> stopReason = parser.getText();
+                default -> {
+                    // 略過其他根層級字串（不解碼）
+                }
+            }
+        } else if ("message".equals(container)) {
+            switch (fieldName) {
+                case "id" -> messageId = parser.getText();
+                case "model" -> model = parser.getText();
+                case "stop_reason" -> stopReason = parser.getText();
+                default -> {
+                    // 略過
+                }
+            }
+        } else if ("delta".equals(container) && "stop_reason".equals(fieldName)) {
+            stopReason = parser.getText();
+        } else if ("error".equals(container) && "type".equals(fieldName)) {
+            errorType = parser.getText();
+        }
+    }
+
+    private void onInt(JsonParser parser) throws IOException {
+        if (depth == 0 || fieldName == null || !"usage".equals(containers[depth])) {
+            return;
+        }
+        switch (fieldName) {
+            case "input_tokens" -> inputTokens = parser.getIntValue();
+            case "output_tokens" -> outputTokens = parser.getIntValue();
+            case "cache_creation_input_tokens" -> cacheCreationTokens = parser.getIntValue();
+            case "cache_read_input_tokens" -> cacheReadTokens = parser.getIntValue();
+            default -> {
+                // 略過其他用量欄位（如 server_tool_use）
+            }
+        }
+    }
+
+    public boolean isMessageStart() {
+        return "message_start".equals(type);
+    }
+
+    public boolean isMessageDelta() {
+        return "message_delta".equals(type);
+    }
+
+    public boolean isError() {
+        return "error".equals(type);
+    }
+
+    public String getType() {
+        return type;
+    }
+
+    public String getMessageId() {
+        return messageId;
+    }
+
+    public String getModel() {
+        return model;
+    }
+
+    public String getStopReason() {
+        return stopReason;
+    }
+
+    public String getErrorType() {
+        return errorType;
+    }
+
+    /**
+     * @return input_tokens，不存在返回 {@link #ABSENT}
+     */
+    public int getInputTokens() {
+        return inputTokens;
+    }
+
+    /**
+     * @return output_tokens，不存在返回 {@link #ABSENT}
+     */
+    public int getOutputTokens() {
+        return outputTokens;
+    }
+
+    /**
+     * @return cache_creation_input_tokens，不存在返回 {@link #ABSENT}
+     */
+    public int getCacheCreationTokens() {
+        return cacheCreationTokens;
+    }
+
+    /**
+     * @return cache_read_input_tokens，不存在返回 {@link #ABSENT}
+     */
+    public int getCacheReadTokens() {
+        return cacheReadTokens;
+    }
+}
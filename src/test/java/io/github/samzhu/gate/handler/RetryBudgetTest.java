@@ -0,0 +1,114 @@
+package io.github.samzhu.gate.handler;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import org.junit.jupiter.api.Test;
+
+class RetryBudgetTest {
+
+    @Test
+    void startsWithFullReserve() {
+        RetryBudget budget = new RetryBudget(0.1, 3);
+
+        assertEquals(3.0, budget.available(), 0.0);
+        assertTrue(budget.tryWithdraw());
+        assertTrue(budget.tryWithdraw());
+        assertTrue(budget.tryWithdraw());
+        assertFalse(budget.tryWithdraw());
+        assertEquals(0.0, budget.available(), 0.0);
+    }
+
+    @Test
+    void requestsRefillBudgetByRatio() {
+        RetryBudget budget = new RetryBudget(0.1, 1);
+        assertTrue(budget.tryWithdraw());
+
+        for (int i = 0; i < 9; i++) {
+            budget.deposit();
+        }
+        assertFalse(budget.tryWithdraw());
+
+        budget.deposit();
+        assertTrue(budget.tryWithdraw());
+        assertFalse(budget.tryWithdraw());
+    }
+
+    @Test
+    void depositsAreCappedAtReserve() {
+        RetryBudget budget = new RetryBudget(0.5, 2);
+
+        for (int i = 0; i < 100; i++) {
+            budget.deposit();
+        }
+
+        assertEquals(2.0, budget.available(), 0.0);
+    }
+
+    @Test
+    void zeroReserveStillAllowsOneRequestDeposit() {
+        // 容量至少為單一請求的存入量，ratio >= 1 時每個請求都能重試
+        RetryBudget budget = new RetryBudget(1.0, 0);
+
+        assertTrue(budget.tryWithdraw());
+        assertFalse(budget.tryWithdraw());
+        budget.deposit();
+        assertTrue(budget.tryWithdraw());
+    }
+
+    @Test
+    void retriesDuringOutageAreBoundedByRequestsTimesRatioPlusReserve() {
+        RetryBudget budget = new RetryBudget(0.2, 5);
+        int retries = 0;
+
+        // 上游全面故障：每個請求都想重試三次
+        for (int request = 0; request < 1000; request++) {
+            budget.deposit();
+            for (int attempt = 0; attempt < 3 && budget.tryWithdraw(); attempt++) {
+                retries++;
+            }
+        }
+
+        assertEquals(1000 * 0.2 + 5, retries, 1.0);
+    }
+
+    @Test
+    void concurrentWithdrawalsNeverOverdraw() throws Exception {
+        RetryBudget budget = new RetryBudget(0.1, 100);
+        CountDownLatch start = new CountDownLatch(1);
+        ExecutorService executor = Executors.newFixedThreadPool(8);
+        try {
+            List<Future<Integer>> results = new ArrayList<>();
+            for (int thread = 0; thread < 8; thread++) {
+                results.add(executor.submit(() -> {
+                    start.await();
+                    int withdrawn = 0;
+                    for (int i = 0; i < 50; i++) {
+                        if (budget.tryWithdraw()) {
+                            withdrawn++;
+                        }
+                    }
+                    return withdrawn;
+                }));
+            }
+            start.countDown();
+
+            int total = 0;
+            for (Future<Integer> result : results) {
+                total += result.get();
+            }
+            assertEquals(100, total);
+            assertEquals(0.0, budget.available(), 0.0);
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+}
@@ -0,0 +1,282 @@
+package io.github.samzhu.gate.handler;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.jupiter.api.Test;
+
+class SseBroadcastTest {
+
+    private static final String START = "event: message_start\ndata: {\"type\":\"message_start\"}\n\n";
+    private static final String STOP = "event: message_stop\ndata: {\"type\":\"message_stop\"}\n\n";
+
+    private final AtomicInteger closed = new AtomicInteger();
+
+    @Test
+    void lateSubscriberReplaysThenReadsLiveFrames() throws Exception {
+        SseBroadcast broadcast = new SseBroadcast(1024 * 1024, closed::incrementAndGet);
+        SseBroadcast.Subscription early = broadcast.subscribe();
+        publish(broadcast, START);
+        publish(broadcast, delta("a"));
+
+        SseBroadcast.Subscription late = broadcast.subscribe();
+        CompletableFuture<String> earlyRead = CompletableFuture.supplyAsync(() -> readAll(early));
+        CompletableFuture<String> lateRead = CompletableFuture.supplyAsync(() -> readAll(late));
+        publish(broadcast, delta("b"));
+        publish(broadcast, STOP);
+        broadcast.finish(true);
+
+        String expected = START + delta("a") + delta("b") + STOP;
+        assertEquals(expected, earlyRead.get(5, TimeUnit.SECONDS));
+        assertEquals(expected, lateRead.get(5, TimeUnit.SECONDS));
+        assertEquals(1, closed.get());
+    }
+
+    @Test
+    void publishedBytesAreCopied() throws IOException {
+        SseBroadcast broadcast = new SseBroadcast(1024 * 1024, closed::incrementAndGet);
+        SseBroadcast.Subscription subscription = broadcast.subscribe();
+        byte[] buffer = delta("a").getBytes(StandardCharsets.UTF_8);
+
+        broadcast.publish(buffer, 0, buffer.length);
+        buffer[buffer.length - 3] = 'x';
+        broadcast.finish(true);
+
+        assertEquals(delta("a"), read(subscription));
+    }
+
+    @Test
+    void upstreamResponseIsVisibleToSubscribers() {
+        SseBroadcast broadcast = new SseBroadcast(1024 * 1024, closed::incrementAndGet);
+        SseBroadcast.Subscription subscription = broadcast.subscribe();
+
+        broadcast.upstreamResponded("secondary", "req_011CUzXe3sTMmj4gVW6Eyb6J", false);
+
+        assertEquals("secondary", subscription.keyAlias());
+        assertEquals("req_011CUzXe3sTMmj4gVW6Eyb6J", subscription.anthropicRequestId());
+        assertTrue(subscription.upstreamError());
+    }
+
+    @Test
+    void incompleteUpstreamFailsAfterBufferedFrames() throws IOException {
+        SseBroadcast broadcast = new SseBroadcast(1024 * 1024, closed::incrementAndGet);
+        SseBroadcast.Subscription subscription = broadcast.subscribe();
+        publish(broadcast, START);
+
+        broadcast.finish(false);
+        broadcast.finish(true);
+
+        byte[] buffer = new byte[START.length()];
+        assertEquals(START.length(), subscription.readNBytes(buffer, 0, buffer.length));
+        IOException e = assertThrows(IOException.class, subscription::read);
+        assertFalse(e instanceof SseBroadcast.LaggedException);
+        assertEquals(1, closed.get());
+    }
+
+    @Test
+    void finishedBroadcastRejectsSubscribers() {
+        SseBroadcast broadcast = new SseBroadcast(1024 * 1024, closed::incrementAndGet);
+        broadcast.finish(true);
+
+        assertNull(broadcast.subscribe());
+    }
+
+    @Test
+    void trimmedBufferRejectsNewSubscribers() throws IOException {
+        int frameLength = delta("a").length();
+        SseBroadcast broadcast = new SseBroadcast(frameLength * 2L, closed::incrementAndGet);
+        SseBroadcast.Subscription subscription = broadcast.subscribe();
+        publish(broadcast, delta("a"));
+        publish(broadcast, delta("b"));
+        assertNotNull(broadcast.subscribe());
+
+        publish(broadcast, delta("c"));
+        publish(broadcast, delta("d"));
+
+        assertNull(broadcast.subscribe());
+        assertEquals(1, closed.get());
+        subscription.close();
+    }
+
+    @Test
+    void laggingSubscriberFailsWithoutAffectingOthers() throws IOException {
+        int frameLength = delta("a").length();
+        SseBroadcast broadcast = new SseBroadcast(frameLength * 2L, closed::incrementAndGet);
+        SseBroadcast.Subscription lagging = broadcast.subscribe();
+        SseBroadcast.Subscription keepingUp = broadcast.subscribe();
+
+        StringBuilder received = new StringBuilder();
+        for (String text : new String[] {"a", "b", "c", "d"}) {
+            publish(broadcast, delta(text));
+            received.append(readFrame(keepingUp, frameLength));
+        }
+        broadcast.finish(true);
+
+        assertThrows(SseBroadcast.LaggedException.class, lagging::read);
+        assertEquals(delta("a") + delta("b") + delta("c") + delta("d"), received.toString());
+        assertEquals(-1, keepingUp.read());
+    }
+
+    @Test
+    void closeWakesBlockedReader() throws Exception {
+        SseBroadcast broadcast = new SseBroadcast(1024 * 1024, closed::incrementAndGet);
+        SseBroadcast.Subscription subscription = broadcast.subscribe();
+        broadcast.subscribe();
+        CountDownLatch reading = new CountDownLatch(1);
+
+        CompletableFuture<Throwable> failure = CompletableFuture.supplyAsync(() -> {
+            reading.countDown();
+            try {
+                subscription.read();
+                return null;
+            } catch (IOException e) {
+                return e;
+            }
+        });
+        assertTrue(reading.await(5, TimeUnit.SECONDS));
+        Thread.sleep(50);
+        subscription.close();
+
+        assertNotNull(failure.get(5, TimeUnit.SECONDS));
+        assertFalse(broadcast.abandoned());
+    }
+
+    @Test
+    void upstreamIsAbortedOnlyWhenLastSubscriberLeaves() throws Exception {
+        SseBroadcast broadcast = new SseBroadcast(1024 * 1024, closed::incrementAndGet);
+        SseBroadcast.Subscription leader = broadcast.subscribe();
+        SseBroadcast.Subscription follower = broadcast.subscribe();
+        TrackingInputStream upstream = new TrackingInputStream();
+        broadcast.bindUpstream(upstream);
+        publish(broadcast, START);
+
+        leader.close();
+        leader.close();
+
+        assertFalse(broadcast.abandoned());
+        assertFalse(upstream.closed);
+        assertEquals(0, closed.get());
+        publish(broadcast, delta("a"));
+        assertEquals(START + delta("a"), readFrame(follower, START.length() + delta("a").length()));
+
+        follower.close();
+
+        assertTrue(broadcast.abandoned());
+        assertTrue(upstream.closed);
+        assertEquals(1, closed.get());
+        assertNull(broadcast.subscribe());
+    }
+
+    @Test
+    void abandonInterruptsUpstreamThreadWaitingForHeaders() throws Exception {
+        SseBroadcast broadcast = new SseBroadcast(1024 * 1024, closed::incrementAndGet);
+        SseBroadcast.Subscription subscription = broadcast.subscribe();
+        CountDownLatch started = new CountDownLatch(1);
+
+        CompletableFuture<Boolean> interrupted = new CompletableFuture<>();
+        Thread upstreamThread = Thread.ofVirtual().start(() -> {
+            broadcast.upstreamStarted();
+            started.countDown();
+            try {
+                Thread.sleep(10_000);
+                interrupted.complete(false);
+            } catch (InterruptedException e) {
+                interrupted.complete(true);
+            } finally {
+                broadcast.upstreamFinished();
+            }
+        });
+        assertTrue(started.await(5, TimeUnit.SECONDS));
+
+        subscription.close();
+
+        assertTrue(interrupted.get(5, TimeUnit.SECONDS));
+        upstreamThread.join();
+    }
+
+    @Test
+    void upstreamBoundAfterAbandonIsAbortedImmediately() {
+        SseBroadcast broadcast = new SseBroadcast(1024 * 1024, closed::incrementAndGet);
+        broadcast.subscribe().close();
+        TrackingInputStream upstream = new TrackingInputStream();
+
+        broadcast.bindUpstream(upstream);
+
+        assertTrue(upstream.closed);
+    }
+
+    @Test
+    void leavingAfterFinishDoesNotAbandon() throws IOException {
+        SseBroadcast broadcast = new SseBroadcast(1024 * 1024, closed::incrementAndGet);
+        SseBroadcast.Subscription subscription = broadcast.subscribe();
+        TrackingInputStream upstream = new TrackingInputStream();
+        broadcast.bindUpstream(upstream);
+        publish(broadcast, STOP);
+        broadcast.finish(true);
+
+        assertEquals(STOP, read(subscription));
+        subscription.close();
+
+        assertFalse(broadcast.abandoned());
+        assertFalse(upstream.closed);
+    }
+
+    private static String delta(String text) {
+        return "event: content_block_delta\ndata: {\"type\":\"content_block_delta\",\"index\":0,"
+            + "\"delta\":{\"type\":\"text_delta\",\"text\":\"" + text + "\"}}\n\n";
+    }
+
+    private static void publish(SseBroadcast broadcast, String frame) {
+        byte[] bytes = frame.getBytes(StandardCharsets.UTF_8);
+        broadcast.publish(bytes, 0, bytes.length);
+    }
+
+    private static String read(InputStream in) throws IOException {
+        return new String(in.readAllBytes(), StandardCharsets.UTF_8);
+    }
+
+    private static String readFrame(InputStream in, int length) throws IOException {
+        return new String(in.readNBytes(length), StandardCharsets.UTF_8);
+    }
+
+    private static String readAll(InputStream in) {
+        try (in) {
+            ByteArrayOutputStream out = new ByteArrayOutputStream();
+            in.transferTo(out);
+            return out.toString(StandardCharsets.UTF_8);
+        } catch (IOException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    /**
+     * 記錄是否被中止的上游回應串流
+     */
+    private static final class TrackingInputStream extends ByteArrayInputStream {
+
+        private volatile boolean closed;
+
+        TrackingInputStream() {
+            super(new byte[0]);
+        }
+
+        @Override
+        public void close() {
+            closed = true;
+        }
+    }
+}
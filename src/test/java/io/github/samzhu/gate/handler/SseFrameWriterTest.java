@@ -0,0 +1,257 @@
+package io.github.samzhu.gate.handler;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.jupiter.api.Test;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+
+class SseFrameWriterTest {
+
+    private static final String START = "event: message_start\ndata: {\"type\":\"message_start\"}\n\n";
+    private static final String STOP = "event: message_stop\ndata: {\"type\":\"message_stop\"}\n\n";
+
+    private final Counter flushes = new SimpleMeterRegistry().counter("gate.sse.flushes");
+
+    @Test
+    void immediateWriterFlushesEveryFrame() throws IOException {
+        RecordingOutputStream out = new RecordingOutputStream();
+        try (SseFrameWriter writer = SseFrameWriter.immediate(out, flushes)) {
+            write(writer, START, false);
+            write(writer, delta("a"), true);
+            write(writer, delta("b"), true);
+        }
+
+        assertEquals(START + delta("a") + delta("b"), out.flushed());
+        assertEquals(3, out.flushCount());
+        assertEquals(3.0, flushes.count(), 0.0);
+    }
+
+    @Test
+    void firstDeltaIsSentImmediatelyAndLaterDeltasAfterLinger() throws Exception {
+        RecordingOutputStream out = new RecordingOutputStream();
+        SseFrameWriter writer = SseFrameWriter.coalescing(out, new SseCoalescing(100, 16 * 1024), flushes);
+
+        write(writer, delta("a"), true);
+        assertEquals(delta("a"), out.flushed());
+
+        long start = System.nanoTime();
+        write(writer, delta("b"), true);
+        write(writer, delta("c"), true);
+        assertEquals(delta("a"), out.flushed());
+
+        assertTrue(out.awaitFlushed(delta("a") + delta("b") + delta("c"), 2000));
+        assertTrue(System.nanoTime() - start >= TimeUnit.MILLISECONDS.toNanos(100));
+        assertEquals(2, out.flushCount());
+        writer.close();
+    }
+
+    @Test
+    void nonDeferrableFrameSendsBufferFirst() throws IOException {
+        RecordingOutputStream out = new RecordingOutputStream();
+        try (SseFrameWriter writer = SseFrameWriter.coalescing(out, new SseCoalescing(1000, 16 * 1024), flushes)) {
+            write(writer, START, false);
+            write(writer, delta("a"), true);
+            write(writer, delta("b"), true);
+            write(writer, STOP, false);
+
+            assertEquals(START + delta("a") + delta("b") + STOP, out.flushed());
+        }
+    }
+
+    @Test
+    void bufferOverMaxBytesIsSentWithoutWaitingForLinger() throws IOException {
+        int frameLength = delta("a").length();
+        RecordingOutputStream out = new RecordingOutputStream();
+        try (SseFrameWriter writer = SseFrameWriter.coalescing(out,
+                new SseCoalescing(1000, frameLength * 2 + 1), flushes)) {
+            write(writer, delta("a"), true);
+            write(writer, delta("b"), true);
+            write(writer, delta("c"), true);
+            assertEquals(delta("a"), out.flushed());
+
+            write(writer, delta("d"), true);
+            assertEquals(delta("a") + delta("b") + delta("c"), out.flushed());
+
+            // 單一 frame 超過上限時直接送出
+            String large = delta("x".repeat(frameLength * 3));
+            write(writer, large, true);
+            assertEquals(delta("a") + delta("b") + delta("c") + delta("d") + large, out.flushed());
+        }
+    }
+
+    @Test
+    void closeSendsBufferedFrames() throws IOException {
+        RecordingOutputStream out = new RecordingOutputStream();
+        SseFrameWriter writer = SseFrameWriter.coalescing(out, new SseCoalescing(1000, 16 * 1024), flushes);
+        write(writer, delta("a"), true);
+        write(writer, delta("b"), true);
+
+        writer.close();
+
+        assertEquals(delta("a") + delta("b"), out.flushed());
+    }
+
+    @Test
+    void stalledClientDoesNotDelayOtherStreams() throws Exception {
+        CountDownLatch release = new CountDownLatch(1);
+        RecordingOutputStream stalled = new RecordingOutputStream(release);
+        RecordingOutputStream healthy = new RecordingOutputStream();
+        SseCoalescing coalescing = new SseCoalescing(20, 16 * 1024);
+        SseFrameWriter stalledWriter = SseFrameWriter.coalescing(stalled, coalescing, flushes);
+        SseFrameWriter healthyWriter = SseFrameWriter.coalescing(healthy, coalescing, flushes);
+        try {
+            write(stalledWriter, delta("a"), true);
+            stalled.stallNextWrite();
+            write(stalledWriter, delta("b"), true);
+            assertTrue(stalled.awaitStalled(2000));
+
+            write(healthyWriter, delta("a"), true);
+            write(healthyWriter, delta("b"), true);
+
+            assertTrue(healthy.awaitFlushed(delta("a") + delta("b"), 1000));
+        } finally {
+            release.countDown();
+            stalledWriter.close();
+            healthyWriter.close();
+        }
+    }
+
+    @Test
+    void deadlineFlushFailureIsThrownOnNextWrite() throws Exception {
+        RecordingOutputStream out = new RecordingOutputStream();
+        SseFrameWriter writer = SseFrameWriter.coalescing(out, new SseCoalescing(10, 16 * 1024), flushes);
+        write(writer, delta("a"), true);
+        out.failFlushes();
+        write(writer, delta("b"), true);
+
+        assertTrue(out.awaitFlushAttempts(2, 2000));
+        assertThrows(IOException.class, () -> write(writer, delta("c"), true));
+    }
+
+    private static String delta(String text) {
+        return "event: content_block_delta\ndata: {\"type\":\"content_block_delta\",\"index\":0,"
+            + "\"delta\":{\"type\":\"text_delta\",\"text\":\"" + text + "\"}}\n\n";
+    }
+
+    private static void write(SseFrameWriter writer, String frame, boolean deferrable) throws IOException {
+        byte[] bytes = frame.getBytes(StandardCharsets.UTF_8);
+        writer.write(bytes, 0, bytes.length, deferrable);
+    }
+
+    /**
+     * 記錄已 flush 的內容；可模擬卡住的寫入與 flush 失敗
+     */
+    private static final class RecordingOutputStream extends OutputStream {
+
+        private final CountDownLatch release;
+        private final CountDownLatch stalledLatch = new CountDownLatch(1);
+        private final ByteArrayOutputStream pending = new ByteArrayOutputStream();
+        private final StringBuilder flushed = new StringBuilder();
+        private int flushCount;
+        private int flushAttempts;
+        private boolean stallNext;
+        private boolean failFlushes;
+
+        RecordingOutputStream() {
+            this(null);
+        }
+
+        RecordingOutputStream(CountDownLatch release) {
+            this.release = release;
+        }
+
+        @Override
+        public void write(int b) {
+            throw new UnsupportedOperationException();
+        }
+
+        @Override
+        public void write(byte[] buffer, int offset, int length) throws IOException {
+            boolean stall;
+            synchronized (this) {
+                stall = stallNext;
+                stallNext = false;
+            }
+            if (stall) {
+                stalledLatch.countDown();
+                try {
+                    release.await();
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    throw new IOException(e);
+                }
+            }
+            synchronized (this) {
+                pending.write(buffer, offset, length);
+            }
+        }
+
+        @Override
+        public synchronized void flush() throws IOException {
+            flushAttempts++;
+            notifyAll();
+            if (failFlushes) {
+                throw new IOException("Broken pipe");
+            }
+            flushed.append(pending.toString(StandardCharsets.UTF_8));
+            pending.reset();
+            flushCount++;
+            notifyAll();
+        }
+
+        synchronized void stallNextWrite() {
+            stallNext = true;
+        }
+
+        synchronized void failFlushes() {
+            failFlushes = true;
+        }
+
+        boolean awaitStalled(long timeoutMillis) throws InterruptedException {
+            return stalledLatch.await(timeoutMillis, TimeUnit.MILLISECONDS);
+        }
+
+        synchronized boolean awaitFlushed(String expected, long timeoutMillis) throws InterruptedException {
+            long deadline = System.currentTimeMillis() + timeoutMillis;
+            while (!flushed.toString().equals(expected)) {
+                long remaining = deadline - System.currentTimeMillis();
+                if (remaining <= 0) {
+                    return false;
+                }
+                wait(remaining);
+            }
+            return true;
+        }
+
+        synchronized boolean awaitFlushAttempts(int attempts, long timeoutMillis) throws InterruptedException {
+            long deadline = System.currentTimeMillis() + timeoutMillis;
+            while (flushAttempts < attempts) {
+                long remaining = deadline - System.currentTimeMillis();
+                if (remaining <= 0) {
+                    return false;
+                }
+                wait(remaining);
+            }
+            return true;
+        }
+
+        synchronized String flushed() {
+            return flushed.toString();
+        }
+
+        synchronized int flushCount() {
+            return flushCount;
+        }
+    }
+}
@@ -0,0 +1,174 @@
+package io.github.samzhu.gate.service;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+import java.time.Duration;
+import java.time.Instant;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.jupiter.api.Test;
+import org.springframework.security.oauth2.jwt.BadJwtException;
+import org.springframework.security.oauth2.jwt.Jwt;
+import org.springframework.security.oauth2.jwt.JwtDecoder;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+
+import io.github.samzhu.gate.config.JwtCacheConfig;
+
+class CachingJwtDecoderTest {
+
+    private static final String TOKEN = "eyJhbGciOiJSUzI1NiIsImtpZCI6ImtleS0xIn0.eyJzdWIiOiJ1c2VyQGV4YW1wbGUuY29tIn0.c2ln";
+
+    private final SimpleMeterRegistry meterRegistry = new SimpleMeterRegistry();
+    private final Map<String, Jwt> tokens = new HashMap<>();
+    private final AtomicInteger verifications = new AtomicInteger();
+    private final JwtDecoder delegate = token -> {
+        verifications.incrementAndGet();
+        Jwt jwt = tokens.get(token);
+        if (jwt == null) {
+            throw new BadJwtException("Signed JWT rejected: Another algorithm expected, or no matching key(s) found");
+        }
+        return jwt;
+    };
+
+    @Test
+    void validTokenIsVerifiedOnce() {
+        Jwt jwt = jwt(TOKEN, Instant.now().plus(Duration.ofHours(1)), null);
+        CachingJwtDecoder decoder = decoder(JwtCacheConfig.defaults());
+
+        assertSame(jwt, decoder.decode(TOKEN));
+        assertSame(jwt, decoder.decode(TOKEN));
+        assertSame(jwt, decoder.decode(TOKEN));
+
+        assertEquals(1, verifications.get());
+    }
+
+    @Test
+    void rejectedTokenIsNeverCached() {
+        CachingJwtDecoder decoder = decoder(JwtCacheConfig.defaults());
+
+        assertThrows(BadJwtException.class, () -> decoder.decode(TOKEN));
+        assertThrows(BadJwtException.class, () -> decoder.decode(TOKEN));
+
+        assertEquals(2, verifications.get());
+    }
+
+    @Test
+    void expiredTokenIsNotCached() {
+        // delegate 的時間驗證允許時鐘誤差，剛過期的 token 仍可能通過簽章驗證
+        jwt(TOKEN, Instant.now().minusSeconds(10), null);
+        CachingJwtDecoder decoder = decoder(JwtCacheConfig.defaults());
+
+        decoder.decode(TOKEN);
+        decoder.decode(TOKEN);
+
+        assertEquals(2, verifications.get());
+    }
+
+    @Test
+    void notYetValidTokenIsNotCached() {
+        jwt(TOKEN, Instant.now().plus(Duration.ofHours(1)), Instant.now().plusSeconds(10));
+        CachingJwtDecoder decoder = decoder(JwtCacheConfig.defaults());
+
+        decoder.decode(TOKEN);
+        decoder.decode(TOKEN);
+
+        assertEquals(2, verifications.get());
+    }
+
+    @Test
+    void entryExpiresAtTokenExp() throws InterruptedException {
+        jwt(TOKEN, Instant.now().plusMillis(500), null);
+        CachingJwtDecoder decoder = decoder(JwtCacheConfig.defaults());
+
+        decoder.decode(TOKEN);
+        decoder.decode(TOKEN);
+        assertEquals(1, verifications.get());
+
+        Thread.sleep(700);
+        decoder.decode(TOKEN);
+
+        assertEquals(2, verifications.get());
+    }
+
+    @Test
+    void entryExpiresAtMaxTtl() throws InterruptedException {
+        jwt(TOKEN, Instant.now().plus(Duration.ofHours(1)), null);
+        CachingJwtDecoder decoder = decoder(new JwtCacheConfig(100, Duration.ofMillis(300)));
+
+        decoder.decode(TOKEN);
+        decoder.decode(TOKEN);
+        assertEquals(1, verifications.get());
+
+        Thread.sleep(500);
+        decoder.decode(TOKEN);
+
+        assertEquals(2, verifications.get());
+    }
+
+    @Test
+    void invalidateAllForcesReverification() {
+        String other = TOKEN + "2";
+        jwt(TOKEN, Instant.now().plus(Duration.ofHours(1)), null);
+        jwt(other, Instant.now().plus(Duration.ofHours(1)), null);
+        CachingJwtDecoder decoder = decoder(JwtCacheConfig.defaults());
+        decoder.decode(TOKEN);
+        decoder.decode(other);
+
+        decoder.invalidateAll();
+        decoder.decode(TOKEN);
+        decoder.decode(other);
+
+        assertEquals(4, verifications.get());
+        assertEquals(1.0, meterRegistry.counter("gate.jwt.cache.invalidations").count(), 0.0);
+    }
+
+    @Test
+    void rotatedKeyRejectsTokenAfterInvalidation() {
+        jwt(TOKEN, Instant.now().plus(Duration.ofHours(1)), null);
+        CachingJwtDecoder decoder = decoder(JwtCacheConfig.defaults());
+        decoder.decode(TOKEN);
+
+        // 新的金鑰不再接受此 token：清空後不得再從快取取得
+        tokens.clear();
+        decoder.invalidateAll();
+
+        assertThrows(BadJwtException.class, () -> decoder.decode(TOKEN));
+    }
+
+    @Test
+    void disabledCacheAlwaysDelegates() {
+        jwt(TOKEN, Instant.now().plus(Duration.ofHours(1)), null);
+        CachingJwtDecoder decoder = decoder(new JwtCacheConfig(0, null));
+
+        decoder.decode(TOKEN);
+        decoder.decode(TOKEN);
+        decoder.invalidateAll();
+
+        assertEquals(2, verifications.get());
+        assertEquals(0.0, meterRegistry.counter("gate.jwt.cache.invalidations").count(), 0.0);
+    }
+
+    private CachingJwtDecoder decoder(JwtCacheConfig config) {
+        return new CachingJwtDecoder(delegate, config, meterRegistry);
+    }
+
+    private Jwt jwt(String token, Instant expiresAt, Instant notBefore) {
+        Jwt.Builder builder = Jwt.withTokenValue(token)
+            .header("alg", "RS256")
+            .header("kid", "key-1")
+            .subject("user@example.com")
+            .issuedAt(Instant.now().minusSeconds(60))
+            .expiresAt(expiresAt);
+        if (notBefore != null) {
+            builder.notBefore(notBefore);
+        }
+        Jwt jwt = builder.build();
+        tokens.put(token, jwt);
+        return jwt;
+    }
+}
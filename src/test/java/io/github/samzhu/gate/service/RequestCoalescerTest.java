@@ -0,0 +1,186 @@
+package io.github.samzhu.gate.service;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNotEquals;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.jupiter.api.Test;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+
+import io.github.samzhu.gate.config.AnthropicProperties;
+import io.github.samzhu.gate.config.RequestCoalescingConfig;
+import io.github.samzhu.gate.model.RequestEnvelope;
+
+class RequestCoalescerTest {
+
+    private static final Map<String, String> HEADERS = Map.of("anthropic-version", "2023-06-01");
+    private static final RequestEnvelope REQUEST = envelope(false, 0.0, "9f2c4e1a");
+    private static final SharedResponse RESPONSE = new SharedResponse(200, "application/json",
+        "req_011CUzXe3sTMmj4gVW6Eyb6J", "primary", "{\"type\":\"message\"}".getBytes(StandardCharsets.UTF_8));
+
+    private final SimpleMeterRegistry meterRegistry = new SimpleMeterRegistry();
+
+    @Test
+    void identicalRequestSharesLeaderResponse() throws Exception {
+        RequestCoalescer coalescer = coalescer(Duration.ofSeconds(5));
+        CoalescedRequest leader = coalescer.join(REQUEST, HEADERS);
+        CoalescedRequest follower = coalescer.join(REQUEST, HEADERS);
+        assertTrue(leader.leader());
+        assertFalse(follower.leader());
+        assertEquals(1.0, inflight(), 0.0);
+
+        CompletableFuture<SharedResponse> waiting = CompletableFuture.supplyAsync(follower::await);
+        leader.complete(RESPONSE);
+
+        assertSame(RESPONSE, waiting.get(5, TimeUnit.SECONDS));
+        assertEquals(1.0, outcome("leader"), 0.0);
+        assertEquals(1.0, outcome("shared"), 0.0);
+        assertEquals(0.0, inflight(), 0.0);
+    }
+
+    @Test
+    void followerJoiningAfterCompletionBecomesNewLeader() {
+        RequestCoalescer coalescer = coalescer(Duration.ofSeconds(5));
+        CoalescedRequest first = coalescer.join(REQUEST, HEADERS);
+        first.complete(RESPONSE);
+
+        CoalescedRequest second = coalescer.join(REQUEST, HEADERS);
+
+        assertTrue(second.leader());
+        assertEquals(2.0, outcome("leader"), 0.0);
+    }
+
+    @Test
+    void followerTimesOutAndSendsItsOwnRequest() {
+        RequestCoalescer coalescer = coalescer(Duration.ofMillis(50));
+        CoalescedRequest leader = coalescer.join(REQUEST, HEADERS);
+        CoalescedRequest follower = coalescer.join(REQUEST, HEADERS);
+
+        long start = System.nanoTime();
+        assertNull(follower.await());
+
+        assertTrue(System.nanoTime() - start >= TimeUnit.MILLISECONDS.toNanos(50));
+        assertEquals(1.0, outcome("timeout"), 0.0);
+        assertEquals(1.0, inflight(), 0.0);
+        leader.abandon();
+    }
+
+    @Test
+    void abandonedLeaderReleasesFollowers() throws Exception {
+        RequestCoalescer coalescer = coalescer(Duration.ofSeconds(5));
+        CoalescedRequest leader = coalescer.join(REQUEST, HEADERS);
+        CoalescedRequest follower = coalescer.join(REQUEST, HEADERS);
+
+        CompletableFuture<SharedResponse> waiting = CompletableFuture.supplyAsync(follower::await);
+        leader.abandon();
+
+        assertNull(waiting.get(5, TimeUnit.SECONDS));
+        assertEquals(1.0, outcome("fallback"), 0.0);
+        assertEquals(0.0, inflight(), 0.0);
+    }
+
+    @Test
+    void onlyFirstLeaderCompletionTakesEffect() {
+        RequestCoalescer coalescer = coalescer(Duration.ofSeconds(5));
+        CoalescedRequest leader = coalescer.join(REQUEST, HEADERS);
+        CoalescedRequest follower = coalescer.join(REQUEST, HEADERS);
+
+        leader.complete(RESPONSE);
+        // finally 區塊中的無條件 abandon 不影響已分享的回應
+        leader.abandon();
+        CoalescedRequest next = coalescer.join(REQUEST, HEADERS);
+        leader.abandon();
+
+        assertSame(RESPONSE, follower.await());
+        assertTrue(next.leader());
+        assertEquals(1.0, inflight(), 0.0);
+        next.abandon();
+    }
+
+    @Test
+    void followerCannotCompleteOrAbandon() throws Exception {
+        RequestCoalescer coalescer = coalescer(Duration.ofSeconds(5));
+        CoalescedRequest leader = coalescer.join(REQUEST, HEADERS);
+        CoalescedRequest follower = coalescer.join(REQUEST, HEADERS);
+        CoalescedRequest other = coalescer.join(REQUEST, HEADERS);
+
+        follower.abandon();
+        follower.complete(null);
+        assertNull(leader.await());
+        assertEquals(1.0, inflight(), 0.0);
+
+        CompletableFuture<SharedResponse> waiting = CompletableFuture.supplyAsync(other::await);
+        leader.complete(RESPONSE);
+        assertSame(RESPONSE, waiting.get(5, TimeUnit.SECONDS));
+    }
+
+    @Test
+    void differentAnthropicHeadersAreNotCoalesced() {
+        RequestCoalescer coalescer = coalescer(Duration.ofSeconds(5));
+        Map<String, String> beta = Map.of("anthropic-version", "2023-06-01",
+            "anthropic-beta", "context-1m-2025-08-07");
+
+        assertTrue(coalescer.join(REQUEST, HEADERS).leader());
+        assertTrue(coalescer.join(REQUEST, beta).leader());
+        assertTrue(coalescer.join(envelope(false, 0.0, "0b7d3e55"), HEADERS).leader());
+        assertEquals(3.0, inflight(), 0.0);
+    }
+
+    @Test
+    void keyIsStableAcrossHeaderOrderAndStreamMode() {
+        RequestCoalescer coalescer = coalescer(Duration.ofSeconds(5));
+        Map<String, String> headers = Map.of("anthropic-version", "2023-06-01", "anthropic-beta", "a");
+        Map<String, String> reordered = new LinkedHashMap<>();
+        reordered.put("anthropic-beta", "a");
+        reordered.put("anthropic-version", "2023-06-01");
+
+        String key = coalescer.key(REQUEST, headers);
+
+        assertNotNull(key);
+        assertEquals(key, coalescer.key(REQUEST, reordered));
+        assertEquals(key, coalescer.key(envelope(true, 0.0, "9f2c4e1a"), headers));
+        assertNotEquals(key, coalescer.key(REQUEST, Map.of("anthropic-version", "2023-06-01")));
+    }
+
+    @Test
+    void ineligibleRequestsAreNotCoalesced() {
+        RequestCoalescer coalescer = coalescer(Duration.ofSeconds(5));
+
+        assertNull(coalescer.join(envelope(true, 0.0, "9f2c4e1a"), HEADERS));
+        assertNull(coalescer.join(envelope(false, 0.7, null), HEADERS));
+        assertNull(coalescer(Duration.ZERO).join(REQUEST, HEADERS));
+        assertNull(coalescer(Duration.ZERO).key(REQUEST, HEADERS));
+        assertEquals(0.0, inflight(), 0.0);
+    }
+
+    private RequestCoalescer coalescer(Duration maxWait) {
+        AnthropicProperties properties = new AnthropicProperties(null, null, null, null, null, null, null, null,
+            null, null, new RequestCoalescingConfig(maxWait, null));
+        return new RequestCoalescer(properties, meterRegistry);
+    }
+
+    private double outcome(String outcome) {
+        return meterRegistry.counter("gate.coalescing.requests", "outcome", outcome).count();
+    }
+
+    private double inflight() {
+        return meterRegistry.get("gate.coalescing.inflight").gauge().value();
+    }
+
+    private static RequestEnvelope envelope(boolean stream, Double temperature, String canonicalHash) {
+        return new RequestEnvelope(stream, "claude-sonnet-4-5-20250929", 1024, Map.of(), null, temperature,
+            canonicalHash);
+    }
+}
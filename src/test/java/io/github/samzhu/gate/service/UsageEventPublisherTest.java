@@ -0,0 +1,250 @@
+package io.github.samzhu.gate.service;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+import java.time.Duration;
+import java.time.Instant;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.cloud.stream.function.StreamBridge;
+import org.springframework.messaging.Message;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+
+import io.github.samzhu.gate.config.GateUsageProperties;
+import io.github.samzhu.gate.config.UsageOverflowPolicy;
+import io.github.samzhu.gate.config.UsagePublisherConfig;
+import io.github.samzhu.gate.model.UsageEventData;
+
+class UsageEventPublisherTest {
+
+    private static final String BINDING_NAME = "usageEvent-out-0";
+
+    private final SimpleMeterRegistry meterRegistry = new SimpleMeterRegistry();
+    private final StreamBridge streamBridge = mock(StreamBridge.class);
+    private final List<String> sent = new CopyOnWriteArrayList<>();
+    /** 發送執行緒已取出第一個事件並進入 StreamBridge.send */
+    private final CountDownLatch sending = new CountDownLatch(1);
+    /** 放行被擋住的 StreamBridge.send */
+    private final CountDownLatch release = new CountDownLatch(1);
+    private UsageEventPublisher publisher;
+
+    @AfterEach
+    void tearDown() {
+        release.countDown();
+        if (publisher != null) {
+            publisher.shutdown();
+        }
+    }
+
+    @Test
+    void queuedEventsArePublishedInOrder() {
+        recordSends();
+        publisher = publisher(10, UsageOverflowPolicy.BLOCK, Duration.ofMillis(50));
+        release.countDown();
+
+        for (int i = 1; i <= 3; i++) {
+            publisher.publish(event(i));
+        }
+        publisher.shutdown();
+
+        assertEquals(List.of("trace-1", "trace-2", "trace-3"), sent);
+        assertEquals(3.0, events("published"), 0.0);
+        assertEquals(0.0, dropped("overflow") + dropped("shutdown"), 0.0);
+    }
+
+    @Test
+    void dropNewestDropsIncomingEventWhenQueueIsFull() throws InterruptedException {
+        recordSends();
+        publisher = publisher(2, UsageOverflowPolicy.DROP_NEWEST, Duration.ofMillis(50));
+        fillQueue();
+
+        publisher.publish(event(4));
+        release.countDown();
+        publisher.shutdown();
+
+        assertEquals(List.of("trace-1", "trace-2", "trace-3"), sent);
+        assertEquals(1.0, dropped("overflow"), 0.0);
+        assertEquals(3.0, events("published"), 0.0);
+    }
+
+    @Test
+    void dropOldestEvictsQueuedEventWhenQueueIsFull() throws InterruptedException {
+        recordSends();
+        publisher = publisher(2, UsageOverflowPolicy.DROP_OLDEST, Duration.ofMillis(50));
+        fillQueue();
+
+        publisher.publish(event(4));
+        publisher.publish(event(5));
+        release.countDown();
+        publisher.shutdown();
+
+        assertEquals(List.of("trace-1", "trace-4", "trace-5"), sent);
+        assertEquals(2.0, dropped("overflow"), 0.0);
+        assertEquals(3.0, events("published"), 0.0);
+    }
+
+    @Test
+    void blockDropsEventAfterBlockTimeout() throws InterruptedException {
+        recordSends();
+        publisher = publisher(2, UsageOverflowPolicy.BLOCK, Duration.ofMillis(100));
+        fillQueue();
+
+        long start = System.nanoTime();
+        publisher.publish(event(4));
+
+        assertTrue(System.nanoTime() - start >= TimeUnit.MILLISECONDS.toNanos(100));
+        assertEquals(1.0, dropped("overflow"), 0.0);
+        release.countDown();
+        publisher.shutdown();
+        assertEquals(List.of("trace-1", "trace-2", "trace-3"), sent);
+    }
+
+    @Test
+    void blockEnqueuesOnceSpaceFrees() throws Exception {
+        recordSends();
+        publisher = publisher(2, UsageOverflowPolicy.BLOCK, Duration.ofSeconds(5));
+        fillQueue();
+
+        CompletableFuture<Void> blocked = CompletableFuture.runAsync(() -> publisher.publish(event(4)));
+        Thread.sleep(50);
+        assertFalse(blocked.isDone());
+        release.countDown();
+        blocked.get(5, TimeUnit.SECONDS);
+        publisher.shutdown();
+
+        assertEquals(List.of("trace-1", "trace-2", "trace-3", "trace-4"), sent);
+        assertEquals(0.0, dropped("overflow"), 0.0);
+        assertEquals(4.0, events("published"), 0.0);
+    }
+
+    @Test
+    void binderFailuresAreCounted() {
+        when(streamBridge.send(eq(BINDING_NAME), any()))
+            .thenReturn(false)
+            .thenThrow(new IllegalStateException("Dispatcher has no subscribers for channel 'usageEvent-out-0'"))
+            .thenReturn(true);
+        publisher = publisher(10, UsageOverflowPolicy.BLOCK, Duration.ofMillis(50));
+
+        for (int i = 1; i <= 3; i++) {
+            publisher.publish(event(i));
+        }
+        publisher.shutdown();
+
+        assertEquals(2.0, events("failed"), 0.0);
+        assertEquals(1.0, events("published"), 0.0);
+    }
+
+    @Test
+    void shutdownDropsEventsNotSentWithinDrainTimeout() throws InterruptedException {
+        recordSends();
+        publisher = publisher(2, UsageOverflowPolicy.BLOCK, Duration.ofMillis(50));
+        fillQueue();
+
+        long start = System.nanoTime();
+        publisher.shutdown();
+
+        long drainNanos = TimeUnit.SECONDS.toNanos(UsageEventPublisher.SHUTDOWN_DRAIN_SECONDS);
+        assertTrue(System.nanoTime() - start >= drainNanos);
+        // 卡住的發送被中斷，仍在佇列中的事件記為關閉捨棄
+        assertEquals(2.0, dropped("shutdown"), 0.0);
+        assertTrue(sent.isEmpty());
+    }
+
+    @Test
+    void eventsPublishedAfterShutdownAreDropped() {
+        recordSends();
+        publisher = publisher(10, UsageOverflowPolicy.BLOCK, Duration.ofMillis(50));
+        publisher.shutdown();
+
+        publisher.publish(event(1));
+
+        assertEquals(1.0, dropped("shutdown"), 0.0);
+        assertTrue(sent.isEmpty());
+    }
+
+    @Test
+    void zeroQueueCapacityPublishesOnCallerThread() {
+        Thread caller = Thread.currentThread();
+        List<Thread> senders = new CopyOnWriteArrayList<>();
+        when(streamBridge.send(eq(BINDING_NAME), any())).thenAnswer(invocation -> {
+            senders.add(Thread.currentThread());
+            return true;
+        });
+        publisher = publisher(0, UsageOverflowPolicy.BLOCK, Duration.ofMillis(50));
+
+        publisher.publish(event(1));
+
+        assertEquals(List.of(caller), senders);
+        assertEquals(1.0, events("published"), 0.0);
+    }
+
+    /**
+     * 記錄送出的 traceId；第一次發送等到 {@link #release} 才返回（被中斷時放棄並返回 false）
+     */
+    @SuppressWarnings("unchecked")
+    private void recordSends() {
+        when(streamBridge.send(eq(BINDING_NAME), any())).thenAnswer(invocation -> {
+            if (sending.getCount() > 0) {
+                sending.countDown();
+                try {
+                    release.await();
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    return false;
+                }
+            }
+            sent.add(((Message<UsageEventData>) invocation.getArgument(1)).getPayload().traceId());
+            return true;
+        });
+    }
+
+    /**
+     * 第一個事件卡在發送中，再放入兩個事件填滿容量為 2 的佇列
+     */
+    private void fillQueue() throws InterruptedException {
+        publisher.publish(event(1));
+        assertTrue(sending.await(5, TimeUnit.SECONDS));
+        publisher.publish(event(2));
+        publisher.publish(event(3));
+    }
+
+    private UsageEventPublisher publisher(int queueCapacity, UsageOverflowPolicy overflow, Duration blockTimeout) {
+        GateUsageProperties properties = new GateUsageProperties(
+            new UsagePublisherConfig(queueCapacity, overflow, blockTimeout));
+        return new UsageEventPublisher(streamBridge, properties, meterRegistry);
+    }
+
+    private double events(String outcome) {
+        return meterRegistry.counter("gate.usage.events", "outcome", outcome).count();
+    }
+
+    private double dropped(String reason) {
+        return meterRegistry.counter("gate.usage.dropped", "reason", reason).count();
+    }
+
+    private static UsageEventData event(int sequence) {
+        return UsageEventData.builder()
+            .userId("user@example.com")
+            .eventTime(Instant.parse("2025-11-20T08:00:00Z"))
+            .model("claude-sonnet-4-5-20250929")
+            .inputTokens(25)
+            .outputTokens(15)
+            .status("success")
+            .traceId("trace-" + sequence)
+            .responseSource(UsageEventData.RESPONSE_SOURCE_UPSTREAM)
+            .build();
+    }
+}
@@ -0,0 +1,50 @@
+package io.github.samzhu.gate.util;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.UncheckedIOException;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+
+/**
+ * 測試用的 Anthropic 回應範例（{@code src/test/resources/anthropic}）
+ *
+ * <p>串流範例取自 Messages API 實際回應的事件順序與欄位格式（包含 {@code ping}、
+ * 冒號後帶空白的 JSON、{@code cache_*} 用量欄位）。
+ */
+final class AnthropicFixtures {
+
+    private AnthropicFixtures() {
+    }
+
+    static byte[] bytes(String name) {
+        try (InputStream in = AnthropicFixtures.class.getResourceAsStream("/anthropic/" + name)) {
+            if (in == null) {
+                throw new IllegalArgumentException("Missing fixture: " + name);
+            }
+            return in.readAllBytes();
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    /**
+     * 串流範例中第一個指定類型事件的 data 內容
+     */
+    static byte[] eventData(String name, String eventType) {
+        try {
+            SseFrameReader reader = new SseFrameReader(new ByteArrayInputStream(bytes(name)));
+            byte[] type = eventType.getBytes(StandardCharsets.US_ASCII);
+            while (reader.next()) {
+                if (reader.isEventType(type)) {
+                    return Arrays.copyOfRange(reader.dataBuffer(), reader.dataOffset(),
+                        reader.dataOffset() + reader.dataLength());
+                }
+            }
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        throw new IllegalArgumentException("No " + eventType + " event in " + name);
+    }
+}
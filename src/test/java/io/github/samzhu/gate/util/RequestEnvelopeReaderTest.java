@@ -0,0 +1,143 @@
+package io.github.samzhu.gate.util;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNotEquals;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Map;
+
+import org.junit.jupiter.api.Test;
+
+import io.github.samzhu.gate.model.RequestEnvelope;
+
+class RequestEnvelopeReaderTest {
+
+    private static final String REQUEST = new String(AnthropicFixtures.bytes("request-cache-control.json"),
+        StandardCharsets.UTF_8);
+    private static final String CACHE_CONTROL = ",\"cache_control\":{\"type\":\"ephemeral\"}";
+    private static final String LAST_TURN = "\"content\":\"public final class Reader {}\"" + CACHE_CONTROL + "}]}]}";
+
+    @Test
+    void readsEnvelopeFields() {
+        RequestEnvelope envelope = read(REQUEST);
+
+        assertTrue(envelope.stream());
+        assertEquals("claude-sonnet-4-5-20250929", envelope.model());
+        assertEquals(Integer.valueOf(32000), envelope.maxTokens());
+        assertEquals(0.0, envelope.temperature(), 0.0);
+        assertEquals(Map.of("user_id", "user_2f3a_account_9c1e_session_7b41"), envelope.metadata());
+    }
+
+    @Test
+    void nestedMetadataValuesAreSkipped() {
+        RequestEnvelope envelope = read("{\"metadata\":{\"user_id\":\"u1\",\"tags\":[\"a\"],\"extra\":{\"k\":\"v\"}},"
+            + "\"stream\":false,\"max_tokens\":\"1024\"}");
+
+        assertFalse(envelope.stream());
+        assertNull(envelope.maxTokens());
+        assertEquals(Map.of("user_id", "u1"), envelope.metadata());
+    }
+
+    @Test
+    void cacheControlProducesPrefixHash() {
+        assertNotNull(read(REQUEST).cachePrefixHash());
+        assertNull(read(REQUEST.replace(CACHE_CONTROL, "")).cachePrefixHash());
+    }
+
+    @Test
+    void prefixHashIsSkippedWhenNotRequested() {
+        RequestEnvelope envelope = RequestEnvelopeReader.read(REQUEST.getBytes(StandardCharsets.UTF_8), false);
+
+        assertNull(envelope.cachePrefixHash());
+        assertEquals(read(REQUEST).canonicalHash(), envelope.canonicalHash());
+        assertEquals(read(REQUEST).metadata(), envelope.metadata());
+    }
+
+    @Test
+    void cacheControlOnlyInLaterMessageIsDetected() {
+        String onlyInLastMessage = REQUEST.replace(CACHE_CONTROL, "")
+            .replace("\"content\":\"public final class Reader {}\"",
+                "\"content\":\"public final class Reader {}\"" + CACHE_CONTROL);
+
+        assertNotNull(read(onlyInLastMessage).cachePrefixHash());
+    }
+
+    @Test
+    void cacheControlInsideStringContentIsIgnored() {
+        // 第一則 message 的文字包含 "cache_control"，但不是欄位名稱
+        String withoutField = REQUEST.replace(CACHE_CONTROL, "");
+
+        assertTrue(withoutField.contains("\\\"cache_control\\\""));
+        assertNull(read(withoutField).cachePrefixHash());
+    }
+
+    @Test
+    void prefixHashIsStableAcrossConversationTurns() {
+        String nextTurn = REQUEST.replace(LAST_TURN,
+            "\"content\":\"public final class Reader {}\"}]},"
+                + "{\"role\":\"assistant\",\"content\":[{\"type\":\"text\",\"text\":\"It is parsed in Reader.\"}]},"
+                + "{\"role\":\"user\",\"content\":[{\"type\":\"text\",\"text\":\"Thanks\"" + CACHE_CONTROL + "}]}]}");
+        assertNotEquals(REQUEST, nextTurn);
+
+        assertEquals(read(REQUEST).cachePrefixHash(), read(nextTurn).cachePrefixHash());
+    }
+
+    @Test
+    void prefixHashChangesWithSystemPrompt() {
+        String otherSystem = REQUEST.replace("/home/dev/project", "/home/dev/other");
+
+        assertNotEquals(read(REQUEST).cachePrefixHash(), read(otherSystem).cachePrefixHash());
+    }
+
+    @Test
+    void canonicalHashExcludesStream() {
+        RequestEnvelope streaming = read(REQUEST);
+        RequestEnvelope nonStreaming = read(REQUEST.replace("\"stream\":true", "\"stream\":false"));
+        RequestEnvelope withoutStream = read(REQUEST.replace("\"stream\":true,", ""));
+
+        assertNotNull(streaming.canonicalHash());
+        assertEquals(streaming.canonicalHash(), nonStreaming.canonicalHash());
+        assertEquals(streaming.canonicalHash(), withoutStream.canonicalHash());
+    }
+
+    @Test
+    void canonicalHashIgnoresRootFieldOrder() {
+        String model = "\"model\":\"claude-sonnet-4-5-20250929\",";
+        String withoutModel = REQUEST.replace(model, "").stripTrailing();
+        String reordered = withoutModel.substring(0, withoutModel.length() - 1)
+            + ",\"model\":\"claude-sonnet-4-5-20250929\"}";
+
+        assertEquals(read(REQUEST).canonicalHash(), read(reordered).canonicalHash());
+    }
+
+    @Test
+    void canonicalHashChangesWithContent() {
+        String otherQuestion = REQUEST.replace("Where is", "Where was");
+
+        assertNotEquals(read(REQUEST).canonicalHash(), read(otherQuestion).canonicalHash());
+    }
+
+    @Test
+    void canonicalHashOnlyForZeroTemperature() {
+        assertNull(read(REQUEST.replace("\"temperature\":0", "\"temperature\":0.7")).canonicalHash());
+        assertNull(read(REQUEST.replace("\"temperature\":0,", "")).canonicalHash());
+        assertNotNull(read(REQUEST.replace("\"temperature\":0", "\"temperature\":0.0")).canonicalHash());
+    }
+
+    @Test
+    void invalidBodyReturnsEmptyEnvelope() {
+        assertSame(RequestEnvelope.EMPTY, RequestEnvelopeReader.read(null, true));
+        assertSame(RequestEnvelope.EMPTY, read(""));
+        assertSame(RequestEnvelope.EMPTY, read("[1,2,3]"));
+        assertSame(RequestEnvelope.EMPTY, read("{\"model\":\"claude-sonnet-4-5-20250929\",\"messages\":["));
+    }
+
+    private static RequestEnvelope read(String body) {
+        return RequestEnvelopeReader.read(body.getBytes(StandardCharsets.UTF_8), true);
+    }
+}
@@ -0,0 +1,107 @@
+package io.github.samzhu.gate.util;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+
+import org.junit.jupiter.api.Test;
+
+class ResponseUsageTeeTest {
+
+    private static final byte[] MESSAGE = AnthropicFixtures.bytes("message-tool-use.json");
+
+    @Test
+    void smallResponseIsScannedFromHead() {
+        UsageJsonScanner usage = feed(MESSAGE, MESSAGE.length);
+
+        assertMessageUsage(usage);
+    }
+
+    @Test
+    void largeResponseTakesUsageFromTail() {
+        byte[] large = withLongText(MESSAGE, 100_000);
+
+        for (int chunk : new int[] {1, 7, 1000, 4096, ResponseUsageTee.TAIL_LIMIT, 20_000, large.length}) {
+            assertMessageUsage(feed(large, chunk));
+        }
+    }
+
+    @Test
+    void tailWindowAcrossRingBoundary() {
+        // 結尾落在環狀緩衝區中間：total % TAIL_LIMIT 不為 0
+        for (int padding = 0; padding < 64; padding += 13) {
+            byte[] large = withLongText(MESSAGE, ResponseUsageTee.TAIL_LIMIT * 3 + padding);
+            assertMessageUsage(feed(large, 3000));
+        }
+    }
+
+    @Test
+    void stopReasonInsideContentIsNotMistakenForField() {
+        byte[] large = withLongText(MESSAGE, 50_000);
+
+        UsageJsonScanner usage = feed(large, 512);
+
+        // 範例文字中含有跳脫的 {\"stop_reason\":\"fake\"}
+        assertEquals("tool_use", usage.getStopReason());
+    }
+
+    @Test
+    void responseWithoutStopReasonInTailKeepsHeadFields() {
+        String text = "a".repeat(50_000);
+        byte[] truncated = ("{\"id\":\"msg_01Aq9w938a90dw8q\",\"type\":\"message\",\"model\":\"claude-sonnet-4-5-20250929\","
+            + "\"content\":[{\"type\":\"text\",\"text\":\"" + text + "\"}]}").getBytes(StandardCharsets.UTF_8);
+
+        UsageJsonScanner usage = feed(truncated, 4096);
+
+        assertEquals("msg_01Aq9w938a90dw8q", usage.getMessageId());
+        assertNull(usage.getStopReason());
+        assertEquals(UsageJsonScanner.ABSENT, usage.getOutputTokens());
+    }
+
+    @Test
+    void errorResponseIsScannedFromHead() {
+        byte[] error = AnthropicFixtures.bytes("error-overloaded.json");
+
+        UsageJsonScanner usage = feed(error, 16);
+
+        assertTrue(usage.isError());
+        assertEquals("overloaded_error", usage.getErrorType());
+    }
+
+    private static UsageJsonScanner feed(byte[] response, int chunk) {
+        ResponseUsageTee tee = new ResponseUsageTee();
+        // 以可重複使用的緩衝區餵入，確認 tee 不保留呼叫端的陣列
+        byte[] buffer = new byte[chunk];
+        for (int offset = 0; offset < response.length; offset += chunk) {
+            int length = Math.min(chunk, response.length - offset);
+            System.arraycopy(response, offset, buffer, 0, length);
+            tee.update(buffer, 0, length);
+            Arrays.fill(buffer, (byte) 'x');
+        }
+        return tee.finish();
+    }
+
+    private static void assertMessageUsage(UsageJsonScanner usage) {
+        assertEquals("msg_01Aq9w938a90dw8q", usage.getMessageId());
+        assertEquals("claude-sonnet-4-5-20250929", usage.getModel());
+        assertEquals("tool_use", usage.getStopReason());
+        assertEquals(2095, usage.getInputTokens());
+        assertEquals(1024, usage.getCacheCreationTokens());
+        assertEquals(8192, usage.getCacheReadTokens());
+        assertEquals(503, usage.getOutputTokens());
+    }
+
+    /**
+     * 在第一個 text 區塊前插入長文字，讓 usage 落在 head 之外
+     */
+    private static byte[] withLongText(byte[] message, int length) {
+        String json = new String(message, StandardCharsets.UTF_8);
+        String marker = "\"text\":\"";
+        int index = json.indexOf(marker) + marker.length();
+        return (json.substring(0, index) + "lorem ipsum ".repeat(length / 12 + 1).substring(0, length)
+            + json.substring(index)).getBytes(StandardCharsets.UTF_8);
+    }
+}
@@ -0,0 +1,161 @@
+package io.github.samzhu.gate.util;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.junit.jupiter.api.Test;
+
+class SseFrameReaderTest {
+
+    private static final byte[] TEXT_STREAM = AnthropicFixtures.bytes("stream-text.sse");
+
+    @Test
+    void readsEveryFrameOfAnthropicStream() throws IOException {
+        List<Frame> frames = readAll(new ByteArrayInputStream(TEXT_STREAM));
+
+        assertEquals(List.of("message_start", "content_block_start", "ping", "content_block_delta",
+            "content_block_delta", "content_block_stop", "message_delta", "message_stop"),
+            frames.stream().map(Frame::event).toList());
+        assertEquals("{\"type\":\"content_block_delta\",\"index\":0,\"delta\":{\"type\":\"text_delta\",\"text\":\"Hello\"}}",
+            frames.get(3).data());
+        assertArrayEquals(TEXT_STREAM, concat(frames));
+    }
+
+    @Test
+    void frameSplitAcrossReadsIsReassembled() throws IOException {
+        List<Frame> whole = readAll(new ByteArrayInputStream(TEXT_STREAM));
+        List<Frame> trickled = readAll(new TrickleInputStream(TEXT_STREAM, 1));
+        List<Frame> chunked = readAll(new TrickleInputStream(TEXT_STREAM, 7));
+
+        assertEquals(whole, trickled);
+        assertEquals(whole, chunked);
+    }
+
+    @Test
+    void crlfLineEndingsEndFramesAndAreStrippedFromFields() throws IOException {
+        byte[] crlf = new String(TEXT_STREAM, StandardCharsets.UTF_8).replace("\n", "\r\n")
+            .getBytes(StandardCharsets.UTF_8);
+
+        List<Frame> frames = readAll(new TrickleInputStream(crlf, 3));
+
+        assertEquals(8, frames.size());
+        assertEquals("message_stop", frames.get(7).event());
+        assertEquals("{\"type\":\"message_stop\"}", frames.get(7).data());
+        assertTrue(frames.get(0).raw().endsWith("\r\n\r\n"));
+        assertArrayEquals(crlf, concat(frames));
+    }
+
+    @Test
+    void oversizedFrameIsReturnedIntact() throws IOException {
+        String text = "x".repeat(100_000);
+        String data = "{\"type\":\"content_block_delta\",\"index\":0,\"delta\":{\"type\":\"text_delta\",\"text\":\""
+            + text + "\"}}";
+        byte[] stream = ("event: content_block_delta\ndata: " + data + "\n\n"
+            + "event: message_stop\ndata: {\"type\":\"message_stop\"}\n\n").getBytes(StandardCharsets.UTF_8);
+
+        List<Frame> frames = readAll(new TrickleInputStream(stream, 4096));
+
+        assertEquals(2, frames.size());
+        assertEquals(data, frames.get(0).data());
+        assertEquals("message_stop", frames.get(1).event());
+        assertArrayEquals(stream, concat(frames));
+    }
+
+    @Test
+    void trailingBytesWithoutBlankLineAreReturnedAsLastFrame() throws IOException {
+        byte[] stream = "event: ping\ndata: {\"type\": \"ping\"}\n\nevent: message_stop\ndata: {\"type\":\"message_stop\"}"
+            .getBytes(StandardCharsets.UTF_8);
+
+        List<Frame> frames = readAll(new ByteArrayInputStream(stream));
+
+        assertEquals(2, frames.size());
+        assertEquals("{\"type\":\"message_stop\"}", frames.get(1).data());
+    }
+
+    @Test
+    void multiLineDataIsJoinedWithNewline() throws IOException {
+        byte[] stream = "data:first\ndata: second\n\n".getBytes(StandardCharsets.UTF_8);
+
+        SseFrameReader reader = new SseFrameReader(new ByteArrayInputStream(stream));
+
+        assertTrue(reader.next());
+        assertFalse(reader.hasEventType());
+        assertNull(reader.eventType());
+        assertEquals("first\nsecond", data(reader));
+        assertFalse(reader.next());
+    }
+
+    @Test
+    void matchesEventTypeWithoutDecoding() throws IOException {
+        SseFrameReader reader = new SseFrameReader(new ByteArrayInputStream(TEXT_STREAM));
+
+        assertTrue(reader.next());
+        assertTrue(reader.isEventType("message_start".getBytes(StandardCharsets.US_ASCII)));
+        assertFalse(reader.isEventType("message_stop".getBytes(StandardCharsets.US_ASCII)));
+    }
+
+    private static List<Frame> readAll(InputStream in) throws IOException {
+        SseFrameReader reader = new SseFrameReader(in);
+        List<Frame> frames = new ArrayList<>();
+        while (reader.next()) {
+            frames.add(new Frame(reader.eventType(), reader.hasData() ? data(reader) : null,
+                new String(reader.buffer(), reader.frameOffset(), reader.frameLength(), StandardCharsets.UTF_8)));
+        }
+        return frames;
+    }
+
+    private static String data(SseFrameReader reader) {
+        return new String(reader.dataBuffer(), reader.dataOffset(), reader.dataLength(), StandardCharsets.UTF_8);
+    }
+
+    private static byte[] concat(List<Frame> frames) {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        frames.forEach(frame -> out.writeBytes(frame.raw().getBytes(StandardCharsets.UTF_8)));
+        return out.toByteArray();
+    }
+
+    private record Frame(String event, String data, String raw) {
+    }
+
+    /**
+     * 每次最多回傳 {@code chunk} 個位元組，模擬 frame 被切在任意位置的網路讀取
+     */
+    private static final class TrickleInputStream extends InputStream {
+
+        private final byte[] data;
+        private final int chunk;
+        private int position;
+
+        TrickleInputStream(byte[] data, int chunk) {
+            this.data = data;
+            this.chunk = chunk;
+        }
+
+        @Override
+        public int read() {
+            return position < data.length ? data[position++] & 0xFF : -1;
+        }
+
+        @Override
+        public int read(byte[] buffer, int offset, int length) {
+            if (position >= data.length) {
+                return -1;
+            }
+            int count = Math.min(Math.min(length, chunk), data.length - position);
+            System.arraycopy(data, position, buffer, offset, count);
+            position += count;
+            return count;
+        }
+    }
+}
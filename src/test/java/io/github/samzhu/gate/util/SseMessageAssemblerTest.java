@@ -0,0 +1,144 @@
+package io.github.samzhu.gate.util;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+
+import org.junit.jupiter.api.Test;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+class SseMessageAssemblerTest {
+
+    private static final ObjectMapper MAPPER = new ObjectMapper();
+
+    @Test
+    void assemblesTextMessage() throws IOException {
+        JsonNode message = assemble(AnthropicFixtures.bytes("stream-text.sse"));
+
+        assertEquals("msg_01XFDUDYJgAACzvnptvVoYEL", message.get("id").asText());
+        assertEquals("message", message.get("type").asText());
+        assertEquals(1, message.get("content").size());
+        assertEquals("text", message.at("/content/0/type").asText());
+        assertEquals("Hello! How can I help you \"today\"?\n", message.at("/content/0/text").asText());
+        assertEquals("end_turn", message.get("stop_reason").asText());
+        assertTrue(message.get("stop_sequence").isNull());
+    }
+
+    @Test
+    void finalUsageOverridesInitialOutputTokens() throws IOException {
+        JsonNode usage = assemble(AnthropicFixtures.bytes("stream-text.sse")).get("usage");
+
+        assertEquals(25, usage.get("input_tokens").asInt());
+        assertEquals(0, usage.get("cache_read_input_tokens").asInt());
+        assertEquals(15, usage.get("output_tokens").asInt());
+    }
+
+    @Test
+    void assemblesToolUseInputFromPartialJson() throws IOException {
+        JsonNode message = assemble(AnthropicFixtures.bytes("stream-tool-use.sse"));
+
+        assertEquals("Okay, let's check the weather for San Francisco, CA:", message.at("/content/0/text").asText());
+        JsonNode toolUse = message.at("/content/1");
+        assertEquals("tool_use", toolUse.get("type").asText());
+        assertEquals("toolu_01T1x1fJ34qAmk2tNTrN7Up6", toolUse.get("id").asText());
+        assertEquals("get_weather", toolUse.get("name").asText());
+        assertEquals(MAPPER.readTree("{\"location\":\"San Francisco, CA\",\"unit\":\"fahrenheit\"}"),
+            toolUse.get("input"));
+        assertEquals("tool_use", message.get("stop_reason").asText());
+        assertEquals(89, message.at("/usage/output_tokens").asInt());
+    }
+
+    @Test
+    void assemblesThinkingWithSignature() throws IOException {
+        JsonNode message = assemble(AnthropicFixtures.bytes("stream-thinking.sse"));
+
+        JsonNode thinking = message.at("/content/0");
+        assertEquals("thinking", thinking.get("type").asText());
+        assertEquals("I need to find the GCD of 1071 and 462 using the Euclidean algorithm.\n\n"
+                + "1071 = 2 × 462 + 147\n462 = 3 × 147 + 21\n147 = 7 × 21 + 0\n\nSo GCD(1071, 462) = 21",
+            thinking.get("thinking").asText());
+        assertEquals("EqQBCgIYAhIM1gbcDa9GJwZA2b3hGgxBdjrkzLoky3dl1pkiMOYds", thinking.get("signature").asText());
+        assertEquals("The greatest common divisor of 1071 and 462 is **21**.", message.at("/content/1/text").asText());
+    }
+
+    @Test
+    void assemblesCitations() throws IOException {
+        JsonNode message = assemble(AnthropicFixtures.bytes("stream-citations.sse"));
+
+        assertFalse(message.at("/content/0").has("citations"));
+        JsonNode cited = message.at("/content/1");
+        assertEquals("the grass is green", cited.get("text").asText());
+        assertEquals(1, cited.get("citations").size());
+        assertEquals("char_location", cited.at("/citations/0/type").asText());
+        assertEquals("The grass is green. ", cited.at("/citations/0/cited_text").asText());
+        assertEquals(20, cited.at("/citations/0/end_char_index").asInt());
+    }
+
+    @Test
+    void truncatedStreamIsNotAssembled() throws IOException {
+        String stream = new String(AnthropicFixtures.bytes("stream-text.sse"), StandardCharsets.UTF_8);
+        String truncated = stream.substring(0, stream.indexOf("event: message_stop"));
+
+        SseMessageAssembler assembler = feed(truncated.getBytes(StandardCharsets.UTF_8));
+
+        assertFalse(assembler.isComplete());
+        assertNull(assembler.toMessage());
+    }
+
+    @Test
+    void errorEventAbandonsAssembly() throws IOException {
+        String stream = new String(AnthropicFixtures.bytes("stream-text.sse"), StandardCharsets.UTF_8);
+        String withError = stream.replace("event: ping\ndata: {\"type\": \"ping\"}",
+            "event: error\ndata: " + new String(AnthropicFixtures.bytes("error-overloaded.json"),
+                StandardCharsets.UTF_8).strip());
+
+        SseMessageAssembler assembler = feed(withError.getBytes(StandardCharsets.UTF_8));
+
+        assertFalse(assembler.isComplete());
+        assertNull(assembler.toMessage());
+    }
+
+    @Test
+    void unknownDeltaTypeAbandonsAssembly() throws IOException {
+        String stream = new String(AnthropicFixtures.bytes("stream-text.sse"), StandardCharsets.UTF_8);
+        String withUnknownDelta = stream.replace("\"type\":\"text_delta\",\"text\":\"Hello\"",
+            "\"type\":\"future_delta\",\"text\":\"Hello\"");
+
+        assertNull(feed(withUnknownDelta.getBytes(StandardCharsets.UTF_8)).toMessage());
+    }
+
+    @Test
+    void invalidToolInputIsNotAssembled() throws IOException {
+        String stream = new String(AnthropicFixtures.bytes("stream-tool-use.sse"), StandardCharsets.UTF_8);
+        String cutInput = stream.replace("\"partial_json\":\"renheit\\\"}\"", "\"partial_json\":\"renheit\\\"\"");
+
+        SseMessageAssembler assembler = feed(cutInput.getBytes(StandardCharsets.UTF_8));
+
+        assertTrue(assembler.isComplete());
+        assertNull(assembler.toMessage());
+    }
+
+    static JsonNode assemble(byte[] stream) throws IOException {
+        byte[] message = feed(stream).toMessage();
+        if (message == null) {
+            throw new AssertionError("Stream was not assembled");
+        }
+        return MAPPER.readTree(message);
+    }
+
+    static SseMessageAssembler feed(byte[] stream) throws IOException {
+        SseMessageAssembler assembler = new SseMessageAssembler();
+        SseFrameReader reader = new SseFrameReader(new ByteArrayInputStream(stream));
+        while (reader.next()) {
+            assembler.accept(reader.dataBuffer(), reader.dataOffset(), reader.dataLength());
+        }
+        return assembler;
+    }
+}
@@ -0,0 +1,123 @@
+package io.github.samzhu.gate.util;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.junit.jupiter.api.Test;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+class SseMessageReplayTest {
+
+    private static final ObjectMapper MAPPER = new ObjectMapper();
+
+    @Test
+    void replayOfAssembledStreamsRoundTrips() throws IOException {
+        for (String fixture : List.of("stream-text.sse", "stream-tool-use.sse", "stream-thinking.sse",
+                "stream-citations.sse")) {
+            byte[] message = SseMessageAssemblerTest.feed(AnthropicFixtures.bytes(fixture)).toMessage();
+
+            JsonNode replayed = SseMessageAssemblerTest.assemble(SseMessageReplay.replay(message));
+
+            assertEquals(MAPPER.readTree(message), replayed, fixture);
+        }
+    }
+
+    @Test
+    void replayOfNonStreamingMessageRoundTrips() throws IOException {
+        byte[] message = AnthropicFixtures.bytes("message-tool-use.json");
+
+        JsonNode replayed = SseMessageAssemblerTest.assemble(SseMessageReplay.replay(message));
+
+        assertEquals(MAPPER.readTree(message), replayed);
+    }
+
+    @Test
+    void replayFollowsStreamingEventOrder() throws IOException {
+        byte[] message = SseMessageAssemblerTest.feed(AnthropicFixtures.bytes("stream-tool-use.sse")).toMessage();
+
+        List<String> events = eventTypes(SseMessageReplay.replay(message));
+
+        assertEquals(List.of("message_start",
+            "content_block_start", "content_block_delta", "content_block_stop",
+            "content_block_start", "content_block_delta", "content_block_stop",
+            "message_delta", "message_stop"), events);
+    }
+
+    @Test
+    void messageStartHasEmptyContentAndNoStopReason() throws IOException {
+        byte[] message = SseMessageAssemblerTest.feed(AnthropicFixtures.bytes("stream-thinking.sse")).toMessage();
+
+        JsonNode start = MAPPER.readTree(firstEventData(SseMessageReplay.replay(message), "message_start"));
+
+        assertEquals("msg_01KxbqsV5gHHbzVPyM8WqJLQ", start.at("/message/id").asText());
+        assertEquals(0, start.at("/message/content").size());
+        assertTrue(start.at("/message/stop_reason").isNull());
+        assertTrue(start.at("/message/stop_sequence").isNull());
+    }
+
+    @Test
+    void blockStartClearsAccumulatedFields() throws IOException {
+        byte[] message = SseMessageAssemblerTest.feed(AnthropicFixtures.bytes("stream-tool-use.sse")).toMessage();
+        byte[] replay = SseMessageReplay.replay(message);
+
+        List<JsonNode> starts = new ArrayList<>();
+        SseFrameReader reader = new SseFrameReader(new ByteArrayInputStream(replay));
+        while (reader.next()) {
+            if (reader.isEventType("content_block_start".getBytes(StandardCharsets.US_ASCII))) {
+                starts.add(MAPPER.readTree(reader.dataBuffer(), reader.dataOffset(), reader.dataLength()));
+            }
+        }
+
+        assertEquals("", starts.get(0).at("/content_block/text").asText());
+        assertEquals(MAPPER.createObjectNode(), starts.get(1).at("/content_block/input"));
+        assertEquals("get_weather", starts.get(1).at("/content_block/name").asText());
+    }
+
+    @Test
+    void errorEventIsEscapedJson() throws IOException {
+        byte[] event = SseMessageReplay.error("upstream said \"no\"\nretry later");
+
+        JsonNode error = MAPPER.readTree(firstEventData(event, "error"));
+
+        assertEquals("error", error.get("type").asText());
+        assertEquals("api_error", error.at("/error/type").asText());
+        assertEquals("upstream said \"no\"\nretry later", error.at("/error/message").asText());
+    }
+
+    @Test
+    void nonObjectMessageIsRejected() {
+        assertThrows(IOException.class, () -> SseMessageReplay.replay("[]".getBytes(StandardCharsets.UTF_8)));
+    }
+
+    private static List<String> eventTypes(byte[] stream) throws IOException {
+        List<String> types = new ArrayList<>();
+        SseFrameReader reader = new SseFrameReader(new ByteArrayInputStream(stream));
+        while (reader.next()) {
+            types.add(MAPPER.readTree(reader.dataBuffer(), reader.dataOffset(), reader.dataLength())
+                .get("type").asText());
+        }
+        return types;
+    }
+
+    private static byte[] firstEventData(byte[] stream, String eventType) throws IOException {
+        SseFrameReader reader = new SseFrameReader(new ByteArrayInputStream(stream));
+        byte[] type = eventType.getBytes(StandardCharsets.US_ASCII);
+        while (reader.next()) {
+            if (reader.isEventType(type)) {
+                byte[] data = new byte[reader.dataLength()];
+                System.arraycopy(reader.dataBuffer(), reader.dataOffset(), data, 0, data.length);
+                return data;
+            }
+        }
+        throw new AssertionError("No " + eventType + " event");
+    }
+}
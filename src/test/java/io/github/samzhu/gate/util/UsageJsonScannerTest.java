@@ -0,0 +1,117 @@
+package io.github.samzhu.gate.util;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+
+import org.junit.jupiter.api.Test;
+
+class UsageJsonScannerTest {
+
+    @Test
+    void messageStartEvent() throws IOException {
+        UsageJsonScanner scanner = UsageJsonScanner.scan(AnthropicFixtures.eventData("stream-text.sse", "message_start"));
+
+        assertTrue(scanner.isMessageStart());
+        assertEquals("msg_01XFDUDYJgAACzvnptvVoYEL", scanner.getMessageId());
+        assertEquals("claude-sonnet-4-5-20250929", scanner.getModel());
+        assertNull(scanner.getStopReason());
+        assertEquals(25, scanner.getInputTokens());
+        assertEquals(0, scanner.getCacheCreationTokens());
+        assertEquals(0, scanner.getCacheReadTokens());
+        assertEquals(1, scanner.getOutputTokens());
+    }
+
+    @Test
+    void messageStartEventWithWhitespace() throws IOException {
+        UsageJsonScanner scanner = UsageJsonScanner.scan(
+            AnthropicFixtures.eventData("stream-thinking.sse", "message_start"));
+
+        assertTrue(scanner.isMessageStart());
+        assertEquals("msg_01KxbqsV5gHHbzVPyM8WqJLQ", scanner.getMessageId());
+        assertEquals(47, scanner.getInputTokens());
+        assertEquals(4, scanner.getOutputTokens());
+    }
+
+    @Test
+    void messageDeltaEvent() throws IOException {
+        UsageJsonScanner scanner = UsageJsonScanner.scan(AnthropicFixtures.eventData("stream-text.sse", "message_delta"));
+
+        assertTrue(scanner.isMessageDelta());
+        assertEquals("end_turn", scanner.getStopReason());
+        assertEquals(15, scanner.getOutputTokens());
+        assertEquals(UsageJsonScanner.ABSENT, scanner.getInputTokens());
+        assertEquals(UsageJsonScanner.ABSENT, scanner.getCacheReadTokens());
+    }
+
+    @Test
+    void completeMessage() throws IOException {
+        UsageJsonScanner scanner = UsageJsonScanner.scan(AnthropicFixtures.bytes("message-tool-use.json"));
+
+        assertEquals("message", scanner.getType());
+        assertEquals("msg_01Aq9w938a90dw8q", scanner.getMessageId());
+        assertEquals("claude-sonnet-4-5-20250929", scanner.getModel());
+        assertEquals("tool_use", scanner.getStopReason());
+        assertEquals(2095, scanner.getInputTokens());
+        assertEquals(1024, scanner.getCacheCreationTokens());
+        assertEquals(8192, scanner.getCacheReadTokens());
+        assertEquals(503, scanner.getOutputTokens());
+    }
+
+    @Test
+    void errorResponse() throws IOException {
+        UsageJsonScanner scanner = UsageJsonScanner.scan(AnthropicFixtures.bytes("error-overloaded.json"));
+
+        assertTrue(scanner.isError());
+        assertEquals("overloaded_error", scanner.getErrorType());
+        assertEquals(UsageJsonScanner.ABSENT, scanner.getOutputTokens());
+    }
+
+    @Test
+    void usageNestedInContentIsIgnored() throws IOException {
+        byte[] json = ("{\"type\":\"message\",\"content\":[{\"type\":\"tool_use\",\"input\":"
+            + "{\"usage\":{\"input_tokens\":999},\"model\":\"fake\"}}],"
+            + "\"container\":{\"usage\":{\"output_tokens\":999}},"
+            + "\"model\":\"claude-sonnet-4-5-20250929\",\"usage\":{\"input_tokens\":5,\"output_tokens\":7}}")
+            .getBytes(StandardCharsets.UTF_8);
+
+        UsageJsonScanner scanner = UsageJsonScanner.scan(json);
+
+        assertEquals("claude-sonnet-4-5-20250929", scanner.getModel());
+        assertEquals(5, scanner.getInputTokens());
+        assertEquals(7, scanner.getOutputTokens());
+    }
+
+    @Test
+    void scansSliceOfLargerBuffer() throws IOException {
+        byte[] data = AnthropicFixtures.eventData("stream-text.sse", "message_delta");
+        byte[] buffer = new byte[data.length + 20];
+        System.arraycopy(data, 0, buffer, 10, data.length);
+        buffer[9] = '[';
+        buffer[10 + data.length] = ']';
+
+        UsageJsonScanner scanner = UsageJsonScanner.scan(buffer, 10, data.length);
+
+        assertEquals(15, scanner.getOutputTokens());
+    }
+
+    @Test
+    void pingIsNotUsage() throws IOException {
+        UsageJsonScanner scanner = UsageJsonScanner.scan(AnthropicFixtures.eventData("stream-text.sse", "ping"));
+
+        assertEquals("ping", scanner.getType());
+        assertFalse(scanner.isMessageStart());
+        assertFalse(scanner.isMessageDelta());
+    }
+
+    @Test
+    void malformedJsonFails() {
+        assertThrows(IOException.class,
+            () -> UsageJsonScanner.scan("{\"type\":\"message_delta\",".getBytes(StandardCharsets.UTF_8)));
+    }
+}